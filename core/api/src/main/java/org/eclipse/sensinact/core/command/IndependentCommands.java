@@ -20,7 +20,7 @@ import org.eclipse.sensinact.core.twin.SensinactDigitalTwin;
 import org.osgi.util.promise.Promise;
 import org.osgi.util.promise.PromiseFactory;
 
-public class IndependentCommands<T> extends AbstractSensinactCommand<List<T>> {
+public class IndependentCommands<T> extends AbstractSensinactCommand<List<T>> implements TargetedCommand {
 
     private List<AbstractSensinactCommand<? extends T>> commands;
 
@@ -44,6 +44,26 @@ public class IndependentCommands<T> extends AbstractSensinactCommand<List<T>> {
         commands = List.copyOf(command);
     }
 
+    /**
+     * The commands target a single provider only if all of them target the same
+     * one
+     */
+    @Override
+    public String getTargetProvider() {
+        String target = null;
+        for (AbstractSensinactCommand<? extends T> command : commands) {
+            if (!(command instanceof TargetedCommand)) {
+                return null;
+            }
+            String provider = ((TargetedCommand) command).getTargetProvider();
+            if (provider == null || (target != null && !target.equals(provider))) {
+                return null;
+            }
+            target = provider;
+        }
+        return target;
+    }
+
     @Override
     protected Promise<List<T>> call(SensinactDigitalTwin twin, SensinactModelManager modelMgr,
             PromiseFactory promiseFactory) {
@@ -17,7 +17,7 @@ import org.eclipse.sensinact.core.twin.SensinactResource;
 import org.osgi.util.promise.Promise;
 import org.osgi.util.promise.PromiseFactory;
 
-public abstract class ResourceCommand<T> extends AbstractTwinCommand<T> {
+public abstract class ResourceCommand<T> extends AbstractTwinCommand<T> implements TargetedCommand {
 
     private final String model;
     private final String provider;
@@ -36,6 +36,11 @@ public abstract class ResourceCommand<T> extends AbstractTwinCommand<T> {
         this.resource = resource;
     }
 
+    @Override
+    public String getTargetProvider() {
+        return provider;
+    }
+
     @Override
     protected final Promise<T> call(SensinactDigitalTwin twin, PromiseFactory pf) {
         SensinactResource r = model == null ? twin.getResource(provider, service, resource)
@@ -0,0 +1,45 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.command;
+
+/**
+ * A command which only reads or modifies a single provider of the twin. The
+ * gateway may use this information to run the command concurrently with
+ * commands targeting other providers.
+ *
+ * Commands which do not implement this interface, or which return
+ * <code>null</code> from {@link #getTargetProvider()}, are considered to touch
+ * the whole twin and are never run concurrently with another command.
+ */
+public interface TargetedCommand {
+
+    /**
+     * Returns the name of the only provider touched by this command
+     *
+     * @return the provider name, or <code>null</code> if the command can touch
+     *         any provider
+     */
+    String getTargetProvider();
+
+    /**
+     * Returns the path of the resource whose value is set by this command, if
+     * this is all the command does. Such a command can be dropped or replaced by
+     * a later command setting the same resource when the gateway is overloaded.
+     *
+     * @return the resource path (provider/service/resource), or
+     *         <code>null</code> if the command does anything else
+     */
+    default String getTargetResource() {
+        return null;
+    }
+}
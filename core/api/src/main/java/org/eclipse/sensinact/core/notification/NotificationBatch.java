@@ -0,0 +1,36 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.notification;
+
+import java.util.List;
+
+/**
+ * Notification batches group all the notifications sent for a set of commands,
+ * in their delivery order. Each notification of a batch is also sent on its own
+ * topic: handlers should listen to either the batches or the individual
+ * notifications, not both.
+ *
+ * Topic name is
+ *
+ * BATCH
+ */
+public class NotificationBatch {
+
+    public static final String TOPIC = "BATCH";
+
+    public List<AbstractResourceNotification> notifications;
+
+    public String getTopic() {
+        return TOPIC;
+    }
+}
@@ -0,0 +1,118 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.command.impl;
+
+/**
+ * Gateway thread configuration
+ */
+public @interface GatewayThreadConfiguration {
+
+    /**
+     * Number of worker threads sharing the providers of the twin. Commands
+     * targeting a single provider are always executed by the same worker, other
+     * commands are executed once all workers are idle. With a value lower than 2,
+     * all commands are executed by a single gateway thread (default).
+     */
+    int shards() default 0;
+
+    /**
+     * Maximum number of commands waiting to be executed, per worker thread. With
+     * a value lower than 1, the queue is unbounded.
+     */
+    int queueCapacity() default 4096;
+
+    /**
+     * Behaviour when a command is submitted while the queue is full
+     */
+    QueuePolicy queuePolicy() default QueuePolicy.FAIL;
+
+    /**
+     * Maximum time in milliseconds a caller waits for some room in the queue with
+     * the {@link QueuePolicy#BLOCK} policy
+     */
+    long queueTimeout() default 1000;
+
+    /**
+     * Maximum number of queued commands executed together by a worker thread.
+     * The commands of a batch share the same twin and their notifications are
+     * sent once all of them completed.
+     */
+    int batchSize() default 64;
+
+    /**
+     * Accumulate notifications in a table of mutable entries instead of a sorted
+     * map, which allocates less for large batches of value updates
+     */
+    boolean compactNotifications() default false;
+
+    /**
+     * Deliver notifications from a dedicated thread, so that the gateway threads
+     * don't wait for the event handlers
+     */
+    boolean asyncNotifications() default true;
+
+    /**
+     * Maximum number of notification batches waiting to be delivered by the
+     * dispatcher thread of the {@link #asyncNotifications()} mode
+     */
+    int notificationQueueCapacity() default 1024;
+
+    /**
+     * Behaviour when notifications are dispatched while the notification queue
+     * is full. {@link QueuePolicy#BLOCK} (default) makes the gateway thread wait
+     * for some room, so that no notification is lost. Notifications are only
+     * dropped when explicitly allowed: {@link QueuePolicy#DROP_OLDEST} drops the
+     * oldest waiting batch, {@link QueuePolicy#FAIL} and
+     * {@link QueuePolicy#COALESCE} drop the new batch, and
+     * {@link QueuePolicy#BLOCK} drops it after the
+     * {@link #notificationQueueTimeout()}, if set. Dropped batches, which can
+     * contain value updates stored by the history providers, are counted in the
+     * <code>sensinact.notifications.dropped</code> metric.
+     */
+    QueuePolicy notificationQueuePolicy() default QueuePolicy.BLOCK;
+
+    /**
+     * Maximum time in milliseconds the gateway thread waits for some room in the
+     * notification queue with the {@link QueuePolicy#BLOCK} policy before
+     * dropping the notifications. With a value lower than 1, it waits as long as
+     * needed and never drops notifications (default).
+     */
+    long notificationQueueTimeout() default 0;
+
+    /**
+     * Interval in milliseconds between two writes of the changed provider
+     * instances to disk while the gateway is running. Each write copies the
+     * changed providers while no command is executed. With a value lower than 1,
+     * instances are only written on shutdown or when reaching the
+     * {@link #persistThreshold()} (default).
+     */
+    long persistInterval() default 0;
+
+    /**
+     * Number of changed provider instances triggering a write to disk before the
+     * end of the {@link #persistInterval()}. With a value lower than 1, only the
+     * interval is used (default).
+     */
+    int persistThreshold() default 0;
+
+    /**
+     * Minimum interval in milliseconds between two binary snapshots of all the
+     * provider instances, used to speed up the startup. A snapshot is always
+     * written on shutdown. Writing a snapshot at runtime copies all the
+     * providers while no command is executed, and is only done by the
+     * persistence writes enabled by {@link #persistInterval()} or
+     * {@link #persistThreshold()}. With a value lower than 1, it is only written
+     * on shutdown (default).
+     */
+    long snapshotInterval() default 0;
+}
@@ -14,54 +14,111 @@ package org.eclipse.sensinact.core.command.impl;
 
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
-import static org.eclipse.sensinact.core.command.GatewayThread.getGatewayThread;
 import static org.osgi.service.component.annotations.ReferenceCardinality.MULTIPLE;
 import static org.osgi.service.component.annotations.ReferencePolicy.DYNAMIC;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.sensinact.core.command.AbstractSensinactCommand;
+import org.eclipse.sensinact.core.command.AbstractTwinCommand;
 import org.eclipse.sensinact.core.command.GatewayThread;
+import org.eclipse.sensinact.core.command.TargetedCommand;
 import org.eclipse.sensinact.core.metrics.IMetricTimer;
 import org.eclipse.sensinact.core.metrics.IMetricsManager;
+import org.eclipse.sensinact.core.notification.AbstractResourceNotification;
 import org.eclipse.sensinact.core.notification.NotificationAccumulator;
+import org.eclipse.sensinact.core.twin.SensinactDigitalTwin;
 import org.eclipse.sensinact.model.core.provider.ProviderPackage;
 import org.eclipse.sensinact.core.model.impl.SensinactModelManagerImpl;
 import org.eclipse.sensinact.core.model.nexus.ModelNexus;
+import org.eclipse.sensinact.core.notification.impl.BatchNotificationAccumulator;
+import org.eclipse.sensinact.core.notification.impl.CompactNotificationAccumulator;
 import org.eclipse.sensinact.core.notification.impl.ImmediateNotificationAccumulator;
 import org.eclipse.sensinact.core.notification.impl.NotificationAccumulatorImpl;
+import org.eclipse.sensinact.core.notification.impl.NotificationDispatcher;
 import org.eclipse.sensinact.core.twin.impl.SensinactDigitalTwinImpl;
 import org.eclipse.sensinact.core.whiteboard.impl.SensinactWhiteboard;
 import org.osgi.service.component.AnyService;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
 import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.typedevent.TypedEventBus;
+import org.osgi.util.converter.Converters;
 import org.osgi.util.promise.Deferred;
 import org.osgi.util.promise.Promise;
 import org.osgi.util.promise.PromiseFactory;
 
 //TODO decide if this is the right level to be a component
-@Component
+@Component(configurationPid = GatewayThreadImpl.PID, configurationPolicy = ConfigurationPolicy.OPTIONAL)
 public class GatewayThreadImpl extends Thread implements GatewayThread {
 
-    private final TypedEventBus typedEventBus;
+    /**
+     * Configuration PID
+     */
+    static final String PID = "sensinact.gateway.thread";
+
+    private final NotificationDispatcher dispatcher;
 
     private final SensinactWhiteboard whiteboard;
 
     private final ModelNexus nexusImpl;
 
-    // TODO decide if we should just use an infinite queue
-    private final BlockingQueue<WorkItem<?>> work = new ArrayBlockingQueue<>(4096);
+    private final int queueCapacity;
+
+    private final QueuePolicy queuePolicy;
+
+    private final long queueTimeout;
+
+    private final int batchSize;
+
+    private final boolean compactNotifications;
+
+    private final int persistThreshold;
+
+    private final long snapshotInterval;
+
+    /**
+     * Time of the last snapshot of the instances, only used by persist commands
+     */
+    private long lastSnapshot = System.currentTimeMillis();
+
+    /**
+     * Set while a {@link PersistCommand} is waiting to be executed
+     */
+    private final AtomicBoolean persistRequested = new AtomicBoolean();
+
+    private final BlockingQueue<WorkItem<?>> work;
+
+    /**
+     * Latest queued value update of each resource, used by the
+     * {@link QueuePolicy#COALESCE} policy
+     */
+    private final Map<String, WorkItem<?>> coalescable = new ConcurrentHashMap<>();
+
+    /**
+     * Worker threads of the sharded mode, empty when running on a single thread.
+     * In sharded mode this thread only executes the commands which aren't
+     * targeting a single provider.
+     */
+    private final Shard[] shards;
 
     private final AtomicBoolean run = new AtomicBoolean(true);
 
@@ -71,33 +128,75 @@ public class GatewayThreadImpl extends Thread implements GatewayThread {
             newSingleThreadExecutor(r -> new Thread(r, "Eclipse sensiNact Gateway Worker")),
             newSingleThreadScheduledExecutor(r -> new Thread(r, "Eclipse sensiNact Scheduler")));
 
-    private final AtomicReference<WorkItem<?>> currentItem = new AtomicReference<>();
+    private final WorkerState state = new WorkerState();
 
     private IMetricsManager metrics;
 
+    public GatewayThreadImpl(IMetricsManager metrics, TypedEventBus typedEventBus, ResourceSet resourceSet,
+            ProviderPackage ProviderPackage) {
+        this(metrics, typedEventBus, resourceSet, ProviderPackage,
+                Converters.standardConverter().convert(Map.of()).to(GatewayThreadConfiguration.class));
+    }
+
     @Activate
     public GatewayThreadImpl(
             @Reference IMetricsManager metrics,
             @Reference TypedEventBus typedEventBus, @Reference ResourceSet resourceSet,
-            @Reference ProviderPackage ProviderPackage) {
+            @Reference ProviderPackage ProviderPackage, GatewayThreadConfiguration config) {
         this.metrics = metrics;
-        this.typedEventBus = typedEventBus;
+        this.dispatcher = new NotificationDispatcher(typedEventBus, metrics, config.asyncNotifications(),
+                config.notificationQueueCapacity(), config.notificationQueuePolicy(),
+                config.notificationQueueTimeout());
         this.whiteboard = new SensinactWhiteboard(this, metrics);
         nexusImpl = new ModelNexus(resourceSet, ProviderPackage, this::getCurrentAccumulator, whiteboard);
+
+        queueCapacity = config.queueCapacity();
+        queuePolicy = config.queuePolicy();
+        queueTimeout = config.queueTimeout();
+        batchSize = Math.max(1, config.batchSize());
+        compactNotifications = config.compactNotifications();
+        persistThreshold = config.persistThreshold();
+        snapshotInterval = config.snapshotInterval();
+        work = newQueue();
+
+        int nbShards = config.shards();
+        shards = new Shard[nbShards > 1 ? nbShards : 0];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i);
+            shards[i].start();
+        }
         start();
+
+        long persistInterval = config.persistInterval();
+        if (persistInterval > 0) {
+            promiseFactory.scheduledExecutor().scheduleWithFixedDelay(this::requestPersist, persistInterval,
+                    persistInterval, MILLISECONDS);
+        }
     }
 
     @Deactivate
     void deactivate() {
         run.set(false);
         interrupt();
+        for (Shard shard : shards) {
+            shard.interrupt();
+        }
         try {
             join(500);
+            for (Shard shard : shards) {
+                shard.join(500);
+            }
         } catch (InterruptedException e) {
             // Just keep going and reset our interrupt status
             Thread.currentThread().interrupt();
         }
+        // Don't leave the callers of the queued commands waiting
+        reject(work);
+        for (Shard shard : shards) {
+            reject(shard.work);
+        }
         nexusImpl.shutDown();
+        dispatcher.close();
 
         ExecutorService executor = (ExecutorService) promiseFactory.executor();
         ScheduledExecutorService scheduledExecutor = promiseFactory.scheduledExecutor();
@@ -133,9 +232,21 @@ public class GatewayThreadImpl extends Thread implements GatewayThread {
         whiteboard.removeWhiteboardService(service, props);
     }
 
+    /**
+     * Returns the state of the current thread if it executes work items
+     */
+    private WorkerState getCurrentState() {
+        Thread current = Thread.currentThread();
+        if (current instanceof Shard) {
+            return ((Shard) current).state;
+        }
+        return current == this ? state : null;
+    }
+
     private NotificationAccumulator getCurrentAccumulator() {
-        WorkItem<?> workItem = currentItem.get();
-        return workItem == null ? new ImmediateNotificationAccumulator(typedEventBus)
+        WorkerState current = getCurrentState();
+        WorkItem<?> workItem = current == null ? null : current.currentItem.get();
+        return workItem == null ? new ImmediateNotificationAccumulator(dispatcher)
                 : workItem.command.getAccumulator();
     }
 
@@ -146,64 +257,496 @@ public class GatewayThreadImpl extends Thread implements GatewayThread {
 
     @Override
     public NotificationAccumulator createAccumulator() {
-        return new NotificationAccumulatorImpl(typedEventBus);
+        WorkerState current = getCurrentState();
+        BatchNotificationAccumulator batch = current == null ? null : current.currentBatch.get();
+        return batch == null ? newAccumulator() : batch.join();
+    }
+
+    private NotificationAccumulator newAccumulator() {
+        return newAccumulator(dispatcher);
+    }
+
+    private NotificationAccumulator newAccumulator(Consumer<List<AbstractResourceNotification>> sender) {
+        return compactNotifications ? new CompactNotificationAccumulator(sender)
+                : new NotificationAccumulatorImpl(sender);
     }
 
     @Override
     public <T> Promise<T> execute(AbstractSensinactCommand<T> command) {
         Deferred<T> d = getPromiseFactory().deferred();
-        work.add(new WorkItem<>(d, command, nexusImpl));
-        metrics.getCounter("sensinact.tasks.pending").inc();
-        metrics.getHistogram("sensinact.tasks.pending.hist").update(work.size());
+        WorkItem<T> item = new WorkItem<>(d, command);
+        BlockingQueue<WorkItem<?>> queue = shards.length == 0 ? work : dispatch(item);
+        if (queue != null && admit(queue, item)) {
+            metrics.getCounter("sensinact.tasks.pending").inc();
+            metrics.getHistogram("sensinact.tasks.pending.hist").update(queue.size());
+        }
         return d.getPromise();
     }
 
+    private BlockingQueue<WorkItem<?>> newQueue() {
+        return queueCapacity > 0 ? new LinkedBlockingQueue<>(queueCapacity) : new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * Selects the queue of a command in sharded mode. Commands without a target
+     * are queued right away, to be executed by this thread once all the shards
+     * reached them in their queue. They are admitted in the queues of all the
+     * shards or in none of them.
+     *
+     * @param item Work item to dispatch
+     * @return the queue the work item must be admitted in, or null if it has
+     *         already been handled
+     */
+    private BlockingQueue<WorkItem<?>> dispatch(WorkItem<?> item) {
+        if (item.target != null) {
+            return shards[Math.floorMod(item.target.hashCode(), shards.length)].work;
+        }
+
+        item.barrier = new ShardBarrier(shards.length);
+        // Barriers must be queued in the same order by all shards
+        synchronized (shards) {
+            int admitted = 0;
+            while (admitted < shards.length && admit(shards[admitted].work, item)) {
+                admitted++;
+            }
+            if (admitted == shards.length && admit(work, item)) {
+                metrics.getCounter("sensinact.tasks.pending").inc();
+                metrics.getHistogram("sensinact.tasks.pending.hist").update(work.size());
+                return null;
+            }
+
+            // Rejected, let the shards which already reached the barrier go on
+            for (int i = 0; i < admitted; i++) {
+                shards[i].work.remove(item);
+            }
+            item.barrier.released.countDown();
+        }
+        return null;
+    }
+
+    /**
+     * Waits for a shard barrier latch. Interruptions are ignored unless the
+     * gateway is shutting down, as the other threads rely on the barrier.
+     *
+     * @param latch Latch to wait for
+     * @return false if the gateway is shutting down
+     */
+    private boolean await(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return true;
+            } catch (InterruptedException e) {
+                if (!run.get()) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fails the work items which haven't been started yet, when the gateway is
+     * shutting down
+     *
+     * @param items Work items
+     */
+    private void reject(Iterable<WorkItem<?>> items) {
+        for (WorkItem<?> item : items) {
+            if (item.reject(new RejectedExecutionException("The gateway is shutting down"))) {
+                metrics.getCounter("sensinact.tasks.pending").dec();
+            }
+        }
+    }
+
+    /**
+     * Tries to add a work item to a queue, according to the queue policy. If the
+     * item is rejected, its promise is failed.
+     *
+     * @param queue Work queue
+     * @param item  Work item to queue
+     * @return true if the item was added to the queue, false if it was rejected
+     *         or merged in a queued item
+     */
+    private boolean admit(BlockingQueue<WorkItem<?>> queue, WorkItem<?> item) {
+        switch (queuePolicy) {
+        case BLOCK:
+            try {
+                if (queue.offer(item, queueTimeout, MILLISECONDS)) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            break;
+        case DROP_OLDEST:
+            if (queue.offer(item) || (item.resource != null && dropOldest(queue, item.resource) && queue.offer(item))) {
+                return true;
+            }
+            break;
+        case COALESCE:
+            if (item.resource != null) {
+                WorkItem<?> pending = coalescable.get(item.resource);
+                if (pending != null) {
+                    if (pending.replaceWith(item)) {
+                        metrics.getCounter("sensinact.tasks.coalesced").inc();
+                        return false;
+                    }
+                    coalescable.remove(item.resource, pending);
+                }
+                if (queue.offer(item)) {
+                    coalescable.put(item.resource, item);
+                    return true;
+                }
+            } else if (queue.offer(item)) {
+                return true;
+            }
+            break;
+        default:
+            if (queue.offer(item)) {
+                return true;
+            }
+            break;
+        }
+
+        metrics.getCounter("sensinact.tasks.rejected." + queuePolicy.name().toLowerCase(Locale.ROOT)).inc();
+        item.d.fail(new RejectedExecutionException("The gateway work queue is full"));
+        return false;
+    }
+
+    /**
+     * Cancels the oldest queued value update of a resource
+     *
+     * @param queue    Work queue
+     * @param resource Resource path
+     * @return true if a work item has been removed from the queue
+     */
+    private boolean dropOldest(BlockingQueue<WorkItem<?>> queue, String resource) {
+        for (WorkItem<?> pending : queue) {
+            if (resource.equals(pending.resource) && pending.cancel()) {
+                queue.remove(pending);
+                metrics.getCounter("sensinact.tasks.dropped").inc();
+                metrics.getCounter("sensinact.tasks.pending").dec();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks a work item taken from a queue as started
+     *
+     * @param item Work item
+     * @return false if the work item was cancelled and must be skipped
+     */
+    private boolean begin(WorkItem<?> item) {
+        if (!item.start()) {
+            return false;
+        }
+        if (item.resource != null) {
+            coalescable.remove(item.resource, item);
+        }
+        return true;
+    }
+
+    /**
+     * Runs work items against the same twin and model manager, and sends their
+     * notifications at once. Each command keeps its own accumulator, so that the
+     * updates of different commands are all notified. The deferred of each item is resolved once the twin
+     * has been invalidated.
+     *
+     * @param worker State of the current thread
+     * @param batch  Started work items
+     */
+    private void runBatch(WorkerState worker, List<WorkItem<?>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        metrics.getHistogram("sensinact.batch.size").update(batch.size());
+
+        BatchNotificationAccumulator accumulator = new BatchNotificationAccumulator(dispatcher,
+                this::newAccumulator);
+        SensinactDigitalTwinImpl twinImpl = new SensinactDigitalTwinImpl(nexusImpl, promiseFactory);
+        SensinactModelManagerImpl mgrImpl = new SensinactModelManagerImpl(nexusImpl);
+        worker.currentBatch.set(accumulator);
+        try (IMetricTimer timer = metrics.withTimer("sensinact.batch.time")) {
+            for (WorkItem<?> item : batch) {
+                worker.currentItem.set(item);
+                item.doWork(twinImpl, mgrImpl);
+            }
+        } finally {
+            worker.currentItem.set(null);
+            worker.currentBatch.set(null);
+            twinImpl.invalidate();
+            mgrImpl.invalidate();
+            accumulator.completeAndSend();
+        }
+
+        for (WorkItem<?> item : batch) {
+            item.resolve();
+        }
+
+        if (persistThreshold > 0 && nexusImpl.getDirtyCount() >= persistThreshold && !persistRequested.get()
+                && run.get()) {
+            // Don't queue from a worker thread, as it could wait for its own queue
+            try {
+                promiseFactory.scheduledExecutor().execute(this::requestPersist);
+            } catch (RejectedExecutionException e) {
+                // Shutting down, the nexus writes everything anyway
+            }
+        }
+    }
+
+    /**
+     * Queues a {@link PersistCommand} if there is something to write and none is
+     * already queued
+     */
+    private void requestPersist() {
+        if (run.get() && nexusImpl.hasPendingWrites() && persistRequested.compareAndSet(false, true)) {
+            execute(new PersistCommand()).onFailure(t -> persistRequested.set(false));
+        }
+    }
+
     @Override
     public void run() {
+        List<WorkItem<?>> drained = new ArrayList<>(batchSize);
+        List<WorkItem<?>> batch = new ArrayList<>(batchSize);
         while (run.get()) {
             try {
-                WorkItem<?> item = work.take();
-                currentItem.set(item);
-
-                metrics.getCounter("sensinact.tasks.pending").dec();
+                drained.add(work.take());
+                work.drainTo(drained, batchSize - 1);
                 metrics.getHistogram("sensinact.tasks.pending.hist").update(work.size());
-                try (IMetricTimer timer = metrics.withTimer("sensinact.task.time")) {
-                    item.doWork();
+
+                for (int i = 0; i < drained.size(); i++) {
+                    WorkItem<?> item = drained.get(i);
+                    if (!begin(item)) {
+                        continue;
+                    }
+                    metrics.getCounter("sensinact.tasks.pending").dec();
+                    if (item.barrier == null) {
+                        batch.add(item);
+                        continue;
+                    }
+
+                    runBatch(state, batch);
+                    batch.clear();
+                    try {
+                        if (!await(item.barrier.arrived)) {
+                            item.d.fail(new RejectedExecutionException("The gateway is shutting down"));
+                            reject(drained.subList(i + 1, drained.size()));
+                            break;
+                        }
+                        runBatch(state, List.of(item));
+                    } finally {
+                        item.barrier.released.countDown();
+                    }
                 }
+                runBatch(state, batch);
             } catch (InterruptedException e) {
                 continue;
             } finally {
-                currentItem.set(null);
+                drained.clear();
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Hands the changed provider instances over to the background writer of the
+     * nexus. It doesn't target a provider, so it is executed while no other
+     * command is running, even in sharded mode.
+     */
+    private class PersistCommand extends AbstractTwinCommand<Void> {
+        @Override
+        protected Promise<Void> call(SensinactDigitalTwin twin, PromiseFactory pf) {
+            persistRequested.set(false);
+            long now = System.currentTimeMillis();
+            if (snapshotInterval > 0 && now - lastSnapshot >= snapshotInterval) {
+                lastSnapshot = now;
+                nexusImpl.writeSnapshot();
+            } else {
+                nexusImpl.flushInstances();
+            }
+            return pf.resolved(null);
+        }
+    }
+
+    /**
+     * Work item execution state of a gateway thread
+     */
+    private static class WorkerState {
+        private final AtomicReference<WorkItem<?>> currentItem = new AtomicReference<>();
+        private final AtomicReference<BatchNotificationAccumulator> currentBatch = new AtomicReference<>();
+    }
+
+    /**
+     * A worker thread of the sharded mode. It executes the commands targeting
+     * its providers, concurrently with the other shards, and pauses when it
+     * reaches a command which must be executed alone.
+     */
+    private class Shard extends Thread implements GatewayThread {
+
+        private final BlockingQueue<WorkItem<?>> work = newQueue();
+
+        private final WorkerState state = new WorkerState();
+
+        Shard(int index) {
+            super("Eclipse sensiNact Gateway Shard " + index);
+        }
+
+        @Override
+        public PromiseFactory getPromiseFactory() {
+            return GatewayThreadImpl.this.getPromiseFactory();
+        }
+
+        @Override
+        public <T> Promise<T> execute(AbstractSensinactCommand<T> command) {
+            return GatewayThreadImpl.this.execute(command);
+        }
+
+        @Override
+        public NotificationAccumulator createAccumulator() {
+            return GatewayThreadImpl.this.createAccumulator();
+        }
+
+        @Override
+        public void run() {
+            List<WorkItem<?>> drained = new ArrayList<>(batchSize);
+            List<WorkItem<?>> batch = new ArrayList<>(batchSize);
+            while (run.get()) {
+                try {
+                    drained.add(work.take());
+                    work.drainTo(drained, batchSize - 1);
+                    metrics.getHistogram("sensinact.tasks.pending.hist").update(work.size());
+
+                    for (int i = 0; i < drained.size(); i++) {
+                        WorkItem<?> item = drained.get(i);
+                        if (item.barrier != null) {
+                            runShared(batch);
+                            batch.clear();
+                            // Let the gateway thread run the command alone
+                            item.barrier.arrived.countDown();
+                            if (!await(item.barrier.released)) {
+                                reject(drained.subList(i + 1, drained.size()));
+                                return;
+                            }
+                        } else if (begin(item)) {
+                            metrics.getCounter("sensinact.tasks.pending").dec();
+                            batch.add(item);
+                        }
+                    }
+                    runShared(batch);
+                } catch (InterruptedException e) {
+                    continue;
+                } finally {
+                    drained.clear();
+                    batch.clear();
+                }
+            }
+        }
+
+        private void runShared(List<WorkItem<?>> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            nexusImpl.enterShared();
+            try {
+                runBatch(state, batch);
+            } finally {
+                nexusImpl.exit();
             }
         }
     }
 
+    /**
+     * Synchronizes the shards with the gateway thread for an untargeted command
+     */
+    private static class ShardBarrier {
+        private final CountDownLatch arrived;
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        ShardBarrier(int shards) {
+            this.arrived = new CountDownLatch(shards);
+        }
+    }
+
     private class WorkItem<T> {
         private final Deferred<T> d;
-        private final AbstractSensinactCommand<T> command;
-        private final ModelNexus nexusImpl;
+        private AbstractSensinactCommand<T> command;
+        private Promise<T> result;
+        private Exception failure;
+        private final String target;
+        private final String resource;
+        private ShardBarrier barrier;
+        private boolean started;
 
-        public WorkItem(Deferred<T> d, AbstractSensinactCommand<T> command, ModelNexus nexusImpl) {
+        public WorkItem(Deferred<T> d, AbstractSensinactCommand<T> command) {
             this.d = d;
             this.command = command;
-            this.nexusImpl = nexusImpl;
+            if (command instanceof TargetedCommand) {
+                TargetedCommand targeted = (TargetedCommand) command;
+                this.target = targeted.getTargetProvider();
+                this.resource = target == null ? null : targeted.getTargetResource();
+            } else {
+                this.target = null;
+                this.resource = null;
+            }
+        }
+
+        synchronized boolean start() {
+            if (started) {
+                return false;
+            }
+            started = true;
+            return true;
+        }
+
+        /**
+         * Fails the work item if it hasn't been started yet
+         */
+        synchronized boolean cancel() {
+            return reject(new RejectedExecutionException("Dropped to make room for a newer update of " + resource));
+        }
+
+        /**
+         * Fails the work item with the given error if it hasn't been started yet
+         */
+        synchronized boolean reject(Exception e) {
+            if (started) {
+                return false;
+            }
+            started = true;
+            d.fail(e);
+            return true;
         }
 
-        void doWork() {
+        /**
+         * Replaces the command of this work item by the one of a newer work item,
+         * if this one hasn't been started yet. The newer work item is resolved with
+         * the result of this one.
+         */
+        @SuppressWarnings("unchecked")
+        synchronized boolean replaceWith(WorkItem<?> newer) {
+            if (started) {
+                return false;
+            }
+            command = (AbstractSensinactCommand<T>) newer.command;
+            ((WorkItem<T>) newer).d.resolveWith(d.getPromise());
+            return true;
+        }
+
+        void doWork(SensinactDigitalTwinImpl twinImpl, SensinactModelManagerImpl mgrImpl) {
             try {
-                SensinactDigitalTwinImpl twinImpl = new SensinactDigitalTwinImpl(nexusImpl,
-                        getGatewayThread().getPromiseFactory());
-                SensinactModelManagerImpl mgrImpl = new SensinactModelManagerImpl(nexusImpl);
-                Promise<T> promise;
-                try {
-                    promise = command.call(twinImpl, mgrImpl);
-                } finally {
-                    twinImpl.invalidate();
-                    mgrImpl.invalidate();
-                }
-                d.resolveWith(promise);
+                result = command.call(twinImpl, mgrImpl);
             } catch (Exception e) {
-                d.fail(e);
+                failure = e;
+            }
+        }
+
+        void resolve() {
+            if (failure != null) {
+                d.fail(failure);
+            } else {
+                d.resolveWith(result);
             }
         }
     }
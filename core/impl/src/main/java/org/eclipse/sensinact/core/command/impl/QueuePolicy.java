@@ -0,0 +1,46 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.command.impl;
+
+/**
+ * Behaviour of the gateway thread when a command is submitted while its work
+ * queue is full
+ */
+public enum QueuePolicy {
+
+    /**
+     * The promise of the command fails immediately
+     */
+    FAIL,
+
+    /**
+     * The caller is blocked until some room is made in the queue or until the
+     * queue timeout is reached, in which case the promise of the command fails
+     */
+    BLOCK,
+
+    /**
+     * The oldest queued command updating the same resource is dropped, and its
+     * promise fails, to make room for the new command. The promise of the new
+     * command fails if there was no such command.
+     */
+    DROP_OLDEST,
+
+    /**
+     * A value update replaces the queued update of the same resource, if any,
+     * and both promises are resolved with the result of the new update. This is
+     * done even if the queue isn't full. Other commands fail when the queue is
+     * full.
+     */
+    COALESCE;
+}
@@ -0,0 +1,106 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A hashed timer wheel. Keys are scheduled in the slot of their deadline tick
+ * in constant time, and each call to {@link #advance(long)} only looks at the
+ * slots of the ticks elapsed since the previous call. Deadlines further than a
+ * turn of the wheel stay in their slot until their turn comes.
+ *
+ * @param <K> Key type
+ */
+class ExpiryWheel<K> {
+
+    private final long tickMillis;
+
+    private final List<Queue<Entry<K>>> slots;
+
+    /**
+     * Last tick handled by {@link #advance(long)}, a tick being handled once it
+     * is over
+     */
+    private volatile long processedTick;
+
+    /**
+     * @param tickMillis  Duration of a tick, in milliseconds
+     * @param nbSlots     Number of slots of the wheel
+     * @param startMillis Current time, in milliseconds
+     */
+    ExpiryWheel(long tickMillis, int nbSlots, long startMillis) {
+        if (tickMillis < 1 || nbSlots < 1) {
+            throw new IllegalArgumentException("Invalid wheel: " + nbSlots + " slots of " + tickMillis + "ms");
+        }
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(nbSlots);
+        for (int i = 0; i < nbSlots; i++) {
+            slots.add(new ConcurrentLinkedQueue<>());
+        }
+        this.processedTick = startMillis / tickMillis - 1;
+    }
+
+    /**
+     * Schedules a key. A key scheduled twice is returned twice.
+     *
+     * @param key            Key
+     * @param deadlineMillis Deadline, in milliseconds
+     */
+    void schedule(K key, long deadlineMillis) {
+        long tick = Math.max(deadlineMillis / tickMillis, processedTick + 1);
+        slots.get((int) Math.floorMod(tick, (long) slots.size())).add(new Entry<>(key, deadlineMillis));
+    }
+
+    /**
+     * Moves the wheel forward
+     *
+     * @param nowMillis Current time, in milliseconds
+     * @return The keys whose deadline passed, which are not scheduled anymore
+     */
+    synchronized List<K> advance(long nowMillis) {
+        long target = nowMillis / tickMillis - 1;
+        List<K> due = new ArrayList<>();
+        List<Entry<K>> later = new ArrayList<>();
+
+        // A single turn is enough to see all the slots
+        for (long tick = Math.max(processedTick + 1, target - slots.size() + 1); tick <= target; tick++) {
+            Queue<Entry<K>> slot = slots.get((int) Math.floorMod(tick, (long) slots.size()));
+            Entry<K> entry;
+            while ((entry = slot.poll()) != null) {
+                if (entry.deadline <= nowMillis) {
+                    due.add(entry.key);
+                } else {
+                    later.add(entry);
+                }
+            }
+            slot.addAll(later);
+            later.clear();
+            processedTick = tick;
+        }
+        return due;
+    }
+
+    private static class Entry<K> {
+        final K key;
+        final long deadline;
+
+        Entry(K key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+    }
+}
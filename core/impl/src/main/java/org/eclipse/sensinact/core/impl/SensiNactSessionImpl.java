@@ -12,8 +12,6 @@
 **********************************************************************/
 package org.eclipse.sensinact.core.impl;
 
-import static java.util.stream.Collectors.toList;
-
 import java.lang.reflect.InvocationTargetException;
 import java.time.Duration;
 import java.time.Instant;
@@ -22,12 +20,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.NavigableMap;
-import java.util.TreeMap;
 import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.eclipse.sensinact.core.command.AbstractTwinCommand;
 import org.eclipse.sensinact.core.command.GatewayThread;
@@ -66,8 +61,15 @@ public class SensiNactSessionImpl implements SensiNactSession {
 
     private final Map<String, List<String>> listenerRegistrations = new HashMap<>();
 
-    private final NavigableMap<String, List<SessionListenerRegistration>> listenersByWildcardTopic = new TreeMap<>();
-    private final Map<String, List<SessionListenerRegistration>> listenersByTopic = new HashMap<>();
+    private final Map<String, List<SessionListenerRegistration>> registrationsById = new HashMap<>();
+
+    private final SubscriptionIndex<SessionListenerRegistration> subscriptions;
+
+    /**
+     * Notifications waiting for the session listeners, null to notify them
+     * directly
+     */
+    private final SessionNotificationQueue notificationQueue;
 
     private Instant expiry;
 
@@ -78,9 +80,25 @@ public class SensiNactSessionImpl implements SensiNactSession {
     private final UserInfo user;
 
     public SensiNactSessionImpl(UserInfo user, final GatewayThread thread) {
+        this(user, thread, new SubscriptionIndex<>(), null);
+    }
+
+    /**
+     * @param user              Session user
+     * @param thread            Gateway thread
+     * @param subscriptions     Index where the session registers its listeners,
+     *                          shared by the sessions of a session manager
+     * @param notificationQueue Queue of the notifications waiting for the
+     *                          listeners, null to notify them directly
+     */
+    SensiNactSessionImpl(UserInfo user, final GatewayThread thread,
+            final SubscriptionIndex<SessionListenerRegistration> subscriptions,
+            final SessionNotificationQueue notificationQueue) {
         this.user = user;
         expiry = Instant.now().plusSeconds(600);
         this.thread = thread;
+        this.subscriptions = subscriptions;
+        this.notificationQueue = notificationQueue;
     }
 
     @Override
@@ -95,89 +113,69 @@ public class SensiNactSessionImpl implements SensiNactSession {
             ClientLifecycleListener cll, ClientActionListener cal) {
         String subscriptionId = UUID.randomUUID().toString();
 
-        synchronized (lock) {
-
-            if (cdl != null) {
-                addListenerTopic(topics, "DATA/", new SessionDataListener(subscriptionId, cdl));
-            }
-
-            if (cml != null) {
-                addListenerTopic(topics, "METADATA/", new SessionMetadataListener(subscriptionId, cml));
-            }
-
-            if (cll != null) {
-                addListenerTopic(topics, "LIFECYCLE/", new SessionLifecycleListener(subscriptionId, cll));
-            }
+        List<String> topicList = List.copyOf(topics);
+        List<SessionListenerRegistration> registrations = new ArrayList<>();
+        if (cdl != null) {
+            registrations.add(new SessionDataListener(subscriptionId, cdl));
+        }
+        if (cml != null) {
+            registrations.add(new SessionMetadataListener(subscriptionId, cml));
+        }
+        if (cll != null) {
+            registrations.add(new SessionLifecycleListener(subscriptionId, cll));
+        }
+        if (cal != null) {
+            registrations.add(new SessionActionListener(subscriptionId, cal));
+        }
 
-            if (cal != null) {
-                addListenerTopic(topics, "ACTION/", new SessionActionListener(subscriptionId, cal));
+        synchronized (lock) {
+            for (SessionListenerRegistration reg : registrations) {
+                topicList.forEach(t -> subscriptions.add(reg.prefix.concat(t), reg));
             }
-
-            listenerRegistrations.put(subscriptionId, List.copyOf(topics));
+            registrationsById.put(subscriptionId, registrations);
+            listenerRegistrations.put(subscriptionId, topicList);
         }
 
         return subscriptionId;
     }
 
-    /**
-     * Must be called holding {@link #lock}
-     *
-     * @param topics
-     * @param prefix
-     * @param reg
-     */
-    private void addListenerTopic(List<String> topics, String prefix, SessionListenerRegistration reg) {
-        topics.stream().map(prefix::concat).forEach(s -> {
-            if (s.endsWith("*")) {
-                listenersByWildcardTopic.merge(s.substring(0, s.length() - 1), List.of(reg), this::mergeLists);
-            } else {
-                listenersByTopic.merge(s, List.of(reg), this::mergeLists);
-            }
-        });
-    }
-
-    private List<SessionListenerRegistration> mergeLists(List<SessionListenerRegistration> a,
-            List<SessionListenerRegistration> b) {
-        return Stream.of(a, b).flatMap(List::stream).collect(toList());
-    }
-
     @Override
     public void removeListener(String id) {
         synchronized (lock) {
             List<String> topics = listenerRegistrations.remove(id);
 
             if (topics != null) {
-                removeListener(id, "DATA/", topics);
-                removeListener(id, "METADATA/", topics);
-                removeListener(id, "LIFECYCLE/", topics);
-                removeListener(id, "ACTION/", topics);
+                removeRegistrations(topics, registrationsById.remove(id));
             }
         }
     }
 
-    private void removeListener(String subscriptionId, String prefix, List<String> topics) {
-        topics.stream().map(prefix::concat).forEach(s -> {
-            if (s.endsWith("*")) {
-                listenersByWildcardTopic.computeIfPresent(s.substring(0, s.length() - 1),
-                        (topic, regs) -> this.removeSubscription(subscriptionId, regs));
-            } else {
-                listenersByTopic.computeIfPresent(s, (topic, regs) -> this.removeSubscription(subscriptionId, regs));
+    /**
+     * Removes all the listeners of the session from the subscription index
+     */
+    void removeAllListeners() {
+        synchronized (lock) {
+            for (Entry<String, List<String>> e : listenerRegistrations.entrySet()) {
+                removeRegistrations(e.getValue(), registrationsById.get(e.getKey()));
             }
-        });
+            listenerRegistrations.clear();
+            registrationsById.clear();
+        }
+        if (notificationQueue != null) {
+            notificationQueue.close();
+        }
     }
 
     /**
      * Must be called holding {@link #lock}
      *
-     * @param subscriptionId
-     * @param regs
+     * @param topics
+     * @param registrations
      */
-    private List<SessionListenerRegistration> removeSubscription(String subscriptionId,
-            List<SessionListenerRegistration> regs) {
-        List<SessionListenerRegistration> list = regs.stream().filter(r -> !r.subscriptionId.equals(subscriptionId))
-                .collect(toList());
-
-        return list.isEmpty() ? null : list;
+    private void removeRegistrations(List<String> topics, List<SessionListenerRegistration> registrations) {
+        for (SessionListenerRegistration reg : registrations) {
+            topics.forEach(t -> subscriptions.remove(reg.prefix.concat(t), reg));
+        }
     }
 
     private <I, T> T executeGetCommand(Function<SensinactDigitalTwin, I> caller, Function<I, T> converter) {
@@ -462,25 +460,31 @@ public class SensiNactSessionImpl implements SensiNactSession {
     }
 
     public void notify(String topic, AbstractResourceNotification event) {
-        List<SessionListenerRegistration> toNotify;
-        synchronized (lock) {
-            if (!isExpired()) {
-                toNotify = new ArrayList<>();
-                toNotify.addAll(listenersByTopic.getOrDefault(topic, List.of()));
-                for (Entry<String, List<SessionListenerRegistration>> e : listenersByWildcardTopic.headMap(topic, true)
-                        .descendingMap().entrySet()) {
-                    if (topic.startsWith(e.getKey())) {
-                        toNotify.addAll(e.getValue());
-                    } else {
-                        break;
-                    }
-                }
-            } else {
-                toNotify = List.of();
-            }
+        if (!isExpired()) {
+            subscriptions.match(topic).stream().filter(r -> r.getSession() == this)
+                    .forEach(r -> notify(r, topic, event));
         }
+    }
 
-        toNotify.forEach(s -> s.notify(topic, event));
+    /**
+     * Notifies a listener of the session, or queues the notification
+     *
+     * @param registration Listener registration
+     * @param topic        Notification topic
+     * @param event        Notification
+     * @return false if the session was too slow to handle its notifications and
+     *         has been expired
+     */
+    boolean notify(SessionListenerRegistration registration, String topic, AbstractResourceNotification event) {
+        if (notificationQueue != null) {
+            if (!notificationQueue.offer(registration, topic, event)) {
+                expire();
+                return false;
+            }
+            return true;
+        }
+        registration.notify(topic, event);
+        return true;
     }
 
     @Override
@@ -528,24 +532,31 @@ public class SensiNactSessionImpl implements SensiNactSession {
         }
     }
 
-    private static abstract class SessionListenerRegistration {
+    abstract class SessionListenerRegistration {
 
         private final String subscriptionId;
 
-        public SessionListenerRegistration(String subscriptionId) {
+        private final String prefix;
+
+        public SessionListenerRegistration(String subscriptionId, String prefix) {
             this.subscriptionId = subscriptionId;
+            this.prefix = prefix;
+        }
+
+        public SensiNactSessionImpl getSession() {
+            return SensiNactSessionImpl.this;
         }
 
         public abstract void notify(String topic, AbstractResourceNotification notification);
 
     }
 
-    private static class SessionLifecycleListener extends SessionListenerRegistration {
+    private class SessionLifecycleListener extends SessionListenerRegistration {
 
         private final ClientLifecycleListener listener;
 
         public SessionLifecycleListener(String subscriptionId, ClientLifecycleListener listener) {
-            super(subscriptionId);
+            super(subscriptionId, "LIFECYCLE/");
             this.listener = listener;
         }
 
@@ -554,12 +565,12 @@ public class SensiNactSessionImpl implements SensiNactSession {
         }
     }
 
-    private static class SessionMetadataListener extends SessionListenerRegistration {
+    private class SessionMetadataListener extends SessionListenerRegistration {
 
         private final ClientMetadataListener listener;
 
         public SessionMetadataListener(String subscriptionId, ClientMetadataListener listener) {
-            super(subscriptionId);
+            super(subscriptionId, "METADATA/");
             this.listener = listener;
         }
 
@@ -568,12 +579,12 @@ public class SensiNactSessionImpl implements SensiNactSession {
         }
     }
 
-    private static class SessionDataListener extends SessionListenerRegistration {
+    private class SessionDataListener extends SessionListenerRegistration {
 
         private final ClientDataListener listener;
 
         public SessionDataListener(String subscriptionId, ClientDataListener listener) {
-            super(subscriptionId);
+            super(subscriptionId, "DATA/");
             this.listener = listener;
         }
 
@@ -582,12 +593,12 @@ public class SensiNactSessionImpl implements SensiNactSession {
         }
     }
 
-    private static class SessionActionListener extends SessionListenerRegistration {
+    private class SessionActionListener extends SessionListenerRegistration {
 
         private final ClientActionListener listener;
 
         public SessionActionListener(String subscriptionId, ClientActionListener listener) {
-            super(subscriptionId);
+            super(subscriptionId, "ACTION/");
             this.listener = listener;
         }
 
@@ -12,45 +12,150 @@
 **********************************************************************/
 package org.eclipse.sensinact.core.impl;
 
-import static java.util.stream.Collectors.toCollection;
-import static java.util.stream.Collectors.toList;
-
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.sensinact.core.command.GatewayThread;
 import org.eclipse.sensinact.core.metrics.IMetricsGauge;
+import org.eclipse.sensinact.core.metrics.IMetricsManager;
 import org.eclipse.sensinact.core.notification.AbstractResourceNotification;
+import org.eclipse.sensinact.core.notification.NotificationBatch;
 import org.eclipse.sensinact.core.security.UserInfo;
 import org.eclipse.sensinact.core.session.SensiNactSession;
 import org.eclipse.sensinact.core.session.SensiNactSessionManager;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.typedevent.TypedEventHandler;
 import org.osgi.service.typedevent.propertytypes.EventTopics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-@Component(property = IMetricsGauge.NAME + "=sensinact.sessions")
-@EventTopics({ "LIFECYCLE/*", "METADATA/*", "DATA/*", "ACTION/*" })
+@Component(property = IMetricsGauge.NAME + "=sensinact.sessions", configurationPid = SessionManager.PID,
+        configurationPolicy = ConfigurationPolicy.OPTIONAL)
+@EventTopics(NotificationBatch.TOPIC)
 public class SessionManager
-        implements SensiNactSessionManager, TypedEventHandler<AbstractResourceNotification>, IMetricsGauge {
+        implements SensiNactSessionManager, TypedEventHandler<NotificationBatch>, IMetricsGauge {
+
+    /**
+     * Configuration PID
+     */
+    static final String PID = "sensinact.session.manager";
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionManager.class);
+
+    private static final int EXPIRY_WHEEL_SLOTS = 512;
 
     @Reference
     GatewayThread thread;
 
-    private final Object lock = new Object();
+    @Reference
+    IMetricsManager metrics;
+
+    private int notificationQueueCapacity;
 
-    private final Map<String, SensiNactSessionImpl> sessions = new HashMap<>();
+    private SlowConsumerPolicy slowConsumerPolicy;
 
-    private final Map<String, Set<String>> sessionsByUser = new HashMap<>();
+    /**
+     * Executor notifying the session listeners, null to notify them from the
+     * event delivery thread
+     */
+    private ExecutorService notificationExecutor;
 
-    private final Map<String, String> userDefaultSessionIds = new HashMap<>();
+    /**
+     * Sessions by ID
+     */
+    private final Map<String, SensiNactSessionImpl> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Sessions of each user. Entries are only modified through the atomic
+     * compute methods of the map, so that each user has its own lock.
+     */
+    private final Map<String, UserSessions> sessionsByUser = new ConcurrentHashMap<>();
+
+    /**
+     * Wheel of the session expiry dates, checked by {@link #sweeper}
+     */
+    private ExpiryWheel<String> expiryWheel;
+
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * Listeners of all the sessions, indexed by topic
+     */
+    private final SubscriptionIndex<SensiNactSessionImpl.SessionListenerRegistration> subscriptions =
+            new SubscriptionIndex<>();
+
+    @Activate
+    void activate(SessionManagerConfiguration config) {
+        notificationQueueCapacity = config.notificationQueueCapacity();
+        slowConsumerPolicy = config.slowConsumerPolicy();
+        if (notificationQueueCapacity > 0) {
+            int nbThreads = config.notificationThreads() > 0 ? config.notificationThreads()
+                    : Runtime.getRuntime().availableProcessors();
+            AtomicInteger threadCount = new AtomicInteger();
+            notificationExecutor = Executors.newFixedThreadPool(nbThreads, r -> {
+                Thread t = new Thread(r, "Eclipse sensiNact Session Notifier " + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        long sweepInterval = Math.max(1, config.expirySweepInterval());
+        expiryWheel = new ExpiryWheel<>(sweepInterval, EXPIRY_WHEEL_SLOTS, System.currentTimeMillis());
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Eclipse sensiNact Session Sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleAtFixedRate(this::sweep, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Deactivate
+    void deactivate() {
+        sweeper.shutdownNow();
+        if (notificationExecutor != null) {
+            notificationExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Removes the expired sessions and reschedules the extended ones
+     */
+    private void sweep() {
+        try {
+            for (String sessionId : expiryWheel.advance(System.currentTimeMillis())) {
+                SensiNactSessionImpl session = sessions.get(sessionId);
+                if (session == null) {
+                    continue;
+                }
+                Instant expiry = session.getExpiry();
+                if (expiry == null) {
+                    removeSession(session.getUserInfo().getUserId(), sessionId);
+                } else {
+                    expiryWheel.schedule(sessionId, expiry.toEpochMilli());
+                }
+            }
+        } catch (Exception e) {
+            LOG.error("Error removing the expired sessions", e);
+        }
+    }
 
     @Override
     public Object gauge() {
@@ -60,73 +165,99 @@ public class SessionManager
     @Override
     public SensiNactSession getDefaultSession(UserInfo user) {
         Objects.requireNonNull(user);
-        SensiNactSession session = null;
         String userId = user.getUserId();
-        String sessionId;
-
-        synchronized (lock) {
-            sessionId = userDefaultSessionIds.get(userId);
 
+        while (true) {
+            UserSessions userSessions = sessionsByUser.get(userId);
+            String sessionId = userSessions == null ? null : userSessions.getDefaultSessionId();
             if (sessionId != null) {
-                session = sessions.get(sessionId);
+                SensiNactSessionImpl session = sessions.get(sessionId);
+                if (session != null && !session.isExpired()) {
+                    return session;
+                }
+                removeSession(userId, sessionId);
             }
-        }
 
-        // Outside of lock to check/create the session
-        if (session == null) {
-            if (sessionId != null) {
-                removeSession(userId, sessionId);
+            SensiNactSessionImpl session = newSession(user);
+            if (register(session, true)) {
+                return session;
             }
+            // Someone beat us to the punch
+            session.expire();
+        }
+    }
 
-            session = createNewSession(user);
-            sessionId = session.getSessionId();
+    /**
+     * Creates a session without registering it
+     */
+    private SensiNactSessionImpl newSession(UserInfo user) {
+        SessionNotificationQueue queue = notificationExecutor == null ? null
+                : new SessionNotificationQueue(notificationExecutor, notificationQueueCapacity, slowConsumerPolicy,
+                        metrics);
+        return new SensiNactSessionImpl(user, thread, subscriptions, queue);
+    }
 
-            synchronized (lock) {
-                sessionId = userDefaultSessionIds.putIfAbsent(userId, sessionId);
+    /**
+     * Registers a session
+     *
+     * @param session     New session
+     * @param makeDefault true to make it the default session of its user
+     * @return false if the session should have been the default one, but the
+     *         user already has a default session
+     */
+    private boolean register(SensiNactSessionImpl session, boolean makeDefault) {
+        String sessionId = session.getSessionId();
+        boolean[] registered = new boolean[1];
+        sessionsByUser.compute(session.getUserInfo().getUserId(), (k, userSessions) -> {
+            if (userSessions == null) {
+                userSessions = new UserSessions();
             }
-
-            if (sessionId != null) {
-                // Someone beat us to the punch
-                removeSession(userId, session.getSessionId());
-                session.expire();
-                return getSession(user, sessionId);
+            if (makeDefault && userSessions.getDefaultSessionId() != null) {
+                return userSessions;
+            }
+            sessions.put(sessionId, session);
+            userSessions.add(sessionId, makeDefault);
+            registered[0] = true;
+            return userSessions;
+        });
+
+        if (registered[0]) {
+            Instant expiry = session.getExpiry();
+            if (expiry != null) {
+                expiryWheel.schedule(sessionId, expiry.toEpochMilli());
             }
-        } else if (session.isExpired()) {
-            removeSession(userId, sessionId);
-            session = getDefaultSession(user);
         }
-
-        return session;
+        return registered[0];
     }
 
     /**
-     * @param userToken
+     * @param userId
      * @param sessionId
      */
     private void removeSession(String userId, String sessionId) {
-        synchronized (lock) {
-            userDefaultSessionIds.remove(userId, sessionId);
-            sessionsByUser.computeIfPresent(userId,
-                    (k, v) -> v.stream().filter(s -> !s.equals(sessionId)).collect(toCollection(LinkedHashSet::new)));
-            sessions.remove(sessionId);
+        sessionsByUser.computeIfPresent(userId, (k, userSessions) -> {
+            userSessions.remove(sessionId);
+            return userSessions.isEmpty() ? null : userSessions;
+        });
+        SensiNactSessionImpl session = sessions.remove(sessionId);
+        if (session != null) {
+            session.removeAllListeners();
         }
     }
 
     @Override
     public SensiNactSession getSession(UserInfo user, String sessionId) {
         Objects.requireNonNull(user);
-        SensiNactSessionImpl session = null;
         String userId = user.getUserId();
 
-        synchronized (lock) {
-            if (sessionsByUser.getOrDefault(userId, Set.of()).contains(sessionId)) {
-                session = sessions.get(sessionId);
-            }
+        SensiNactSessionImpl session = sessions.get(sessionId);
+        if (session == null || !Objects.equals(userId, session.getUserInfo().getUserId())) {
+            return null;
         }
 
-        if (session != null && session.isExpired()) {
+        if (session.isExpired()) {
             removeSession(userId, sessionId);
-            session = null;
+            return null;
         }
 
         return session;
@@ -136,19 +267,16 @@ public class SessionManager
     public List<String> getSessionIds(UserInfo user) {
         Objects.requireNonNull(user);
         String userId = user.getUserId();
-        List<String> ids;
-        synchronized (lock) {
-            ids = sessionsByUser.getOrDefault(userId, Set.of()).stream().collect(toList());
+        UserSessions userSessions = sessionsByUser.get(userId);
+        if (userSessions == null) {
+            return new ArrayList<>();
         }
 
+        List<String> ids = userSessions.newestFirst();
         Iterator<String> it = ids.iterator();
         while (it.hasNext()) {
             String sessionId = it.next();
-            SensiNactSession session;
-            synchronized (lock) {
-                session = sessions.get(sessionId);
-            }
-
+            SensiNactSession session = sessions.get(sessionId);
             if (session == null || session.isExpired()) {
                 removeSession(userId, sessionId);
                 it.remove();
@@ -160,41 +288,47 @@ public class SessionManager
     @Override
     public SensiNactSession createNewSession(UserInfo user) {
         Objects.requireNonNull(user);
-        SensiNactSessionImpl session = new SensiNactSessionImpl(user, thread);
-        String sessionId = session.getSessionId();
-
-        synchronized (lock) {
-            sessionsByUser.merge(user.getUserId(), Set.of(sessionId),
-                    (a, b) -> Stream.concat(b.stream(), a.stream()).collect(toCollection(LinkedHashSet::new)));
-            sessions.put(sessionId, session);
-        }
+        SensiNactSessionImpl session = newSession(user);
+        register(session, false);
         return session;
     }
 
     @Override
-    public void notify(String topic, AbstractResourceNotification event) {
-        List<SensiNactSessionImpl> sessions;
-        synchronized (lock) {
-            sessions = new ArrayList<>(this.sessions.values());
-        }
-        for (SensiNactSessionImpl session : sessions) {
-            if (!session.isExpired()) {
+    public void notify(String topic, NotificationBatch batch) {
+        Set<SensiNactSessionImpl> expired = null;
+        for (AbstractResourceNotification event : batch.notifications) {
+            String eventTopic = event.getTopic();
+            for (SensiNactSessionImpl.SessionListenerRegistration reg : subscriptions.match(eventTopic)) {
+                SensiNactSessionImpl session = reg.getSession();
+                if (session.isExpired()) {
+                    if (expired == null) {
+                        expired = new HashSet<>();
+                    }
+                    expired.add(session);
+                    continue;
+                }
                 try {
-                    session.notify(topic, event);
+                    if (!session.notify(reg, eventTopic, event)) {
+                        // Disconnected slow consumer
+                        if (expired == null) {
+                            expired = new HashSet<>();
+                        }
+                        expired.add(session);
+                    }
                 } catch (Exception e) {
-                    // TODO log this
+                    LOG.warn("Error notifying session {}", session.getSessionId(), e);
                 }
-            } else {
+            }
+        }
+        if (expired != null) {
+            for (SensiNactSessionImpl session : expired) {
                 removeSession(session.getUserInfo().getUserId(), session.getSessionId());
+                // Listeners added to an already removed session
+                session.removeAllListeners();
             }
         }
     }
 
-    @Override
-    public SensiNactSession getDefaultAnonymousSession() {
-        return getDefaultSession(UserInfo.ANONYMOUS);
-    }
-
     @Override
     public SensiNactSession getAnonymousSession(String sessionId) {
         return getSession(UserInfo.ANONYMOUS, sessionId);
@@ -209,4 +343,46 @@ public class SessionManager
     public SensiNactSession createNewAnonymousSession() {
         return createNewSession(UserInfo.ANONYMOUS);
     }
+
+    /**
+     * Sessions of a user, modified under the lock of its entry in
+     * {@link SessionManager#sessionsByUser}
+     */
+    private static class UserSessions {
+
+        /**
+         * Session IDs, oldest first
+         */
+        private final Set<String> sessionIds = new LinkedHashSet<>();
+
+        private String defaultSessionId;
+
+        synchronized String getDefaultSessionId() {
+            return defaultSessionId;
+        }
+
+        synchronized void add(String sessionId, boolean makeDefault) {
+            sessionIds.add(sessionId);
+            if (makeDefault) {
+                defaultSessionId = sessionId;
+            }
+        }
+
+        synchronized void remove(String sessionId) {
+            sessionIds.remove(sessionId);
+            if (sessionId.equals(defaultSessionId)) {
+                defaultSessionId = null;
+            }
+        }
+
+        synchronized boolean isEmpty() {
+            return sessionIds.isEmpty();
+        }
+
+        synchronized List<String> newestFirst() {
+            List<String> ids = new ArrayList<>(sessionIds);
+            Collections.reverse(ids);
+            return ids;
+        }
+    }
 }
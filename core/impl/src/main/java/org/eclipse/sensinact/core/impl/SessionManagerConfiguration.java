@@ -0,0 +1,44 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.impl;
+
+/**
+ * Session manager configuration
+ */
+public @interface SessionManagerConfiguration {
+
+    /**
+     * Maximum number of notifications waiting to be handled by the listeners of a
+     * session. With a value lower than 1, session listeners are notified
+     * directly by the thread delivering the events.
+     */
+    int notificationQueueCapacity() default 1024;
+
+    /**
+     * Behaviour when the notification queue of a session is full
+     */
+    SlowConsumerPolicy slowConsumerPolicy() default SlowConsumerPolicy.DROP_OLDEST;
+
+    /**
+     * Number of threads notifying the session listeners. With a value lower than
+     * 1, the number of available processors is used.
+     */
+    int notificationThreads() default 0;
+
+    /**
+     * Interval in milliseconds between two checks of the expired sessions.
+     * Expired sessions are removed at most one interval after their expiry, or
+     * when they are accessed.
+     */
+    long expirySweepInterval() default 1000;
+}
@@ -0,0 +1,283 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.sensinact.core.impl.SensiNactSessionImpl.SessionListenerRegistration;
+import org.eclipse.sensinact.core.metrics.IMetricsManager;
+import org.eclipse.sensinact.core.notification.AbstractResourceNotification;
+import org.eclipse.sensinact.core.notification.ResourceDataNotification;
+import org.eclipse.sensinact.core.notification.ResourceMetaDataNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The bounded queue of notifications waiting to be handled by the listeners of
+ * a session. Listeners are called in order from a shared executor, at most one
+ * thread at a time per session, so that a slow listener only delays its own
+ * session.
+ * <p>
+ * A session whose listeners keep a shared thread busy for too long is moved to
+ * its own thread, so that slow sessions can't starve the other ones even when
+ * there are more of them than shared threads. It goes back to the shared
+ * executor once its listeners are fast again.
+ */
+class SessionNotificationQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionNotificationQueue.class);
+
+    /**
+     * Number of notifications handled before giving the thread back to the other
+     * sessions
+     */
+    private static final int DRAIN_BATCH = 64;
+
+    /**
+     * Time after which a drain turn on the shared executor is stopped and the
+     * session moved to its own thread
+     */
+    private static final long SLOW_TURN_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final Executor executor;
+
+    private final int capacity;
+
+    private final SlowConsumerPolicy policy;
+
+    private final IMetricsManager metrics;
+
+    private final Object lock = new Object();
+
+    /**
+     * Pending notifications in arrival order. Conflated notifications are keyed
+     * by listener and topic, the others by themselves.
+     */
+    private final Map<Object, Pending> pending = new LinkedHashMap<>();
+
+    private boolean scheduled;
+
+    /**
+     * Set while the session is drained by its own thread
+     */
+    private volatile boolean slow;
+
+    /**
+     * Thread of the session while it is slow, created on demand. Its thread stops
+     * when idle.
+     */
+    private ThreadPoolExecutor dedicated;
+
+    private boolean closed;
+
+    SessionNotificationQueue(Executor executor, int capacity, SlowConsumerPolicy policy, IMetricsManager metrics) {
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Queues a notification for a listener
+     *
+     * @param registration Listener registration
+     * @param topic        Notification topic
+     * @param event        Notification
+     * @return false if the queue is full and the session must be disconnected
+     */
+    boolean offer(SessionListenerRegistration registration, String topic, AbstractResourceNotification event) {
+        synchronized (lock) {
+            if (closed) {
+                return policy != SlowConsumerPolicy.DISCONNECT;
+            }
+
+            Pending item = new Pending(registration, topic, event);
+            Object key = item;
+            if (policy == SlowConsumerPolicy.CONFLATE && (event instanceof ResourceDataNotification
+                    || event instanceof ResourceMetaDataNotification)) {
+                key = new ConflationKey(registration, topic);
+                Pending queued = pending.get(key);
+                if (queued != null) {
+                    queued.event = event;
+                    metrics.getCounter("sensinact.sessions.notifications.conflated").inc();
+                    return true;
+                }
+            }
+
+            if (pending.size() >= capacity) {
+                if (policy == SlowConsumerPolicy.DISCONNECT) {
+                    clear();
+                    metrics.getCounter("sensinact.sessions.disconnected").inc();
+                    return false;
+                }
+                Iterator<Pending> it = pending.values().iterator();
+                it.next();
+                it.remove();
+                metrics.getCounter("sensinact.sessions.notifications.pending").dec();
+                metrics.getCounter("sensinact.sessions.notifications.dropped").inc();
+            }
+
+            pending.put(key, item);
+            metrics.getCounter("sensinact.sessions.notifications.pending").inc();
+            if (scheduled) {
+                return true;
+            }
+            scheduled = true;
+        }
+
+        schedule();
+        return true;
+    }
+
+    /**
+     * Drops the pending notifications and ignores the next ones
+     */
+    void close() {
+        synchronized (lock) {
+            clear();
+            if (dedicated != null) {
+                dedicated.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Must be called holding {@link #lock}
+     */
+    private void clear() {
+        closed = true;
+        for (int i = 0; i < pending.size(); i++) {
+            metrics.getCounter("sensinact.sessions.notifications.pending").dec();
+        }
+        pending.clear();
+    }
+
+    private void schedule() {
+        try {
+            if (slow) {
+                dedicatedExecutor().execute(this::drain);
+            } else {
+                executor.execute(this::drain);
+            }
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            close();
+        }
+    }
+
+    private Executor dedicatedExecutor() {
+        synchronized (lock) {
+            if (dedicated == null) {
+                dedicated = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "Eclipse sensiNact Slow Session Notifier");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            return dedicated;
+        }
+    }
+
+    private void drain() {
+        synchronized (lock) {
+            metrics.getHistogram("sensinact.sessions.queue.depth").update(pending.size());
+        }
+
+        boolean shared = !slow;
+        long start = System.nanoTime();
+        for (int i = 0; i < DRAIN_BATCH; i++) {
+            Pending next;
+            synchronized (lock) {
+                Iterator<Pending> it = pending.values().iterator();
+                if (!it.hasNext()) {
+                    scheduled = false;
+                    if (!shared && System.nanoTime() - start < SLOW_TURN_NANOS) {
+                        // Fast again
+                        slow = false;
+                    }
+                    return;
+                }
+                next = it.next();
+                it.remove();
+            }
+            metrics.getCounter("sensinact.sessions.notifications.pending").dec();
+
+            if (next.registration.getSession().isExpired()) {
+                continue;
+            }
+            try {
+                next.registration.notify(next.topic, next.event);
+            } catch (Exception e) {
+                LOG.warn("Error notifying a listener of session {}", next.registration.getSession().getSessionId(),
+                        e);
+            }
+
+            if (shared && System.nanoTime() - start > SLOW_TURN_NANOS) {
+                // Give the shared thread back to the other sessions
+                slow = true;
+                metrics.getCounter("sensinact.sessions.slow").inc();
+                break;
+            }
+        }
+
+        if (!shared && System.nanoTime() - start < SLOW_TURN_NANOS) {
+            slow = false;
+        }
+        // Let the other sessions run before handling the rest
+        schedule();
+    }
+
+    private static class Pending {
+        final SessionListenerRegistration registration;
+        final String topic;
+        AbstractResourceNotification event;
+
+        Pending(SessionListenerRegistration registration, String topic, AbstractResourceNotification event) {
+            this.registration = registration;
+            this.topic = topic;
+            this.event = event;
+        }
+    }
+
+    private static class ConflationKey {
+        final SessionListenerRegistration registration;
+        final String topic;
+
+        ConflationKey(SessionListenerRegistration registration, String topic) {
+            this.registration = registration;
+            this.topic = topic;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(registration) * 31 + topic.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ConflationKey)) {
+                return false;
+            }
+            ConflationKey other = (ConflationKey) obj;
+            return registration == other.registration && Objects.equals(topic, other.topic);
+        }
+    }
+}
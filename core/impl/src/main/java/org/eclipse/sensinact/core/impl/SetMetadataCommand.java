@@ -17,6 +17,7 @@ import static java.util.stream.Collectors.toList;
 import java.util.List;
 
 import org.eclipse.sensinact.core.command.AbstractSensinactCommand;
+import org.eclipse.sensinact.core.command.TargetedCommand;
 import org.eclipse.sensinact.core.model.SensinactModelManager;
 import org.eclipse.sensinact.core.twin.SensinactDigitalTwin;
 import org.eclipse.sensinact.core.twin.SensinactResource;
@@ -24,7 +25,7 @@ import org.eclipse.sensinact.core.dto.impl.MetadataUpdateDto;
 import org.osgi.util.promise.Promise;
 import org.osgi.util.promise.PromiseFactory;
 
-public class SetMetadataCommand extends AbstractSensinactCommand<Void> {
+public class SetMetadataCommand extends AbstractSensinactCommand<Void> implements TargetedCommand {
 
     private final MetadataUpdateDto metadataUpdateDto;
 
@@ -32,6 +33,11 @@ public class SetMetadataCommand extends AbstractSensinactCommand<Void> {
         this.metadataUpdateDto = metadataUpdateDto;
     }
 
+    @Override
+    public String getTargetProvider() {
+        return metadataUpdateDto.provider;
+    }
+
     @Override
     protected Promise<Void> call(SensinactDigitalTwin twin, SensinactModelManager modelMgr,
             PromiseFactory promiseFactory) {
@@ -13,11 +13,14 @@
 package org.eclipse.sensinact.core.impl;
 
 import org.eclipse.sensinact.core.command.AbstractSensinactCommand;
+import org.eclipse.sensinact.core.command.TargetedCommand;
 import org.eclipse.sensinact.core.model.Model;
+import org.eclipse.sensinact.core.model.ModelBuilder;
 import org.eclipse.sensinact.core.model.Resource;
 import org.eclipse.sensinact.core.model.ResourceBuilder;
 import org.eclipse.sensinact.core.model.SensinactModelManager;
 import org.eclipse.sensinact.core.model.Service;
+import org.eclipse.sensinact.core.model.ServiceBuilder;
 import org.eclipse.sensinact.core.model.ValueType;
 import org.eclipse.sensinact.core.twin.SensinactDigitalTwin;
 import org.eclipse.sensinact.core.twin.SensinactProvider;
@@ -26,7 +29,7 @@ import org.eclipse.sensinact.core.dto.impl.DataUpdateDto;
 import org.osgi.util.promise.Promise;
 import org.osgi.util.promise.PromiseFactory;
 
-public class SetValueCommand extends AbstractSensinactCommand<Void> {
+public class SetValueCommand extends AbstractSensinactCommand<Void> implements TargetedCommand {
 
     private final DataUpdateDto dataUpdateDto;
 
@@ -34,6 +37,16 @@ public class SetValueCommand extends AbstractSensinactCommand<Void> {
         this.dataUpdateDto = dataUpdateDto;
     }
 
+    @Override
+    public String getTargetProvider() {
+        return dataUpdateDto.provider;
+    }
+
+    @Override
+    public String getTargetResource() {
+        return String.join("/", dataUpdateDto.provider, dataUpdateDto.service, dataUpdateDto.resource);
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     protected Promise<Void> call(SensinactDigitalTwin twin, SensinactModelManager modelMgr,
@@ -51,19 +64,33 @@ public class SetValueCommand extends AbstractSensinactCommand<Void> {
         SensinactResource resource = twin.getResource(mod, provider, svc, res);
 
         if (resource == null) {
+            // Creating the model, service or resource waits for an exclusive access to
+            // the models, during which other gateway threads may create them: they are
+            // looked up again once the builder is obtained
             Model model = modelMgr.getModel(mod);
             if (model == null) {
-                model = modelMgr.createModel(mod).withCreationTime(dataUpdateDto.timestamp).build();
+                ModelBuilder builder = modelMgr.createModel(mod);
+                model = modelMgr.getModel(mod);
+                if (model == null) {
+                    model = builder.withCreationTime(dataUpdateDto.timestamp).build();
+                }
             }
             Service service = model.getServices().get(svc);
             if (service == null) {
-                service = model.createService(svc).withCreationTime(dataUpdateDto.timestamp).build();
+                ServiceBuilder<Service> builder = model.createService(svc);
+                service = model.getServices().get(svc);
+                if (service == null) {
+                    service = builder.withCreationTime(dataUpdateDto.timestamp).build();
+                }
             }
             Resource r = service.getResources().get(res);
-
             if (r == null) {
-                r = service.createResource(res).withValueType(ValueType.UPDATABLE)
-                        .withType((Class<Object>) dataUpdateDto.type).build();
+                ResourceBuilder<Resource, Object> builder = service.createResource(res);
+                r = service.getResources().get(res);
+                if (r == null) {
+                    r = builder.withValueType(ValueType.UPDATABLE).withType((Class<Object>) dataUpdateDto.type)
+                            .build();
+                }
             }
 
             SensinactProvider sp = twin.getProvider(mod, provider);
@@ -0,0 +1,37 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.impl;
+
+/**
+ * Behaviour of a session when a notification is queued while its listeners
+ * already have a full queue of notifications to handle
+ */
+public enum SlowConsumerPolicy {
+
+    /**
+     * The oldest queued notification is dropped to make room for the new one
+     */
+    DROP_OLDEST,
+
+    /**
+     * A data or metadata notification replaces the queued notification of the
+     * same resource for the same listener, if any. This is done even if the queue
+     * isn't full. Otherwise, the oldest queued notification is dropped.
+     */
+    CONFLATE,
+
+    /**
+     * The session is expired and its listeners are removed
+     */
+    DISCONNECT;
+}
@@ -0,0 +1,177 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of topic subscriptions, shared by all the sessions. Topics are split
+ * on <code>/</code> to build a trie. A subscription ending with a
+ * <code>*</code> wildcard matches all the topics starting with the text before
+ * the wildcard, so it is stored in the node of its last complete segment, with
+ * the partial segment left before the wildcard.
+ * <p>
+ * Lookups don't lock and only visit the nodes on the path of the topic. The
+ * subscriber lists of a node are immutable and replaced on update.
+ *
+ * @param <T> Subscriber type
+ */
+class SubscriptionIndex<T> {
+
+    private final Node<T> root = new Node<>();
+
+    private final Object writeLock = new Object();
+
+    /**
+     * Adds a subscription
+     *
+     * @param pattern    Topic, or topic prefix followed by a <code>*</code>
+     * @param subscriber Subscriber notified of the matching topics
+     */
+    void add(String pattern, T subscriber) {
+        boolean wildcard = pattern.endsWith("*");
+        String[] segments = split(wildcard ? pattern.substring(0, pattern.length() - 1) : pattern);
+        int depth = wildcard ? segments.length - 1 : segments.length;
+
+        synchronized (writeLock) {
+            Node<T> node = root;
+            for (int i = 0; i < depth; i++) {
+                node = node.children.computeIfAbsent(segments[i], k -> new Node<>());
+            }
+
+            if (wildcard) {
+                Map<String, List<T>> prefixes = new HashMap<>(node.prefixes);
+                prefixes.put(segments[depth], append(prefixes.getOrDefault(segments[depth], List.of()), subscriber));
+                node.prefixes = Map.copyOf(prefixes);
+            } else {
+                node.exact = append(node.exact, subscriber);
+            }
+        }
+    }
+
+    /**
+     * Removes a subscription added with {@link #add(String, Object)}
+     *
+     * @param pattern    Topic or topic prefix followed by a <code>*</code>
+     * @param subscriber Subscriber
+     */
+    void remove(String pattern, T subscriber) {
+        boolean wildcard = pattern.endsWith("*");
+        String[] segments = split(wildcard ? pattern.substring(0, pattern.length() - 1) : pattern);
+        int depth = wildcard ? segments.length - 1 : segments.length;
+
+        synchronized (writeLock) {
+            List<Node<T>> path = new ArrayList<>(depth + 1);
+            Node<T> node = root;
+            path.add(node);
+            for (int i = 0; i < depth; i++) {
+                node = node.children.get(segments[i]);
+                if (node == null) {
+                    return;
+                }
+                path.add(node);
+            }
+
+            if (wildcard) {
+                List<T> subscribers = node.prefixes.get(segments[depth]);
+                if (subscribers == null) {
+                    return;
+                }
+                Map<String, List<T>> prefixes = new HashMap<>(node.prefixes);
+                List<T> remaining = without(subscribers, subscriber);
+                if (remaining.isEmpty()) {
+                    prefixes.remove(segments[depth]);
+                } else {
+                    prefixes.put(segments[depth], remaining);
+                }
+                node.prefixes = Map.copyOf(prefixes);
+            } else {
+                node.exact = without(node.exact, subscriber);
+            }
+
+            // Prune the nodes left empty
+            for (int i = depth; i > 0 && path.get(i).isEmpty(); i--) {
+                path.get(i - 1).children.remove(segments[i - 1], path.get(i));
+            }
+        }
+    }
+
+    /**
+     * Finds the subscribers of a topic
+     *
+     * @param topic Topic of an event
+     * @return The matching subscribers, once per matching subscription
+     */
+    List<T> match(String topic) {
+        String[] segments = split(topic);
+        List<T> result = null;
+
+        Node<T> node = root;
+        for (String segment : segments) {
+            for (Entry<String, List<T>> e : node.prefixes.entrySet()) {
+                if (segment.startsWith(e.getKey())) {
+                    result = addAll(result, e.getValue());
+                }
+            }
+            node = node.children.get(segment);
+            if (node == null) {
+                return result == null ? List.of() : result;
+            }
+        }
+        result = addAll(result, node.exact);
+        return result == null ? List.of() : result;
+    }
+
+    private static String[] split(String topic) {
+        return topic.split("/", -1);
+    }
+
+    private static <T> List<T> addAll(List<T> result, List<T> subscribers) {
+        if (subscribers.isEmpty()) {
+            return result;
+        }
+        if (result == null) {
+            result = new ArrayList<>(subscribers.size());
+        }
+        result.addAll(subscribers);
+        return result;
+    }
+
+    private static <T> List<T> append(List<T> list, T item) {
+        List<T> copy = new ArrayList<>(list.size() + 1);
+        copy.addAll(list);
+        copy.add(item);
+        return List.copyOf(copy);
+    }
+
+    private static <T> List<T> without(List<T> list, T item) {
+        List<T> copy = new ArrayList<>(list);
+        copy.removeIf(t -> t == item);
+        return List.copyOf(copy);
+    }
+
+    private static class Node<T> {
+        final Map<String, Node<T>> children = new ConcurrentHashMap<>();
+        volatile List<T> exact = List.of();
+        volatile Map<String, List<T>> prefixes = Map.of();
+
+        boolean isEmpty() {
+            return children.isEmpty() && exact.isEmpty() && prefixes.isEmpty();
+        }
+    }
+}
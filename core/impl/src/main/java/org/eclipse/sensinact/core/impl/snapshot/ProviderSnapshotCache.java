@@ -0,0 +1,72 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.impl.snapshot;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the last snapshot of each provider with the provider version it was
+ * built from. A snapshot is reused as long as the provider version doesn't
+ * change, so its snapshot time is the time it was built, i.e. the last time the
+ * provider was seen in its current state.
+ * <p>
+ * Cached snapshots are shared between callers and must not be modified once
+ * they are stored here.
+ */
+public class ProviderSnapshotCache {
+
+    private final Map<String, CachedSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the cached snapshot of a provider, or builds and caches a new one if
+     * the provider changed since the last snapshot
+     *
+     * @param providerName Provider name
+     * @param version      Current version of the provider
+     * @param builder      Snapshot builder, called when the cached snapshot is
+     *                     missing or outdated
+     * @return The provider snapshot
+     */
+    public ProviderSnapshotImpl get(final String providerName, final long version,
+            final Supplier<ProviderSnapshotImpl> builder) {
+        CachedSnapshot cached = snapshots.get(providerName);
+        if (cached != null && cached.version == version) {
+            return cached.snapshot;
+        }
+
+        final ProviderSnapshotImpl snapshot = builder.get();
+        snapshots.put(providerName, new CachedSnapshot(version, snapshot));
+        return snapshot;
+    }
+
+    /**
+     * Forgets the snapshot of a provider
+     *
+     * @param providerName Provider name
+     */
+    public void evict(final String providerName) {
+        snapshots.remove(providerName);
+    }
+
+    private static class CachedSnapshot {
+        final long version;
+        final ProviderSnapshotImpl snapshot;
+
+        CachedSnapshot(final long version, final ProviderSnapshotImpl snapshot) {
+            this.version = version;
+            this.snapshot = snapshot;
+        }
+    }
+}
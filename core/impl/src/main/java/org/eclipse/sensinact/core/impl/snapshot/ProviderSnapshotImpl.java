@@ -15,6 +15,7 @@ package org.eclipse.sensinact.core.impl.snapshot;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -63,7 +64,7 @@ public class ProviderSnapshotImpl extends AbstractSnapshot implements ProviderSn
     }
 
     public List<ServiceSnapshotImpl> getServices() {
-        return services;
+        return Collections.unmodifiableList(services);
     }
 
     public Provider getModelProvider() {
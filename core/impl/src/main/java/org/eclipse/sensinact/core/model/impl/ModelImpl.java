@@ -61,6 +61,8 @@ public class ModelImpl extends CommandScopedImpl implements Model {
     @Override
     public ServiceBuilder<Service> createService(String service) {
         checkValid();
+        // Models are shared by all the gateway threads
+        nexusImpl.upgradeToExclusive();
         return new ServiceBuilderImpl<>(active, null, this, service, nexusImpl);
     }
 
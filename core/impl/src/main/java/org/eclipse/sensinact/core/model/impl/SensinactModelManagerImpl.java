@@ -36,9 +36,20 @@ public class SensinactModelManagerImpl extends CommandScopedImpl implements Sens
         this.nexusImpl = nexusImpl;
     }
 
+    /**
+     * Checks the validity of the manager before modifying the models, which are
+     * shared by all the gateway threads. Reading the models doesn't need an
+     * exclusive access, as they can't change while the current thread holds its
+     * shared access.
+     */
+    private void checkWritable() {
+        checkValid();
+        nexusImpl.upgradeToExclusive();
+    }
+
     @Override
     public ModelBuilder createModel(String model) {
-        checkValid();
+        checkWritable();
         return new ModelBuilderImpl(active, nexusImpl, model);
     }
 
@@ -50,19 +61,19 @@ public class SensinactModelManagerImpl extends CommandScopedImpl implements Sens
 
     @Override
     public void deleteModel(String model) {
-        checkValid();
+        checkWritable();
         throw new RuntimeException("Not implemented");
     }
 
     @Override
     public void registerModel(String model) {
-        checkValid();
+        checkWritable();
         throw new RuntimeException("Not implemented");
     }
 
     @Override
     public void registerModel(InputStream model) {
-        checkValid();
+        checkWritable();
         throw new RuntimeException("Not implemented");
     }
 
@@ -81,6 +92,7 @@ public class SensinactModelManagerImpl extends CommandScopedImpl implements Sens
      */
     @Override
     public Model getModel(EClass model) {
+        checkValid();
         if (nexusImpl.registered(model)) {
             return new ModelImpl(active, EMFUtil.getModelName(model), model, nexusImpl);
         }
@@ -96,6 +108,7 @@ public class SensinactModelManagerImpl extends CommandScopedImpl implements Sens
      */
     @Override
     public ModelBuilder createModel(EClass model) {
+        checkWritable();
         return new ModelBuilderImpl(active, nexusImpl, model);
     }
 
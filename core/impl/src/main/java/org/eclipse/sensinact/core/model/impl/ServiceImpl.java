@@ -59,6 +59,8 @@ public class ServiceImpl extends CommandScopedImpl implements Service {
     @Override
     public ResourceBuilder<Resource, Object> createResource(String resource) {
         checkValid();
+        // Models are shared by all the gateway threads
+        nexusImpl.upgradeToExclusive();
         return new ResourceBuilderImpl<Resource, Object>(active, null, this, resource, nexusImpl);
     }
 
@@ -0,0 +1,334 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.model.nexus;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EFactory;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.impl.EPackageRegistryImpl;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.sensinact.model.core.provider.Provider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A binary snapshot of all the provider instances, used to speed up the
+ * startup. The snapshot file contains segments, each one being an EMF binary
+ * resource, which are memory mapped and loaded in parallel.
+ * <p>
+ * The instances written or deleted after the snapshot are listed in a journal
+ * and must be loaded from their XMI file instead.
+ */
+class InstanceSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstanceSnapshot.class);
+
+    private static final int MAGIC = 0x534E5053;
+
+    private static final int FORMAT = 1;
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private static final int PROVIDERS_PER_SEGMENT = 1000;
+
+    private final Path file;
+
+    private final Path journal;
+
+    InstanceSnapshot(Path file) {
+        this.file = file;
+        this.journal = file.resolveSibling(file.getFileName() + ".journal");
+    }
+
+    /**
+     * Copies the providers in the segments of a new snapshot. Links between the
+     * providers are kept in the copies.
+     *
+     * @param providers Providers to copy
+     * @return The segment resources, which are not part of a resource set
+     */
+    static List<Resource> segment(Collection<Provider> providers) {
+        Collection<Provider> copies = EcoreUtil.copyAll(providers);
+        int count = Math.max(1,
+                Math.min(MAX_SEGMENTS, (copies.size() + PROVIDERS_PER_SEGMENT - 1) / PROVIDERS_PER_SEGMENT));
+
+        List<Resource> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            segments.add(new BinaryResourceImpl(segmentUri(i)));
+        }
+        int i = 0;
+        for (Provider copy : copies) {
+            segments.get(i++ % count).getContents().add(copy);
+        }
+        return segments;
+    }
+
+    private static URI segmentUri(int index) {
+        return URI.createURI("sensinact-snapshot:/segment/" + index);
+    }
+
+    /**
+     * Writes the snapshot to a temporary file, then moves it over the previous
+     * one and clears the journal
+     *
+     * @param segments Segments returned by {@link #segment(Collection)}
+     * @throws IOException Error writing the snapshot
+     */
+    void write(List<Resource> segments) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + InstanceWriter.TEMP_SUFFIX);
+
+        try (FileChannel channel = FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(12 + 8 * segments.size());
+            channel.position(header.capacity());
+
+            header.putInt(MAGIC).putInt(FORMAT).putInt(segments.size());
+            for (Resource segment : segments) {
+                long start = channel.position();
+                OutputStream stream = new BufferedOutputStream(new FilterOutputStream(Channels.newOutputStream(channel)) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        // The channel is closed once all segments are written
+                        flush();
+                    }
+                });
+                segment.save(stream, null);
+                stream.flush();
+                header.putLong(channel.position() - start);
+            }
+
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(journal);
+    }
+
+    /**
+     * Records instances written or deleted after the snapshot. Must be called
+     * before the instance files are modified.
+     *
+     * @param instances Names of the instance files
+     * @throws IOException Error writing the journal
+     */
+    void journal(Collection<String> instances) throws IOException {
+        if (!instances.isEmpty() && Files.isRegularFile(file)) {
+            Files.write(journal, instances, UTF_8, CREATE, WRITE, APPEND);
+        }
+    }
+
+    /**
+     * Deletes the snapshot, when it can't be kept consistent with the instance
+     * files
+     */
+    void delete() {
+        try {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(journal);
+        } catch (IOException e) {
+            LOG.error("Error deleting the instances snapshot {}", file, e);
+        }
+    }
+
+    /**
+     * Returns the names of the instance files written or deleted after the
+     * snapshot
+     */
+    Set<String> readJournal() throws IOException {
+        if (!Files.isRegularFile(journal)) {
+            return Set.of();
+        }
+        return new HashSet<>(Files.readAllLines(journal, UTF_8));
+    }
+
+    /**
+     * Loads the segments of the snapshot, in parallel
+     *
+     * @param packages Package registry used to find the models
+     * @return The loaded segments, each one in its own resource set. Empty if
+     *         there is no snapshot
+     * @throws IOException Invalid snapshot
+     */
+    List<Resource> load(EPackage.Registry packages) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return List.of();
+        }
+
+        // Package lookups can update the registry, so they are serialized
+        EPackage.Registry registry = new EPackageRegistryImpl(packages) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public synchronized EPackage getEPackage(String nsURI) {
+                return super.getEPackage(nsURI);
+            }
+
+            @Override
+            public synchronized EFactory getEFactory(String nsURI) {
+                return super.getEFactory(nsURI);
+            }
+        };
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            readFully(channel, header, 0);
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT) {
+                throw new IOException("Unsupported instances snapshot " + file);
+            }
+            int count = header.getInt();
+            if (count < 0 || count > MAX_SEGMENTS) {
+                throw new IOException("Invalid instances snapshot " + file);
+            }
+
+            ByteBuffer lengths = ByteBuffer.allocate(8 * count);
+            readFully(channel, lengths, 12);
+            long offset = 12 + 8 * count;
+            for (int i = 0; i < count; i++) {
+                long length = lengths.getLong();
+                if (length < 0 || offset + length > channel.size()) {
+                    throw new IOException("Truncated instances snapshot " + file);
+                }
+                // Mappings stay valid once the channel is closed
+                buffers.add(channel.map(MapMode.READ_ONLY, offset, length));
+                offset += length;
+            }
+        }
+
+        if (buffers.isEmpty()) {
+            return List.of();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(buffers.size(), Runtime.getRuntime().availableProcessors()), r -> {
+                    Thread thread = new Thread(r, "Eclipse sensiNact Snapshot Loader");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            List<Future<Resource>> futures = new ArrayList<>(buffers.size());
+            for (int i = 0; i < buffers.size(); i++) {
+                URI uri = segmentUri(i);
+                ByteBuffer buffer = buffers.get(i);
+                futures.add(executor.submit(() -> {
+                    ResourceSet segmentSet = new ResourceSetImpl();
+                    segmentSet.setPackageRegistry(registry);
+                    Resource segment = new BinaryResourceImpl(uri);
+                    segmentSet.getResources().add(segment);
+                    segment.load(new ByteBufferInputStream(buffer), null);
+                    return segment;
+                }));
+            }
+
+            List<Resource> segments = new ArrayList<>(futures.size());
+            for (Future<Resource> future : futures) {
+                segments.add(future.get());
+            }
+            return segments;
+        } catch (ExecutionException e) {
+            throw new IOException("Error loading the instances snapshot " + file, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted loading the instances snapshot " + file, e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated instances snapshot");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Reads a memory mapped segment
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
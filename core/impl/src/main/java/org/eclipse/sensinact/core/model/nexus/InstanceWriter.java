@@ -0,0 +1,170 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.model.nexus;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.xmi.XMLResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes detached copies of the provider instances from a background thread.
+ * Each file is written next to its target then moved over it, so that an
+ * interrupted write never leaves a truncated instance behind.
+ */
+class InstanceWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstanceWriter.class);
+
+    /**
+     * Suffix of the files being written
+     */
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Map<?, ?> SAVE_OPTIONS = Collections.singletonMap(XMLResource.OPTION_SCHEMA_LOCATION,
+            true);
+
+    private final InstanceSnapshot snapshot;
+
+    private ExecutorService executor;
+
+    InstanceWriter(InstanceSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Queues a batch of writes
+     *
+     * @param resources Resources to save, which must not be used by another
+     *                  thread anymore
+     * @param deleted   Files to delete
+     * @return The future of the batch
+     */
+    synchronized Future<?> write(List<Resource> resources, List<Path> deleted) {
+        return executor().submit(() -> {
+            List<String> instances = new ArrayList<>();
+            for (Resource resource : resources) {
+                instances.add(Paths.get(resource.getURI().toFileString()).getFileName().toString());
+            }
+            deleted.forEach(p -> instances.add(p.getFileName().toString()));
+            try {
+                // Journaled first, the snapshot must not win over a newer file
+                snapshot.journal(instances);
+            } catch (IOException e) {
+                LOG.error("Error journaling the instances, dropping the snapshot", e);
+                snapshot.delete();
+            }
+
+            for (Resource resource : resources) {
+                Path target = Paths.get(resource.getURI().toFileString());
+                try {
+                    writeAtomically(resource, target);
+                } catch (IOException e) {
+                    LOG.error("Error saving the instance {}", target, e);
+                }
+            }
+            for (Path path : deleted) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    LOG.error("Error deleting the instance {}", path, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Queues the write of a binary snapshot of all the instances
+     *
+     * @param segments Segments returned by
+     *                 {@link InstanceSnapshot#segment(java.util.Collection)}
+     * @return The future of the write
+     */
+    synchronized Future<?> writeSnapshot(List<Resource> segments) {
+        return executor().submit(() -> {
+            try {
+                snapshot.write(segments);
+            } catch (IOException e) {
+                LOG.error("Error saving the instances snapshot", e);
+            }
+        });
+    }
+
+    private ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "Eclipse sensiNact Instance Writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Waits for the queued writes and stops the writer thread
+     */
+    synchronized void close() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                LOG.error("Timeout waiting for the instances to be written");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    /**
+     * Returns an already completed future, for flushes with nothing to write
+     */
+    static Future<?> done() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private void writeAtomically(Resource resource, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            resource.save(out, SAVE_OPTIONS);
+        }
+        try {
+            Files.move(temp, target, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, REPLACE_EXISTING);
+        }
+    }
+}
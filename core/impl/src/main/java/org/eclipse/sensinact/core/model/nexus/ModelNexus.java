@@ -18,15 +18,22 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -50,7 +57,7 @@ import org.eclipse.emf.ecore.impl.MinimalEObjectImpl;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.emf.ecore.util.EcoreUtil;
-import org.eclipse.emf.ecore.xmi.XMLResource;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceImpl;
 import org.eclipse.sensinact.core.model.ResourceType;
 import org.eclipse.sensinact.core.notification.NotificationAccumulator;
 import org.eclipse.sensinact.core.twin.TimedValue;
@@ -70,6 +77,7 @@ import org.eclipse.sensinact.model.core.provider.Service;
 import org.eclipse.sensinact.core.command.impl.ActionHandler;
 import org.eclipse.sensinact.core.command.impl.ResourcePullHandler;
 import org.eclipse.sensinact.core.command.impl.ResourcePushHandler;
+import org.eclipse.sensinact.core.impl.snapshot.ProviderSnapshotCache;
 import org.eclipse.sensinact.core.model.nexus.emf.EMFUtil;
 import org.eclipse.sensinact.core.model.nexus.emf.compare.EMFCompareUtil;
 import org.eclipse.sensinact.core.whiteboard.impl.SensinactWhiteboard;
@@ -90,6 +98,7 @@ public class ModelNexus {
 
     private static final String BASE = "data/";
     private static final String INSTANCES = BASE + "instances/";
+    private static final String SNAPSHOT = BASE + "instances.snapshot";
     private static final String BASIC_BASE_ECORE = BASE + "models/basic/base.ecore";
     /** HTTPS_ECLIPSE_ORG_SENSINACT_BASE */
     private static final String DEFAULT_URI = "https://eclipse.org/sensinact/base";
@@ -102,9 +111,52 @@ public class ModelNexus {
     private Map<URI, EPackage> packageCache = new ConcurrentHashMap<>();
     private EPackage defaultPackage;
 
-    private final Map<String, Provider> providers = new HashMap<>();
+    private final Map<String, Provider> providers = new ConcurrentHashMap<>();
 
-    private final Map<String, EClass> models = new HashMap<>();
+    /**
+     * Providers indexed by model name, then by provider name
+     */
+    private final Map<String, Map<String, Provider>> providersByModel = new ConcurrentHashMap<>();
+
+    private final Map<String, EClass> models = new ConcurrentHashMap<>();
+
+    /**
+     * Source of the provider and model versions
+     */
+    private final AtomicLong changeSequence = new AtomicLong();
+
+    /**
+     * Version of the last change of each provider
+     */
+    private final Map<String, Long> providerVersions = new ConcurrentHashMap<>();
+
+    /**
+     * Version of the last change of a model structure, which changes the
+     * snapshots of all the providers
+     */
+    private volatile long modelsVersion;
+
+    private final ProviderSnapshotCache snapshotCache = new ProviderSnapshotCache();
+
+    /**
+     * Providers changed or deleted since they were last written to disk
+     */
+    private final Set<String> dirtyProviders = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Models version last written to disk
+     */
+    private volatile long persistedModelsVersion = -1;
+
+    private final InstanceSnapshot snapshot = new InstanceSnapshot(Paths.get(SNAPSHOT));
+
+    private final InstanceWriter instanceWriter = new InstanceWriter(snapshot);
+
+    /**
+     * Guards the structure of the models (models, services and resources) when
+     * the nexus is shared by multiple gateway threads
+     */
+    private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock(true);
 
     private final SensinactWhiteboard whiteboard;
 
@@ -207,19 +259,69 @@ public class ModelNexus {
 
         Path instancesPath = Paths.get(INSTANCES);
         if (Files.isDirectory(instancesPath)) {
-            try {
-                Files.walk(instancesPath).forEach(this::load);
+            Set<Path> instanceFiles;
+            try (Stream<Path> paths = Files.walk(instancesPath)) {
+                instanceFiles = paths.map(Path::toAbsolutePath).collect(Collectors.toCollection(LinkedHashSet::new));
             } catch (IOException e) {
                 LOG.error("THIS WILL BE A RUNTIME EXCPETION FOR NOW: Error loading instances from Path: {}",
                         instancesPath, e);
                 throw new RuntimeException(e);
             }
+            instanceFiles.removeAll(loadSnapshot(instanceFiles));
+            instanceFiles.forEach(this::load);
         }
     }
 
+    /**
+     * Loads the providers from the binary snapshot, unless their instance file
+     * changed since the snapshot was written
+     *
+     * @param instanceFiles Instance files currently on disk
+     * @return The instance files of the loaded providers
+     */
+    private Set<Path> loadSnapshot(Set<Path> instanceFiles) {
+        List<Resource> segments;
+        Set<String> journal;
+        try {
+            segments = snapshot.load(resourceSet.getPackageRegistry());
+            journal = snapshot.readJournal();
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to load the instances snapshot, loading the instance files instead", e);
+            return Set.of();
+        }
+
+        Set<Path> loaded = new HashSet<>();
+        resourceSet.getResources().addAll(segments);
+        try {
+            // Links between providers may cross segments
+            segments.forEach(EcoreUtil::resolveAll);
+            for (Resource segment : segments) {
+                for (EObject eObject : List.copyOf(segment.getContents())) {
+                    Provider provider = (Provider) eObject;
+                    URI instanceUri = instanceUri(provider.getId());
+                    Path instanceFile = Path.of(instanceUri.toFileString());
+                    if (journal.contains(instanceFile.getFileName().toString())
+                            || !instanceFiles.contains(instanceFile)) {
+                        continue;
+                    }
+                    resourceSet.createResource(instanceUri).getContents().add(provider);
+                    EClass eClass = provider.eClass();
+                    models.putIfAbsent(EMFUtil.getModelName(eClass), eClass);
+                    putProvider(provider);
+                    // Already on disk
+                    dirtyProviders.remove(provider.getId());
+                    loaded.add(instanceFile);
+                }
+            }
+        } finally {
+            resourceSet.getResources().removeAll(segments);
+        }
+        return loaded;
+    }
+
     private void load(Path path) {
         try {
-            if (Files.isDirectory(path)) {
+            if (Files.isDirectory(path) || path.getFileName().toString().endsWith(InstanceWriter.TEMP_SUFFIX)) {
                 return;
             } else {
                 URI uri = URI.createFileURI(path.toString());
@@ -229,7 +331,9 @@ public class ModelNexus {
                     Provider provider = (Provider) resource.getContents().get(0);
                     EClass eClass = provider.eClass();
                     models.putIfAbsent(EMFUtil.getModelName(eClass), eClass);
-                    providers.put(provider.getId(), provider);
+                    putProvider(provider);
+                    // Already on disk
+                    dirtyProviders.remove(provider.getId());
                 }
             }
         } catch (IOException e) {
@@ -259,11 +363,51 @@ public class ModelNexus {
 
     }
 
+    /**
+     * Called by a gateway thread before working on a subset of the providers,
+     * concurrently with other threads doing the same. Until {@link #exit()} is
+     * called, the models can only be modified after a call to
+     * {@link #upgradeToExclusive()}
+     */
+    public void enterShared() {
+        structureLock.readLock().lock();
+    }
+
+    /**
+     * Ensures that the current thread has an exclusive access to the models. This
+     * is a no-op if the current thread didn't call {@link #enterShared()}, as the
+     * nexus is then used by a single thread.
+     *
+     * Other threads may run between the call and its return, so any model lookup
+     * done before must be done again.
+     */
+    public void upgradeToExclusive() {
+        if (structureLock.getReadHoldCount() > 0) {
+            structureLock.readLock().unlock();
+            structureLock.writeLock().lock();
+        }
+    }
+
+    /**
+     * Releases the shared or exclusive access of the current thread
+     */
+    public void exit() {
+        if (structureLock.isWriteLockedByCurrentThread()) {
+            structureLock.writeLock().unlock();
+        } else if (structureLock.getReadHoldCount() > 0) {
+            structureLock.readLock().unlock();
+        }
+    }
+
     public void shutDown() {
+        // Written while the models are still referenced by their namespace URI
+        writeSnapshot();
+        instanceWriter.close();
+
         defaultPackage.eResource().setURI(URI.createFileURI(Path.of(BASIC_BASE_ECORE).toAbsolutePath().toString()));
         try {
             defaultPackage.eResource().save(null);
-            providers.values().forEach(this::saveInstance);
+            persistedModelsVersion = modelsVersion;
         } catch (IOException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
@@ -272,6 +416,79 @@ public class ModelNexus {
         resourceSet.getResources().clear();
     }
 
+    /**
+     * Returns the number of providers changed since they were last handed over
+     * to the instance writer
+     */
+    public int getDirtyCount() {
+        return dirtyProviders.size();
+    }
+
+    /**
+     * Checks if some providers or models changed since the last flush
+     */
+    public boolean hasPendingWrites() {
+        return !dirtyProviders.isEmpty() || persistedModelsVersion != modelsVersion;
+    }
+
+    /**
+     * Hands copies of the changed providers and models over to the instance
+     * writer, which saves them from a background thread. Must be called while no
+     * other thread uses the nexus.
+     *
+     * @return The future of the background write
+     */
+    public Future<?> flushInstances() {
+        List<Resource> toWrite = new ArrayList<>();
+        List<Path> toDelete = new ArrayList<>();
+
+        long currentModelsVersion = modelsVersion;
+        if (currentModelsVersion != persistedModelsVersion) {
+            persistedModelsVersion = currentModelsVersion;
+            Resource models = new XMIResourceImpl(
+                    URI.createFileURI(Path.of(BASIC_BASE_ECORE).toAbsolutePath().toString()));
+            models.getContents().add(EcoreUtil.copy(defaultPackage));
+            toWrite.add(models);
+        }
+
+        for (Iterator<String> it = dirtyProviders.iterator(); it.hasNext();) {
+            String providerName = it.next();
+            it.remove();
+
+            URI instanceUri = instanceUri(providerName);
+            Provider provider = providers.get(providerName);
+            if (provider == null) {
+                toDelete.add(Path.of(instanceUri.toFileString()));
+                continue;
+            }
+
+            if (provider.eResource() == null) {
+                // Links from other instances refer to this resource
+                resourceSet.createResource(instanceUri).getContents().add(provider);
+            }
+            Resource copy = new XMIResourceImpl(instanceUri);
+            copy.getContents().add(EcoreUtil.copy(provider));
+            toWrite.add(copy);
+        }
+
+        if (toWrite.isEmpty() && toDelete.isEmpty()) {
+            return InstanceWriter.done();
+        }
+        return instanceWriter.write(toWrite, toDelete);
+    }
+
+    /**
+     * Flushes the changes then hands a copy of all the providers over to the
+     * instance writer, which saves them as a binary snapshot loaded on the next
+     * startup. Must be called while no other thread uses the nexus.
+     *
+     * @return The future of the background write
+     */
+    public Future<?> writeSnapshot() {
+        flushInstances();
+        return instanceWriter.writeSnapshot(InstanceSnapshot.segment(providers.values()));
+    }
+
     /**
      * Will associate the given Parent provider with the given child. If parent or
      * child do not exist, they will be created.
@@ -306,6 +523,7 @@ public class ModelNexus {
             throw new IllegalArgumentException("No child provider " + childProvider);
         }
         ((Provider) parent).getLinkedProviders().add((Provider) child);
+        providerChanged(parentProvider);
 
         // TODO link event
         // accumulator.link(...)
@@ -338,6 +556,7 @@ public class ModelNexus {
             throw new IllegalArgumentException("No child provider " + childProvider);
         }
         ((Provider) parent).getLinkedProviders().remove(child);
+        providerChanged(parentProvider);
 
         // TODO unlink event
         // accumulator.unlink(...)
@@ -372,6 +591,7 @@ public class ModelNexus {
         // equal to or after the one of the current value
         if (metadata == null || !metadata.getTimestamp().isAfter(timestamp.plusMillis(1))) {
             EClassifier resourceType = resourceFeature.getEType();
+            providerChanged(providerName);
 
             if (metadata == null) {
                 metadata = MetadataFactory.eINSTANCE.createResourceMetadata();
@@ -426,7 +646,7 @@ public class ModelNexus {
             createAdminServiceForProvider(provider, timestamp);
         }
 
-        providers.put(providerName, provider);
+        putProvider(provider);
 
         return provider;
     }
@@ -498,6 +718,55 @@ public class ModelNexus {
         return p;
     }
 
+    private void putProvider(Provider provider) {
+        providers.put(provider.getId(), provider);
+        providersByModel.computeIfAbsent(EMFUtil.getModelName(provider.eClass()), k -> new ConcurrentHashMap<>())
+                .put(provider.getId(), provider);
+        providerChanged(provider.getId());
+    }
+
+    private void removeProvider(String providerName) {
+        Provider provider = providers.remove(providerName);
+        if (provider != null) {
+            Map<String, Provider> modelProviders = providersByModel.get(EMFUtil.getModelName(provider.eClass()));
+            if (modelProviders != null) {
+                modelProviders.remove(providerName, provider);
+            }
+            providerVersions.remove(providerName);
+            snapshotCache.evict(providerName);
+            dirtyProviders.add(providerName);
+        }
+    }
+
+    private void providerChanged(String providerName) {
+        providerVersions.put(providerName, changeSequence.incrementAndGet());
+        dirtyProviders.add(providerName);
+    }
+
+    private void modelsChanged() {
+        modelsVersion = changeSequence.incrementAndGet();
+    }
+
+    /**
+     * Returns the version of a provider, which increases each time the provider
+     * or a model changes
+     *
+     * @param providerName Provider name
+     * @return The provider version, -1 if the provider is unknown
+     */
+    public long getProviderVersion(String providerName) {
+        Long version = providerVersions.get(providerName);
+        return version == null ? -1 : Math.max(version, modelsVersion);
+    }
+
+    /**
+     * Returns the cache of the provider snapshots, to be used with
+     * {@link #getProviderVersion(String)}
+     */
+    public ProviderSnapshotCache getSnapshotCache() {
+        return snapshotCache;
+    }
+
     public Collection<Provider> getProviders() {
         return Collections.unmodifiableCollection(providers.values());
     }
@@ -506,10 +775,9 @@ public class ModelNexus {
      * Lists know providers
      */
     public List<Provider> getProviders(String model) {
-        EClass m = getMandatoryModel(model);
+        getMandatoryModel(model);
         // Don't use isInstance as subtypes have a different model
-        return providers.values().stream().filter(p -> EMFUtil.getModelName(p.eClass()).equals(m))
-                .collect(Collectors.toList());
+        return List.copyOf(providersByModel.getOrDefault(model, Map.of()).values());
     }
 
     public EAttribute createResource(EClass service, String resource, Class<?> type, Instant timestamp,
@@ -540,6 +808,7 @@ public class ModelNexus {
             feature.setExternalGetCacheMs(getterCacheMs);
         }
         EMFUtil.fillMetadata(feature, timestamp, false, resource, List.of());
+        modelsChanged();
         return feature;
     }
 
@@ -560,6 +829,7 @@ public class ModelNexus {
         EClass model = EMFUtil.createEClass(modelClassName, ePackage,
                 (ec) -> createEClassAnnotations(modelName, timestamp), ProviderPackage.Literals.PROVIDER);
         models.put(modelName, model);
+        modelsChanged();
         return model;
     }
 
@@ -569,6 +839,7 @@ public class ModelNexus {
                 (ec) -> createEClassAnnotations(timestamp), ProviderPackage.Literals.SERVICE);
         ServiceReference ref = EMFUtil.createServiceReference(model, name, service, true);
         EMFUtil.fillMetadata(ref, timestamp, false, name, List.of());
+        modelsChanged();
         return ref;
     }
 
@@ -603,17 +874,9 @@ public class ModelNexus {
         return str.substring(0, 1).toUpperCase() + str.substring(1);
     }
 
-    private void saveInstance(EObject p) {
+    private URI instanceUri(String providerName) {
         URI baseUri = URI.createFileURI(Path.of(INSTANCES).toAbsolutePath().toString());
-        URI instanceUri = baseUri.appendSegment(EcoreUtil.getID(p)).appendFileExtension("xmi");
-        Resource res = resourceSet.createResource(instanceUri);
-        res.getContents().add(p);
-        try {
-            p.eResource().save(Collections.singletonMap(XMLResource.OPTION_SCHEMA_LOCATION, true));
-        } catch (IOException ex) {
-            LOG.error("THIS WILL BE A RUNTIME EXCPETION FOR NOW: Error saving provider fro URI: {}", instanceUri, p);
-            throw new RuntimeException(ex);
-        }
+        return baseUri.appendSegment(providerName).appendFileExtension("xmi");
     }
 
     public Map<String, Object> getResourceMetadata(Provider provider, EStructuralFeature svcFeature,
@@ -665,6 +928,7 @@ public class ModelNexus {
                                         value)));
 
         Map<String, Object> newMetadata = toMetadataMap(resource, metadata);
+        providerChanged(provider.getId());
 
         notificationAccumulator.get().metadataValueUpdate(EMFUtil.getModelName(provider.eClass()), provider.getId(),
                 svcFeature.getName(), resource.getName(), oldMetadata, newMetadata, timestamp);
@@ -744,6 +1008,7 @@ public class ModelNexus {
                 .collect(Collectors.toList());
 
         Action action = EMFUtil.createAction(serviceEClass, name, type, params);
+        modelsChanged();
 
         return action;
     }
@@ -841,7 +1106,7 @@ public class ModelNexus {
         String m = getProviderModel(name);
         if (m != null) {
             if (m.equals(model)) {
-                providers.remove(name);
+                removeProvider(name);
                 notificationAccumulator.get().removeProvider(model, name);
             } else {
                 LOG.warn("Unable to remove the provider {} with model {} as the actual model was {}", name, model, m);
@@ -862,6 +1127,7 @@ public class ModelNexus {
         }
 
         EMFCompareUtil.compareAndSet(eObject, original, notificationAccumulator.get());
+        providerChanged(id);
 
         return EcoreUtil.copy(original);
     }
@@ -896,6 +1162,7 @@ public class ModelNexus {
         }
 
         models.put(EMFUtil.getModelName(modelEClass), modelEClass);
+        modelsChanged();
         return null;
     }
 }
@@ -13,14 +13,18 @@
 package org.eclipse.sensinact.core.notification.impl;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
+import org.eclipse.sensinact.core.notification.AbstractResourceNotification;
 import org.eclipse.sensinact.core.notification.LifecycleNotification;
 import org.eclipse.sensinact.core.notification.NotificationAccumulator;
 import org.eclipse.sensinact.core.notification.ResourceActionNotification;
 import org.eclipse.sensinact.core.notification.ResourceDataNotification;
 import org.eclipse.sensinact.core.notification.ResourceMetaDataNotification;
 import org.eclipse.sensinact.core.notification.LifecycleNotification.Status;
+import org.osgi.service.typedevent.TypedEventBus;
 
 /**
  * This class is allows some level of implementation sharing between the
@@ -31,6 +35,13 @@ public abstract class AbstractNotificationAccumulatorImpl implements Notificatio
 
     private boolean complete = false;
 
+    /**
+     * Returns a sender delivering each notification directly to the event bus
+     */
+    protected static Consumer<List<AbstractResourceNotification>> sendTo(TypedEventBus eventBus) {
+        return l -> l.forEach(n -> eventBus.deliver(n.getTopic(), n));
+    }
+
     /**
      * Check whether the accumulator has been completed
      */
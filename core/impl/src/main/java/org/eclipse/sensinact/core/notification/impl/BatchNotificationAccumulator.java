@@ -0,0 +1,84 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.notification.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.eclipse.sensinact.core.notification.AbstractResourceNotification;
+import org.eclipse.sensinact.core.notification.NotificationAccumulator;
+
+/**
+ * This class groups the notifications of the commands of a batch. Each command
+ * gets its own accumulator, so that updates made by different commands are
+ * never merged, and the notifications of all the commands are sent at once,
+ * appended in the order in which the commands completed. They are sent once
+ * the batch and all the commands which joined it have been completed, even if
+ * some commands complete asynchronously.
+ *
+ * This type is thread safe, as asynchronous commands may complete outside the
+ * gateway thread.
+ */
+public class BatchNotificationAccumulator {
+
+    private final Consumer<List<AbstractResourceNotification>> sender;
+
+    private final Function<Consumer<List<AbstractResourceNotification>>, NotificationAccumulator> factory;
+
+    private final List<AbstractResourceNotification> notifications = new ArrayList<>();
+
+    /**
+     * Number of calls to {@link #completeAndSend()} before sending the
+     * notifications: one for the batch itself plus one per joined command
+     */
+    private int pending = 1;
+
+    /**
+     * @param sender  Receives the notifications of the whole batch
+     * @param factory Creates the accumulator of a command, given the sender it
+     *                must complete into
+     */
+    public BatchNotificationAccumulator(Consumer<List<AbstractResourceNotification>> sender,
+            Function<Consumer<List<AbstractResourceNotification>>, NotificationAccumulator> factory) {
+        this.sender = sender;
+        this.factory = factory;
+    }
+
+    /**
+     * Registers a command in this batch. The command must complete the returned
+     * accumulator once it has been completed.
+     *
+     * @return a new accumulator for the command
+     */
+    public synchronized NotificationAccumulator join() {
+        pending++;
+        return factory.apply(this::append);
+    }
+
+    private synchronized void append(List<AbstractResourceNotification> commandNotifications) {
+        notifications.addAll(commandNotifications);
+        completeAndSend();
+    }
+
+    /**
+     * Sends the notifications if the batch and all its commands have been
+     * completed
+     */
+    public synchronized void completeAndSend() {
+        if (--pending == 0) {
+            sender.accept(notifications);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.notification.impl;
+
+import static java.util.Collections.emptyMap;
+import static org.eclipse.sensinact.core.notification.LifecycleNotification.Status.PROVIDER_CREATED;
+import static org.eclipse.sensinact.core.notification.LifecycleNotification.Status.PROVIDER_DELETED;
+import static org.eclipse.sensinact.core.notification.LifecycleNotification.Status.RESOURCE_CREATED;
+import static org.eclipse.sensinact.core.notification.LifecycleNotification.Status.RESOURCE_DELETED;
+import static org.eclipse.sensinact.core.notification.LifecycleNotification.Status.SERVICE_CREATED;
+import static org.eclipse.sensinact.core.notification.LifecycleNotification.Status.SERVICE_DELETED;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.eclipse.sensinact.core.notification.AbstractResourceNotification;
+import org.eclipse.sensinact.core.notification.LifecycleNotification;
+import org.eclipse.sensinact.core.notification.LifecycleNotification.Status;
+import org.eclipse.sensinact.core.notification.NotificationAccumulator;
+import org.eclipse.sensinact.core.notification.ResourceActionNotification;
+import org.eclipse.sensinact.core.notification.ResourceDataNotification;
+import org.eclipse.sensinact.core.notification.ResourceMetaDataNotification;
+import org.osgi.service.typedevent.TypedEventBus;
+
+/**
+ * This class collapses notifications like {@link NotificationAccumulatorImpl},
+ * but is tuned for large batches of value updates: pending notifications are
+ * stored in mutable slots of an open-addressing table, looked up without
+ * allocating a key, and are only sorted once when the batch is completed.
+ *
+ * This type is not thread safe and must not be used concurrently.
+ */
+public class CompactNotificationAccumulator extends AbstractNotificationAccumulatorImpl
+        implements NotificationAccumulator {
+
+    private static final int LIFECYCLE = 1;
+    private static final int METADATA = 2;
+    private static final int DATA = 3;
+    private static final int ACTION = 4;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Same order as {@link NotificationKey}
+     */
+    private static final Comparator<Slot> SLOT_ORDER = Comparator.<Slot>comparingInt(s -> s.type)
+            .thenComparing(s -> s.provider, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(s -> s.service, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(s -> s.resource, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private static final Comparator<AbstractResourceNotification> ACTION_ORDER = Comparator
+            .comparing(n -> ((ResourceActionNotification) n).timestamp);
+
+    private final Consumer<List<AbstractResourceNotification>> sender;
+
+    private Slot[] table = new Slot[INITIAL_CAPACITY];
+
+    private int size;
+
+    public CompactNotificationAccumulator(TypedEventBus eventBus) {
+        this(sendTo(eventBus));
+    }
+
+    public CompactNotificationAccumulator(Consumer<List<AbstractResourceNotification>> sender) {
+        this.sender = sender;
+    }
+
+    @Override
+    public void addProvider(String model, String name) {
+        doLifecycleMerge(PROVIDER_CREATED, model, name, null, null, false);
+    }
+
+    @Override
+    public void removeProvider(String model, String name) {
+        doLifecycleMerge(PROVIDER_DELETED, model, name, null, null, true);
+    }
+
+    @Override
+    public void addService(String model, String provider, String name) {
+        doLifecycleMerge(SERVICE_CREATED, model, provider, name, null, false);
+    }
+
+    @Override
+    public void removeService(String model, String provider, String name) {
+        doLifecycleMerge(SERVICE_DELETED, model, provider, name, null, true);
+    }
+
+    @Override
+    public void addResource(String model, String provider, String service, String name) {
+        doLifecycleMerge(RESOURCE_CREATED, model, provider, service, name, false);
+    }
+
+    @Override
+    public void removeResource(String model, String provider, String service, String name) {
+        doLifecycleMerge(RESOURCE_DELETED, model, provider, service, name, true);
+    }
+
+    private void doLifecycleMerge(Status status, String model, String provider, String service, String resource,
+            boolean isDelete) {
+        check();
+        Slot slot = slot(LIFECYCLE, provider, service, resource);
+        LifecycleNotification ln = createLifecycleNotification(status, model, provider, service, resource, null,
+                null);
+        if (slot.first == null) {
+            slot.first = ln;
+        } else {
+            // Check the status of the last entry
+            LifecycleNotification last = (LifecycleNotification) (slot.last == null ? slot.first : slot.last);
+            if (last.status == status) {
+                // Simply replace the final entry with the update
+                if (slot.last == null) {
+                    slot.first = ln;
+                } else {
+                    slot.last = ln;
+                }
+            } else if (isDelete) {
+                // A create/delete is nothing, A delete/create/delete is a delete
+                slot.first = slot.last == null ? null : ln;
+                slot.last = null;
+            } else {
+                // Must be a delete/create, as we can't have a create/delete/create
+                slot.last = ln;
+            }
+        }
+    }
+
+    @Override
+    public void metadataValueUpdate(String model, String provider, String service, String resource,
+            Map<String, Object> oldValues, Map<String, Object> newValues, Instant timestamp) {
+        check();
+        Objects.requireNonNull(timestamp);
+
+        Slot slot = slot(METADATA, provider, service, resource);
+        ResourceMetaDataNotification previous = (ResourceMetaDataNotification) slot.first;
+        if (previous == null) {
+            slot.first = createResourceMetaDataNotification(model, provider, service, resource,
+                    oldValues == null ? emptyMap() : oldValues, newValues == null ? emptyMap() : newValues,
+                    timestamp);
+        } else if (previous.timestamp.isAfter(timestamp)) {
+            throw new IllegalArgumentException("Received metadata updates out of temporal order");
+        } else {
+            // Not delivered yet: update it in place
+            previous.model = model;
+            previous.newValues = newValues == null ? emptyMap() : newValues;
+            previous.timestamp = timestamp;
+        }
+    }
+
+    @Override
+    public void resourceValueUpdate(String model, String provider, String service, String resource, Class<?> type,
+            Object oldValue, Object newValue, Instant timestamp) {
+        check();
+        Objects.requireNonNull(timestamp);
+
+        Slot slot = slot(DATA, provider, service, resource);
+        ResourceDataNotification previous = (ResourceDataNotification) slot.first;
+        if (previous == null) {
+            slot.first = createResourceDataNotification(model, provider, service, resource, type, oldValue, newValue,
+                    timestamp);
+        } else if (previous.timestamp.isAfter(timestamp)) {
+            throw new IllegalArgumentException("Received resource value updates out of temporal order");
+        } else {
+            // Not delivered yet: update it in place
+            previous.model = model;
+            previous.type = type;
+            previous.newValue = newValue;
+            previous.timestamp = timestamp;
+        }
+    }
+
+    @Override
+    public void resourceAction(String model, String provider, String service, String resource, Instant timestamp) {
+        check();
+        Objects.requireNonNull(timestamp);
+
+        Slot slot = slot(ACTION, provider, service, resource);
+        ResourceActionNotification ran = createResourceActionNotification(model, provider, service, resource,
+                timestamp);
+        if (slot.first == null) {
+            slot.first = ran;
+        } else {
+            if (slot.more == null) {
+                slot.more = new ArrayList<>();
+                slot.more.add(slot.first);
+            }
+            slot.more.add(ran);
+        }
+    }
+
+    @Override
+    protected void doComplete() {
+        Slot[] slots = new Slot[size];
+        int i = 0;
+        for (Slot slot : table) {
+            if (slot != null) {
+                slots[i++] = slot;
+            }
+        }
+        Arrays.sort(slots, SLOT_ORDER);
+
+        List<AbstractResourceNotification> notifications = new ArrayList<>(size);
+        for (Slot slot : slots) {
+            if (slot.more != null) {
+                // Stable sort: actions with the same timestamp keep their order
+                slot.more.sort(ACTION_ORDER);
+                notifications.addAll(slot.more);
+            } else if (slot.first != null) {
+                notifications.add(slot.first);
+                if (slot.last != null) {
+                    notifications.add(slot.last);
+                }
+            }
+        }
+        sender.accept(notifications);
+    }
+
+    /**
+     * Finds or creates the slot of a notification target. String hash codes are
+     * cached, so the lookup doesn't allocate anything when the slot exists.
+     */
+    private Slot slot(int type, String provider, String service, String resource) {
+        int hash = hash(type, provider, service, resource);
+        int mask = table.length - 1;
+        int idx = hash & mask;
+        Slot slot;
+        while ((slot = table[idx]) != null) {
+            if (slot.matches(hash, type, provider, service, resource)) {
+                return slot;
+            }
+            idx = (idx + 1) & mask;
+        }
+
+        slot = new Slot(hash, type, provider, service, resource);
+        table[idx] = slot;
+        if (++size > table.length >> 1) {
+            resize();
+        }
+        return slot;
+    }
+
+    private void resize() {
+        Slot[] old = table;
+        table = new Slot[old.length << 1];
+        int mask = table.length - 1;
+        for (Slot slot : old) {
+            if (slot != null) {
+                int idx = slot.hash & mask;
+                while (table[idx] != null) {
+                    idx = (idx + 1) & mask;
+                }
+                table[idx] = slot;
+            }
+        }
+    }
+
+    private static int hash(int type, String provider, String service, String resource) {
+        int h = type;
+        h = 31 * h + (provider == null ? 0 : provider.hashCode());
+        h = 31 * h + (service == null ? 0 : service.hashCode());
+        h = 31 * h + (resource == null ? 0 : resource.hashCode());
+        // Spread the high bits, as the table index only uses the low ones
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Pending notifications of a target. Lifecycle notifications use first and
+     * last, actions use more once there are multiple ones.
+     */
+    private static class Slot {
+        private final int hash;
+        private final int type;
+        private final String provider;
+        private final String service;
+        private final String resource;
+
+        private AbstractResourceNotification first;
+        private AbstractResourceNotification last;
+        private List<AbstractResourceNotification> more;
+
+        Slot(int hash, int type, String provider, String service, String resource) {
+            this.hash = hash;
+            this.type = type;
+            this.provider = provider;
+            this.service = service;
+            this.resource = resource;
+        }
+
+        boolean matches(int hash, int type, String provider, String service, String resource) {
+            return this.hash == hash && this.type == type && Objects.equals(this.provider, provider)
+                    && Objects.equals(this.service, service) && Objects.equals(this.resource, resource);
+        }
+    }
+}
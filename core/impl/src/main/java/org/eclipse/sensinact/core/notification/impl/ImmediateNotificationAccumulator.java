@@ -21,9 +21,12 @@ import static org.eclipse.sensinact.core.notification.LifecycleNotification.Stat
 import static org.eclipse.sensinact.core.notification.LifecycleNotification.Status.SERVICE_DELETED;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
 
+import org.eclipse.sensinact.core.notification.AbstractResourceNotification;
 import org.eclipse.sensinact.core.notification.LifecycleNotification;
 import org.eclipse.sensinact.core.notification.NotificationAccumulator;
 import org.eclipse.sensinact.core.notification.ResourceActionNotification;
@@ -41,10 +44,14 @@ import org.osgi.service.typedevent.TypedEventBus;
 public class ImmediateNotificationAccumulator extends AbstractNotificationAccumulatorImpl
         implements NotificationAccumulator {
 
-    private final TypedEventBus eventBus;
+    private final Consumer<List<AbstractResourceNotification>> sender;
 
     public ImmediateNotificationAccumulator(TypedEventBus eventBus) {
-        this.eventBus = eventBus;
+        this(sendTo(eventBus));
+    }
+
+    public ImmediateNotificationAccumulator(Consumer<List<AbstractResourceNotification>> sender) {
+        this.sender = sender;
     }
 
     /**
@@ -55,7 +62,7 @@ public class ImmediateNotificationAccumulator extends AbstractNotificationAccumu
     @Override
     public void addProvider(String model, String name) {
         LifecycleNotification ln = createLifecycleNotification(PROVIDER_CREATED, model, name, null, null, null, null);
-        eventBus.deliver(ln.getTopic(), ln);
+        sender.accept(List.of(ln));
     }
 
     /**
@@ -66,7 +73,7 @@ public class ImmediateNotificationAccumulator extends AbstractNotificationAccumu
     @Override
     public void removeProvider(String model, String name) {
         LifecycleNotification ln = createLifecycleNotification(PROVIDER_DELETED, model, name, null, null, null, null);
-        eventBus.deliver(ln.getTopic(), ln);
+        sender.accept(List.of(ln));
     }
 
     /**
@@ -79,7 +86,7 @@ public class ImmediateNotificationAccumulator extends AbstractNotificationAccumu
     public void addService(String model, String provider, String name) {
         LifecycleNotification ln = createLifecycleNotification(SERVICE_CREATED, model, provider, name, null, null,
                 null);
-        eventBus.deliver(ln.getTopic(), ln);
+        sender.accept(List.of(ln));
     }
 
     /**
@@ -92,7 +99,7 @@ public class ImmediateNotificationAccumulator extends AbstractNotificationAccumu
     public void removeService(String model, String provider, String name) {
         LifecycleNotification ln = createLifecycleNotification(SERVICE_DELETED, model, provider, name, null, null,
                 null);
-        eventBus.deliver(ln.getTopic(), ln);
+        sender.accept(List.of(ln));
     }
 
     /**
@@ -106,7 +113,7 @@ public class ImmediateNotificationAccumulator extends AbstractNotificationAccumu
     public void addResource(String model, String provider, String service, String name) {
         LifecycleNotification ln = createLifecycleNotification(RESOURCE_CREATED, model, provider, service, name, null,
                 null);
-        eventBus.deliver(ln.getTopic(), ln);
+        sender.accept(List.of(ln));
     }
 
     /**
@@ -120,7 +127,7 @@ public class ImmediateNotificationAccumulator extends AbstractNotificationAccumu
     public void removeResource(String model, String provider, String service, String name) {
         LifecycleNotification ln = createLifecycleNotification(RESOURCE_DELETED, model, provider, service, name, null,
                 null);
-        eventBus.deliver(ln.getTopic(), ln);
+        sender.accept(List.of(ln));
     }
 
     /**
@@ -147,7 +154,7 @@ public class ImmediateNotificationAccumulator extends AbstractNotificationAccumu
         ResourceMetaDataNotification rmn = createResourceMetaDataNotification(model, provider, service, resource,
                 nonNullOldValues, nonNullNewValues, timestamp);
 
-        eventBus.deliver(rmn.getTopic(), rmn);
+        sender.accept(List.of(rmn));
     }
 
     /**
@@ -170,7 +177,7 @@ public class ImmediateNotificationAccumulator extends AbstractNotificationAccumu
 
         ResourceDataNotification rdn = createResourceDataNotification(model, provider, service, resource, type,
                 oldValue, newValue, timestamp);
-        eventBus.deliver(rdn.getTopic(), rdn);
+        sender.accept(List.of(rdn));
     }
 
     /**
@@ -189,7 +196,7 @@ public class ImmediateNotificationAccumulator extends AbstractNotificationAccumu
 
         ResourceActionNotification ran = createResourceActionNotification(model, provider, service, resource,
                 timestamp);
-        eventBus.deliver(ran.getTopic(), ran);
+        sender.accept(List.of(ran));
     }
 
     protected void doComplete() {
@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -50,12 +51,16 @@ import org.osgi.service.typedevent.TypedEventBus;
 public class NotificationAccumulatorImpl extends AbstractNotificationAccumulatorImpl
         implements NotificationAccumulator {
 
-    private final TypedEventBus eventBus;
+    private final Consumer<List<AbstractResourceNotification>> sender;
 
     private final SortedMap<NotificationKey, List<AbstractResourceNotification>> notifications = new TreeMap<>();
 
     public NotificationAccumulatorImpl(TypedEventBus eventBus) {
-        this.eventBus = eventBus;
+        this(sendTo(eventBus));
+    }
+
+    public NotificationAccumulatorImpl(Consumer<List<AbstractResourceNotification>> sender) {
+        this.sender = sender;
     }
 
     /**
@@ -313,6 +318,6 @@ public class NotificationAccumulatorImpl extends AbstractNotificationAccumulator
 
     @Override
     protected void doComplete() {
-        notifications.values().stream().flatMap(List::stream).forEach(n -> eventBus.deliver(n.getTopic(), n));
+        sender.accept(notifications.values().stream().flatMap(List::stream).collect(Collectors.toList()));
     }
 }
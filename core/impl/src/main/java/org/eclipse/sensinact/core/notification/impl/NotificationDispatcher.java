@@ -0,0 +1,208 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.notification.impl;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.eclipse.sensinact.core.command.impl.QueuePolicy;
+import org.eclipse.sensinact.core.metrics.IMetricsManager;
+import org.eclipse.sensinact.core.notification.AbstractResourceNotification;
+import org.eclipse.sensinact.core.notification.NotificationBatch;
+import org.osgi.service.typedevent.TypedEventBus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers the notifications of completed accumulators to the event bus. Each
+ * notification is sent on its own topic, then the whole list is sent as a
+ * {@link NotificationBatch}.
+ *
+ * In asynchronous mode, the delivery is done by a dedicated thread, in the
+ * order in which the lists were dispatched, so that the gateway thread doesn't
+ * wait for the event bus. The number of lists waiting to be delivered is
+ * bounded: when the event bus is too slow, the gateway thread waits for some
+ * room in the queue, unless the queue policy explicitly allows notifications to
+ * be dropped.
+ */
+public class NotificationDispatcher implements Consumer<List<AbstractResourceNotification>> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    static final String METRIC_DROPPED = "sensinact.notifications.dropped";
+
+    private final TypedEventBus eventBus;
+
+    private final IMetricsManager metrics;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicBoolean dropping = new AtomicBoolean();
+
+    public NotificationDispatcher(TypedEventBus eventBus, IMetricsManager metrics, boolean async) {
+        this(eventBus, metrics, async, 1024, QueuePolicy.BLOCK, 0);
+    }
+
+    /**
+     * @param eventBus Event bus
+     * @param metrics  Metrics manager
+     * @param async    Deliver from a dedicated thread
+     * @param capacity Maximum number of notification lists waiting to be
+     *                 delivered in asynchronous mode
+     * @param policy   Behaviour when the queue is full: {@link QueuePolicy#BLOCK}
+     *                 waits for some room, or up to the timeout then drops the
+     *                 new list, {@link QueuePolicy#DROP_OLDEST} drops the oldest
+     *                 waiting list, other policies drop the new list
+     * @param timeout  Maximum time in milliseconds to wait with the
+     *                 {@link QueuePolicy#BLOCK} policy, lower than 1 to wait
+     *                 without dropping notifications
+     */
+    public NotificationDispatcher(TypedEventBus eventBus, IMetricsManager metrics, boolean async, int capacity,
+            QueuePolicy policy, long timeout) {
+        this.eventBus = eventBus;
+        this.metrics = metrics;
+        this.executor = async
+                ? new ThreadPoolExecutor(1, 1, 0, MILLISECONDS, new LinkedBlockingQueue<>(Math.max(1, capacity)),
+                        r -> new Thread(r, "Eclipse sensiNact Notification Dispatcher"), overflow(policy, timeout))
+                : null;
+    }
+
+    private RejectedExecutionHandler overflow(QueuePolicy policy, long timeout) {
+        return (r, executor) -> {
+            if (executor.isShutdown()) {
+                LOG.debug("Notifications dispatched after the dispatcher was closed are dropped");
+                return;
+            }
+            switch (policy) {
+            case BLOCK:
+                if (timeout < 1) {
+                    waitForRoom(r, executor);
+                    return;
+                }
+                try {
+                    if (executor.getQueue().offer(r, timeout, MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                break;
+            case DROP_OLDEST:
+                if (executor.getQueue().poll() != null && executor.getQueue().offer(r)) {
+                    dropped();
+                    return;
+                }
+                break;
+            default:
+                break;
+            }
+            dropped();
+        };
+    }
+
+    /**
+     * Waits until the list can be queued, without dropping it even if the
+     * current thread is interrupted. If the dispatcher is closed meanwhile, the
+     * list is delivered by the current thread.
+     */
+    private void waitForRoom(Runnable r, ThreadPoolExecutor executor) {
+        boolean interrupted = false;
+        try {
+            while (!executor.isShutdown()) {
+                try {
+                    if (executor.getQueue().offer(r, 100, MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            r.run();
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void dropped() {
+        metrics.getCounter(METRIC_DROPPED).inc();
+        if (!dropping.getAndSet(true)) {
+            LOG.warn("The event bus is too slow, notifications are dropped");
+        }
+    }
+
+    /**
+     * Sends a list of notifications
+     *
+     * @param notifications notifications to send, in order
+     */
+    @Override
+    public void accept(List<AbstractResourceNotification> notifications) {
+        if (notifications.isEmpty()) {
+            return;
+        }
+
+        if (executor == null) {
+            deliver(notifications);
+        } else {
+            long queued = System.nanoTime();
+            executor.execute(() -> {
+                metrics.getHistogram("sensinact.notifications.dispatch.lag")
+                        .update(NANOSECONDS.toMillis(System.nanoTime() - queued));
+                deliver(notifications);
+                if (executor.getQueue().isEmpty() && dropping.getAndSet(false)) {
+                    LOG.info("The event bus caught up, notifications are delivered again");
+                }
+            });
+        }
+    }
+
+    private void deliver(List<AbstractResourceNotification> notifications) {
+        try {
+            for (AbstractResourceNotification n : notifications) {
+                eventBus.deliver(n.getTopic(), n);
+            }
+            NotificationBatch batch = new NotificationBatch();
+            batch.notifications = notifications;
+            eventBus.deliver(batch.getTopic(), batch);
+        } catch (Exception e) {
+            LOG.error("Error delivering notifications", e);
+        }
+    }
+
+    /**
+     * Delivers the pending notifications and stops the dispatcher thread
+     */
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(2, SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+            }
+        }
+    }
+}
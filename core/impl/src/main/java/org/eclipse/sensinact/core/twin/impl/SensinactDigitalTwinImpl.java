@@ -297,8 +297,6 @@ public class SensinactDigitalTwinImpl extends CommandScopedImpl implements Sensi
             Predicate<ProviderSnapshot> providerFilter, Predicate<ServiceSnapshot> svcFilter,
             Predicate<ResourceSnapshot> rcFilter) {
 
-        final Instant snapshotTime = Instant.now();
-
         // Filter providers by location (raw provider)
         Stream<Provider> rawProvidersStream = nexusImpl.getProviders().stream();
         if (geoFilter != null) {
@@ -306,63 +304,59 @@ public class SensinactDigitalTwinImpl extends CommandScopedImpl implements Sensi
             rawProvidersStream = rawProvidersStream.filter(p -> geoFilter.test(p.getAdmin().getLocation()));
         }
 
-        // Filter providers with their API model
-        Stream<ProviderSnapshotImpl> providersStream = rawProvidersStream
-                .map(p -> new ProviderSnapshotImpl(nexusImpl.getProviderModel(p.getId()), p, snapshotTime));
+        // Get the snapshots of the providers, only rebuilding the ones which changed
+        Stream<ProviderSnapshotImpl> providersStream = rawProvidersStream.map(this::cachedSnapshot);
         if (providerFilter != null) {
             providersStream = providersStream.filter(providerFilter);
         }
 
         // Filter providers according to their services
-        providersStream = providersStream.map(p -> {
-            final Provider modelProvider = p.getModelProvider();
-            nexusImpl.getServicesForModel(modelProvider.eClass()).filter(modelProvider::eIsSet).forEach((feature) -> {
-                p.add(new ServiceSnapshotImpl(p, feature.getName(), (Service) modelProvider.eGet(feature),
-                        snapshotTime));
-            });
-            return p;
-        });
         if (svcFilter != null) {
             providersStream = providersStream.filter(p -> p.getServices().stream().anyMatch(svcFilter));
         }
 
         // Filter providers according to their resources
-        providersStream = providersStream.map(p -> {
-            p.getServices().stream().forEach(s -> {
-                // Avoid ModelService which may be null
-                EStructuralFeature sf = s.getProvider().getModelProvider().eClass().getEStructuralFeature(s.getName());
-                nexusImpl.getResourcesForService((EClass) sf.getEType())
-                        .forEach(f -> s.add(new ResourceSnapshotImpl(s, f, snapshotTime)));
-            });
-            return p;
-        });
         if (rcFilter != null) {
             providersStream = providersStream
                     .filter(p -> p.getServices().stream().anyMatch(s -> s.getResources().stream().anyMatch(rcFilter)));
         }
 
-        // Add resource value
-        providersStream = providersStream.map(p -> {
-            p.getServices().stream().forEach(s -> {
-                s.getResources().stream().forEach(this::fillInResource);
-            });
-            p.filterEmptyServices();
-            return p;
-        });
-
         return providersStream.collect(Collectors.toList());
     }
 
     @Override
     public ProviderSnapshot snapshotProvider(String providerName) {
-        final Instant snapshotTime = Instant.now();
-
         final Provider nexusProvider = nexusImpl.getProvider(providerName);
         if (nexusProvider == null) {
             // Provider not found
             return null;
         }
 
+        return cachedSnapshot(nexusProvider);
+    }
+
+    /**
+     * Returns the snapshot of the given provider, reusing the cached one if the
+     * provider didn't change since it was built
+     *
+     * @param nexusProvider Provider model
+     * @return The provider snapshot, which must not be modified
+     */
+    private ProviderSnapshotImpl cachedSnapshot(final Provider nexusProvider) {
+        final String providerName = nexusProvider.getId();
+        return nexusImpl.getSnapshotCache().get(providerName, nexusImpl.getProviderVersion(providerName),
+                () -> buildSnapshot(nexusProvider));
+    }
+
+    /**
+     * Builds the full snapshot of a provider
+     *
+     * @param nexusProvider Provider model
+     * @return The provider snapshot
+     */
+    private ProviderSnapshotImpl buildSnapshot(final Provider nexusProvider) {
+        final Instant snapshotTime = Instant.now();
+
         final ProviderSnapshotImpl providerSnapshot = new ProviderSnapshotImpl(
                 nexusImpl.getProviderModel(nexusProvider.getId()), nexusProvider, snapshotTime);
 
@@ -396,6 +390,13 @@ public class SensinactDigitalTwinImpl extends CommandScopedImpl implements Sensi
             return null;
         }
 
+        // Services with resources are in the provider snapshot
+        final Optional<ServiceSnapshotImpl> cachedSvc = cachedSnapshot(nexusProvider).getServices().stream()
+                .filter(s -> s.getName().equals(serviceName)).findFirst();
+        if (cachedSvc.isPresent()) {
+            return cachedSvc.get();
+        }
+
         final Optional<EReference> foundSvc = nexusImpl.getServicesForModel(nexusProvider.eClass())
                 .filter(nexusProvider::eIsSet).filter(f -> f.getName().equals(serviceName)).findFirst();
         if (foundSvc.isEmpty()) {
@@ -407,20 +408,11 @@ public class SensinactDigitalTwinImpl extends CommandScopedImpl implements Sensi
         final ProviderSnapshotImpl providerSnapshot = new ProviderSnapshotImpl(
                 nexusImpl.getProviderModel(nexusProvider.getId()), nexusProvider, snapshotTime);
 
-        // Describe the service
+        // Describe the service, which has no resource
         final EReference svcFeature = foundSvc.get();
         final ServiceSnapshotImpl svcSnapshot = new ServiceSnapshotImpl(providerSnapshot, svcFeature.getName(),
                 (Service) nexusProvider.eGet(svcFeature), snapshotTime);
         providerSnapshot.add(svcSnapshot);
-
-        // Get the resources
-        final EStructuralFeature sf = nexusProvider.eClass().getEStructuralFeature(svcSnapshot.getName());
-        nexusImpl.getResourcesForService((EClass) sf.getEType()).forEach(rcFeature -> {
-            final ResourceSnapshotImpl rcSnapshot = new ResourceSnapshotImpl(svcSnapshot, rcFeature, snapshotTime);
-            fillInResource(rcSnapshot);
-            svcSnapshot.add(rcSnapshot);
-        });
-
         return svcSnapshot;
     }
 
@@ -14,22 +14,37 @@ package org.eclipse.sensinact.core.command.impl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.sensinact.core.command.AbstractSensinactCommand;
 import org.eclipse.sensinact.core.command.AbstractTwinCommand;
+import org.eclipse.sensinact.core.command.TargetedCommand;
+import org.eclipse.sensinact.core.dto.impl.DataUpdateDto;
+import org.eclipse.sensinact.core.impl.SetValueCommand;
 import org.eclipse.sensinact.core.metrics.IMetricCounter;
 import org.eclipse.sensinact.core.metrics.IMetricTimer;
 import org.eclipse.sensinact.core.metrics.IMetricsHistogram;
@@ -42,6 +57,7 @@ import org.eclipse.sensinact.core.twin.SensinactDigitalTwin;
 import org.eclipse.sensinact.core.twin.SensinactProvider;
 import org.eclipse.sensinact.core.twin.SensinactResource;
 import org.eclipse.sensinact.core.twin.SensinactService;
+import org.eclipse.sensinact.core.twin.TimedValue;
 import org.eclipse.sensinact.model.core.provider.ProviderPackage;
 import org.eclipse.sensinact.core.emf.util.EMFTestUtil;
 import org.junit.jupiter.api.AfterEach;
@@ -53,6 +69,7 @@ import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.osgi.service.typedevent.TypedEventBus;
+import org.osgi.util.converter.Converters;
 import org.osgi.util.promise.Promise;
 import org.osgi.util.promise.PromiseFactory;
 
@@ -68,6 +85,8 @@ public class GatewayThreadImplTest {
     @Spy
     ResourceSet resourceSet = EMFTestUtil.createResourceSet();
 
+    IMetricsManager metrics;
+
     GatewayThreadImpl thread = null;
 
     @BeforeEach
@@ -84,7 +103,7 @@ public class GatewayThreadImplTest {
         }
         resourceSet = EMFTestUtil.createResourceSet();
 
-        IMetricsManager metrics = mock(IMetricsManager.class);
+        metrics = mock(IMetricsManager.class);
         IMetricCounter counter = mock(IMetricCounter.class);
         IMetricsHistogram histogram = mock(IMetricsHistogram.class);
         IMetricTimer timer = mock(IMetricTimer.class);
@@ -138,6 +157,475 @@ public class GatewayThreadImplTest {
         assertEquals(testValue, result.getValue());
     }
 
+    @Nested
+    class ShardedTests {
+
+        GatewayThreadImpl sharded;
+
+        @BeforeEach
+        void start() {
+            sharded = new GatewayThreadImpl(metrics, typedEventBus, EMFTestUtil.createResourceSet(), providerPackage,
+                    Converters.standardConverter().convert(Map.of("shards", 4)).to(GatewayThreadConfiguration.class));
+        }
+
+        @AfterEach
+        void stop() {
+            sharded.deactivate();
+        }
+
+        @Test
+        void testTargetedAndGlobalCommands() throws Exception {
+            final int nbProviders = 10;
+
+            List<Promise<Void>> updates = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                DataUpdateDto dto = new DataUpdateDto();
+                dto.model = "shardModel";
+                dto.provider = "shardProvider" + (i % nbProviders);
+                dto.service = "svc";
+                dto.resource = "value";
+                dto.type = Integer.class;
+                dto.data = i;
+                dto.timestamp = Instant.now();
+                updates.add(sharded.execute(new SetValueCommand(dto)));
+            }
+            sharded.getPromiseFactory().all(updates).getValue();
+
+            // Commands without target see the updates of all the shards
+            List<Integer> values = sharded.execute(new AbstractTwinCommand<List<Integer>>() {
+                @Override
+                protected Promise<List<Integer>> call(SensinactDigitalTwin twin, PromiseFactory pf) {
+                    List<Promise<TimedValue<Integer>>> values = new ArrayList<>();
+                    for (int i = 0; i < nbProviders; i++) {
+                        values.add(twin.getResource("shardProvider" + i, "svc", "value").getValue(Integer.class));
+                    }
+                    return pf.all(values).map(l -> l.stream().map(TimedValue::getValue).collect(Collectors.toList()));
+                }
+            }).getValue();
+
+            for (int i = 0; i < nbProviders; i++) {
+                assertEquals(90 + i, values.get(i));
+            }
+        }
+    }
+
+    @Nested
+    class ShardedAdmissionTests {
+
+        GatewayThreadImpl sharded;
+
+        Semaphore started = new Semaphore(0);
+
+        Semaphore gate = new Semaphore(0);
+
+        @AfterEach
+        void stop() {
+            gate.release(100);
+            if (sharded != null) {
+                sharded.deactivate();
+            }
+        }
+
+        void start(Map<String, Object> config) {
+            sharded = new GatewayThreadImpl(metrics, typedEventBus, EMFTestUtil.createResourceSet(), providerPackage,
+                    Converters.standardConverter().convert(config).to(GatewayThreadConfiguration.class));
+        }
+
+        /**
+         * Returns a provider name handled by the given shard
+         */
+        String providerOfShard(int shard, int shards) {
+            for (int i = 0;; i++) {
+                String name = "shardProvider" + i;
+                if (Math.floorMod(name.hashCode(), shards) == shard) {
+                    return name;
+                }
+            }
+        }
+
+        /**
+         * Keeps the shard of a provider busy until the gate is released
+         */
+        Promise<Void> block(String provider) throws Exception {
+            Promise<Void> p = sharded.execute(new BlockingCommand(provider));
+            assertTrue(started.tryAcquire(1, TimeUnit.SECONDS));
+            return p;
+        }
+
+        Promise<Void> update(String provider, int value) {
+            DataUpdateDto dto = new DataUpdateDto();
+            dto.model = "shardModel";
+            dto.provider = provider;
+            dto.service = "svc";
+            dto.resource = "value";
+            dto.type = Integer.class;
+            dto.data = value;
+            dto.timestamp = Instant.now();
+            return sharded.execute(new SetValueCommand(dto));
+        }
+
+        Promise<Map<String, Integer>> readAll(List<String> providers) {
+            return sharded.execute(new AbstractTwinCommand<Map<String, Integer>>() {
+                @Override
+                protected Promise<Map<String, Integer>> call(SensinactDigitalTwin twin, PromiseFactory pf) {
+                    Map<String, Integer> values = new ConcurrentHashMap<>();
+                    List<Promise<TimedValue<Integer>>> reads = new ArrayList<>();
+                    for (String provider : providers) {
+                        SensinactResource resource = twin.getResource(provider, "svc", "value");
+                        if (resource != null) {
+                            reads.add(resource.getValue(Integer.class)
+                                    .onSuccess(v -> values.put(provider, v.getValue())));
+                        }
+                    }
+                    return pf.all(reads).map(x -> values);
+                }
+            });
+        }
+
+        class BlockingCommand extends AbstractTwinCommand<Void> implements TargetedCommand {
+            private final String provider;
+
+            BlockingCommand(String provider) {
+                this.provider = provider;
+            }
+
+            @Override
+            public String getTargetProvider() {
+                return provider;
+            }
+
+            @Override
+            protected Promise<Void> call(SensinactDigitalTwin twin, PromiseFactory pf) {
+                started.release();
+                gate.acquireUninterruptibly();
+                return pf.resolved(null);
+            }
+        }
+
+        @Test
+        void testSameNewModelFromAllShards() throws Exception {
+            final int shards = 4;
+            start(Map.of("shards", shards));
+
+            // All the shards see the model missing, then create it at once
+            List<String> providers = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                providers.add(providerOfShard(i, shards));
+                block(providers.get(i));
+            }
+            List<Promise<Void>> updates = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                updates.add(update(providers.get(i), i));
+            }
+            gate.release(shards);
+
+            for (Promise<Void> update : updates) {
+                assertEquals(null, update.timeout(1000).getFailure());
+            }
+            Map<String, Integer> expected = new HashMap<>();
+            for (int i = 0; i < shards; i++) {
+                expected.put(providers.get(i), i);
+            }
+            assertEquals(expected, readAll(providers).timeout(1000).getValue());
+        }
+
+        @Test
+        void testUntargetedCommandWithFullShardQueue() throws Exception {
+            start(Map.of("shards", 2, "queueCapacity", 1, "queuePolicy", QueuePolicy.FAIL.name()));
+            String busy = providerOfShard(0, 2);
+            String idle = providerOfShard(1, 2);
+            // Create the providers, which needs an exclusive access to the model
+            update(busy, 0).getValue();
+            update(idle, 0).getValue();
+
+            Promise<Void> blocked = block(busy);
+            Promise<Void> queued = update(busy, 1);
+
+            // Rejected by the full shard, without waiting
+            Promise<Map<String, Integer>> rejected = readAll(List.of(busy, idle));
+            assertTrue(rejected.isDone());
+            assertInstanceOf(RejectedExecutionException.class, rejected.getFailure());
+
+            // The other shard isn't left waiting at the barrier
+            assertEquals(null, update(idle, 2).timeout(1000).getFailure());
+
+            gate.release();
+            blocked.getValue();
+            queued.getValue();
+            assertEquals(Map.of(busy, 1, idle, 2), readAll(List.of(busy, idle)).timeout(1000).getValue());
+        }
+
+        @Test
+        void testInterruptedShard() throws Exception {
+            start(Map.of("shards", 2));
+            String busy = providerOfShard(0, 2);
+            String idle = providerOfShard(1, 2);
+            update(busy, 0).getValue();
+            update(idle, 0).getValue();
+
+            Promise<Void> blocked = block(busy);
+            Promise<Map<String, Integer>> global = readAll(List.of(busy, idle));
+            Promise<Void> after = update(idle, 2);
+
+            // The idle shard waits at the barrier: interrupting it must not lose
+            // the commands queued after the barrier
+            Thread.sleep(100);
+            Thread.getAllStackTraces().keySet().stream()
+                    .filter(t -> t.getName().equals("Eclipse sensiNact Gateway Shard 1"))
+                    .forEach(Thread::interrupt);
+            Thread.sleep(100);
+            assertFalse(after.isDone());
+
+            gate.release();
+            blocked.getValue();
+            assertEquals(Map.of(busy, 0, idle, 0), global.timeout(1000).getValue());
+            assertEquals(null, after.timeout(1000).getFailure());
+        }
+
+        @Test
+        void testShutdownFailsPendingCommands() throws Exception {
+            start(Map.of("shards", 2));
+            String busy = providerOfShard(0, 2);
+            update(busy, 0).getValue();
+
+            block(busy);
+            Promise<Void> queued = update(busy, 1);
+            Promise<Map<String, Integer>> global = readAll(List.of(busy));
+
+            sharded.deactivate();
+            sharded = null;
+
+            assertInstanceOf(RejectedExecutionException.class, queued.timeout(1000).getFailure());
+            assertInstanceOf(RejectedExecutionException.class, global.timeout(1000).getFailure());
+        }
+
+        @Test
+        void testMixedCommands() throws Exception {
+            start(Map.of("shards", 4, "batchSize", 4));
+            List<String> providers = List.of("mixed0", "mixed1", "mixed2", "mixed3", "mixed4", "mixed5");
+
+            List<Promise<Void>> updates = new ArrayList<>();
+            List<Promise<Map<String, Integer>>> reads = new ArrayList<>();
+            List<Map<String, Integer>> expected = new ArrayList<>();
+            Map<String, Integer> current = new HashMap<>();
+            for (int i = 0; i < 200; i++) {
+                String provider = providers.get(i % providers.size());
+                updates.add(update(provider, i));
+                current.put(provider, i);
+                if (i % 7 == 0) {
+                    // Sees exactly the updates queued before it
+                    reads.add(readAll(providers));
+                    expected.add(new HashMap<>(current));
+                }
+            }
+
+            sharded.getPromiseFactory().all(updates).timeout(5000).getValue();
+            for (int i = 0; i < reads.size(); i++) {
+                assertEquals(expected.get(i), reads.get(i).timeout(5000).getValue());
+            }
+        }
+    }
+
+    @Nested
+    class QueuePolicyTests {
+
+        GatewayThreadImpl bounded;
+
+        Semaphore started = new Semaphore(0);
+
+        Semaphore gate = new Semaphore(0);
+
+        @AfterEach
+        void stop() {
+            gate.release();
+            bounded.deactivate();
+        }
+
+        void start(QueuePolicy policy) throws Exception {
+            bounded = new GatewayThreadImpl(metrics, typedEventBus, EMFTestUtil.createResourceSet(), providerPackage,
+                    Converters.standardConverter()
+                            .convert(Map.of("queueCapacity", 1, "queuePolicy", policy.name(), "queueTimeout", 100))
+                            .to(GatewayThreadConfiguration.class));
+
+            // Keep the gateway thread busy
+            bounded.execute(new AbstractTwinCommand<Void>() {
+                @Override
+                protected Promise<Void> call(SensinactDigitalTwin twin, PromiseFactory pf) {
+                    started.release();
+                    gate.acquireUninterruptibly();
+                    return pf.resolved(null);
+                }
+            });
+            assertTrue(started.tryAcquire(1, TimeUnit.SECONDS));
+        }
+
+        Promise<Void> update(String resource, int value) {
+            DataUpdateDto dto = new DataUpdateDto();
+            dto.model = "queueModel";
+            dto.provider = "queueProvider";
+            dto.service = "svc";
+            dto.resource = resource;
+            dto.type = Integer.class;
+            dto.data = value;
+            dto.timestamp = Instant.now();
+            return bounded.execute(new SetValueCommand(dto));
+        }
+
+        Integer getValue(String resource) throws Exception {
+            return bounded.execute(new AbstractTwinCommand<Integer>() {
+                @Override
+                protected Promise<Integer> call(SensinactDigitalTwin twin, PromiseFactory pf) {
+                    return twin.getResource("queueProvider", "svc", resource).getValue(Integer.class)
+                            .map(TimedValue::getValue);
+                }
+            }).getValue();
+        }
+
+        @Test
+        void testFail() throws Exception {
+            start(QueuePolicy.FAIL);
+            Promise<Void> queued = update("a", 1);
+            Promise<Void> rejected = update("b", 2);
+
+            assertTrue(rejected.isDone());
+            assertInstanceOf(RejectedExecutionException.class, rejected.getFailure());
+
+            gate.release();
+            queued.getValue();
+            assertEquals(1, getValue("a"));
+        }
+
+        @Test
+        void testBlock() throws Exception {
+            start(QueuePolicy.BLOCK);
+            Promise<Void> queued = update("a", 1);
+            Promise<Void> timedOut = update("b", 2);
+            assertInstanceOf(RejectedExecutionException.class, timedOut.getFailure());
+
+            new Thread(() -> {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                }
+                gate.release();
+            }).start();
+            Promise<Void> blocked = update("b", 3);
+            queued.getValue();
+            blocked.getValue();
+            assertEquals(3, getValue("b"));
+        }
+
+        @Test
+        void testDropOldest() throws Exception {
+            start(QueuePolicy.DROP_OLDEST);
+            Promise<Void> dropped = update("a", 1);
+            Promise<Void> kept = update("a", 2);
+            Promise<Void> rejected = update("b", 3);
+
+            assertInstanceOf(RejectedExecutionException.class, dropped.getFailure());
+            assertInstanceOf(RejectedExecutionException.class, rejected.getFailure());
+
+            gate.release();
+            kept.getValue();
+            assertEquals(2, getValue("a"));
+        }
+
+        @Test
+        void testCoalesce() throws Exception {
+            start(QueuePolicy.COALESCE);
+            List<Promise<Void>> updates = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                updates.add(update("a", i));
+            }
+
+            gate.release();
+            for (Promise<Void> p : updates) {
+                assertEquals(null, p.getFailure());
+            }
+            assertEquals(9, getValue("a"));
+        }
+    }
+
+    @Nested
+    class BatchTests {
+
+        @Test
+        void testBatchNotifications() throws Exception {
+            Semaphore started = new Semaphore(0);
+            Semaphore gate = new Semaphore(0);
+
+            // Keep the gateway thread busy while the updates are queued
+            thread.execute(new AbstractTwinCommand<Void>() {
+                @Override
+                protected Promise<Void> call(SensinactDigitalTwin twin, PromiseFactory pf) {
+                    started.release();
+                    gate.acquireUninterruptibly();
+                    return pf.resolved(null);
+                }
+            });
+            assertTrue(started.tryAcquire(1, TimeUnit.SECONDS));
+
+            List<Promise<Void>> updates = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                DataUpdateDto dto = new DataUpdateDto();
+                dto.model = "batchModel";
+                dto.provider = "batchProvider";
+                dto.service = "svc";
+                dto.resource = "value";
+                dto.type = Integer.class;
+                dto.data = i;
+                dto.timestamp = Instant.now();
+                updates.add(thread.execute(new SetValueCommand(dto)));
+            }
+            gate.release();
+
+            // Each update is resolved on its own
+            for (Promise<Void> p : updates) {
+                assertEquals(null, p.getFailure());
+            }
+
+            // ... and the notifications of the commands aren't merged
+            verify(typedEventBus, timeout(1000).times(10)).deliver(eq("DATA/batchProvider/svc/value"), any());
+        }
+
+        @Test
+        void testBatchSlightlyOutOfOrderUpdates() throws Exception {
+            Semaphore started = new Semaphore(0);
+            Semaphore gate = new Semaphore(0);
+
+            thread.execute(new AbstractTwinCommand<Void>() {
+                @Override
+                protected Promise<Void> call(SensinactDigitalTwin twin, PromiseFactory pf) {
+                    started.release();
+                    gate.acquireUninterruptibly();
+                    return pf.resolved(null);
+                }
+            });
+            assertTrue(started.tryAcquire(1, TimeUnit.SECONDS));
+
+            // The nexus accepts updates up to 1ms older than the current value
+            Instant now = Instant.now();
+            List<Promise<Void>> updates = new ArrayList<>();
+            for (Instant timestamp : List.of(now, now.minusMillis(1))) {
+                DataUpdateDto dto = new DataUpdateDto();
+                dto.model = "batchModel";
+                dto.provider = "batchOrderProvider";
+                dto.service = "svc";
+                dto.resource = "value";
+                dto.type = Integer.class;
+                dto.data = 42;
+                dto.timestamp = timestamp;
+                updates.add(thread.execute(new SetValueCommand(dto)));
+            }
+            gate.release();
+
+            for (Promise<Void> p : updates) {
+                assertEquals(null, p.getFailure());
+            }
+            verify(typedEventBus, timeout(1000).times(2)).deliver(eq("DATA/batchOrderProvider/svc/value"), any());
+        }
+    }
+
     @Nested
     class LifecycleTests {
         @Nested
@@ -0,0 +1,72 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class ExpiryWheelTest {
+
+    @Test
+    void testDeadlines() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(100, 8, 10_000);
+        wheel.schedule("a", 10_150);
+        wheel.schedule("b", 10_250);
+        wheel.schedule("c", 10_250);
+
+        assertTrue(wheel.advance(10_199).isEmpty());
+        assertEquals(List.of("a"), wheel.advance(10_200));
+        assertTrue(wheel.advance(10_299).isEmpty());
+        assertEquals(Set.of("b", "c"), Set.copyOf(wheel.advance(10_300)));
+        assertTrue(wheel.advance(20_000).isEmpty());
+    }
+
+    @Test
+    void testDeadlineAfterATurn() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(100, 8, 10_000);
+        // Same slot as 10_150, but a turn later
+        wheel.schedule("late", 10_950);
+        wheel.schedule("early", 10_150);
+
+        assertEquals(List.of("early"), wheel.advance(10_200));
+        assertTrue(wheel.advance(10_900).isEmpty());
+        assertEquals(List.of("late"), wheel.advance(11_000));
+    }
+
+    @Test
+    void testPastDeadline() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(100, 8, 10_000);
+        assertTrue(wheel.advance(10_500).isEmpty());
+
+        // Returned on the next tick
+        wheel.schedule("past", 9_000);
+        assertEquals(List.of("past"), wheel.advance(10_600));
+    }
+
+    @Test
+    void testLongPause() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(100, 8, 10_000);
+        wheel.schedule("a", 10_150);
+        wheel.schedule("b", 10_550);
+        wheel.schedule("c", 30_000);
+
+        // More than a turn without advancing
+        assertEquals(Set.of("a", "b"), Set.copyOf(wheel.advance(25_000)));
+        assertEquals(List.of("c"), wheel.advance(30_100));
+    }
+}
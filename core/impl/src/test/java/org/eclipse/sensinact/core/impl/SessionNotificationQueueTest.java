@@ -0,0 +1,222 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.sensinact.core.command.GatewayThread;
+import org.eclipse.sensinact.core.impl.SensiNactSessionImpl.SessionListenerRegistration;
+import org.eclipse.sensinact.core.metrics.IMetricCounter;
+import org.eclipse.sensinact.core.metrics.IMetricsHistogram;
+import org.eclipse.sensinact.core.metrics.IMetricsManager;
+import org.eclipse.sensinact.core.notification.AbstractResourceNotification;
+import org.eclipse.sensinact.core.notification.LifecycleNotification;
+import org.eclipse.sensinact.core.notification.ResourceDataNotification;
+import org.eclipse.sensinact.core.security.UserInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class SessionNotificationQueueTest {
+
+    @Mock
+    IMetricsManager metrics;
+
+    @Mock
+    IMetricCounter dropped;
+
+    @Mock
+    GatewayThread thread;
+
+    /**
+     * Tasks waiting for the test to run them
+     */
+    final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    final List<Object> received = Collections.synchronizedList(new ArrayList<>());
+
+    SessionListenerRegistration registration;
+
+    @BeforeEach
+    void start() {
+        lenient().when(metrics.getCounter(anyString())).thenReturn(mock(IMetricCounter.class));
+        lenient().when(metrics.getCounter("sensinact.sessions.notifications.dropped")).thenReturn(dropped);
+        lenient().when(metrics.getHistogram(anyString())).thenReturn(mock(IMetricsHistogram.class));
+
+        SensiNactSessionImpl session = new SensiNactSessionImpl(UserInfo.ANONYMOUS, thread);
+        registration = session.new SessionListenerRegistration("id", "DATA/") {
+            @Override
+            public void notify(String topic, AbstractResourceNotification notification) {
+                received.add(notification instanceof ResourceDataNotification
+                        ? ((ResourceDataNotification) notification).newValue
+                        : notification);
+            }
+        };
+    }
+
+    SessionNotificationQueue queue(int capacity, SlowConsumerPolicy policy) {
+        return new SessionNotificationQueue(tasks::add, capacity, policy, metrics);
+    }
+
+    void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    boolean offerData(SessionNotificationQueue queue, String resource, Object value) {
+        ResourceDataNotification event = new ResourceDataNotification();
+        event.provider = "provider";
+        event.service = "service";
+        event.resource = resource;
+        event.newValue = value;
+        return queue.offer(registration, event.getTopic(), event);
+    }
+
+    @Test
+    void testDeliveredInOrder() {
+        SessionNotificationQueue queue = queue(8, SlowConsumerPolicy.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(offerData(queue, "resource", i));
+        }
+        // A single drain task per session
+        assertEquals(1, tasks.size());
+        assertTrue(received.isEmpty());
+
+        runTasks();
+        assertEquals(List.of(0, 1, 2, 3, 4), received);
+    }
+
+    @Test
+    void testDropOldest() {
+        SessionNotificationQueue queue = queue(2, SlowConsumerPolicy.DROP_OLDEST);
+        assertTrue(offerData(queue, "resource", 1));
+        assertTrue(offerData(queue, "resource", 2));
+        assertTrue(offerData(queue, "resource", 3));
+
+        runTasks();
+        assertEquals(List.of(2, 3), received);
+        verify(dropped).inc();
+    }
+
+    @Test
+    void testConflate() {
+        SessionNotificationQueue queue = queue(2, SlowConsumerPolicy.CONFLATE);
+        LifecycleNotification lifecycle = new LifecycleNotification();
+        lifecycle.provider = "provider";
+        lifecycle.status = LifecycleNotification.Status.PROVIDER_CREATED;
+
+        assertTrue(offerData(queue, "a", 1));
+        assertTrue(queue.offer(registration, lifecycle.getTopic(), lifecycle));
+        assertTrue(offerData(queue, "a", 2));
+        assertTrue(offerData(queue, "a", 3));
+
+        runTasks();
+        // Latest value, at the place of the first one
+        assertEquals(List.of(3, lifecycle), received);
+
+        // Different resources are not conflated
+        assertTrue(offerData(queue, "a", 4));
+        assertTrue(offerData(queue, "b", 5));
+        assertTrue(offerData(queue, "c", 6));
+        runTasks();
+        assertEquals(List.of(3, lifecycle, 5, 6), received);
+        verify(dropped, times(1)).inc();
+    }
+
+    @Test
+    void testSlowSessionsDontDelayFastOne() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        List<SessionNotificationQueue> queues = new ArrayList<>();
+        try {
+            // As many slow sessions as shared threads
+            CountDownLatch slowStarted = new CountDownLatch(2);
+            for (int s = 0; s < 2; s++) {
+                SensiNactSessionImpl session = new SensiNactSessionImpl(UserInfo.ANONYMOUS, thread);
+                SessionListenerRegistration slow = session.new SessionListenerRegistration("slow" + s, "DATA/") {
+                    @Override
+                    public void notify(String topic, AbstractResourceNotification notification) {
+                        slowStarted.countDown();
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                };
+                SessionNotificationQueue queue = new SessionNotificationQueue(pool, 100,
+                        SlowConsumerPolicy.DROP_OLDEST, metrics);
+                queues.add(queue);
+                for (int i = 0; i < 20; i++) {
+                    ResourceDataNotification event = new ResourceDataNotification();
+                    event.provider = "provider";
+                    event.service = "service";
+                    event.resource = "resource";
+                    event.newValue = i;
+                    queue.offer(slow, event.getTopic(), event);
+                }
+            }
+            assertTrue(slowStarted.await(1, TimeUnit.SECONDS));
+
+            SessionNotificationQueue fastQueue = new SessionNotificationQueue(pool, 100,
+                    SlowConsumerPolicy.DROP_OLDEST, metrics);
+            queues.add(fastQueue);
+            assertTrue(offerData(fastQueue, "resource", 42));
+
+            // Without handing the slow sessions over to their own thread, the fast
+            // one would wait for the 4 seconds of notifications of a slow one
+            long start = System.nanoTime();
+            while (received.isEmpty() && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1)) {
+                Thread.sleep(10);
+            }
+            assertEquals(List.of(42), received);
+        } finally {
+            queues.forEach(SessionNotificationQueue::close);
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testDisconnect() {
+        SessionNotificationQueue queue = queue(2, SlowConsumerPolicy.DISCONNECT);
+        assertTrue(offerData(queue, "resource", 1));
+        assertTrue(offerData(queue, "resource", 2));
+        assertFalse(offerData(queue, "resource", 3));
+
+        // Pending notifications are dropped
+        runTasks();
+        assertTrue(received.isEmpty());
+        assertFalse(offerData(queue, "resource", 4));
+    }
+}
@@ -0,0 +1,86 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class SubscriptionIndexTest {
+
+    @Test
+    void testExactTopic() {
+        SubscriptionIndex<String> index = new SubscriptionIndex<>();
+        index.add("DATA/provider/service/resource", "a");
+
+        assertEquals(List.of("a"), index.match("DATA/provider/service/resource"));
+        assertTrue(index.match("DATA/provider/service").isEmpty());
+        assertTrue(index.match("DATA/provider/service/resource2").isEmpty());
+        assertTrue(index.match("DATA/provider/service/resource/x").isEmpty());
+    }
+
+    @Test
+    void testWildcards() {
+        SubscriptionIndex<String> index = new SubscriptionIndex<>();
+        index.add("*", "all");
+        index.add("DATA/*", "data");
+        index.add("DATA/prov*", "partial");
+        index.add("DATA/provider/*", "provider");
+
+        assertEquals(Set.of("all", "data", "partial", "provider"),
+                Set.copyOf(index.match("DATA/provider/service/resource")));
+        assertEquals(Set.of("all", "data", "partial"), Set.copyOf(index.match("DATA/provider2/service/resource")));
+        assertEquals(Set.of("all", "data", "partial"), Set.copyOf(index.match("DATA/provider")));
+        assertEquals(Set.of("all", "data"), Set.copyOf(index.match("DATA/other/service/resource")));
+        assertEquals(Set.of("all"), Set.copyOf(index.match("LIFECYCLE/provider")));
+    }
+
+    @Test
+    void testMatchesOncePerSubscription() {
+        SubscriptionIndex<String> index = new SubscriptionIndex<>();
+        index.add("DATA/provider/*", "a");
+        index.add("DATA/provider/service/resource", "a");
+        index.add("DATA/provider/service/resource", "b");
+
+        List<String> matches = index.match("DATA/provider/service/resource");
+        assertEquals(3, matches.size());
+        assertEquals(2, matches.stream().filter("a"::equals).count());
+    }
+
+    @Test
+    void testRemove() {
+        SubscriptionIndex<String> index = new SubscriptionIndex<>();
+        index.add("DATA/provider/*", "a");
+        index.add("DATA/provider/*", "b");
+        index.add("DATA/provider/service/resource", "a");
+
+        index.remove("DATA/provider/*", "a");
+        assertEquals(Set.of("a", "b"), Set.copyOf(index.match("DATA/provider/service/resource")));
+        assertEquals(List.of("b"), index.match("DATA/provider/service/other"));
+
+        index.remove("DATA/provider/service/resource", "a");
+        index.remove("DATA/provider/*", "b");
+        assertTrue(index.match("DATA/provider/service/resource").isEmpty());
+
+        // Unknown subscriptions are ignored
+        index.remove("DATA/unknown/*", "a");
+        index.remove("DATA/provider/service/resource", "c");
+
+        index.add("DATA/provider/service/resource", "c");
+        assertEquals(List.of("c"), index.match("DATA/provider/service/resource"));
+    }
+}
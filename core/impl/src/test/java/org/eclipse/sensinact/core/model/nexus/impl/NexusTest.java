@@ -15,9 +15,12 @@ package org.eclipse.sensinact.core.model.nexus.impl;
 
 import static java.time.temporal.ChronoUnit.DAYS;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,7 +35,12 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.common.util.URI;
@@ -506,6 +514,82 @@ public class NexusTest {
 
         }
 
+        @Test
+        void flushInstancesTest() throws Exception {
+
+            ModelNexus nexus = new ModelNexus(resourceSet, ProviderPackage.eINSTANCE, () -> accumulator);
+            Instant now = Instant.now();
+
+            EClass model = nexus.createModel("TestModel", now);
+            EReference service = nexus.createService(model, "testservice", now);
+            EAttribute resource = nexus.createResource(service.getEReferenceType(), "testValue", String.class, now,
+                    null);
+            Provider p = nexus.createProviderInstance("TestModel", "testprovider", now);
+            nexus.createProviderInstance("TestModel", "testprovider2", now);
+            nexus.handleDataUpdate("TestModel", p, service, resource, "test", now);
+            assertTrue(nexus.hasPendingWrites());
+
+            // Written in the background, without shutting down
+            nexus.flushInstances().get(5, TimeUnit.SECONDS);
+            assertFalse(nexus.hasPendingWrites());
+            Path instances = Paths.get("data", "instances");
+            assertTrue(Files.isRegularFile(instances.resolve("testprovider.xmi")));
+            assertTrue(Files.isRegularFile(instances.resolve("testprovider2.xmi")));
+            try (Stream<Path> files = Files.list(instances)) {
+                assertTrue(files.noneMatch(f -> f.getFileName().toString().endsWith(".tmp")));
+            }
+
+            nexus.deleteProvider("TestModel", "testprovider2");
+            assertEquals(1, nexus.getDirtyCount());
+            nexus.flushInstances().get(5, TimeUnit.SECONDS);
+            assertFalse(Files.exists(instances.resolve("testprovider2.xmi")));
+
+            // Only the flushed state is used when loading the instances
+            nexus = new ModelNexus(EMFTestUtil.createResourceSet(), ProviderPackage.eINSTANCE, () -> accumulator);
+            assertObject(nexus, "TestModel", "testprovider", "testservice", "testValue", "test");
+            assertNull(nexus.getProvider("testprovider2"));
+        }
+
+        @Test
+        void snapshotTest() throws Exception {
+
+            ModelNexus nexus = new ModelNexus(resourceSet, ProviderPackage.eINSTANCE, () -> accumulator);
+            Instant now = Instant.now();
+
+            EClass model = nexus.createModel("TestModel", now);
+            EReference service = nexus.createService(model, "testservice", now);
+            EAttribute resource = nexus.createResource(service.getEReferenceType(), "testValue", String.class, now,
+                    null);
+            Provider p = nexus.createProviderInstance("TestModel", "testprovider", now);
+            Provider p2 = nexus.createProviderInstance("TestModel", "testprovider2", now);
+            Provider p3 = nexus.createProviderInstance("TestModel", "testprovider3", now);
+            nexus.handleDataUpdate("TestModel", p, service, resource, "test", now);
+            nexus.handleDataUpdate("TestModel", p2, service, resource, "test2", now);
+            nexus.handleDataUpdate("TestModel", p3, service, resource, "test3", now);
+
+            nexus.writeSnapshot().get(5, TimeUnit.SECONDS);
+            Path snapshot = Paths.get("data", "instances.snapshot");
+            assertTrue(Files.isRegularFile(snapshot));
+
+            // Changes after the snapshot are loaded from the instance files
+            nexus.handleDataUpdate("TestModel", p2, service, resource, "updated", now.plusSeconds(1));
+            nexus.deleteProvider("TestModel", "testprovider3");
+            nexus.flushInstances().get(5, TimeUnit.SECONDS);
+
+            ModelNexus reloaded = new ModelNexus(EMFTestUtil.createResourceSet(), ProviderPackage.eINSTANCE,
+                    () -> accumulator);
+            assertObject(reloaded, "TestModel", "testprovider", "testservice", "testValue", "test");
+            assertObject(reloaded, "TestModel", "testprovider2", "testservice", "testValue", "updated");
+            assertNull(reloaded.getProvider("testprovider3"));
+
+            // A broken snapshot falls back to the instance files
+            Files.write(snapshot, new byte[] { 1, 2, 3 });
+            reloaded = new ModelNexus(EMFTestUtil.createResourceSet(), ProviderPackage.eINSTANCE, () -> accumulator);
+            assertObject(reloaded, "TestModel", "testprovider", "testservice", "testValue", "test");
+            assertObject(reloaded, "TestModel", "testprovider2", "testservice", "testValue", "updated");
+            assertNull(reloaded.getProvider("testprovider3"));
+        }
+
         void assertObject(ModelNexus nexus, String modelName, String provider, String service, String resource,
                 String value) {
             Provider providerObject = nexus.getProvider(modelName, provider);
@@ -567,6 +651,51 @@ public class NexusTest {
             assertThrows(IllegalArgumentException.class,
                     () -> nexus.createProviderInstance("TestModel2", "testprovider", now));
         }
+
+        @Test
+        void testProvidersByModel() {
+            ModelNexus nexus = new ModelNexus(resourceSet, ProviderPackage.eINSTANCE, () -> accumulator);
+
+            Instant now = Instant.now();
+
+            nexus.createModel("TestModel", now);
+            nexus.createModel("TestModel2", now);
+            nexus.createProviderInstance("TestModel", "testprovider", now);
+            nexus.createProviderInstance("TestModel", "testprovider2", now);
+            nexus.createProviderInstance("TestModel2", "testprovider3", now);
+
+            assertEquals(Set.of("testprovider", "testprovider2"), nexus.getProviders("TestModel").stream()
+                    .map(Provider::getId).collect(Collectors.toSet()));
+            assertEquals(List.of("testprovider3"),
+                    nexus.getProviders("TestModel2").stream().map(Provider::getId).collect(Collectors.toList()));
+
+            nexus.deleteProvider("TestModel", "testprovider");
+            assertEquals(List.of("testprovider2"),
+                    nexus.getProviders("TestModel").stream().map(Provider::getId).collect(Collectors.toList()));
+
+            assertThrows(IllegalArgumentException.class, () -> nexus.getProviders("TestModel3"));
+        }
+
+        @Test
+        void testStaleUpdateKeepsProviderVersion() {
+            ModelNexus nexus = new ModelNexus(resourceSet, ProviderPackage.eINSTANCE, () -> accumulator);
+            Instant now = Instant.now();
+
+            EClass model = nexus.createModel("TestModel", now);
+            EReference service = nexus.createService(model, "testservice", now);
+            EAttribute resource = nexus.createResource(service.getEReferenceType(), "testValue", String.class, now,
+                    null);
+            Provider p = nexus.createProviderInstance("TestModel", "testprovider", now);
+            nexus.handleDataUpdate("TestModel", p, service, resource, "test", now);
+            long version = nexus.getProviderVersion("testprovider");
+
+            // Rejected as older than the current value
+            nexus.handleDataUpdate("TestModel", p, service, resource, "stale", now.minusSeconds(1));
+            assertEquals(version, nexus.getProviderVersion("testprovider"));
+
+            nexus.handleDataUpdate("TestModel", p, service, resource, "new", now.plusSeconds(1));
+            assertTrue(nexus.getProviderVersion("testprovider") > version);
+        }
     }
 
     @Nested
@@ -0,0 +1,27 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.notification.impl;
+
+import org.eclipse.sensinact.core.notification.NotificationAccumulator;
+import org.osgi.service.typedevent.TypedEventBus;
+
+/**
+ * Runs the notification tests against the compact accumulator
+ */
+class CompactNotificationSenderTest extends NotificationSenderTest {
+
+    @Override
+    NotificationAccumulator createAccumulator(TypedEventBus bus) {
+        return new CompactNotificationAccumulator(bus);
+    }
+}
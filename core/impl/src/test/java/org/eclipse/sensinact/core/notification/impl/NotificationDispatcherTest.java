@@ -0,0 +1,159 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.core.notification.impl;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.sensinact.core.command.impl.QueuePolicy;
+import org.eclipse.sensinact.core.metrics.IMetricCounter;
+import org.eclipse.sensinact.core.metrics.IMetricsHistogram;
+import org.eclipse.sensinact.core.metrics.IMetricsManager;
+import org.eclipse.sensinact.core.notification.NotificationBatch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.osgi.service.typedevent.TypedEventBus;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationDispatcherTest {
+
+    @Mock
+    TypedEventBus bus;
+
+    @Mock
+    IMetricsManager metrics;
+
+    @BeforeEach
+    void start() {
+        lenient().when(metrics.getHistogram(anyString())).thenReturn(mock(IMetricsHistogram.class));
+    }
+
+    void sendUpdates(NotificationDispatcher dispatcher) {
+        NotificationAccumulatorImpl accumulator = new NotificationAccumulatorImpl(dispatcher);
+        accumulator.resourceValueUpdate("model", "provider", "service", "resource", Integer.class, null, 42,
+                Instant.now());
+        accumulator.resourceAction("model", "provider", "service", "action", Instant.now());
+        accumulator.completeAndSend();
+    }
+
+    @Test
+    void testSynchronousDelivery() {
+        NotificationDispatcher dispatcher = new NotificationDispatcher(bus, metrics, false);
+        sendUpdates(dispatcher);
+
+        InOrder inOrder = Mockito.inOrder(bus);
+        inOrder.verify(bus).deliver(eq("DATA/provider/service/resource"), any());
+        inOrder.verify(bus).deliver(eq("ACTION/provider/service/action"), any());
+        inOrder.verify(bus).deliver(eq(NotificationBatch.TOPIC),
+                argThat(b -> ((NotificationBatch) b).notifications.size() == 2));
+        Mockito.verifyNoMoreInteractions(bus);
+    }
+
+    @Test
+    void testAsynchronousDelivery() {
+        NotificationDispatcher dispatcher = new NotificationDispatcher(bus, metrics, true);
+        try {
+            sendUpdates(dispatcher);
+            sendUpdates(dispatcher);
+        } finally {
+            dispatcher.close();
+        }
+
+        Mockito.verify(bus, timeout(1000).times(2)).deliver(eq(NotificationBatch.TOPIC), any());
+        Mockito.verify(bus, Mockito.times(2)).deliver(eq("DATA/provider/service/resource"), any());
+    }
+
+    @Test
+    void testSlowEventBus() throws Exception {
+        IMetricCounter dropped = mock(IMetricCounter.class);
+        lenient().when(metrics.getCounter(NotificationDispatcher.METRIC_DROPPED)).thenReturn(dropped);
+
+        Semaphore gate = new Semaphore(0);
+        Semaphore delivering = new Semaphore(0);
+        lenient().doAnswer(i -> {
+            delivering.release();
+            gate.acquireUninterruptibly();
+            return null;
+        }).when(bus).deliver(eq(NotificationBatch.TOPIC), any());
+
+        NotificationDispatcher dispatcher = new NotificationDispatcher(bus, metrics, true, 2, QueuePolicy.FAIL, 0);
+        try {
+            // One batch being delivered, two waiting, then dropped
+            sendUpdates(dispatcher);
+            assertTrue(delivering.tryAcquire(1, TimeUnit.SECONDS));
+            for (int i = 0; i < 5; i++) {
+                sendUpdates(dispatcher);
+            }
+            Mockito.verify(dropped, Mockito.times(3)).inc();
+        } finally {
+            gate.release(10);
+            dispatcher.close();
+        }
+        Mockito.verify(bus, timeout(1000).times(3)).deliver(eq(NotificationBatch.TOPIC), any());
+    }
+
+    @Test
+    void testSlowEventBusDefaultPolicy() throws Exception {
+        Semaphore gate = new Semaphore(0);
+        Semaphore delivering = new Semaphore(0);
+        lenient().doAnswer(i -> {
+            delivering.release();
+            gate.acquireUninterruptibly();
+            return null;
+        }).when(bus).deliver(eq(NotificationBatch.TOPIC), any());
+
+        NotificationDispatcher dispatcher = new NotificationDispatcher(bus, metrics, true, 2, QueuePolicy.BLOCK, 0);
+        Thread sender = new Thread(() -> {
+            for (int i = 0; i < 6; i++) {
+                sendUpdates(dispatcher);
+            }
+        });
+        try {
+            sender.start();
+            assertTrue(delivering.tryAcquire(1, TimeUnit.SECONDS));
+
+            // The sender waits for some room in the queue instead of dropping
+            sender.join(200);
+            assertTrue(sender.isAlive());
+        } finally {
+            gate.release(10);
+            sender.join(1000);
+            dispatcher.close();
+        }
+        Mockito.verify(bus, timeout(1000).times(6)).deliver(eq(NotificationBatch.TOPIC), any());
+        Mockito.verify(metrics, Mockito.never()).getCounter(NotificationDispatcher.METRIC_DROPPED);
+    }
+
+    @Test
+    void testEmptyBatch() {
+        NotificationDispatcher dispatcher = new NotificationDispatcher(bus, metrics, false);
+        dispatcher.accept(List.of());
+        Mockito.verifyNoInteractions(bus);
+    }
+}
@@ -65,7 +65,11 @@ class NotificationSenderTest {
 
     @BeforeEach
     void start() {
-        accumulator = new NotificationAccumulatorImpl(bus);
+        accumulator = createAccumulator(bus);
+    }
+
+    NotificationAccumulator createAccumulator(TypedEventBus bus) {
+        return new NotificationAccumulatorImpl(bus);
     }
 
     @Nested
@@ -15,6 +15,8 @@ package org.eclipse.sensinact.core.twin.impl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.time.Instant;
@@ -189,5 +191,30 @@ public class SensinactTwinTest {
             assertEquals(2, list.get(0).getServices().size());
             assertEquals(5, list.get(0).getServices().get(1).getResources().get(0).getValue().getValue());
         }
+
+        @Test
+        void snapshotReusedUntilChanged() throws Exception {
+            twinImpl.createProvider(TEST_MODEL, TEST_PROVIDER);
+            twinImpl.createProvider(TEST_MODEL, "other");
+            twinImpl.getResource(TEST_PROVIDER, TEST_SERVICE, TEST_RESOURCE).setValue(5).getValue();
+
+            ProviderSnapshot snapshot = twinImpl.snapshotProvider(TEST_PROVIDER);
+            ProviderSnapshot other = twinImpl.snapshotProvider("other");
+            assertSame(snapshot, twinImpl.snapshotProvider(TEST_PROVIDER));
+
+            // Only the updated provider is rebuilt
+            twinImpl.getResource(TEST_PROVIDER, TEST_SERVICE, TEST_RESOURCE).setValue(6).getValue();
+            ProviderSnapshot updated = twinImpl.snapshotProvider(TEST_PROVIDER);
+            assertNotSame(snapshot, updated);
+            assertEquals(6, twinImpl.snapshotService(TEST_PROVIDER, TEST_SERVICE).getResources().stream()
+                    .filter(r -> TEST_RESOURCE.equals(r.getName())).findFirst().get().getValue().getValue());
+            assertSame(other, twinImpl.filteredSnapshot(null, p -> "other".equals(p.getName()), null, null).get(0));
+
+            // Model changes invalidate all the snapshots
+            manager.getModel(TEST_MODEL).getServices().get(TEST_SERVICE).createResource("extra")
+                    .withType(String.class).build();
+            assertNotSame(updated, twinImpl.snapshotProvider(TEST_PROVIDER));
+            assertNotSame(other, twinImpl.snapshotProvider("other"));
+        }
     }
 }
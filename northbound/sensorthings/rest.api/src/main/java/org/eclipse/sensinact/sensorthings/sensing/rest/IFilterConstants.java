@@ -18,4 +18,10 @@ public interface IFilterConstants {
      * Request context property holding the filter as a string
      */
     String PROP_FILTER_STRING = "sensorthings.filter";
+
+    /**
+     * Request context property set when the resource already skipped the values
+     * requested with the <code>$skip</code> query parameter
+     */
+    String PROP_SKIP_APPLIED = "sensorthings.skip.applied";
 }
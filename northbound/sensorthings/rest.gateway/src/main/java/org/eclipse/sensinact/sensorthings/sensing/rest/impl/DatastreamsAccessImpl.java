@@ -33,6 +33,7 @@ import org.eclipse.sensinact.sensorthings.sensing.rest.annotation.PaginationLimi
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.core.Application;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
@@ -50,6 +51,9 @@ public class DatastreamsAccessImpl implements DatastreamsAccess {
     @Context
     Application application;
 
+    @Context
+    ContainerRequestContext requestContext;
+
     private ObjectMapper getMapper() {
         return providers.getContextResolver(ObjectMapper.class, MediaType.WILDCARD_TYPE).getContext(null);
     }
@@ -76,8 +80,8 @@ public class DatastreamsAccessImpl implements DatastreamsAccess {
         String service = extractFirstIdSegment(id.substring(provider.length() + 1));
         String resource = extractFirstIdSegment(id.substring(provider.length() + service.length() + 2));
 
-        return RootResourceAccessImpl.getObservationList(userSession, uriInfo, application, provider, service,
-                resource);
+        return RootResourceAccessImpl.getObservationList(userSession, uriInfo, requestContext, application,
+                provider, service, resource);
     }
 
     @Override
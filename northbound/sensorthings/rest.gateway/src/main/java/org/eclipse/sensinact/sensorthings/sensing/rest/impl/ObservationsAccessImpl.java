@@ -37,6 +37,7 @@ import org.eclipse.sensinact.sensorthings.sensing.rest.annotation.PaginationLimi
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.core.Application;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
@@ -54,6 +55,9 @@ public class ObservationsAccessImpl implements ObservationsAccess {
     @Context
     Application application;
 
+    @Context
+    ContainerRequestContext requestContext;
+
     /**
      * Returns a user session
      */
@@ -126,8 +130,8 @@ public class ObservationsAccessImpl implements ObservationsAccess {
         String provider = extractFirstIdSegment(id);
         String service = extractFirstIdSegment(id.substring(provider.length() + 1));
         String resource = extractFirstIdSegment(id.substring(provider.length() + service.length() + 2));
-        return RootResourceAccessImpl.getObservationList(userSession, uriInfo, application, provider, service,
-                resource);
+        return RootResourceAccessImpl.getObservationList(userSession, uriInfo, requestContext, application,
+                provider, service, resource);
     }
 
     @Override
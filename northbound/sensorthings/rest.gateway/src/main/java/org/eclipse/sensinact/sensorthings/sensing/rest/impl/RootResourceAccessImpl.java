@@ -14,6 +14,8 @@ package org.eclipse.sensinact.sensorthings.sensing.rest.impl;
 
 import static java.util.stream.Collectors.toList;
 
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -27,6 +29,7 @@ import org.eclipse.sensinact.core.snapshot.ProviderSnapshot;
 import org.eclipse.sensinact.core.snapshot.ResourceSnapshot;
 import org.eclipse.sensinact.core.snapshot.ResourceValueFilter;
 import org.eclipse.sensinact.core.twin.TimedValue;
+import org.eclipse.sensinact.gateway.southbound.history.api.TimedValuePage;
 import org.eclipse.sensinact.northbound.filters.api.FilterParserException;
 import org.eclipse.sensinact.northbound.filters.sensorthings.EFilterContext;
 import org.eclipse.sensinact.northbound.filters.sensorthings.ISensorthingsFilterParser;
@@ -51,11 +54,17 @@ import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.core.Application;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.UriInfo;
 import jakarta.ws.rs.ext.Providers;
 
 public class RootResourceAccessImpl implements RootResourceAccess {
 
+    /**
+     * Maximum number of historical observations in a page
+     */
+    private static final int HISTORY_PAGE_SIZE = 500;
+
     @Context
     UriInfo uriInfo;
 
@@ -229,9 +238,9 @@ public class RootResourceAccessImpl implements RootResourceAccess {
         return list;
     }
 
-    @SuppressWarnings("unchecked")
     static ResultList<Observation> getObservationList(SensiNactSession userSession, UriInfo uriInfo,
-            Application application, String provider, String service, String resource) {
+            ContainerRequestContext requestContext, Application application, String provider, String service,
+            String resource) {
 
         ResourceSnapshot rd;
         try {
@@ -252,37 +261,152 @@ public class RootResourceAccessImpl implements RootResourceAccess {
         List<Observation> results = new ArrayList<>();
 
         if (historyProvider != null) {
-            Long count = (Long) userSession.actOnResource(historyProvider, "history", "count",
-                    Map.of("provider", provider, "service", service, "resource", resource));
+            MultivaluedMap<String, String> query = uriInfo.getQueryParameters();
+            if (query.containsKey("$filter") || query.containsKey("$orderby")) {
+                // Filtering and sorting apply to all the values at once
+                results = getHistoryWindow(userSession, uriInfo, historyProvider, maxResults, provider, service,
+                        resource);
+            } else {
+                results = getHistoryPage(userSession, uriInfo, requestContext, list, historyProvider, maxResults,
+                        provider, service, resource);
+            }
+        }
 
-            Map<String, Object> params = new HashMap<>(
-                    Map.of("provider", provider, "service", service, "resource", resource));
-            Integer skip = Integer.valueOf(0);
+        // When values were skipped, the current value was skipped as the latest one
+        if (results.isEmpty() && rd.isSet() && requestContext.getProperty(IFilterConstants.PROP_SKIP_APPLIED) == null) {
+            results.add(DtoMapper.toObservation(uriInfo, rd));
+        }
 
-            List<TimedValue<?>> timed;
-            do {
-                params.put("skip", skip);
+        list.value = results;
 
-                timed = (List<TimedValue<?>>) userSession.actOnResource(historyProvider, "history", "range", params);
+        return list;
+    }
 
-                results.addAll(0, DtoMapper.toObservationList(uriInfo, provider, service, resource, timed));
+    /**
+     * Reads a page of the history window of a resource, continuing the page
+     * given by the <code>$skiptoken</code> query parameter
+     */
+    private static List<Observation> getHistoryPage(SensiNactSession userSession, UriInfo uriInfo,
+            ContainerRequestContext requestContext, ResultList<Observation> list, String historyProvider,
+            int maxResults, String provider, String service, String resource) {
+        MultivaluedMap<String, String> query = uriInfo.getQueryParameters();
+        String token = query.getFirst("$skiptoken");
+        boolean withCount = "true".equals(query.getFirst("$count"));
+
+        Map<String, Object> params = new HashMap<>(
+                Map.of("provider", provider, "service", service, "resource", resource));
+
+        if (token == null || withCount) {
+            Long count = (Long) userSession.actOnResource(historyProvider, "history", "count", params);
+            if (withCount) {
+                list.count = (int) Math.min(count, maxResults);
+            }
+            if (token == null && count > maxResults) {
+                // Start from the oldest value of the window
+                params.put("fromTime", getHistoryWindowStart(userSession, historyProvider, maxResults, provider,
+                        service, resource));
+            }
+        }
 
-                if (timed.isEmpty()) {
-                    break;
-                } else if (timed.size() == 500) {
-                    skip = results.size();
-                }
+        int limit = Math.min(getIntParam(query, "$top", HISTORY_PAGE_SIZE), HISTORY_PAGE_SIZE);
+        if (token == null) {
+            // The history provider skips the values rather than the $skip filter,
+            // the following pages continue from the cursor
+            int skip = getIntParam(query, "$skip", 0);
+            if (skip > 0) {
+                params.put("skip", skip);
+                requestContext.setProperty(IFilterConstants.PROP_SKIP_APPLIED, Boolean.TRUE);
+            }
+        } else {
+            params.put("cursor", token);
+        }
+        params.put("limit", limit);
 
-            } while (results.size() < count && results.size() < maxResults);
+        TimedValuePage page;
+        try {
+            page = (TimedValuePage) userSession.actOnResource(historyProvider, "history", "page", params);
+        } catch (RuntimeException e) {
+            if (token != null && isCausedBy(e, IllegalArgumentException.class)) {
+                throw new BadRequestException("Invalid $skiptoken", e);
+            }
+            throw e;
+        }
+        if (page.cursor != null) {
+            list.nextLink = uriInfo.getRequestUriBuilder().replaceQueryParam("$skip")
+                    .replaceQueryParam("$skiptoken", page.cursor).build().toString();
         }
+        return DtoMapper.toObservationList(uriInfo, provider, service, resource, page.values);
+    }
 
-        if (results.isEmpty() && rd.isSet()) {
-            results.add(DtoMapper.toObservation(uriInfo, rd));
+    /**
+     * Finds the time of the oldest value of the history window, when there are
+     * more values than the window can hold
+     */
+    @SuppressWarnings("unchecked")
+    private static ZonedDateTime getHistoryWindowStart(SensiNactSession userSession, String historyProvider,
+            int maxResults, String provider, String service, String resource) {
+        // The range ends with the value at the given offset from the latest one
+        List<TimedValue<?>> timed = (List<TimedValue<?>>) userSession.actOnResource(historyProvider, "history",
+                "range", Map.of("provider", provider, "service", service, "resource", resource, "skip",
+                        Math.max(0, maxResults - 1)));
+        if (timed.isEmpty()) {
+            return null;
         }
+        return timed.get(timed.size() - 1).getTimestamp().atZone(ZoneOffset.UTC);
+    }
 
-        list.value = results;
+    private static boolean isCausedBy(Throwable t, Class<? extends Throwable> type) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        return list;
+    private static int getIntParam(MultivaluedMap<String, String> query, String name, int defaultValue) {
+        String value = query.getFirst(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException nfe) {
+            // Rejected by the query filters
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads all the values of the history window of a resource
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Observation> getHistoryWindow(SensiNactSession userSession, UriInfo uriInfo,
+            String historyProvider, int maxResults, String provider, String service, String resource) {
+        List<Observation> results = new ArrayList<>();
+        Long count = (Long) userSession.actOnResource(historyProvider, "history", "count",
+                Map.of("provider", provider, "service", service, "resource", resource));
+
+        Map<String, Object> params = new HashMap<>(
+                Map.of("provider", provider, "service", service, "resource", resource));
+        Integer skip = Integer.valueOf(0);
+
+        List<TimedValue<?>> timed;
+        do {
+            params.put("skip", skip);
+
+            timed = (List<TimedValue<?>>) userSession.actOnResource(historyProvider, "history", "range", params);
+
+            results.addAll(0, DtoMapper.toObservationList(uriInfo, provider, service, resource, timed));
+
+            if (timed.isEmpty()) {
+                break;
+            } else if (timed.size() == 500) {
+                skip = results.size();
+            }
+
+        } while (results.size() < count && results.size() < maxResults);
+        return results;
     }
 
 }
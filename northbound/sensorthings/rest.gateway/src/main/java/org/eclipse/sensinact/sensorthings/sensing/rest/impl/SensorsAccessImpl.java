@@ -29,6 +29,7 @@ import org.eclipse.sensinact.sensorthings.sensing.rest.annotation.PaginationLimi
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.core.Application;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
@@ -46,6 +47,9 @@ public class SensorsAccessImpl implements SensorsAccess {
     @Context
     Application application;
 
+    @Context
+    ContainerRequestContext requestContext;
+
     /**
      * Returns a user session
      */
@@ -99,8 +103,8 @@ public class SensorsAccessImpl implements SensorsAccess {
         String service = extractFirstIdSegment(id.substring(provider.length() + 1));
         String resource = extractFirstIdSegment(id.substring(provider.length() + service.length() + 2));
 
-        return RootResourceAccessImpl.getObservationList(getSession(), uriInfo, application, provider, service,
-                resource);
+        return RootResourceAccessImpl.getObservationList(getSession(), uriInfo, requestContext, application,
+                provider, service, resource);
     }
 
     @Override
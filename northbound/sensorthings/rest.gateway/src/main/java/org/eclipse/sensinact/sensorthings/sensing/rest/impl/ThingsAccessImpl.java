@@ -34,6 +34,7 @@ import org.eclipse.sensinact.sensorthings.sensing.rest.annotation.PaginationLimi
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.core.Application;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
@@ -51,6 +52,9 @@ public class ThingsAccessImpl implements ThingsAccess {
     @Context
     Application application;
 
+    @Context
+    ContainerRequestContext requestContext;
+
     /**
      * Returns a user session
      */
@@ -125,8 +129,8 @@ public class ThingsAccessImpl implements ThingsAccess {
         String service = extractFirstIdSegment(id2.substring(provider.length() + 1));
         String resource = extractFirstIdSegment(id2.substring(provider.length() + service.length() + 2));
 
-        return RootResourceAccessImpl.getObservationList(userSession, uriInfo, application, provider, service,
-                resource);
+        return RootResourceAccessImpl.getObservationList(userSession, uriInfo, requestContext, application,
+                provider, service, resource);
     }
 
     @Override
@@ -282,6 +282,50 @@ public class ObservationHistoryTest extends AbstractIntegrationTest {
         }
     }
 
+    @Test
+    void invalidHistoryPageTest() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            createResource("page", "skip", "token", String.valueOf(i), TS_2012.plus(ofDays(i)));
+        }
+        waitForRowCount("sensinact.text_data", 14);
+
+        assertEquals(400, utils.query("/Datastreams(page~skip~token)/Observations?$skiptoken=invalid").statusCode());
+
+        ResultList<Observation> observations = utils
+                .queryJson("/Datastreams(page~skip~token)/Observations?$skip=8", RESULT_OBSERVATIONS);
+        assertEquals(2, observations.value.size());
+        assertEquals("8", observations.value.get(0).result);
+
+        // Skipping all the values, including the current one
+        observations = utils.queryJson("/Datastreams(page~skip~token)/Observations?$skip=2000000000",
+                RESULT_OBSERVATIONS);
+        assertTrue(observations.value.isEmpty());
+        assertNull(observations.nextLink);
+    }
+
+    @Test
+    void skipHistoryPageTest() throws Exception {
+        for (int i = 0; i < 2000; i++) {
+            createResource("page", "skip", "far", Integer.valueOf(i), TS_2012.plus(ofDays(i)));
+        }
+        waitForRowCount("sensinact.numeric_data", 2000);
+
+        // Further than a page of values
+        ResultList<Observation> observations = utils
+                .queryJson("/Datastreams(page~skip~far)/Observations?$skip=1800&$top=100", RESULT_OBSERVATIONS);
+        assertEquals(100, observations.value.size());
+        assertNotNull(observations.nextLink);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i + 1800, observations.value.get(i).result);
+        }
+
+        // The next page continues after the skipped values
+        observations = utils.queryJson(observations.nextLink, RESULT_OBSERVATIONS);
+        assertEquals(100, observations.value.size());
+        assertEquals(1900, observations.value.get(0).result);
+        assertNull(observations.nextLink);
+    }
+
     @Test
     void getHistoricObservationTest() throws Exception {
         for (int i = 0; i < 10; i++) {
@@ -13,7 +13,9 @@
 package org.eclipse.sensinact.gateway.southbound.device.factory;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
 
 /**
  *
@@ -48,4 +50,23 @@ public class EncodingUtils {
 
         return new ByteArrayInputStream(toCheck, offset, size);
     }
+
+    /**
+     * Wraps the given stream, skipping the UTF-8 Byte Order Mark if present. Make
+     * sure the expected encoding is UTF-8 before calling this method
+     *
+     * @param input Stream of an UTF-8 content
+     * @return The content without the BOM prefix
+     * @throws IOException Error reading the beginning of the stream
+     */
+    public static InputStream removeBOM(final InputStream input) throws IOException {
+        final PushbackInputStream stream = new PushbackInputStream(input, 3);
+        final byte[] bom = new byte[3];
+        final int read = stream.readNBytes(bom, 0, bom.length);
+        if (read != 3 || (bom[0] & 0xFF) != 0xEF || (bom[1] & 0xFF) != 0xBB || (bom[2] & 0xFF) != 0xBF) {
+            // Not a BOM
+            stream.unread(bom, 0, read);
+        }
+        return stream;
+    }
 }
@@ -12,9 +12,11 @@
 **********************************************************************/
 package org.eclipse.sensinact.gateway.southbound.device.factory;
 
+import java.io.InputStream;
 import java.util.Map;
 
 import org.eclipse.sensinact.gateway.southbound.device.factory.dto.DeviceMappingConfigurationDTO;
+import org.eclipse.sensinact.gateway.southbound.device.factory.dto.DeviceMappingOptionsDTO;
 
 /**
  * Definition of the device mapping handler
@@ -31,4 +33,19 @@ public interface IDeviceMappingHandler {
     void handle(DeviceMappingConfigurationDTO configuration, Map<String, String> context, byte[] payload)
             throws MissingParserException, InvalidResourcePathException, ParserException, DeviceFactoryException;
 
+    /**
+     * Handles the content of the given stream while it is parsed and updates
+     * resources accordingly. If {@link DeviceMappingOptionsDTO#bulkSize} is set,
+     * updates are sent as soon as that many of them are ready, so the updates of
+     * the records read before a parsing error may already have been sent, and the
+     * calling thread waits for each bulk to be applied before sending the next
+     * one. The caller remains responsible for closing the stream.
+     *
+     * @param configuration Mapping configuration (must contain the parser ID)
+     * @param payload       Raw content stream to parse
+     * @throws DeviceFactoryException Error handling records
+     */
+    void handle(DeviceMappingConfigurationDTO configuration, Map<String, String> context, InputStream payload)
+            throws MissingParserException, InvalidResourcePathException, ParserException, DeviceFactoryException;
+
 }
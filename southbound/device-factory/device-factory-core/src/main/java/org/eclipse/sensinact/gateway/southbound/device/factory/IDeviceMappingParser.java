@@ -12,8 +12,11 @@
 **********************************************************************/
 package org.eclipse.sensinact.gateway.southbound.device.factory;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Definition of a parser for device mapping content
@@ -41,4 +44,54 @@ public interface IDeviceMappingParser {
      */
     List<? extends IDeviceMappingRecord> parseRecords(byte[] rawInput, Map<String, Object> parserConfiguration,
             Map<String, String> context) throws ParserException;
+
+    /**
+     * Parse the records found in the given payload, knowing the paths of all the
+     * fields that will be read from them. Parsers can use them to only extract
+     * those fields instead of keeping the whole payload.
+     *
+     * The default implementation ignores the paths.
+     *
+     * @param rawInput            RAW payload
+     * @param parserConfiguration Parser configuration
+     * @param context             Payload context (MQTT topic, ...)
+     * @param paths               Paths of the fields read from the records, null
+     *                            if they depend on the content of the records
+     * @return The list of parsed records (can be null)
+     * @throws ParserException Error parsing payload
+     */
+    default List<? extends IDeviceMappingRecord> parseRecords(byte[] rawInput, Map<String, Object> parserConfiguration,
+            Map<String, String> context, List<RecordPath> paths) throws ParserException {
+        return parseRecords(rawInput, parserConfiguration, context);
+    }
+
+    /**
+     * Parse the records found in the given stream, giving each one to the
+     * consumer as soon as it is read. The caller remains responsible for closing
+     * the stream.
+     *
+     * The default implementation reads the whole stream before parsing it with
+     * {@link #parseRecords(byte[], Map, Map)}. Parsers should override it to avoid
+     * holding the whole payload in memory.
+     *
+     * @param input               RAW payload stream
+     * @param parserConfiguration Parser configuration
+     * @param context             Payload context (MQTT topic, ...)
+     * @param consumer            Consumer of the parsed records
+     * @throws ParserException Error reading or parsing payload
+     */
+    default void parseRecords(InputStream input, Map<String, Object> parserConfiguration, Map<String, String> context,
+            Consumer<? super IDeviceMappingRecord> consumer) throws ParserException {
+        final byte[] rawInput;
+        try {
+            rawInput = input.readAllBytes();
+        } catch (IOException e) {
+            throw new ParserException("Error reading payload", e);
+        }
+
+        final List<? extends IDeviceMappingRecord> records = parseRecords(rawInput, parserConfiguration, context);
+        if (records != null) {
+            records.forEach(consumer);
+        }
+    }
 }
@@ -38,4 +38,46 @@ public class DeviceMappingOptionsDTO {
 
     @JsonProperty("null.action")
     public NullAction nullAction = NullAction.UPDATE;
+
+    /**
+     * Number of resource updates from which they are sent to the gateway while
+     * a streamed payload is parsed, 0 to send them all at once. The parsing
+     * thread waits for the previous bulk to be applied before sending the next
+     * one. Payloads given as byte arrays are always sent at once.
+     */
+    @JsonProperty("bulk.size")
+    public int bulkSize = 0;
+
+    /**
+     * Number of records of a payload from which they are mapped in parallel, 0
+     * to always map them sequentially
+     */
+    @JsonProperty("parallel.threshold")
+    public int parallelThreshold = 0;
+
+    /**
+     * Only send the resource values that changed since the last sent ones
+     */
+    @JsonProperty("changes.only")
+    public boolean changesOnly = false;
+
+    /**
+     * Absolute variation under which a number is considered unchanged
+     */
+    @JsonProperty("changes.deadband")
+    public Double changesDeadband;
+
+    /**
+     * Variation, in percent of the last sent value, under which a number is
+     * considered unchanged
+     */
+    @JsonProperty("changes.deadband.percent")
+    public Double changesDeadbandPercent;
+
+    /**
+     * Delay in seconds after which an unchanged value is sent again, 0 to never
+     * send it
+     */
+    @JsonProperty("changes.heartbeat")
+    public long changesHeartbeat = 0;
 }
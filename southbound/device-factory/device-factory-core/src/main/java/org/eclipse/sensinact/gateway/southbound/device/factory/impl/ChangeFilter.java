@@ -0,0 +1,175 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.device.factory.impl;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+import org.eclipse.sensinact.core.push.dto.GenericDto;
+import org.eclipse.sensinact.gateway.southbound.device.factory.dto.DeviceMappingOptionsDTO;
+import org.osgi.util.promise.Promise;
+
+/**
+ * Drops the resource updates that don't change the last value sent for a
+ * resource, or change it less than the configured deadband.
+ *
+ * The filter keeps the last value sent for each resource of a mapping. Values
+ * within the deadband are compared to that last sent value, so that slow
+ * drifts are still reported. A value is only kept once the gateway applied it,
+ * and only the most recently updated resources are kept.
+ */
+class ChangeFilter {
+
+    /**
+     * Last value sent for a resource
+     */
+    private static class LastValue {
+        final Object value;
+
+        final Instant time;
+
+        LastValue(final Object value, final Instant time) {
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Maximum number of resources whose last value is kept
+     */
+    static final int MAX_RESOURCES = 100_000;
+
+    /**
+     * Provider/service/resource -&gt; last sent value, least recently updated
+     * first
+     */
+    private final Map<String, LastValue> lastValues = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Entry<String, LastValue> eldest) {
+            // An evicted resource will have its next value sent
+            return size() > MAX_RESOURCES;
+        }
+    };
+
+    /**
+     * Checks if the given options enable the filter
+     */
+    static boolean isEnabled(final DeviceMappingOptionsDTO options) {
+        return options.changesOnly;
+    }
+
+    /**
+     * Filters the given updates. The values of the returned updates must be
+     * recorded with {@link #sent(Promise, List)} once they have been pushed.
+     *
+     * @param dtos    Resource updates, in order
+     * @param options Mapping options
+     * @return The updates to send
+     */
+    List<GenericDto> filter(final List<GenericDto> dtos, final DeviceMappingOptionsDTO options) {
+        final Duration heartbeat = options.changesHeartbeat > 0 ? Duration.ofSeconds(options.changesHeartbeat)
+                : null;
+        final Instant now = Instant.now();
+
+        // Values accepted in this bulk, compared to the next ones of the bulk
+        final Map<String, LastValue> accepted = new HashMap<>();
+        final List<GenericDto> changed = new ArrayList<>(dtos.size());
+        for (final GenericDto dto : dtos) {
+            final String key = key(dto);
+            final Instant time = dto.timestamp != null ? dto.timestamp : now;
+            LastValue last = accepted.get(key);
+            if (last == null) {
+                synchronized (lastValues) {
+                    last = lastValues.get(key);
+                }
+            }
+            if (last == null || (heartbeat != null && !time.isBefore(last.time.plus(heartbeat)))
+                    || isChanged(last.value, dto.value, options)) {
+                accepted.put(key, new LastValue(dto.value, time));
+                changed.add(dto);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Records the values of pushed updates once the gateway applied them, so
+     * that values which failed to be applied are sent again
+     *
+     * @param push Promise of the push of the updates
+     * @param dtos Updates returned by {@link #filter(List, DeviceMappingOptionsDTO)}
+     */
+    void sent(final Promise<?> push, final List<GenericDto> dtos) {
+        if (push.isDone()) {
+            try {
+                if (push.getFailure() == null) {
+                    record(dtos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            push.onSuccess(x -> record(dtos));
+        }
+    }
+
+    private void record(final List<GenericDto> dtos) {
+        final Instant now = Instant.now();
+        synchronized (lastValues) {
+            for (final GenericDto dto : dtos) {
+                final LastValue value = new LastValue(dto.value, dto.timestamp != null ? dto.timestamp : now);
+                // Bulks can be applied out of order: keep the most recent value
+                lastValues.merge(key(dto), value, (o, n) -> n.time.isBefore(o.time) ? o : n);
+            }
+        }
+    }
+
+    private static String key(final GenericDto dto) {
+        return String.join("/", dto.provider, dto.service, dto.resource);
+    }
+
+    /**
+     * Checks if the new value must be sent
+     *
+     * @param previous Last sent value
+     * @param value    New value
+     * @param options  Mapping options
+     * @return True if the value changed more than the deadband
+     */
+    private boolean isChanged(final Object previous, final Object value, final DeviceMappingOptionsDTO options) {
+        if (previous instanceof Number && value instanceof Number) {
+            final double prev = ((Number) previous).doubleValue();
+            final double diff = Math.abs(((Number) value).doubleValue() - prev);
+            if (Double.isNaN(diff)) {
+                return !Objects.equals(previous, value);
+            } else if (options.changesDeadband != null && diff <= options.changesDeadband) {
+                return false;
+            } else if (options.changesDeadbandPercent != null
+                    && diff <= Math.abs(prev) * options.changesDeadbandPercent / 100d) {
+                return false;
+            }
+            return diff != 0;
+        }
+
+        return !Objects.equals(previous, value);
+    }
+}
@@ -14,7 +14,8 @@ package org.eclipse.sensinact.gateway.southbound.device.factory.impl;
 
 import static java.util.stream.Collectors.toMap;
 
-import java.time.DateTimeException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
@@ -27,13 +28,18 @@ import java.time.temporal.ChronoField;
 import java.time.temporal.TemporalAccessor;
 import java.time.temporal.UnsupportedTemporalTypeException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -63,6 +69,7 @@ import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.util.promise.Promise;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -89,11 +96,6 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
          */
         Map<String, IResourceMapping> placeholders;
 
-        /**
-         * Variable name -&gt; unresolved record path
-         */
-        Map<String, IResourceMapping> rawVariables;
-
         /**
          * Variable name -&gt; resolved record path
          */
@@ -110,11 +112,175 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
         List<ResourceLiteralMapping> rcLiterals;
     }
 
+    /**
+     * Sends the updates of the handled records by bulks
+     */
+    private class RecordHandler implements Consumer<IDeviceMappingRecord> {
+
+        private final DeviceMappingConfigurationDTO configuration;
+
+        private final MappingPlan plan;
+
+        private final Map<String, String> contextVariables;
+
+        private final int bulkSize;
+
+        private List<GenericDto> dtos = new ArrayList<>();
+
+        /**
+         * Previously sent bulk
+         */
+        private Promise<?> pending;
+
+        /**
+         * @param bulkSize Number of updates sent at once, 0 to send them all on
+         *                 the final flush
+         */
+        RecordHandler(final DeviceMappingConfigurationDTO configuration, final MappingPlan plan,
+                final Map<String, String> context, final int bulkSize) {
+            this.configuration = configuration;
+            this.plan = plan;
+            this.contextVariables = plan.hasVariables() ? contextVariables(context) : Map.of();
+            this.bulkSize = bulkSize;
+        }
+
+        @Override
+        public void accept(final IDeviceMappingRecord record) {
+            mapRecord(record, dtos);
+            if (bulkSize > 0 && dtos.size() >= bulkSize) {
+                flush();
+            }
+        }
+
+        /**
+         * Maps the given records in parallel, keeping their order
+         *
+         * @param records Records to map
+         */
+        void acceptAll(final List<? extends IDeviceMappingRecord> records) {
+            final int parallelism = ForkJoinPool.commonPool().getParallelism();
+            final int chunkSize = Math.max(1, records.size() / (parallelism * 4));
+            final List<GenericDto> mapped = ForkJoinPool.commonPool()
+                    .invoke(new MappingTask(records, 0, records.size(), chunkSize));
+
+            // Send them by bulks of the configured size
+            int start = 0;
+            while (bulkSize > 0 && mapped.size() - start >= bulkSize) {
+                dtos.addAll(mapped.subList(start, start + bulkSize));
+                start += bulkSize;
+                flush();
+            }
+            dtos.addAll(mapped.subList(start, mapped.size()));
+        }
+
+        /**
+         * Maps a record, logging its errors
+         *
+         * @param record Record to map
+         * @param buffer List where to add the updates of the record
+         */
+        private void mapRecord(final IDeviceMappingRecord record, final List<GenericDto> buffer) {
+            try {
+                buffer.addAll(handleRecord(configuration, plan, contextVariables, record));
+            } catch (InvalidResourcePathException | ParserException | VariableNotFoundException e) {
+                logger.error("Error parsing record with parser {}: {}", configuration.parser, e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Maps a range of records, splitting it across the fork-join pool
+         */
+        private class MappingTask extends RecursiveTask<List<GenericDto>> {
+
+            private static final long serialVersionUID = 1L;
+
+            private final List<? extends IDeviceMappingRecord> records;
+
+            private final int from;
+
+            private final int to;
+
+            private final int chunkSize;
+
+            MappingTask(final List<? extends IDeviceMappingRecord> records, final int from, final int to,
+                    final int chunkSize) {
+                this.records = records;
+                this.from = from;
+                this.to = to;
+                this.chunkSize = chunkSize;
+            }
+
+            @Override
+            protected List<GenericDto> compute() {
+                if (to - from <= chunkSize) {
+                    final List<GenericDto> buffer = new ArrayList<>();
+                    for (int i = from; i < to; i++) {
+                        mapRecord(records.get(i), buffer);
+                    }
+                    return buffer;
+                }
+
+                final int middle = (from + to) >>> 1;
+                final MappingTask left = new MappingTask(records, from, middle, chunkSize);
+                left.fork();
+                final List<GenericDto> right = new MappingTask(records, middle, to, chunkSize).compute();
+                final List<GenericDto> result = left.join();
+                result.addAll(right);
+                return result;
+            }
+        }
+
+        /**
+         * Sends the pending updates to the gateway thread, once the previous bulk
+         * has been applied
+         */
+        void flush() {
+            if (dtos.isEmpty()) {
+                return;
+            }
+
+            final DeviceMappingOptionsDTO options = configuration.mappingOptions;
+            List<GenericDto> updates = dtos;
+            dtos = new ArrayList<>();
+            if (ChangeFilter.isEnabled(options)) {
+                // Drop unchanged values
+                updates = plan.changes.filter(updates, options);
+                if (updates.isEmpty()) {
+                    return;
+                }
+            }
+
+            if (pending != null) {
+                try {
+                    pending.getValue();
+                } catch (InvocationTargetException e) {
+                    logger.error("Error updating resources with parser {}: {}", configuration.parser,
+                            e.getCause().getMessage(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            final BulkGenericDto bulk = new BulkGenericDto();
+            bulk.dtos = updates;
+            pending = dataUpdate.pushUpdate(bulk);
+            if (ChangeFilter.isEnabled(options)) {
+                plan.changes.sent(pending, updates);
+            }
+        }
+    }
+
     /**
      * Available parsers
      */
     private final Map<String, List<ComponentServiceObjects<IDeviceMappingParser>>> parsers = new ConcurrentHashMap<>();
 
+    /**
+     * Compiled mapping plans, by configuration
+     */
+    private final Map<DeviceMappingConfigurationDTO, MappingPlan> plans = Collections
+            .synchronizedMap(new WeakHashMap<>());
+
     /**
      * SensiNact update endpoint
      */
@@ -161,10 +327,14 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
         return matchingParsers.get(0);
     }
 
-    @Override
-    public void handle(final DeviceMappingConfigurationDTO configuration, final Map<String, String> context,
-            final byte[] payload) throws DeviceFactoryException {
-
+    /**
+     * Checks the configuration and returns its compiled mapping
+     *
+     * @param configuration Mapping configuration
+     * @return The compiled mapping
+     * @throws DeviceFactoryException Invalid configuration
+     */
+    private MappingPlan prepare(final DeviceMappingConfigurationDTO configuration) throws DeviceFactoryException {
         // Check parser ID
         final String parserId = configuration.parser;
         if (parserId == null || parserId.isBlank()) {
@@ -172,42 +342,64 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
         }
 
         // Extract mapping information
-        final RecordState globalState = computeInitialState(configuration, context);
+        final MappingPlan plan = getPlan(configuration);
 
         // Check if a provider is set
-        if (globalState.placeholders.get(KEY_PROVIDER) == null) {
+        if (plan.placeholders.get(KEY_PROVIDER) == null) {
             throw new IllegalArgumentException("No provider mapping given");
         }
+        return plan;
+    }
+
+    @Override
+    public void handle(final DeviceMappingConfigurationDTO configuration, final Map<String, String> context,
+            final byte[] payload) throws DeviceFactoryException {
+
+        final MappingPlan plan = prepare(configuration);
 
         // Find it
-        final ComponentServiceObjects<IDeviceMappingParser> cso = findParser(parserId);
+        final ComponentServiceObjects<IDeviceMappingParser> cso = findParser(configuration.parser);
         final IDeviceMappingParser parser = cso.getService();
         try {
             // Use it
             final List<? extends IDeviceMappingRecord> records = parser.parseRecords(payload,
-                    configuration.parserOptions, context);
+                    configuration.parserOptions, context, plan.recordPaths);
             if (records != null) {
-                final BulkGenericDto bulk = new BulkGenericDto();
-                bulk.dtos = new ArrayList<>();
-
-                for (final IDeviceMappingRecord record : records) {
-                    try {
-                        bulk.dtos.addAll(handleRecord(configuration, globalState, record));
-                    } catch (InvalidResourcePathException | ParserException | VariableNotFoundException e) {
-                        logger.error("Error parsing record with parser {}: {}", parserId, e.getMessage(), e);
-                    }
-                }
-
-                if (!bulk.dtos.isEmpty()) {
-                    // Send all updates to the gateway thread at once
-                    dataUpdate.pushUpdate(bulk);
+                // All records are already in memory: send them in a single bulk,
+                // without waiting for the gateway on the caller thread
+                final RecordHandler handler = new RecordHandler(configuration, plan, context, 0);
+                final int threshold = configuration.mappingOptions.parallelThreshold;
+                if (threshold > 0 && records.size() >= threshold) {
+                    handler.acceptAll(records);
+                } else {
+                    records.forEach(handler);
                 }
+                handler.flush();
             }
         } finally {
             cso.ungetService(parser);
         }
     }
 
+    @Override
+    public void handle(final DeviceMappingConfigurationDTO configuration, final Map<String, String> context,
+            final InputStream payload) throws DeviceFactoryException {
+
+        final MappingPlan plan = prepare(configuration);
+
+        final ComponentServiceObjects<IDeviceMappingParser> cso = findParser(configuration.parser);
+        final IDeviceMappingParser parser = cso.getService();
+        try {
+            // Records are handled while they are parsed
+            final RecordHandler handler = new RecordHandler(configuration, plan, context,
+                    configuration.mappingOptions.bulkSize);
+            parser.parseRecords(payload, configuration.parserOptions, context, handler);
+            handler.flush();
+        } finally {
+            cso.ungetService(parser);
+        }
+    }
+
     /**
      * Returns the resource value as a string
      *
@@ -248,20 +440,22 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
     /**
      * Handles a record, i.e. an entry containing fields
      *
-     * @param session       sensiNact session to use to update resources
-     * @param configuration Mapping configuration (must contain the parser ID)
-     * @param record        Record to read
+     * @param session          sensiNact session to use to update resources
+     * @param configuration    Mapping configuration (must contain the parser ID)
+     * @param plan             Compiled mapping
+     * @param contextVariables Variables from the payload context
+     * @param record           Record to read
      * @return True if resources have been updated
      * @throws InvalidResourcePathException Invalid mapping
      * @throws ParserException              Error parsing content
      * @throws VariableNotFoundException    Error resolving variables
      */
-    private List<GenericDto> handleRecord(final DeviceMappingConfigurationDTO configuration,
-            final RecordState globalState, final IDeviceMappingRecord record)
+    private List<GenericDto> handleRecord(final DeviceMappingConfigurationDTO configuration, final MappingPlan plan,
+            final Map<String, String> contextVariables, final IDeviceMappingRecord record)
             throws InvalidResourcePathException, ParserException, VariableNotFoundException {
 
         final DeviceMappingOptionsDTO options = configuration.mappingOptions;
-        final RecordState recordState = computeRecordState(configuration, globalState, record);
+        final RecordState recordState = computeRecordState(options, plan, contextVariables, record);
 
         // Extract the provider
         final String rawProvider = getFieldString(record, recordState.placeholders.get(KEY_PROVIDER), options);
@@ -287,7 +481,7 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
         final List<GenericDto> bulk = new ArrayList<>();
 
         // Compute the timestamp
-        final Instant timestamp = computeTimestamp(provider, record, recordState.placeholders, configuration);
+        final Instant timestamp = computeTimestamp(provider, record, recordState.placeholders, plan, options);
 
         // Get the friendly name
         final IResourceMapping nameKey = recordState.placeholders.get(KEY_NAME);
@@ -332,7 +526,7 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
             final String service = rcLiteral.getService();
             final String rcName = rcLiteral.getResource();
             try {
-                final Object value = rcLiteral.getTypedValue(options);
+                final Object value = plan.getTypedValue(rcLiteral, options);
                 if (value != Constants.IGNORE) {
                     if (rcLiteral.isMetadata()) {
                         logger.warn("Metadata update not supported.");
@@ -374,85 +568,84 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
     }
 
     /**
-     * Computes the list of place holders, variables and resource mapping
+     * Returns the compiled plan of the given configuration, compiling it on first
+     * use or if the configuration changed since its compilation
      *
      * @param configuration Device mapping configuration
-     * @param context
-     * @return The global state
+     * @return The compiled mapping
      * @throws InvalidResourcePathException Error parsing resource path
      */
-    private RecordState computeInitialState(DeviceMappingConfigurationDTO configuration, Map<String, String> context)
+    private MappingPlan getPlan(final DeviceMappingConfigurationDTO configuration)
             throws InvalidResourcePathException {
-        final Map<String, IResourceMapping> placeholders = new HashMap<>();
-        final Map<String, IResourceMapping> variablesMappings = new HashMap<>();
-        final List<ResourceRecordMapping> rcMappings = new ArrayList<>();
-        final List<ResourceLiteralMapping> rcLiterals = new ArrayList<>();
-
-        final ResourceMappingHandler handler = new ResourceMappingHandler();
-
-        for (Entry<String, Object> entry : configuration.mapping.entrySet()) {
-            final String key = entry.getKey();
-            final IResourceMapping mapping = handler.parseMapping(key, entry.getValue());
-            if (key.startsWith("@")) {
-                // Placeholder
-                placeholders.put(key, mapping);
-            } else if (key.startsWith("$")) {
-                // Variable
-                if (VariableSolver.isValidKey(key)) {
-                    variablesMappings.put(key, mapping);
-                } else {
-                    throw new InvalidResourcePathException(String.format("Invalid variable format: '%s'", key));
-                }
-            } else {
-                // Mapping
-                if (mapping.isLiteral()) {
-                    rcLiterals.add((ResourceLiteralMapping) mapping);
-                } else {
-                    rcMappings.add((ResourceRecordMapping) mapping);
-                }
-            }
+        MappingPlan plan = plans.get(configuration);
+        if (plan == null || !plan.matches(configuration)) {
+            plan = new MappingPlan(configuration);
+            plans.put(configuration, plan);
         }
+        return plan;
+    }
 
-        final RecordState state = new RecordState();
-        state.placeholders = Map.copyOf(placeholders);
-        state.rawVariables = Map.copyOf(variablesMappings);
-        state.rcMappings = List.copyOf(rcMappings);
-        state.rcLiterals = List.copyOf(rcLiterals);
-        state.variables = Map.copyOf(
+    /**
+     * Prepares the variables given by the payload context
+     *
+     * @param context Payload context
+     * @return The context variables
+     */
+    private Map<String, String> contextVariables(final Map<String, String> context) {
+        return Map.copyOf(
                 context.entrySet().stream().collect(toMap(e -> "$context.".concat(e.getKey()), Entry::getValue)));
-        return state;
     }
 
     /**
      * Computes the state associated to this mapping
      *
-     * @param configuration Mapping configuration
-     * @param record        Current record
+     * @param options          Mapping options
+     * @param plan             Compiled mapping
+     * @param contextVariables Variables from the payload context
+     * @param record           Current record
      * @return The state of the current record
      * @throws InvalidResourcePathException Error parsing a resource or record path
      * @throws ParserException              Error parsing content
      * @throws VariableNotFoundException    Error resolving a variable
      */
-    private RecordState computeRecordState(final DeviceMappingConfigurationDTO configuration,
-            final RecordState initialState, final IDeviceMappingRecord record)
+    private RecordState computeRecordState(final DeviceMappingOptionsDTO options, final MappingPlan plan,
+            final Map<String, String> contextVariables, final IDeviceMappingRecord record)
             throws InvalidResourcePathException, ParserException, VariableNotFoundException {
 
         final RecordState state = new RecordState();
+        if (!plan.hasVariables()) {
+            // Nothing depends on the record
+            state.variables = contextVariables;
+            state.placeholders = plan.placeholders;
+            state.rcMappings = plan.rcMappings;
+            state.rcLiterals = plan.rcLiterals;
+            return state;
+        }
 
         // Resolve variables
-        state.variables = resolveVariables(configuration, record, initialState.variables, initialState.rawVariables);
+        state.variables = resolveVariables(options, record, contextVariables, plan.rawVariables);
 
         // Replace values
-        state.placeholders = fillInVariables(initialState.placeholders, state.variables);
+        state.placeholders = fillInVariables(plan, state.variables);
 
-        state.rcMappings = new ArrayList<>(initialState.rcMappings.size());
-        for (final ResourceRecordMapping rcMapping : initialState.rcMappings) {
-            state.rcMappings.add((ResourceRecordMapping) rcMapping.fillInVariables(state.variables).ensureValidPath());
+        state.rcMappings = new ArrayList<>(plan.rcMappings.size());
+        for (final ResourceRecordMapping rcMapping : plan.rcMappings) {
+            if (plan.isDynamic(rcMapping)) {
+                state.rcMappings
+                        .add((ResourceRecordMapping) rcMapping.fillInVariables(state.variables).ensureValidPath());
+            } else {
+                state.rcMappings.add(rcMapping);
+            }
         }
 
-        state.rcLiterals = new ArrayList<>(initialState.rcLiterals.size());
-        for (final ResourceLiteralMapping rcMapping : initialState.rcLiterals) {
-            state.rcLiterals.add((ResourceLiteralMapping) rcMapping.fillInVariables(state.variables).ensureValidPath());
+        state.rcLiterals = new ArrayList<>(plan.rcLiterals.size());
+        for (final ResourceLiteralMapping rcMapping : plan.rcLiterals) {
+            if (plan.isDynamic(rcMapping)) {
+                state.rcLiterals
+                        .add((ResourceLiteralMapping) rcMapping.fillInVariables(state.variables).ensureValidPath());
+            } else {
+                state.rcLiterals.add(rcMapping);
+            }
         }
         return state;
     }
@@ -460,21 +653,26 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
     /**
      * Fills in variables in the given map
      *
-     * @param placeholders Map with keys and values that can contain variables
-     * @param variables    Resolved variables
+     * @param plan      Compiled mapping, with placeholders that can contain
+     *                  variables
+     * @param variables Resolved variables
      * @return A new map with resolved placeholders
      * @throws InvalidResourcePathException Invalid resolved resource key
      * @throws VariableNotFoundException    Error resolving variables
      */
-    private Map<String, IResourceMapping> fillInVariables(final Map<String, IResourceMapping> placeholders,
-            final Map<String, String> variables) throws VariableNotFoundException, InvalidResourcePathException {
-
-        final Map<String, IResourceMapping> newPlaceholders = new HashMap<>(placeholders.size());
-        for (Entry<String, IResourceMapping> entry : placeholders.entrySet()) {
-            // Update key
-            final String newKey = VariableSolver.fillInVariables(entry.getKey(), variables);
-            final IResourceMapping newValue = entry.getValue().fillInVariables(variables);
-            newPlaceholders.put(newKey, newValue);
+    private Map<String, IResourceMapping> fillInVariables(final MappingPlan plan, final Map<String, String> variables)
+            throws VariableNotFoundException, InvalidResourcePathException {
+
+        final Map<String, IResourceMapping> newPlaceholders = new HashMap<>(plan.placeholders.size());
+        for (Entry<String, IResourceMapping> entry : plan.placeholders.entrySet()) {
+            if (plan.isDynamic(entry.getValue())) {
+                // Update key
+                final String newKey = VariableSolver.fillInVariables(entry.getKey(), variables);
+                final IResourceMapping newValue = entry.getValue().fillInVariables(variables);
+                newPlaceholders.put(newKey, newValue);
+            } else {
+                newPlaceholders.put(entry.getKey(), entry.getValue());
+            }
         }
 
         return newPlaceholders;
@@ -483,18 +681,16 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
     /**
      * Assigns a value to each variable or throws an exception
      *
-     * @param configuration Mapping configuration
-     * @param record        Current record
-     * @param rawVariables  Definitions of variables
+     * @param options      Mapping options
+     * @param record       Current record
+     * @param rawVariables Definitions of variables
      * @return
      * @throws ParserException Error resolving variables
      */
-    private Map<String, String> resolveVariables(final DeviceMappingConfigurationDTO configuration,
+    private Map<String, String> resolveVariables(final DeviceMappingOptionsDTO options,
             final IDeviceMappingRecord record, final Map<String, String> initialVariables,
             final Map<String, IResourceMapping> rawVariables) throws ParserException {
 
-        final DeviceMappingOptionsDTO options = configuration.mappingOptions;
-
         Set<String> previouslyRemaining = new HashSet<>();
         final Set<String> remainingVars = new HashSet<>(rawVariables.keySet());
         final Map<String, String> resolvedVars = new HashMap<>(initialVariables);
@@ -706,38 +902,19 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
         return location;
     }
 
-    /**
-     * Parse the configured timezone, UTC by default
-     *
-     * @param dateTimezone Timezone from mapping configuration
-     * @return Parsed timezone or UTC
-     */
-    private ZoneId getTimezone(final String dateTimezone) {
-        if (dateTimezone == null || dateTimezone.isBlank()) {
-            return ZoneOffset.UTC;
-        } else {
-            try {
-                return ZoneId.of(dateTimezone);
-            } catch (DateTimeException e) {
-                logger.warn("Can't parse configured timezone '{}': {}", dateTimezone, e.getMessage());
-                return ZoneOffset.UTC;
-            }
-        }
-    }
-
     /**
      * Looks for a time value in the given record
      *
      * @param provider      Parsed provider
      * @param record        Record to read
-     * @param placeholders  Defined mapping placeholders
-     * @param configuration Mapping configuration
+     * @param placeholders Defined mapping placeholders
+     * @param plan         Compiled mapping
+     * @param options      Mapping options
      * @return The parsed timestamp or the current time
      */
     private Instant computeTimestamp(final String provider, final IDeviceMappingRecord record,
-            final Map<String, IResourceMapping> placeholders, final DeviceMappingConfigurationDTO configuration) {
-
-        final DeviceMappingOptionsDTO options = configuration.mappingOptions;
+            final Map<String, IResourceMapping> placeholders, final MappingPlan plan,
+            final DeviceMappingOptionsDTO options) {
 
         final IResourceMapping timestampPath = placeholders.get(KEY_TIMESTAMP);
         if (timestampPath != null) {
@@ -747,13 +924,13 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
             }
         }
 
-        final ZoneId timezone = getTimezone(configuration.mappingOptions.dateTimezone);
+        final ZoneId timezone = plan.timezone;
 
         final IResourceMapping dateTimePath = placeholders.get(KEY_DATETIME);
         if (dateTimePath != null) {
             final String strDateTime = getFieldString(record, dateTimePath, options);
             if (strDateTime != null && !strDateTime.isBlank()) {
-                return parseDateTime(strDateTime, timezone, configuration.mappingOptions.formatDateTime);
+                return parseDateTime(strDateTime, timezone, plan.getDateTimeFormat());
             }
         }
 
@@ -762,7 +939,7 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
         if (datePath != null) {
             final String strDate = getFieldString(record, datePath, options);
             if (strDate != null && !strDate.isBlank()) {
-                date = parseDate(strDate, configuration.mappingOptions.formatDate);
+                date = parseDate(strDate, plan.getDateFormat());
             }
         }
 
@@ -771,7 +948,7 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
         if (timePath != null) {
             final String strTime = getFieldString(record, timePath, options);
             if (strTime != null && !strTime.isBlank()) {
-                time = parseTime(strTime, date, timezone, configuration.mappingOptions.formatTime);
+                time = parseTime(strTime, date, timezone, plan.getTimeFormat());
             }
         }
 
@@ -844,50 +1021,35 @@ public class FactoryParserHandler implements IDeviceMappingHandler, IPlaceHolder
     /**
      * Parses a date string
      *
-     * @param strDate    Date string
-     * @param formatDate Custom parsing format (can be null)
+     * @param strDate Date string
+     * @param format  Parsing format
      * @return The parsed date
      */
-    private LocalDate parseDate(String strDate, String formatDate) {
-        DateTimeFormatter format = DateTimeFormatter.ISO_LOCAL_DATE;
-        if (formatDate != null && !formatDate.isBlank()) {
-            format = DateTimeFormatter.ofPattern(formatDate);
-        }
-
+    private LocalDate parseDate(String strDate, DateTimeFormatter format) {
         return extractDate(format.parse(strDate));
     }
 
     /**
      * Parses a time string
      *
-     * @param strTime    Time string
-     * @param timezone   Fallback timezone
-     * @param formatTime Custom parsing format (can be null)
+     * @param strTime  Time string
+     * @param timezone Fallback timezone
+     * @param format   Parsing format
      * @return The parsed date
      */
-    private OffsetTime parseTime(String strTime, LocalDate expectedDate, ZoneId timezone, String formatTime) {
-        DateTimeFormatter format = DateTimeFormatter.ISO_OFFSET_TIME;
-        if (formatTime != null && !formatTime.isBlank()) {
-            format = DateTimeFormatter.ofPattern(formatTime);
-        }
-
+    private OffsetTime parseTime(String strTime, LocalDate expectedDate, ZoneId timezone, DateTimeFormatter format) {
         return extractTime(format.parse(strTime), expectedDate, timezone);
     }
 
     /**
      * Parses a date/time string
      *
-     * @param strDateTime    Date/time string
-     * @param timezone       Fallback timezone
-     * @param formatDateTime Custom parsing format (can be null)
+     * @param strDateTime Date/time string
+     * @param timezone    Fallback timezone
+     * @param format      Parsing format
      * @return The parsed date as an instant
      */
-    private Instant parseDateTime(String strDateTime, ZoneId timezone, String formatDateTime) {
-        DateTimeFormatter format = DateTimeFormatter.ISO_DATE_TIME;
-        if (formatDateTime != null && !formatDateTime.isBlank()) {
-            format = DateTimeFormatter.ofPattern(formatDateTime);
-        }
-
+    private Instant parseDateTime(String strDateTime, ZoneId timezone, DateTimeFormatter format) {
         final TemporalAccessor parsedTime = format.parse(strDateTime);
         final LocalDate date = extractDate(parsedTime);
         final OffsetTime offsetTime = extractTime(parsedTime, date, timezone);
@@ -0,0 +1,363 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.device.factory.impl;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.sensinact.gateway.southbound.device.factory.IResourceMapping;
+import org.eclipse.sensinact.gateway.southbound.device.factory.InvalidResourcePathException;
+import org.eclipse.sensinact.gateway.southbound.device.factory.RecordPath;
+import org.eclipse.sensinact.gateway.southbound.device.factory.dto.DeviceMappingConfigurationDTO;
+import org.eclipse.sensinact.gateway.southbound.device.factory.dto.DeviceMappingOptionsDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Mapping configuration compiled once and reused for all the payloads handled
+ * with it.
+ *
+ * Mappings without variables are parsed and checked here, so only the mappings
+ * using variables are resolved for each record. The plan holds a copy of the
+ * configuration entries it was compiled from, to detect changes made to the
+ * configuration after its compilation.
+ */
+class MappingPlan {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappingPlan.class);
+
+    /**
+     * Copy of the mapping the plan was compiled from
+     */
+    private final Map<String, Object> mapping;
+
+    private final String formatDate;
+
+    private final String formatTime;
+
+    private final String formatDateTime;
+
+    private final String dateTimezone;
+
+    private final String numbersLocale;
+
+    /**
+     * Place holder -&gt; record path
+     */
+    final Map<String, IResourceMapping> placeholders;
+
+    /**
+     * Variable name -&gt; unresolved record path
+     */
+    final Map<String, IResourceMapping> rawVariables;
+
+    /**
+     * SensiNact resource path -&gt; record path, with valid paths when they don't
+     * use variables
+     */
+    final List<ResourceRecordMapping> rcMappings;
+
+    /**
+     * SensiNact resource path -&gt; literal record path, with valid paths when
+     * they don't use variables
+     */
+    final List<ResourceLiteralMapping> rcLiterals;
+
+    /**
+     * Paths of the record fields read by the mapping, null if some depend on
+     * variables
+     */
+    final List<RecordPath> recordPaths;
+
+    /**
+     * Mappings that must be resolved for each record
+     */
+    private final Set<IResourceMapping> dynamic = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Typed values of the literals without variables
+     */
+    private final Map<ResourceLiteralMapping, Object> literalValues = new IdentityHashMap<>();
+
+    /**
+     * Parsing formats, null if the configured pattern is invalid
+     */
+    private final DateTimeFormatter dateFormat;
+
+    private final DateTimeFormatter timeFormat;
+
+    private final DateTimeFormatter dateTimeFormat;
+
+    /**
+     * Timezone of the dates without offset
+     */
+    final ZoneId timezone;
+
+    /**
+     * Last values sent with this mapping
+     */
+    final ChangeFilter changes = new ChangeFilter();
+
+    /**
+     * Compiles the given configuration
+     *
+     * @param configuration Device mapping configuration
+     * @throws InvalidResourcePathException Error parsing resource path
+     */
+    MappingPlan(final DeviceMappingConfigurationDTO configuration) throws InvalidResourcePathException {
+        final DeviceMappingOptionsDTO options = configuration.mappingOptions;
+        formatDate = options.formatDate;
+        formatTime = options.formatTime;
+        formatDateTime = options.formatDateTime;
+        dateTimezone = options.dateTimezone;
+        numbersLocale = options.numbersLocale;
+
+        final Map<String, IResourceMapping> placeholders = new HashMap<>();
+        final Map<String, IResourceMapping> variablesMappings = new HashMap<>();
+        final List<ResourceRecordMapping> rcMappings = new ArrayList<>();
+        final List<ResourceLiteralMapping> rcLiterals = new ArrayList<>();
+
+        final ResourceMappingHandler handler = new ResourceMappingHandler();
+
+        for (Entry<String, Object> entry : configuration.mapping.entrySet()) {
+            final String key = entry.getKey();
+            final IResourceMapping mapping = handler.parseMapping(key, entry.getValue());
+            if (key.startsWith("@")) {
+                // Placeholder
+                if (VariableSolver.containsVariables(key) || usesVariables(mapping)) {
+                    dynamic.add(mapping);
+                }
+                placeholders.put(key, mapping);
+            } else if (key.startsWith("$")) {
+                // Variable
+                if (VariableSolver.isValidKey(key)) {
+                    variablesMappings.put(key, mapping);
+                } else {
+                    throw new InvalidResourcePathException(String.format("Invalid variable format: '%s'", key));
+                }
+            } else if (usesVariables(mapping)) {
+                dynamic.add(mapping);
+                if (mapping.isLiteral()) {
+                    rcLiterals.add((ResourceLiteralMapping) mapping);
+                } else {
+                    rcMappings.add((ResourceRecordMapping) mapping);
+                }
+            } else {
+                IResourceMapping valid;
+                try {
+                    valid = mapping.ensureValidPath();
+                } catch (InvalidResourcePathException e) {
+                    // Reported for each record
+                    dynamic.add(mapping);
+                    valid = mapping;
+                }
+
+                if (valid.isLiteral()) {
+                    rcLiterals.add((ResourceLiteralMapping) valid);
+                    if (!dynamic.contains(valid)) {
+                        precomputeValue((ResourceLiteralMapping) valid, options);
+                    }
+                } else {
+                    rcMappings.add((ResourceRecordMapping) valid);
+                }
+            }
+        }
+
+        this.placeholders = Map.copyOf(placeholders);
+        this.rawVariables = Map.copyOf(variablesMappings);
+        this.rcMappings = List.copyOf(rcMappings);
+        this.rcLiterals = List.copyOf(rcLiterals);
+        this.mapping = new HashMap<>(configuration.mapping);
+        this.recordPaths = computeRecordPaths();
+
+        dateFormat = formatter(formatDate, DateTimeFormatter.ISO_LOCAL_DATE);
+        timeFormat = formatter(formatTime, DateTimeFormatter.ISO_OFFSET_TIME);
+        dateTimeFormat = formatter(formatDateTime, DateTimeFormatter.ISO_DATE_TIME);
+        timezone = parseTimezone(dateTimezone);
+    }
+
+    /**
+     * Lists the record fields read by the mapping
+     *
+     * @return The record paths, null if some depend on variables
+     */
+    private List<RecordPath> computeRecordPaths() {
+        final List<RecordPath> paths = new ArrayList<>();
+        for (final IResourceMapping variable : rawVariables.values()) {
+            if (!variable.isLiteral()) {
+                final RecordPath path = ((ResourceRecordMapping) variable).getRecordPath();
+                // Variables built from other variables don't read the record
+                if (!VariableSolver.containsVariables(path.asString())) {
+                    paths.add(path);
+                }
+            }
+        }
+
+        final List<IResourceMapping> mappings = new ArrayList<>(placeholders.values());
+        mappings.addAll(rcMappings);
+        for (final IResourceMapping mapping : mappings) {
+            if (!mapping.isLiteral()) {
+                final RecordPath path = ((ResourceRecordMapping) mapping).getRecordPath();
+                if (VariableSolver.containsVariables(path.asString())) {
+                    return null;
+                }
+                paths.add(path);
+            }
+        }
+        return List.copyOf(paths);
+    }
+
+    /**
+     * Checks if the mapping uses variables in its resource path or its value
+     */
+    private static boolean usesVariables(final IResourceMapping mapping) {
+        if (VariableSolver.containsVariables(mapping.getResourcePath())) {
+            return true;
+        } else if (mapping.isLiteral()) {
+            final Object value = ((ResourceLiteralMapping) mapping).getValue();
+            return value instanceof String && VariableSolver.containsVariables(value);
+        } else {
+            return VariableSolver.containsVariables(((ResourceRecordMapping) mapping).getRecordPath().asString());
+        }
+    }
+
+    /**
+     * Converts a constant literal once. Values that can't be shared or converted
+     * are left to the handling of each record.
+     */
+    private void precomputeValue(final ResourceLiteralMapping literal, final DeviceMappingOptionsDTO options) {
+        try {
+            final Object value = literal.getTypedValue(options);
+            if (!(value instanceof Collection)) {
+                literalValues.put(literal, value);
+            }
+        } catch (Exception e) {
+            // Reported for each record
+        }
+    }
+
+    private static DateTimeFormatter formatter(final String pattern, final DateTimeFormatter defaultFormat) {
+        if (pattern == null || pattern.isBlank()) {
+            return defaultFormat;
+        }
+
+        try {
+            return DateTimeFormatter.ofPattern(pattern);
+        } catch (IllegalArgumentException e) {
+            // Reported when a date has to be parsed
+            return null;
+        }
+    }
+
+    /**
+     * Parse the configured timezone, UTC by default
+     *
+     * @param dateTimezone Timezone from mapping configuration
+     * @return Parsed timezone or UTC
+     */
+    private static ZoneId parseTimezone(final String dateTimezone) {
+        if (dateTimezone == null || dateTimezone.isBlank()) {
+            return ZoneOffset.UTC;
+        } else {
+            try {
+                return ZoneId.of(dateTimezone);
+            } catch (DateTimeException e) {
+                logger.warn("Can't parse configured timezone '{}': {}", dateTimezone, e.getMessage());
+                return ZoneOffset.UTC;
+            }
+        }
+    }
+
+    /**
+     * Checks if the plan was compiled from the current state of the given
+     * configuration
+     *
+     * @param configuration Device mapping configuration
+     * @return True if the plan can be used for this configuration
+     */
+    boolean matches(final DeviceMappingConfigurationDTO configuration) {
+        final DeviceMappingOptionsDTO options = configuration.mappingOptions;
+        return Objects.equals(formatDate, options.formatDate) && Objects.equals(formatTime, options.formatTime)
+                && Objects.equals(formatDateTime, options.formatDateTime)
+                && Objects.equals(dateTimezone, options.dateTimezone)
+                && Objects.equals(numbersLocale, options.numbersLocale) && mapping.equals(configuration.mapping);
+    }
+
+    /**
+     * Checks if some mappings depend on the record
+     */
+    boolean hasVariables() {
+        return !rawVariables.isEmpty() || !dynamic.isEmpty();
+    }
+
+    /**
+     * Checks if the given mapping must be resolved for each record
+     */
+    boolean isDynamic(final IResourceMapping mapping) {
+        return dynamic.contains(mapping);
+    }
+
+    /**
+     * Returns the typed value of a literal
+     *
+     * @param literal Literal mapping
+     * @param options Mapping options
+     * @return Converted literal value
+     */
+    Object getTypedValue(final ResourceLiteralMapping literal, final DeviceMappingOptionsDTO options) {
+        final Object value = literalValues.get(literal);
+        if (value != null || literalValues.containsKey(literal)) {
+            return value;
+        }
+        return literal.getTypedValue(options);
+    }
+
+    /**
+     * Returns the date parsing format
+     *
+     * @throws IllegalArgumentException Invalid configured pattern
+     */
+    DateTimeFormatter getDateFormat() {
+        return dateFormat != null ? dateFormat : DateTimeFormatter.ofPattern(formatDate);
+    }
+
+    /**
+     * Returns the time parsing format
+     *
+     * @throws IllegalArgumentException Invalid configured pattern
+     */
+    DateTimeFormatter getTimeFormat() {
+        return timeFormat != null ? timeFormat : DateTimeFormatter.ofPattern(formatTime);
+    }
+
+    /**
+     * Returns the date/time parsing format
+     *
+     * @throws IllegalArgumentException Invalid configured pattern
+     */
+    DateTimeFormatter getDateTimeFormat() {
+        return dateTimeFormat != null ? dateTimeFormat : DateTimeFormatter.ofPattern(formatDateTime);
+    }
+}
@@ -16,6 +16,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -282,4 +283,176 @@ public class RecordHandlingTest {
         assertEquals(NullAction.IGNORE, dto.nullAction);
         assertEquals(42, dto.value);
     }
+
+    @Test
+    void testMappingUpdate() throws Exception {
+        final DeviceMappingConfigurationDTO config = prepareConfig();
+        config.mapping.put("@provider", "p");
+        config.mapping.put("@date", "d");
+        config.mapping.put("data/value", "val");
+        config.mapping.put("data/const", Map.of("literal", 42, "type", "int"));
+        config.mappingOptions.formatDate = "dd/MM/yyyy";
+
+        parser.setRecords(Map.of("p", "provider", "d", "02/01/2023", "val", 1, "other", 2));
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(1, getResourceValue("provider", "data", "value", Integer.class));
+        assertEquals(42, getResourceValue("provider", "data", "const", Integer.class));
+        assertEquals(Instant.parse("2023-01-02T00:00:00Z"), getResourceValue("provider", "data", "value").timestamp);
+
+        // Same configuration, new record
+        bulks.clear();
+        parser.setRecords(Map.of("p", "provider", "d", "03/01/2023", "val", 3, "other", 4));
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(3, getResourceValue("provider", "data", "value", Integer.class));
+        assertEquals(42, getResourceValue("provider", "data", "const", Integer.class));
+        assertEquals(Instant.parse("2023-01-03T00:00:00Z"), getResourceValue("provider", "data", "value").timestamp);
+
+        // Updated configuration
+        bulks.clear();
+        config.mapping.put("data/value", "other");
+        config.mapping.put("data/const", Map.of("literal", 21, "type", "int"));
+        config.mappingOptions.formatDate = "MM/dd/yyyy";
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(4, getResourceValue("provider", "data", "value", Integer.class));
+        assertEquals(21, getResourceValue("provider", "data", "const", Integer.class));
+        assertEquals(Instant.parse("2023-03-01T00:00:00Z"), getResourceValue("provider", "data", "value").timestamp);
+    }
+
+    @Test
+    void testParallelMapping() throws Exception {
+        final DeviceMappingConfigurationDTO config = prepareConfig();
+        config.mapping.put("@provider", "p");
+        config.mapping.put("$rc", "r");
+        config.mapping.put("data/${rc}", "val");
+        config.mapping.put("data/const", Map.of("literal", 42, "type", "int"));
+        config.mappingOptions.bulkSize = 0;
+
+        final List<MapRecord> records = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            // Records without provider are ignored
+            records.add(new MapRecord(
+                    Map.of("p", i % 100 == 0 ? "" : "provider" + i, "r", "value" + (i % 3), "val", i)));
+        }
+        parser.setRecords(records);
+
+        // Sequential mapping
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(1, bulks.size());
+        final List<GenericDto> expected = bulks.get(0).dtos;
+        assertEquals(990 * 2, expected.size());
+
+        // Parallel mapping, in a single bulk
+        bulks.clear();
+        config.mappingOptions.parallelThreshold = 10;
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(1, bulks.size());
+        final List<GenericDto> parallel = bulks.get(0).dtos;
+        assertEquals(expected.size(), parallel.size());
+        for (int i = 0; i < expected.size(); i++) {
+            final GenericDto e = expected.get(i);
+            final GenericDto p = parallel.get(i);
+            assertEquals(e.provider, p.provider);
+            assertEquals(e.service, p.service);
+            assertEquals(e.resource, p.resource);
+            assertEquals(e.value, p.value);
+        }
+
+        // The bulk size only applies to streamed payloads
+        bulks.clear();
+        config.mappingOptions.bulkSize = 500;
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(1, bulks.size());
+        assertEquals(expected.size(), bulks.get(0).dtos.size());
+        assertEquals("provider1", bulks.get(0).dtos.get(0).provider);
+        assertEquals("provider999", bulks.get(0).dtos.get(expected.size() - 1).provider);
+    }
+
+    @Test
+    void testChangesOnly() throws Exception {
+        final DeviceMappingConfigurationDTO config = prepareConfig();
+        config.mapping.put("@provider", "p");
+        config.mapping.put("@datetime", "d");
+        config.mapping.put("data/value", "val");
+        config.mapping.put("data/text", "txt");
+        config.mappingOptions.changesOnly = true;
+        config.mappingOptions.changesDeadband = 0.5;
+        config.mappingOptions.changesHeartbeat = 3600;
+
+        parser.setRecords(Map.of("p", "provider", "d", "2023-01-01T00:00:00Z", "val", 10, "txt", "a"));
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(10, getResourceValue("provider", "data", "value", Integer.class));
+        assertEquals("a", getResourceValue("provider", "data", "text", String.class));
+
+        // Nothing changed
+        bulks.clear();
+        parser.setRecords(Map.of("p", "provider", "d", "2023-01-01T00:10:00Z", "val", 10, "txt", "a"));
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(0, bulks.size());
+
+        // Within the deadband of the last sent value
+        parser.setRecords(Map.of("p", "provider", "d", "2023-01-01T00:20:00Z", "val", 10.4, "txt", "a"));
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(0, bulks.size());
+
+        // Only changed values are sent
+        parser.setRecords(Map.of("p", "provider", "d", "2023-01-01T00:30:00Z", "val", 10.4, "txt", "b"));
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals("b", getResourceValue("provider", "data", "text", String.class));
+        assertNull(getResourceValue("provider", "data", "value"));
+
+        bulks.clear();
+        parser.setRecords(Map.of("p", "provider", "d", "2023-01-01T00:40:00Z", "val", 10.6, "txt", "b"));
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(Double.valueOf(10.6), getResourceValue("provider", "data", "value", Double.class));
+        assertNull(getResourceValue("provider", "data", "text"));
+
+        // Percentage deadband
+        bulks.clear();
+        config.mappingOptions.changesDeadband = null;
+        config.mappingOptions.changesDeadbandPercent = 10d;
+        parser.setRecords(Map.of("p", "provider", "d", "2023-01-01T00:50:00Z", "val", 11.5, "txt", "b"));
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(0, bulks.size());
+
+        // Unchanged values are sent again after the heartbeat delay
+        parser.setRecords(Map.of("p", "provider", "d", "2023-01-01T01:00:00Z", "val", 10.6, "txt", "b"));
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(0, bulks.size());
+        parser.setRecords(Map.of("p", "provider", "d", "2023-01-01T01:30:00Z", "val", 10.6, "txt", "b"));
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertNull(getResourceValue("provider", "data", "value"));
+        assertEquals("b", getResourceValue("provider", "data", "text", String.class));
+    }
+
+    @Test
+    void testChangesOnlyFailedUpdate() throws Exception {
+        final DeviceMappingConfigurationDTO config = prepareConfig();
+        config.mapping.put("@provider", "p");
+        config.mapping.put("data/value", "val");
+        config.mappingOptions.changesOnly = true;
+
+        // The gateway fails to apply the first update
+        Mockito.when(deviceMapper.dataUpdate.pushUpdate(Mockito.any())).thenAnswer(i -> {
+            bulks.add(i.getArgument(0, BulkGenericDto.class));
+            return Promises.failed(new IllegalStateException("Failed update"));
+        });
+        parser.setRecords(Map.of("p", "provider", "val", 10));
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(1, bulks.size());
+
+        // ... so the same value is sent again
+        Mockito.when(deviceMapper.dataUpdate.pushUpdate(Mockito.any())).thenAnswer(i -> {
+            final BulkGenericDto dto = i.getArgument(0, BulkGenericDto.class);
+            bulks.add(dto);
+            return Promises.resolved(dto);
+        });
+        bulks.clear();
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(10, getResourceValue("provider", "data", "value", Integer.class));
+
+        // ... until it has been applied
+        bulks.clear();
+        deviceMapper.handle(config, Map.of(), new byte[0]);
+        assertEquals(0, bulks.size());
+    }
 }
@@ -0,0 +1,215 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.device.factory.parser.binary;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.sensinact.gateway.southbound.device.factory.ParserException;
+
+/**
+ * Description of a field in a fixed-layout binary record
+ */
+class BinaryField {
+
+    /**
+     * Kind of value stored in a field
+     */
+    enum FieldType {
+        INT, UINT, FLOAT, STRING, HEX;
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Offset of the field in the record, in bytes
+     */
+    final int offset;
+
+    /**
+     * Length of the field, in bytes
+     */
+    final int length;
+
+    final FieldType type;
+
+    final ByteOrder order;
+
+    /**
+     * Factor applied to numbers, null to keep the raw value
+     */
+    final Double scale;
+
+    /**
+     * Encoding of string fields
+     */
+    final Charset charset;
+
+    /**
+     * Parses the description of a field
+     *
+     * @param name         Field name
+     * @param config       Field configuration
+     * @param defaultOrder Byte order of the record
+     * @throws ParserException Invalid field description
+     */
+    BinaryField(final String name, final Map<?, ?> config, final ByteOrder defaultOrder) throws ParserException {
+        offset = getInt(name, config, "offset");
+        length = getInt(name, config, "length");
+        if (offset < 0 || length <= 0) {
+            throw new ParserException(String.format("Invalid offset or length of field '%s'", name));
+        }
+
+        final Object strType = config.get("type");
+        try {
+            type = strType == null ? FieldType.INT
+                    : FieldType.valueOf(String.valueOf(strType).toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ParserException(String.format("Unknown type of field '%s': %s", name, strType));
+        }
+
+        switch (type) {
+        case INT:
+        case UINT:
+            if (length > 8) {
+                throw new ParserException(String.format("Integer field '%s' can't be longer than 8 bytes", name));
+            }
+            break;
+
+        case FLOAT:
+            if (length != 4 && length != 8) {
+                throw new ParserException(String.format("Float field '%s' must have a length of 4 or 8 bytes", name));
+            }
+            break;
+
+        default:
+            break;
+        }
+
+        final Object endianness = config.get("endianness");
+        order = endianness == null ? defaultOrder : parseEndianness(endianness);
+
+        final Object rawScale = config.get("scale");
+        scale = rawScale instanceof Number ? ((Number) rawScale).doubleValue() : null;
+
+        final Object encoding = config.get("encoding");
+        try {
+            charset = encoding == null ? Charset.forName("UTF-8") : Charset.forName(String.valueOf(encoding));
+        } catch (IllegalArgumentException e) {
+            throw new ParserException(String.format("Unknown encoding of field '%s': %s", name, encoding), e);
+        }
+    }
+
+    private static int getInt(final String name, final Map<?, ?> config, final String key) throws ParserException {
+        final Object value = config.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        throw new ParserException(String.format("Missing %s of field '%s'", key, name));
+    }
+
+    /**
+     * Parses an endianness name: "big" or "little"
+     *
+     * @throws ParserException Unknown endianness
+     */
+    static ByteOrder parseEndianness(final Object endianness) throws ParserException {
+        switch (String.valueOf(endianness).toLowerCase(Locale.ROOT)) {
+        case "big":
+            return ByteOrder.BIG_ENDIAN;
+        case "little":
+            return ByteOrder.LITTLE_ENDIAN;
+        default:
+            throw new ParserException("Unknown endianness: " + endianness);
+        }
+    }
+
+    /**
+     * Decodes the field from the given record
+     *
+     * @param record Record content, starting at the record first byte
+     * @return The decoded value, null if the record is too short
+     */
+    Object decode(final ByteBuffer record) {
+        if (offset + length > record.remaining()) {
+            return null;
+        }
+
+        final int start = record.position() + offset;
+        switch (type) {
+        case FLOAT: {
+            final ByteBuffer buffer = record.duplicate().order(order);
+            final double value = length == 4 ? buffer.getFloat(start) : buffer.getDouble(start);
+            return scale != null ? value * scale : value;
+        }
+
+        case STRING: {
+            final byte[] bytes = new byte[length];
+            record.duplicate().position(start).get(bytes);
+            // Fixed-size strings are padded with NUL characters
+            int end = length;
+            while (end > 0 && bytes[end - 1] == 0) {
+                end--;
+            }
+            return new String(bytes, 0, end, charset);
+        }
+
+        case HEX: {
+            final char[] chars = new char[length * 2];
+            for (int i = 0; i < length; i++) {
+                final int b = record.get(start + i) & 0xFF;
+                chars[i * 2] = HEX_DIGITS[b >>> 4];
+                chars[i * 2 + 1] = HEX_DIGITS[b & 0x0F];
+            }
+            return new String(chars);
+        }
+
+        default:
+            return decodeInteger(record, start);
+        }
+    }
+
+    /**
+     * Decodes an integer of any length up to 8 bytes
+     */
+    private Object decodeInteger(final ByteBuffer record, final int start) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            final int idx = order == ByteOrder.BIG_ENDIAN ? start + i : start + length - 1 - i;
+            value = (value << 8) | (record.get(idx) & 0xFF);
+        }
+
+        final int shift = 64 - length * 8;
+        if (type == FieldType.INT && shift > 0) {
+            // Sign extension
+            value = (value << shift) >> shift;
+        }
+
+        if (scale != null) {
+            if (type == FieldType.UINT && value < 0) {
+                return new BigInteger(Long.toUnsignedString(value)).doubleValue() * scale;
+            }
+            return value * scale;
+        } else if (type == FieldType.UINT && value < 0) {
+            return new BigInteger(Long.toUnsignedString(value));
+        } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        } else {
+            return value;
+        }
+    }
+}
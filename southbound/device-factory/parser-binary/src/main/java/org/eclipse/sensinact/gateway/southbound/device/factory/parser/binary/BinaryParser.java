@@ -0,0 +1,131 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.device.factory.parser.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Consumer;
+
+import org.eclipse.sensinact.gateway.southbound.device.factory.IDeviceMappingParser;
+import org.eclipse.sensinact.gateway.southbound.device.factory.IDeviceMappingRecord;
+import org.eclipse.sensinact.gateway.southbound.device.factory.ParserException;
+import org.osgi.service.component.annotations.Component;
+
+/**
+ * Fixed-layout binary parser provider: the position of each field in a record
+ * is described in the parser options.
+ */
+@Component(immediate = true, service = IDeviceMappingParser.class, property = IDeviceMappingParser.PARSER_ID + "="
+        + "binary")
+public class BinaryParser implements IDeviceMappingParser {
+
+    @Override
+    public List<? extends IDeviceMappingRecord> parseRecords(final byte[] rawInput,
+            final Map<String, Object> parserConfiguration, final Map<String, String> context) throws ParserException {
+        final Map<String, BinaryField> fields = parseFields(parserConfiguration);
+        final int recordLength = getRecordLength(parserConfiguration);
+        if (recordLength <= 0) {
+            // The whole payload is a single record
+            return List.of(new BinaryRecord(ByteBuffer.wrap(rawInput), fields));
+        }
+
+        checkLength(rawInput.length, recordLength);
+        final List<BinaryRecord> records = new ArrayList<>(rawInput.length / recordLength);
+        for (int offset = 0; offset < rawInput.length; offset += recordLength) {
+            records.add(new BinaryRecord(ByteBuffer.wrap(rawInput, offset, recordLength).slice(), fields));
+        }
+        return records;
+    }
+
+    @Override
+    public void parseRecords(final InputStream rawInput, final Map<String, Object> parserConfiguration,
+            final Map<String, String> context, final Consumer<? super IDeviceMappingRecord> consumer)
+            throws ParserException {
+        final int recordLength = getRecordLength(parserConfiguration);
+        if (recordLength <= 0) {
+            IDeviceMappingParser.super.parseRecords(rawInput, parserConfiguration, context, consumer);
+            return;
+        }
+
+        // Records are read one at a time
+        final Map<String, BinaryField> fields = parseFields(parserConfiguration);
+        try {
+            byte[] content;
+            while ((content = rawInput.readNBytes(recordLength)).length != 0) {
+                checkLength(content.length, recordLength);
+                consumer.accept(new BinaryRecord(ByteBuffer.wrap(content), fields));
+            }
+        } catch (IOException e) {
+            throw new ParserException("Error reading binary input", e);
+        }
+    }
+
+    /**
+     * Returns the configured record length, 0 if the payload is a single record
+     *
+     * @throws ParserException Invalid record length
+     */
+    private int getRecordLength(final Map<String, Object> parserConfiguration) throws ParserException {
+        final Object recordLength = parserConfiguration.get("record.length");
+        if (recordLength == null) {
+            return 0;
+        } else if (recordLength instanceof Number && ((Number) recordLength).intValue() > 0) {
+            return ((Number) recordLength).intValue();
+        } else {
+            throw new ParserException("Invalid record length: " + recordLength);
+        }
+    }
+
+    private void checkLength(final int length, final int recordLength) throws ParserException {
+        if (length % recordLength != 0) {
+            throw new ParserException(
+                    String.format("Payload length %d is not a multiple of the record length %d", length, recordLength));
+        }
+    }
+
+    /**
+     * Parses the description of the record fields
+     *
+     * @param parserConfiguration Parser configuration
+     * @return Field name -&gt; field description
+     * @throws ParserException Invalid fields description
+     */
+    private Map<String, BinaryField> parseFields(final Map<String, Object> parserConfiguration)
+            throws ParserException {
+        final Object endianness = parserConfiguration.get("endianness");
+        final ByteOrder order = endianness == null ? ByteOrder.BIG_ENDIAN : BinaryField.parseEndianness(endianness);
+
+        final Object rawFields = parserConfiguration.get("fields");
+        if (!(rawFields instanceof Map)) {
+            throw new ParserException("No fields described in the binary parser options");
+        }
+
+        final Map<String, BinaryField> fields = new LinkedHashMap<>();
+        for (Entry<?, ?> entry : ((Map<?, ?>) rawFields).entrySet()) {
+            final String name = String.valueOf(entry.getKey());
+            if (!(entry.getValue() instanceof Map)) {
+                throw new ParserException(String.format("Invalid description of field '%s'", name));
+            }
+            fields.put(name, new BinaryField(name, (Map<?, ?>) entry.getValue(), order));
+        }
+        return Collections.unmodifiableMap(fields);
+    }
+}
@@ -0,0 +1,67 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.device.factory.parser.binary;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.eclipse.sensinact.gateway.southbound.device.factory.IDeviceMappingRecord;
+import org.eclipse.sensinact.gateway.southbound.device.factory.RecordPath;
+import org.eclipse.sensinact.gateway.southbound.device.factory.dto.DeviceMappingOptionsDTO;
+
+/**
+ * Device factory fixed-layout binary record. Fields are decoded when they are
+ * read.
+ */
+public class BinaryRecord implements IDeviceMappingRecord {
+
+    /**
+     * Record content
+     */
+    private final ByteBuffer content;
+
+    /**
+     * Field name -&gt; field description
+     */
+    private final Map<String, BinaryField> fields;
+
+    BinaryRecord(final ByteBuffer content, final Map<String, BinaryField> fields) {
+        this.content = content;
+        this.fields = fields;
+    }
+
+    private Object getRawField(final RecordPath field) {
+        final BinaryField description = fields.get(field.asString());
+        final Object value = description != null ? description.decode(content) : null;
+        if (value == null && field.hasDefaultValue()) {
+            return field.getDefaultValue();
+        }
+        return value;
+    }
+
+    @Override
+    public Object getField(final RecordPath field, final DeviceMappingOptionsDTO options) {
+        final Object rawValue = getRawField(field);
+        if (rawValue == null) {
+            return null;
+        }
+
+        return field.convertValue(rawValue, options);
+    }
+
+    @Override
+    public String getFieldString(final RecordPath field, final DeviceMappingOptionsDTO options) {
+        final Object rawValue = getRawField(field);
+        return rawValue != null ? String.valueOf(rawValue) : null;
+    }
+}
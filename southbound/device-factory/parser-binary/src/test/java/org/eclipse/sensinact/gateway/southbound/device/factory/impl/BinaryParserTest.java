@@ -0,0 +1,183 @@
+package org.eclipse.sensinact.gateway.southbound.device.factory.impl;
+
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.sensinact.core.push.DataUpdate;
+import org.eclipse.sensinact.core.push.dto.BulkGenericDto;
+import org.eclipse.sensinact.core.push.dto.GenericDto;
+import org.eclipse.sensinact.gateway.southbound.device.factory.IDeviceMappingParser;
+import org.eclipse.sensinact.gateway.southbound.device.factory.ParserException;
+import org.eclipse.sensinact.gateway.southbound.device.factory.dto.DeviceMappingConfigurationDTO;
+import org.eclipse.sensinact.gateway.southbound.device.factory.parser.binary.BinaryParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.ComponentServiceObjects;
+import org.osgi.util.promise.Promises;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests fixed-layout binary mapping
+ */
+public class BinaryParserTest {
+    private FactoryParserHandler deviceMapper;
+    private ComponentServiceObjects<IDeviceMappingParser> cso;
+
+    private List<BulkGenericDto> bulks = new ArrayList<>();
+
+    @BeforeEach
+    void start() throws InterruptedException {
+        deviceMapper = new FactoryParserHandler();
+        deviceMapper.dataUpdate = Mockito.mock(DataUpdate.class);
+
+        Mockito.when(deviceMapper.dataUpdate.pushUpdate(Mockito.any())).thenAnswer(i -> {
+            final BulkGenericDto dto = i.getArgument(0, BulkGenericDto.class);
+            bulks.add(dto);
+            return Promises.resolved(dto);
+        });
+
+        final BinaryParser parser = new BinaryParser();
+        final DeviceMappingParserReference svcRef = new DeviceMappingParserReference();
+        cso = new ComponentServiceObjects<IDeviceMappingParser>() {
+            @Override
+            public IDeviceMappingParser getService() {
+                return parser;
+            }
+
+            @Override
+            public ServiceReference<IDeviceMappingParser> getServiceReference() {
+                return svcRef;
+            }
+
+            @Override
+            public void ungetService(IDeviceMappingParser service) {
+            }
+        };
+        deviceMapper.addParser(cso, Map.of(IDeviceMappingParser.PARSER_ID, "binary"));
+    }
+
+    @AfterEach
+    void stop() {
+        deviceMapper.removeParser(cso, Map.of(IDeviceMappingParser.PARSER_ID, "binary"));
+        deviceMapper = null;
+        cso = null;
+        bulks.clear();
+    }
+
+    /**
+     * Reads the given mapping configuration
+     */
+    DeviceMappingConfigurationDTO readConfiguration(final String filename) throws IOException {
+        try (InputStream inStream = getClass().getClassLoader().getResourceAsStream(filename)) {
+            return new ObjectMapper().readValue(inStream.readAllBytes(), DeviceMappingConfigurationDTO.class);
+        }
+    }
+
+    /**
+     * Get the value of the resource in the bulks
+     */
+    Object getResourceValue(final String provider, final String service, final String resource) {
+        for (BulkGenericDto bulk : bulks) {
+            for (GenericDto dto : bulk.dtos) {
+                if (dto.provider.equals(provider) && dto.service.equals(service) && dto.resource.equals(resource)) {
+                    return dto.value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Prepares a payload with two records
+     */
+    byte[] makePayload() {
+        final ByteBuffer buffer = ByteBuffer.allocate(32);
+        buffer.putInt(0xCAFE0001).putShort((short) -25).put((byte) 200).putInt(0xFFFFFFFF)
+                .put("ab".getBytes(StandardCharsets.UTF_8)).put(new byte[3]);
+        buffer.putInt(0xCAFE0002).putShort((short) 215).put((byte) 40).putInt(Integer.reverseBytes(42))
+                .put("cdefg".getBytes(StandardCharsets.UTF_8));
+        return buffer.array();
+    }
+
+    /**
+     * Mapping a payload with fixed-size records
+     */
+    @Test
+    void testRecords() throws Exception {
+        DeviceMappingConfigurationDTO config = readConfiguration("binary/records-mapping.json");
+        deviceMapper.handle(config, Map.of(), makePayload());
+
+        // Signed and scaled value
+        assertEquals(-2.5, (Double) getResourceValue("CAFE0001", "sensor", "temperature"), 0.001);
+        assertEquals(21.5, (Double) getResourceValue("CAFE0002", "sensor", "temperature"), 0.001);
+
+        // Unsigned values
+        assertEquals(200, getResourceValue("CAFE0001", "sensor", "humidity"));
+        assertEquals(40, getResourceValue("CAFE0002", "sensor", "humidity"));
+
+        // Little endian values
+        assertEquals(4294967295L, getResourceValue("CAFE0001", "sensor", "counter"));
+        assertEquals(42, getResourceValue("CAFE0002", "sensor", "counter"));
+
+        // Strings, without padding
+        assertEquals("ab", getResourceValue("CAFE0001", "admin", "friendlyName"));
+        assertEquals("cdefg", getResourceValue("CAFE0002", "admin", "friendlyName"));
+
+        // Default value of an unknown field
+        assertEquals(100, getResourceValue("CAFE0001", "sensor", "battery"));
+    }
+
+    /**
+     * Mapping a stream of records, sending updates by bulks
+     */
+    @Test
+    void testStream() throws Exception {
+        DeviceMappingConfigurationDTO config = readConfiguration("binary/records-mapping.json");
+        config.mappingOptions.bulkSize = 1;
+
+        deviceMapper.handle(config, Map.of(), new ByteArrayInputStream(makePayload()));
+
+        assertEquals(2, bulks.size());
+        assertEquals(200, getResourceValue("CAFE0001", "sensor", "humidity"));
+        assertEquals(40, getResourceValue("CAFE0002", "sensor", "humidity"));
+    }
+
+    /**
+     * Payloads must contain complete records
+     */
+    @Test
+    void testTruncatedPayload() throws Exception {
+        DeviceMappingConfigurationDTO config = readConfiguration("binary/records-mapping.json");
+        final byte[] payload = makePayload();
+        final byte[] truncated = new byte[payload.length - 1];
+        System.arraycopy(payload, 0, truncated, 0, truncated.length);
+
+        assertThrows(ParserException.class, () -> deviceMapper.handle(config, Map.of(), truncated));
+    }
+}
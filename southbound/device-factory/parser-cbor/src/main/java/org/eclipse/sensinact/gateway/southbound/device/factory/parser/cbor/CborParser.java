@@ -0,0 +1,32 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.device.factory.parser.cbor;
+
+import org.eclipse.sensinact.gateway.southbound.device.factory.IDeviceMappingParser;
+import org.eclipse.sensinact.gateway.southbound.device.factory.parser.json.JsonParser;
+import org.osgi.service.component.annotations.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * CBOR parser provider, reading payloads like the JSON parser
+ */
+@Component(immediate = true, service = IDeviceMappingParser.class, property = IDeviceMappingParser.PARSER_ID + "="
+        + "cbor")
+public class CborParser extends JsonParser {
+
+    public CborParser() {
+        super(new ObjectMapper(new CBORFactory()));
+    }
+}
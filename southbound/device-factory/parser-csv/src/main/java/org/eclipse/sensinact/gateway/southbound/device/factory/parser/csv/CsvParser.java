@@ -21,6 +21,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -41,6 +42,14 @@ public class CsvParser implements IDeviceMappingParser {
     @Override
     public List<? extends IDeviceMappingRecord> parseRecords(byte[] rawInput, Map<String, Object> parserConfiguration,
             Map<String, String> context) throws ParserException {
+        final List<IDeviceMappingRecord> records = new ArrayList<>();
+        parseRecords(new ByteArrayInputStream(rawInput), parserConfiguration, context, records::add);
+        return records;
+    }
+
+    @Override
+    public void parseRecords(InputStream rawInput, Map<String, Object> parserConfiguration,
+            Map<String, String> context, Consumer<? super IDeviceMappingRecord> consumer) throws ParserException {
 
         // Read CSV file
         final Charset charset;
@@ -51,13 +60,6 @@ public class CsvParser implements IDeviceMappingParser {
             charset = StandardCharsets.UTF_8;
         }
 
-        final InputStream input;
-        if (StandardCharsets.UTF_8.equals(charset) && rawInput.length > 3) {
-            input = EncodingUtils.removeBOM(rawInput);
-        } else {
-            input = new ByteArrayInputStream(rawInput);
-        }
-
         // Prepare parser
         CSVFormat.Builder format = CSVFormat.DEFAULT.builder();
         final String delimiter = (String) parserConfiguration.get("delimiter");
@@ -74,14 +76,21 @@ public class CsvParser implements IDeviceMappingParser {
             format = format.setHeader().setSkipHeaderRecord(true);
         }
 
-        final List<CsvRecord> records = new ArrayList<>();
-        try (CSVParser parser = format.build().parse(new InputStreamReader(input, charset))) {
+        try {
+            final InputStream input;
+            if (StandardCharsets.UTF_8.equals(charset)) {
+                input = EncodingUtils.removeBOM(rawInput);
+            } else {
+                input = rawInput;
+            }
+
+            // Records are given to the consumer as they are read
+            final CSVParser parser = format.build().parse(new InputStreamReader(input, charset));
             for (CSVRecord record : parser) {
-                records.add(new CsvRecord(record));
+                consumer.accept(new CsvRecord(record));
             }
         } catch (IllegalStateException | IOException e) {
             throw new ParserException("Error reading CSV content", e);
         }
-        return records;
     }
 }
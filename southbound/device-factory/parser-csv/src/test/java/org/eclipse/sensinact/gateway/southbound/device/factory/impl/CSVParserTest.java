@@ -16,6 +16,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
@@ -181,6 +182,32 @@ public class CSVParserTest {
         assertTrue(Double.isNaN(geoPoint.coordinates.elevation));
     }
 
+    /**
+     * Mapping a CSV stream starting with a BOM, sending updates by bulks
+     */
+    @Test
+    void testStream() throws Exception {
+        // Read the configuration
+        DeviceMappingConfigurationDTO config = readConfiguration("csv/csv-header-mapping.json");
+        config.mappingOptions.bulkSize = 2;
+
+        // Prefix the file with an UTF-8 BOM
+        final byte[] fileContent = readFile("csv/csv-header.csv");
+        final byte[] content = new byte[fileContent.length + 3];
+        content[0] = (byte) 0xEF;
+        content[1] = (byte) 0xBB;
+        content[2] = (byte) 0xBF;
+        System.arraycopy(fileContent, 0, content, 3, fileContent.length);
+
+        // Apply mapping while reading the stream
+        deviceMapper.handle(config, Map.of(), new ByteArrayInputStream(content));
+
+        // A bulk per record
+        assertEquals(2, bulks.size());
+        assertEquals("42", getResourceValue("header-provider1", "data", "value", String.class));
+        assertEquals("84", getResourceValue("header-provider2", "data", "value", String.class));
+    }
+
     /**
      * Mapping a CSV file with header
      */
@@ -0,0 +1,67 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.device.factory.parser.json;
+
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.sensinact.gateway.southbound.device.factory.IDeviceMappingRecord;
+import org.eclipse.sensinact.gateway.southbound.device.factory.RecordPath;
+import org.eclipse.sensinact.gateway.southbound.device.factory.dto.DeviceMappingOptionsDTO;
+
+/**
+ * Device factory JSON record holding only the fields extracted by a
+ * {@link JsonExtractionPlan}. Values behave like the ones of a
+ * {@link JsonRecord}.
+ */
+public class JsonExtractedRecord implements IDeviceMappingRecord {
+
+    /**
+     * Record path -&gt; extracted value
+     */
+    private final Map<String, Object> values;
+
+    public JsonExtractedRecord(final Map<String, Object> values) {
+        this.values = values;
+    }
+
+    @Override
+    public Object getField(RecordPath field, final DeviceMappingOptionsDTO options) {
+        final Object rawValue = values.get(field.asString());
+        if (rawValue == null || rawValue == JsonExtractionPlan.NULL) {
+            if (field.hasDefaultValue() && field.getDefaultValue() != null) {
+                return field.convertValue(field.getDefaultValue(), options);
+            }
+            return null;
+        }
+
+        return field.convertValue(rawValue, options);
+    }
+
+    @Override
+    public String getFieldString(RecordPath field, final DeviceMappingOptionsDTO options) {
+        final Object rawValue = values.get(field.asString());
+        if (rawValue == JsonExtractionPlan.NULL) {
+            return "null";
+        } else if (rawValue != null && !(rawValue instanceof Map) && !(rawValue instanceof List)) {
+            return String.valueOf(rawValue);
+        }
+
+        if (field.hasDefaultValue()) {
+            final Object defaultValue = field.getDefaultValue();
+            return defaultValue != null ? String.valueOf(defaultValue) : null;
+        } else {
+            return null;
+        }
+    }
+}
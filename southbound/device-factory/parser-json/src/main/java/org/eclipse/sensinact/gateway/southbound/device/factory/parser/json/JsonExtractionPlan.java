@@ -0,0 +1,209 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.device.factory.parser.json;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.sensinact.gateway.southbound.device.factory.RecordPath;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonParser.NumberType;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tree of the record paths read by a mapping, used to extract their values
+ * while reading the tokens of a record, without building its JSON tree.
+ */
+class JsonExtractionPlan {
+
+    /**
+     * Marks a field with an explicit JSON null value
+     */
+    static final Object NULL = new Object();
+
+    /**
+     * Node of the path tree
+     */
+    private static class Node {
+        /**
+         * Field name or array index -&gt; child node
+         */
+        final Map<String, Node> children = new HashMap<>();
+
+        /**
+         * Full path if the value of this node is read, else null
+         */
+        String path;
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * @param paths Record paths to extract
+     */
+    JsonExtractionPlan(final List<RecordPath> paths) {
+        for (final RecordPath path : paths) {
+            Node current = root;
+            for (final RecordPath part : path.parts()) {
+                current = current.children.computeIfAbsent(part.asString(), k -> new Node());
+            }
+            current.path = path.asString();
+        }
+    }
+
+    /**
+     * Extracts the values of the record at the current token. The parser is left
+     * on the last token of the record.
+     *
+     * @param mapper Object mapper used to read objects and arrays
+     * @param parser JSON parser, at the start of the record
+     * @return Path -&gt; value of the fields found in the record
+     * @throws IOException Error reading input
+     */
+    Map<String, Object> extract(final ObjectMapper mapper, final JsonParser parser) throws IOException {
+        final JsonToken token = parser.currentToken();
+        if (token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) {
+            throw new IllegalArgumentException("Root node is neither a JSON object nor array");
+        }
+
+        final Map<String, Object> values = new HashMap<>();
+        walkChildren(mapper, parser, root, values);
+        return values;
+    }
+
+    /**
+     * Reads the children of the object or array at the current token
+     */
+    private void walkChildren(final ObjectMapper mapper, final JsonParser parser, final Node node,
+            final Map<String, Object> values) throws IOException {
+        if (parser.currentToken() == JsonToken.START_ARRAY) {
+            for (int i = 0; parser.nextToken() != JsonToken.END_ARRAY; i++) {
+                readChild(mapper, parser, node.children.get(Integer.toString(i)), values);
+            }
+        } else {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final Node child = node.children.get(parser.getCurrentName());
+                parser.nextToken();
+                readChild(mapper, parser, child, values);
+            }
+        }
+    }
+
+    /**
+     * Reads or skips the value at the current token
+     */
+    private void readChild(final ObjectMapper mapper, final JsonParser parser, final Node child,
+            final Map<String, Object> values) throws IOException {
+        if (child == null) {
+            parser.skipChildren();
+        } else if (child.path != null) {
+            final Object value = readValue(mapper, parser);
+            values.put(child.path, value);
+            if (!child.children.isEmpty()) {
+                walkValue(value, child, values);
+            }
+        } else if (parser.currentToken().isStructStart()) {
+            walkChildren(mapper, parser, child, values);
+        }
+    }
+
+    /**
+     * Looks for the children of a node in its already read value
+     */
+    private void walkValue(final Object value, final Node node, final Map<String, Object> values) {
+        for (final Map.Entry<String, Node> entry : node.children.entrySet()) {
+            final Node child = entry.getValue();
+            Object childValue = null;
+            boolean found = false;
+            if (value instanceof Map) {
+                final Map<?, ?> map = (Map<?, ?>) value;
+                found = map.containsKey(entry.getKey());
+                childValue = map.get(entry.getKey());
+            } else if (value instanceof List) {
+                final List<?> list = (List<?>) value;
+                try {
+                    final int index = Integer.parseInt(entry.getKey());
+                    found = index >= 0 && index < list.size();
+                    childValue = found ? list.get(index) : null;
+                } catch (NumberFormatException e) {
+                    // Not an index
+                }
+            }
+
+            if (found) {
+                if (child.path != null) {
+                    values.put(child.path, childValue != null ? childValue : NULL);
+                }
+                walkValue(childValue, child, values);
+            }
+        }
+    }
+
+    /**
+     * Reads the value at the current token, with the types of a JSON tree
+     */
+    private Object readValue(final ObjectMapper mapper, final JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+        case START_OBJECT:
+            return mapper.readValue(parser, Map.class);
+
+        case START_ARRAY:
+            return mapper.readValue(parser, List.class);
+
+        case VALUE_NUMBER_INT:
+            switch (parser.getNumberType()) {
+            case INT:
+                return parser.getIntValue();
+            case BIG_INTEGER:
+                return parser.getBigIntegerValue().longValue();
+            default:
+                return parser.getLongValue();
+            }
+
+        case VALUE_NUMBER_FLOAT:
+            if (parser.getNumberType() == NumberType.BIG_DECIMAL) {
+                return parser.getDecimalValue();
+            }
+            return parser.getDoubleValue();
+
+        case VALUE_STRING:
+            return parser.getText();
+
+        case VALUE_TRUE:
+            return Boolean.TRUE;
+
+        case VALUE_FALSE:
+            return Boolean.FALSE;
+
+        case VALUE_NULL:
+            return NULL;
+
+        case VALUE_EMBEDDED_OBJECT:
+            // Binary values of CBOR and MessagePack are given as Base64 text, like
+            // JsonNode.asText() does in the record tree
+            final Object embedded = parser.getEmbeddedObject();
+            if (embedded instanceof byte[]) {
+                return Base64Variants.getDefaultVariant().encode((byte[]) embedded);
+            }
+            return embedded != null ? embedded : NULL;
+
+        default:
+            return NULL;
+        }
+    }
+}
@@ -19,20 +19,27 @@ import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
 
 import org.eclipse.sensinact.gateway.southbound.device.factory.EncodingUtils;
 import org.eclipse.sensinact.gateway.southbound.device.factory.IDeviceMappingParser;
 import org.eclipse.sensinact.gateway.southbound.device.factory.IDeviceMappingRecord;
 import org.eclipse.sensinact.gateway.southbound.device.factory.ParserException;
+import org.eclipse.sensinact.gateway.southbound.device.factory.RecordPath;
 import org.osgi.service.component.annotations.Component;
 
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
 
 /**
- * JSON parser provider
+ * JSON parser provider. It can be extended to parse the other data formats
+ * supported by Jackson, by giving it an object mapper for that format.
  */
 @Component(immediate = true, service = IDeviceMappingParser.class, property = IDeviceMappingParser.PARSER_ID + "="
         + "json")
@@ -41,11 +48,76 @@ public class JsonParser implements IDeviceMappingParser {
     /**
      * Object mapper
      */
-    private ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Extraction plans of the known lists of record paths
+     */
+    private final Map<List<RecordPath>, JsonExtractionPlan> extractionPlans = Collections
+            .synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Reads a record at the current token of the parser
+     */
+    @FunctionalInterface
+    private interface RecordReader {
+        IDeviceMappingRecord read(com.fasterxml.jackson.core.JsonParser parser) throws IOException;
+    }
+
+    public JsonParser() {
+        this(new ObjectMapper());
+    }
+
+    /**
+     * @param objectMapper Object mapper of the parsed data format
+     */
+    protected JsonParser(final ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
 
     @Override
     public List<? extends IDeviceMappingRecord> parseRecords(byte[] rawInput, Map<String, Object> parserConfiguration,
             final Map<String, String> context) throws ParserException {
+        final List<IDeviceMappingRecord> records = new ArrayList<>();
+        parseRecords(new ByteArrayInputStream(rawInput), parserConfiguration, context, records::add);
+        return records;
+    }
+
+    @Override
+    public List<? extends IDeviceMappingRecord> parseRecords(byte[] rawInput, Map<String, Object> parserConfiguration,
+            Map<String, String> context, List<RecordPath> paths) throws ParserException {
+        // Option can be given as a boolean or as a string
+        final boolean extractFields = Boolean.parseBoolean(String.valueOf(parserConfiguration.get("extract.fields")));
+        if (paths == null || !extractFields) {
+            return parseRecords(rawInput, parserConfiguration, context);
+        }
+
+        // Only read the fields used by the mapping
+        final JsonExtractionPlan plan = extractionPlans.computeIfAbsent(paths, JsonExtractionPlan::new);
+        final List<IDeviceMappingRecord> records = new ArrayList<>();
+        parseRecords(new ByteArrayInputStream(rawInput), parserConfiguration, records::add,
+                p -> new JsonExtractedRecord(plan.extract(objectMapper, p)));
+        return records;
+    }
+
+    @Override
+    public void parseRecords(final InputStream rawInput, final Map<String, Object> parserConfiguration,
+            final Map<String, String> context, final Consumer<? super IDeviceMappingRecord> consumer)
+            throws ParserException {
+        parseRecords(rawInput, parserConfiguration, consumer, p -> new JsonRecord(objectMapper, readTree(p)));
+    }
+
+    /**
+     * Parses the records of the given stream
+     *
+     * @param rawInput            RAW payload stream
+     * @param parserConfiguration Parser configuration
+     * @param consumer            Consumer of the parsed records
+     * @param reader              Reads a record from the JSON tokens
+     * @throws ParserException Error parsing payload
+     */
+    private void parseRecords(final InputStream rawInput, final Map<String, Object> parserConfiguration,
+            final Consumer<? super IDeviceMappingRecord> consumer, final RecordReader reader) throws ParserException {
 
         // Configured base entry
         String base = (String) parserConfiguration.get("base");
@@ -53,24 +125,37 @@ public class JsonParser implements IDeviceMappingParser {
             base = null;
         }
 
-        try {
-            // Use the configured encoding
-            final String strEncoding = (String) parserConfiguration.get("encoding");
-            final JsonNode root;
-            if (strEncoding != null && !strEncoding.isBlank()) {
-                final Charset charset = Charset.forName(strEncoding);
-                final InputStream is;
-                if (StandardCharsets.UTF_8.equals(charset) && rawInput.length > 3) {
-                    is = EncodingUtils.removeBOM(rawInput);
-                } else {
-                    is = new ByteArrayInputStream(rawInput);
+        // Use the configured encoding
+        final String strEncoding = (String) parserConfiguration.get("encoding");
+        try (com.fasterxml.jackson.core.JsonParser parser = createParser(rawInput, strEncoding)) {
+            if (parser.nextToken() == null) {
+                throw new ParserException("Empty JSON input");
+            }
+
+            // Walk to the base
+            if (base != null) {
+                for (String part : base.split("/")) {
+                    if (!part.isBlank() && !moveToChild(parser, part)) {
+                        throw new ParserException("Base entry not found: " + base);
+                    }
                 }
-                root = objectMapper.readValue(new InputStreamReader(is, charset), JsonNode.class);
-            } else {
-                root = objectMapper.readValue(rawInput, JsonNode.class);
             }
 
-            return parseRecords(root, base);
+            // Records are read one at a time
+            switch (parser.currentToken()) {
+            case START_OBJECT:
+                consumer.accept(reader.read(parser));
+                break;
+
+            case START_ARRAY:
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    consumer.accept(reader.read(parser));
+                }
+                break;
+
+            default:
+                throw new ParserException("Unsupported JSON content: " + readTree(parser).getNodeType());
+            }
         } catch (IllegalArgumentException e) {
             throw new ParserException("Invalid JSON input", e);
         } catch (IOException e) {
@@ -78,52 +163,68 @@ public class JsonParser implements IDeviceMappingParser {
         }
     }
 
-    private JsonNode getPath(JsonNode node, String pathPart) {
-
-        if (node.isArray()) {
-            return node.get(Integer.valueOf(pathPart));
+    /**
+     * Prepares a streaming parser for the given input
+     *
+     * @param rawInput    RAW payload stream
+     * @param strEncoding Configured encoding (can be null, ignored by binary
+     *                    formats)
+     * @return The JSON parser
+     * @throws IOException Error reading the input
+     */
+    private com.fasterxml.jackson.core.JsonParser createParser(final InputStream rawInput, final String strEncoding)
+            throws IOException {
+        if (strEncoding != null && !strEncoding.isBlank() && !objectMapper.getFactory().canHandleBinaryNatively()) {
+            final Charset charset = Charset.forName(strEncoding);
+            final InputStream is;
+            if (StandardCharsets.UTF_8.equals(charset)) {
+                is = EncodingUtils.removeBOM(rawInput);
+            } else {
+                is = rawInput;
+            }
+            return objectMapper.getFactory().createParser(new InputStreamReader(is, charset));
+        } else {
+            return objectMapper.getFactory().createParser(rawInput);
         }
+    }
 
-        return node.get(pathPart);
+    /**
+     * Reads the value at the current token
+     */
+    private JsonNode readTree(final com.fasterxml.jackson.core.JsonParser parser) throws IOException {
+        final JsonNode node = objectMapper.readTree(parser);
+        return node != null ? node : NullNode.getInstance();
     }
 
     /**
-     * Creates records based on the parsed JSON node
+     * Moves the parser to the value of a child of the current object or array
      *
-     * @param root JSON root object/array
-     * @param base Base path to access the record(s)
-     * @return The list of parsed records
-     * @throws ParserException Error reading input
+     * @param parser   JSON parser, at the start of an object or an array
+     * @param pathPart Name of the field or index of the item
+     * @return True if the child was found
+     * @throws IOException Error reading input
      */
-    private List<JsonRecord> parseRecords(final JsonNode root, final String base) throws ParserException {
-
-        final JsonNode subRoot;
-        if (base == null) {
-            subRoot = root;
-        } else {
-            // Walk to the base
-            final String[] parts = base.split("/");
-
-            JsonNode current = root;
-            for (String part : parts) {
-                if (!part.isBlank()) {
-                    current = getPath(current, part);
+    private boolean moveToChild(final com.fasterxml.jackson.core.JsonParser parser, final String pathPart)
+            throws IOException {
+
+        if (parser.currentToken() == JsonToken.START_ARRAY) {
+            final int index = Integer.parseInt(pathPart);
+            for (int i = 0; parser.nextToken() != JsonToken.END_ARRAY; i++) {
+                if (i == index) {
+                    return true;
                 }
+                parser.skipChildren();
             }
-
-            subRoot = current;
-        }
-
-        if (subRoot.isObject()) {
-            return List.of(new JsonRecord(objectMapper, subRoot));
-        } else if (subRoot.isArray()) {
-            final List<JsonRecord> result = new ArrayList<>(subRoot.size());
-            for (JsonNode child : subRoot) {
-                result.add(new JsonRecord(objectMapper, child));
+        } else if (parser.currentToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                parser.nextToken();
+                if (pathPart.equals(name)) {
+                    return true;
+                }
+                parser.skipChildren();
             }
-            return result;
-        } else {
-            throw new ParserException("Unsupported JSON content: " + subRoot.getNodeType());
         }
+        return false;
     }
 }
@@ -21,6 +21,7 @@ import org.eclipse.sensinact.gateway.southbound.device.factory.dto.DeviceMapping
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.POJONode;
 
 /**
  * Device factory JSON record handler
@@ -95,7 +96,10 @@ public class JsonRecord implements IDeviceMappingRecord {
 
         switch (node.getNodeType()) {
         case NUMBER:
-            if (node.isDouble()) {
+            if (node.isBigDecimal()) {
+                return node.decimalValue();
+            } else if (node.isFloatingPointNumber()) {
+                // Also covers the float16 and float32 values of CBOR and MessagePack
                 return node.asDouble();
             } else if (node.isInt()) {
                 return node.asInt();
@@ -109,6 +113,13 @@ public class JsonRecord implements IDeviceMappingRecord {
         case BOOLEAN:
             return node.asBoolean();
 
+        case BINARY:
+            // Base64 text
+            return node.asText();
+
+        case POJO:
+            return ((POJONode) node).getPojo();
+
         default:
             return null;
         }
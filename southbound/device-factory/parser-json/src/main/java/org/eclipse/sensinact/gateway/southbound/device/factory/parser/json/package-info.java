@@ -0,0 +1,14 @@
+/*********************************************************************
+ * Copyright (c) 2023 Contributors to the Eclipse Foundation.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors: Kentyou - initial implementation
+ **********************************************************************/
+
+@org.osgi.annotation.bundle.Export
+package org.eclipse.sensinact.gateway.southbound.device.factory.parser.json;
@@ -14,8 +14,10 @@ package org.eclipse.sensinact.gateway.southbound.device.factory.impl;
 **********************************************************************/
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
@@ -24,6 +26,7 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -267,6 +270,27 @@ public class JSONParserTest {
         }
     }
 
+    /**
+     * Mapping a JSON stream, sending updates by bulks
+     */
+    @Test
+    void testStream() throws Exception {
+        // Read the configuration
+        DeviceMappingConfigurationDTO config = readConfiguration("json/sub-array-mapping.json");
+        config.mappingOptions.bulkSize = 2;
+
+        // Apply mapping while reading the file
+        try (InputStream inStream = getClass().getClassLoader().getResourceAsStream("json/sub-array.json")) {
+            deviceMapper.handle(config, Map.of(), inStream);
+        }
+
+        // A bulk per record
+        assertEquals(2, bulks.size());
+        assertEquals(94, getResourceValue("JsonSubArray1", "data", "value", Integer.class));
+        assertEquals(28, getResourceValue("JsonSubArray2", "data", "value", Integer.class));
+        assertNull(getResourceValue("JsonSubArray-Ignore", "data", "value"));
+    }
+
     /**
      * Mapping a JSON file with a single object
      */
@@ -375,4 +399,49 @@ public class JSONParserTest {
         assertEquals(2.350484, geoPoint.coordinates.longitude, 0.001);
         assertTrue(Double.isNaN(geoPoint.coordinates.elevation));
     }
+
+    /**
+     * Lists the updates sent to the bulks, with comparable values
+     */
+    private List<String> describeUpdates() throws IOException {
+        final ObjectMapper mapper = new ObjectMapper();
+        final List<String> updates = new ArrayList<>();
+        for (BulkGenericDto bulk : bulks) {
+            for (GenericDto dto : bulk.dtos) {
+                updates.add(String.join("/", dto.provider, dto.service, dto.resource) + "="
+                        + mapper.writeValueAsString(dto.value) + "@" + dto.timestamp);
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * Extracting only the mapped fields must give the same updates as reading
+     * the whole records
+     */
+    @Test
+    void testExtractFields() throws Exception {
+        final String[][] files = { { "json/multiple-mapping.json", "json/multiple.json" },
+                { "json/sub-array-mapping.json", "json/sub-array.json" },
+                { "json/deep-multiple-mapping.json", "json/deep-multiple.json" },
+                { "json/literal-mapping.json", "json/literal.json" } };
+
+        for (String[] entry : files) {
+            DeviceMappingConfigurationDTO config = readConfiguration(entry[0]);
+            byte[] fileContent = readFile(entry[1]);
+
+            bulks.clear();
+            deviceMapper.handle(config, Map.of(), fileContent);
+            final List<String> expected = describeUpdates();
+            assertFalse(expected.isEmpty());
+
+            config = readConfiguration(entry[0]);
+            config.parserOptions = new HashMap<>(config.parserOptions);
+            config.parserOptions.put("extract.fields", true);
+
+            bulks.clear();
+            deviceMapper.handle(config, Map.of(), fileContent);
+            assertEquals(expected, describeUpdates(), entry[1]);
+        }
+    }
 }
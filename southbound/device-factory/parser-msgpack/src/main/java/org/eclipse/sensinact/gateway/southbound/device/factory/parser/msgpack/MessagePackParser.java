@@ -0,0 +1,32 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.device.factory.parser.msgpack;
+
+import org.eclipse.sensinact.gateway.southbound.device.factory.IDeviceMappingParser;
+import org.eclipse.sensinact.gateway.southbound.device.factory.parser.json.JsonParser;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.osgi.service.component.annotations.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * MessagePack parser provider, reading payloads like the JSON parser
+ */
+@Component(immediate = true, service = IDeviceMappingParser.class, property = IDeviceMappingParser.PARSER_ID + "="
+        + "msgpack")
+public class MessagePackParser extends JsonParser {
+
+    public MessagePackParser() {
+        super(new ObjectMapper(new MessagePackFactory()));
+    }
+}
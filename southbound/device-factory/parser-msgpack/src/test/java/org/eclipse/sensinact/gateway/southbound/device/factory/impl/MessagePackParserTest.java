@@ -0,0 +1,198 @@
+package org.eclipse.sensinact.gateway.southbound.device.factory.impl;
+
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.sensinact.core.push.DataUpdate;
+import org.eclipse.sensinact.core.push.dto.BulkGenericDto;
+import org.eclipse.sensinact.core.push.dto.GenericDto;
+import org.eclipse.sensinact.gateway.geojson.Point;
+import org.eclipse.sensinact.gateway.southbound.device.factory.IDeviceMappingParser;
+import org.eclipse.sensinact.gateway.southbound.device.factory.dto.DeviceMappingConfigurationDTO;
+import org.eclipse.sensinact.gateway.southbound.device.factory.dto.DeviceMappingOptionsDTO;
+import org.eclipse.sensinact.gateway.southbound.device.factory.parser.msgpack.MessagePackParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.ComponentServiceObjects;
+import org.osgi.util.promise.Promises;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests MessagePack-based mapping
+ */
+public class MessagePackParserTest {
+    private FactoryParserHandler deviceMapper;
+    private ComponentServiceObjects<IDeviceMappingParser> cso;
+
+    private List<BulkGenericDto> bulks = new ArrayList<>();
+
+    @BeforeEach
+    void start() throws InterruptedException {
+        deviceMapper = new FactoryParserHandler();
+        deviceMapper.dataUpdate = Mockito.mock(DataUpdate.class);
+
+        Mockito.when(deviceMapper.dataUpdate.pushUpdate(Mockito.any())).thenAnswer(i -> {
+            final BulkGenericDto dto = i.getArgument(0, BulkGenericDto.class);
+            bulks.add(dto);
+            return Promises.resolved(dto);
+        });
+
+        final MessagePackParser parser = new MessagePackParser();
+        final DeviceMappingParserReference svcRef = new DeviceMappingParserReference();
+        cso = new ComponentServiceObjects<IDeviceMappingParser>() {
+            @Override
+            public IDeviceMappingParser getService() {
+                return parser;
+            }
+
+            @Override
+            public ServiceReference<IDeviceMappingParser> getServiceReference() {
+                return svcRef;
+            }
+
+            @Override
+            public void ungetService(IDeviceMappingParser service) {
+            }
+        };
+        deviceMapper.addParser(cso, Map.of(IDeviceMappingParser.PARSER_ID, "msgpack"));
+    }
+
+    @AfterEach
+    void stop() {
+        deviceMapper.removeParser(cso, Map.of(IDeviceMappingParser.PARSER_ID, "msgpack"));
+        deviceMapper = null;
+        cso = null;
+        bulks.clear();
+    }
+
+    /**
+     * Reads the given mapping configuration
+     */
+    DeviceMappingConfigurationDTO readConfiguration(final String filename) throws IOException {
+        try (InputStream inStream = getClass().getClassLoader().getResourceAsStream(filename)) {
+            return new ObjectMapper().readValue(inStream.readAllBytes(), DeviceMappingConfigurationDTO.class);
+        }
+    }
+
+    /**
+     * Get the DTO matching the given resource
+     */
+    GenericDto getResourceValue(final String provider, final String service, final String resource) {
+        for (BulkGenericDto bulk : bulks) {
+            for (GenericDto dto : bulk.dtos) {
+                if (dto.provider.equals(provider) && dto.service.equals(service) && dto.resource.equals(resource)) {
+                    return dto;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Prepares a record
+     */
+    Map<String, Object> makeRecord(final String name, final String date, final Object value, final long longValue,
+            final boolean active, final double... location) {
+        final Map<String, Object> record = new LinkedHashMap<>();
+        record.put("Name", name);
+        record.put("Date", date);
+        record.put("Value", value);
+        record.put("LongValue", longValue);
+        record.put("Active", active);
+        record.put("Location", location);
+        return record;
+    }
+
+    /**
+     * Mapping a MessagePack payload with an array of records
+     */
+    @Test
+    void testRecords() throws Exception {
+        // Read the configuration
+        DeviceMappingConfigurationDTO config = readConfiguration("msgpack/records-mapping.json");
+
+        // Prepare the payload
+        final Map<String, Object> content = Map.of("records",
+                List.of(makeRecord("MessagePack1", "2023-01-02T03:04:05Z", 94, 5_000_000_000L, true, 1.2, 3.4),
+                        makeRecord("MessagePack2", "2023-01-02T03:04:06Z", 2.5, 42L, false, 5.6, 7.8)));
+        final byte[] payload = new ObjectMapper(new MessagePackFactory()).writeValueAsBytes(content);
+
+        // Apply mapping
+        deviceMapper.handle(config, Map.of(), payload);
+
+        // Ensure values and types
+        final Instant timestamp1 = Instant.parse("2023-01-02T03:04:05Z");
+        GenericDto dto = getResourceValue("MessagePack1", "data", "value");
+        assertEquals(94, dto.value);
+        assertEquals(timestamp1, dto.timestamp);
+        assertEquals(5_000_000_000L, getResourceValue("MessagePack1", "data", "long-value").value);
+        assertEquals(true, getResourceValue("MessagePack1", "data", "active").value);
+
+        assertEquals(2.5, getResourceValue("MessagePack2", "data", "value").value);
+        assertEquals(42, getResourceValue("MessagePack2", "data", "long-value").value);
+        assertEquals(false, getResourceValue("MessagePack2", "data", "active").value);
+
+        // Ensure location
+        GenericDto location = getResourceValue("MessagePack1", "admin", "location");
+        assertEquals(timestamp1, location.timestamp);
+        assertNotNull(location.value);
+        Point geoPoint = (Point) location.value;
+        assertEquals(1.2, geoPoint.coordinates.latitude, 0.001);
+        assertEquals(3.4, geoPoint.coordinates.longitude, 0.001);
+    }
+
+    /**
+     * Single precision floats are read as doubles, whether the fields are
+     * extracted or not
+     */
+    @Test
+    void testSingleFloat() throws Exception {
+        final DeviceMappingConfigurationDTO config = new DeviceMappingConfigurationDTO();
+        config.parser = "msgpack";
+        config.parserOptions = new HashMap<>();
+        config.mappingOptions = new DeviceMappingOptionsDTO();
+        config.mapping = new HashMap<>();
+        config.mapping.put("@provider", "Name");
+        config.mapping.put("data/single", "Single");
+
+        // {"Name": "MSGPACK1", "Single": 2.5 (float32)}
+        final byte[] payload = new byte[] { (byte) 0x82, //
+                (byte) 0xA4, 'N', 'a', 'm', 'e', (byte) 0xA8, 'M', 'S', 'G', 'P', 'A', 'C', 'K', '1', //
+                (byte) 0xA6, 'S', 'i', 'n', 'g', 'l', 'e', (byte) 0xCA, 0x40, 0x20, 0x00, 0x00 };
+
+        deviceMapper.handle(config, Map.of(), payload);
+        assertEquals(2.5, getResourceValue("MSGPACK1", "data", "single").value);
+
+        bulks.clear();
+        config.parserOptions.put("extract.fields", true);
+        deviceMapper.handle(config, Map.of(), payload);
+        assertEquals(2.5, getResourceValue("MSGPACK1", "data", "single").value);
+    }
+}
@@ -0,0 +1,36 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.history.api;
+
+/**
+ * The functions applied to the values of a time bucket by
+ * {@link HistoricalQueries#getAggregatedValues}
+ */
+public enum AggregationFunction {
+    /**
+     * Smallest value of the bucket, for numeric values only
+     */
+    MIN,
+    /**
+     * Largest value of the bucket, for numeric values only
+     */
+    MAX,
+    /**
+     * Average of the values of the bucket, for numeric values only
+     */
+    AVG,
+    /**
+     * Latest value of the bucket
+     */
+    LAST;
+}
@@ -72,6 +72,85 @@ public interface HistoricalQueries {
             @ActParam("resource") String resource, @ActParam("fromTime") ZonedDateTime fromTime,
             @ActParam("toTime") ZonedDateTime toTime, @ActParam("skip") Integer skip);
 
+    /**
+     * Return a page of the values that a resource had between the given times.
+     *
+     * Unlike {@link #getValueRange}, pages are continued with the
+     * <code>cursor</code> returned by the previous page rather than by skipping
+     * values, so that reading a page costs the same wherever it is in the
+     * dataset.
+     *
+     * @param provider
+     * @param service
+     * @param resource
+     * @param fromTime the time to start from. If <code>null</code> then the values
+     *                 are returned from the oldest one
+     * @param toTime   the time to finish at. If <code>null</code> then there is no
+     *                 finishing time limit.
+     * @param cursor   the cursor of the previous page, or <code>null</code> to get
+     *                 the first page. The next page holds the values following
+     *                 the cursor that are between the given times.
+     * @param limit    the maximum number of values in the page. If
+     *                 <code>null</code> then a page has at most 500 values.
+     * @param skip     the number of values, from the oldest one, to skip before
+     *                 the first page. Ignored when a <code>cursor</code> is given,
+     *                 as the following pages continue after the skipped values.
+     * @return A {@link TimedValuePage} with values in chronological order
+     */
+    @ACT(model = "sensiNactHistory", service = "history", resource = "page")
+    TimedValuePage getValuePage(@ActParam("provider") String provider, @ActParam("service") String service,
+            @ActParam("resource") String resource, @ActParam("fromTime") ZonedDateTime fromTime,
+            @ActParam("toTime") ZonedDateTime toTime, @ActParam("cursor") String cursor,
+            @ActParam("limit") Integer limit, @ActParam("skip") Integer skip);
+
+    /**
+     * Return the values of a resource aggregated by time buckets.
+     *
+     * Buckets are aligned on multiples of the interval and are only returned if
+     * they hold values. A maximum of 10000 buckets will be returned, starting from
+     * <code>fromTime</code>.
+     *
+     * @param provider
+     * @param service
+     * @param resource
+     * @param fromTime the time to start from. If <code>null</code> then the
+     *                 buckets start with the oldest value
+     * @param toTime   the time to finish at. If <code>null</code> then there is no
+     *                 finishing time limit.
+     * @param interval the duration of a bucket, in milliseconds
+     * @param function the function applied to the values of a bucket
+     * @return A {@link List&lt;TimedValue&gt;} of results in chronological order,
+     *         timestamped with the start of their bucket
+     */
+    @ACT(model = "sensiNactHistory", service = "history", resource = "aggregate")
+    List<TimedValue<?>> getAggregatedValues(@ActParam("provider") String provider,
+            @ActParam("service") String service, @ActParam("resource") String resource,
+            @ActParam("fromTime") ZonedDateTime fromTime, @ActParam("toTime") ZonedDateTime toTime,
+            @ActParam("interval") Long interval, @ActParam("function") AggregationFunction function);
+
+    /**
+     * Return at most <code>points</code> numeric values of a resource, chosen
+     * with the Largest-Triangle-Three-Buckets algorithm so that the shape of the
+     * series is kept. The first and last values of the range are always
+     * returned.
+     *
+     * @param provider
+     * @param service
+     * @param resource
+     * @param fromTime the time to start from. If <code>null</code> then the values
+     *                 start with the oldest one
+     * @param toTime   the time to finish at. If <code>null</code> then there is no
+     *                 finishing time limit.
+     * @param points   the maximum number of values to return. If
+     *                 <code>null</code> then at most 1000 values are returned.
+     * @return A {@link List&lt;TimedValue&gt;} of results in chronological order
+     */
+    @ACT(model = "sensiNactHistory", service = "history", resource = "downsample")
+    List<TimedValue<?>> getDownsampledValues(@ActParam("provider") String provider,
+            @ActParam("service") String service, @ActParam("resource") String resource,
+            @ActParam("fromTime") ZonedDateTime fromTime, @ActParam("toTime") ZonedDateTime toTime,
+            @ActParam("points") Integer points);
+
     /**
      * Get the number of stored values for a given resource
      *
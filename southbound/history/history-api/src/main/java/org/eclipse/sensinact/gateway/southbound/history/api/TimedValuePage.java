@@ -0,0 +1,35 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.history.api;
+
+import java.util.List;
+
+import org.eclipse.sensinact.core.twin.TimedValue;
+
+/**
+ * A page of historical values, as returned by
+ * {@link HistoricalQueries#getValuePage}
+ */
+public class TimedValuePage {
+
+    /**
+     * The values of the page, in chronological order
+     */
+    public List<TimedValue<?>> values;
+
+    /**
+     * The token to give to the next query to get the following page, or
+     * <code>null</code> if this is the last page
+     */
+    public String cursor;
+}
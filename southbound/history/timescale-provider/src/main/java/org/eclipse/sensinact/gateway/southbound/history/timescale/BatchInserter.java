@@ -0,0 +1,356 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.history.timescale;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.eclipse.sensinact.core.metrics.IMetricTimer;
+import org.eclipse.sensinact.core.metrics.IMetricsManager;
+import org.osgi.service.transaction.control.TransactionControl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inserts the values of a {@link HistoryJournal} with JDBC batches. The values
+ * are inserted when the journal holds enough of them to fill a batch or when the
+ * flush interval elapsed, whichever comes first. Insertions are run one at a
+ * time by a dedicated thread, so that values are inserted in arrival order.
+ *
+ * When the database can't be reached, the values stay in the journal and the
+ * insertion is retried at each flush interval. When the database rejects a
+ * batch for another reason, its values are inserted one by one and those which
+ * are still rejected are logged and dropped.
+ */
+class BatchInserter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchInserter.class);
+
+    static final String METRIC_BUFFER_DEPTH = "sensinact.history.timescale.buffer.depth";
+    static final String METRIC_FLUSH = "sensinact.history.timescale.flush";
+    static final String METRIC_THROUGHPUT = "sensinact.history.timescale.rows.per.second";
+    static final String METRIC_DROPPED = "sensinact.history.timescale.dropped";
+    static final String METRIC_REJECTED = "sensinact.history.timescale.rejected";
+
+    /**
+     * Target tables. The insert statements are constant so that the driver can
+     * reuse their server-side prepared form.
+     */
+    enum Table {
+        NUMERIC("sensinact.numeric_data", "?", "data AS num, NULL AS text, NULL AS geo"),
+        TEXT("sensinact.text_data", "?", "NULL AS num, data AS text, NULL AS geo"),
+        GEO("sensinact.geo_data", "(SELECT ST_GeomFromGeoJSON( ? )::geography)",
+                "NULL AS num, NULL AS text, ST_AsGeoJSON(data) AS geo");
+
+        final String tableName;
+
+        final String insert;
+
+        /**
+         * Value columns, as expected by the queries
+         */
+        final String columns;
+
+        Table(String name, String valueExpr, String columns) {
+            this.tableName = name;
+            this.insert = "INSERT INTO " + name
+                    + " ( time, model, provider, service, resource, data ) values ( ?, ?, ?, ?, ?, " + valueExpr + " );";
+            this.columns = columns;
+        }
+    }
+
+    private final TransactionControl txControl;
+
+    private final Supplier<Connection> connectionSupplier;
+
+    private final IMetricsManager metrics;
+
+    private final HistoryJournal journal;
+
+    private final int batchSize;
+
+    private final long flushInterval;
+
+    private final ScheduledExecutorService executor;
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final AtomicBoolean dropping = new AtomicBoolean();
+
+    /**
+     * Only accessed by the writer thread
+     */
+    private long lastFlush = System.nanoTime();
+
+    /**
+     * Time before which no insertion is tried after an error, only accessed by
+     * the writer thread
+     */
+    private long retryAt;
+
+    private boolean failing;
+
+    BatchInserter(TransactionControl txControl, Supplier<Connection> connectionSupplier, IMetricsManager metrics,
+            HistoryJournal journal, int batchSize, long flushInterval) {
+        this.txControl = txControl;
+        this.connectionSupplier = connectionSupplier;
+        this.metrics = metrics;
+        this.journal = journal;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushInterval = Math.max(1, flushInterval);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sensiNact Timescale history writer");
+            t.setDaemon(true);
+            return t;
+        });
+        // Values left by a previous run are inserted right away
+        executor.scheduleWithFixedDelay(this::flush, 0, this.flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffers a value
+     *
+     * @param table Target table
+     * @param row   Row to insert
+     */
+    void add(Table table, Row row) {
+        if (!journal.append(table, row)) {
+            metrics.getCounter(METRIC_DROPPED).inc();
+            if (!dropping.getAndSet(true)) {
+                logger.error("The history buffer is full, values are dropped until the database is reachable");
+            }
+            return;
+        }
+
+        if (journal.pending() < batchSize || flushRequested.getAndSet(true)) {
+            return;
+        }
+
+        try {
+            executor.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            // Closing, the values stay in the journal
+        }
+    }
+
+    /**
+     * Inserts the buffered values and waits for the insertion to be done
+     */
+    void flushNow() {
+        if (journal.pending() == 0) {
+            return;
+        }
+
+        try {
+            executor.submit(this::flush).get();
+        } catch (RejectedExecutionException e) {
+            // Closing
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.warn("Unable to flush the buffered history values", e.getCause());
+        }
+    }
+
+    /**
+     * Tries to insert the buffered values then stops the writer thread. Values
+     * that could not be inserted stay in the journal.
+     */
+    void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Timed out waiting for the history writer to stop");
+                executor.shutdownNow();
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+
+    private void flush() {
+        flushRequested.set(false);
+        long now = System.nanoTime();
+        if (failing && now - retryAt < 0) {
+            return;
+        }
+
+        int depth = journal.pending();
+        if (depth == 0) {
+            return;
+        }
+        metrics.getHistogram(METRIC_BUFFER_DEPTH).update(depth);
+
+        int stored = 0;
+        HistoryJournal.Batch batch;
+        while ((batch = journal.read(batchSize)).count > 0) {
+            if (!insert(batch)) {
+                // Keep the values safe until the database comes back
+                journal.force();
+                retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushInterval);
+                return;
+            }
+            journal.commit(batch);
+            stored += batch.count;
+        }
+
+        if (failing) {
+            logger.info("History database reachable again, {} buffered values stored", stored);
+            failing = false;
+        }
+        if (dropping.getAndSet(false)) {
+            logger.info("History values are buffered again");
+        }
+
+        long elapsed = System.nanoTime() - lastFlush;
+        lastFlush += elapsed;
+        metrics.getHistogram(METRIC_THROUGHPUT).update(stored * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsed));
+    }
+
+    private boolean insert(HistoryJournal.Batch batch) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Storing {} history values", batch.count);
+        }
+
+        try (IMetricTimer timer = metrics.withTimer(METRIC_FLUSH)) {
+            Connection conn = connectionSupplier.get();
+            txControl.required(() -> {
+                for (Entry<Table, List<Row>> entry : batch.rows.entrySet()) {
+                    try (PreparedStatement ps = conn.prepareStatement(entry.getKey().insert)) {
+                        for (Row row : entry.getValue()) {
+                            row.bind(ps);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                return null;
+            });
+            return true;
+        } catch (Exception e) {
+            if (isConnectionError(e)) {
+                return outage(e);
+            }
+            logger.debug("History batch rejected by the database, storing its values one by one", e);
+        }
+        return insertRows(batch);
+    }
+
+    /**
+     * Inserts the values of a batch one at a time, after the database rejected
+     * the batch. Values rejected by the database are dropped so that the journal
+     * keeps moving.
+     *
+     * @return false if the database became unreachable. Values inserted before
+     *         that will be inserted again with the rest of the batch.
+     */
+    private boolean insertRows(HistoryJournal.Batch batch) {
+        Connection conn = connectionSupplier.get();
+        for (Entry<Table, List<Row>> entry : batch.rows.entrySet()) {
+            String insert = entry.getKey().insert;
+            for (Row row : entry.getValue()) {
+                try {
+                    txControl.required(() -> {
+                        try (PreparedStatement ps = conn.prepareStatement(insert)) {
+                            row.bind(ps);
+                            return ps.executeUpdate();
+                        }
+                    });
+                } catch (Exception e) {
+                    if (isConnectionError(e)) {
+                        return outage(e);
+                    }
+                    metrics.getCounter(METRIC_REJECTED).inc();
+                    logger.warn("Dropping the history value {} of {}/{}/{} at {}, rejected by the database", row.value,
+                            row.provider, row.service, row.resource, row.time, e);
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean outage(Exception e) {
+        if (!failing) {
+            logger.warn("Unable to store history values, they are kept until the database is reachable", e);
+            failing = true;
+        } else if (logger.isDebugEnabled()) {
+            logger.debug("Unable to store history values", e);
+        }
+        return false;
+    }
+
+    /**
+     * Checks if an insertion failed because the database can't be reached, in
+     * which case the values must be kept, rather than because of the values
+     * themselves
+     */
+    static boolean isConnectionError(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientConnectionException
+                    || cause instanceof SQLNonTransientConnectionException) {
+                return true;
+            } else if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                if (state != null && state.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A row to insert
+     */
+    static class Row {
+        final Timestamp time;
+        final String model;
+        final String provider;
+        final String service;
+        final String resource;
+        final Object value;
+
+        Row(Timestamp time, String model, String provider, String service, String resource, Object value) {
+            this.time = time;
+            this.model = model;
+            this.provider = provider;
+            this.service = service;
+            this.resource = resource;
+            this.value = value;
+        }
+
+        void bind(PreparedStatement ps) throws SQLException {
+            ps.setTimestamp(1, time);
+            ps.setString(2, model);
+            ps.setString(3, provider);
+            ps.setString(4, service);
+            ps.setString(5, resource);
+            ps.setObject(6, value);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.history.timescale;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.sensinact.core.twin.TimedValue;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of a series of numeric values.
+ *
+ * The values must be added in chronological order. Only two buckets of values
+ * are held at a time: a value of a bucket is selected once the average of the
+ * following bucket is known.
+ */
+class Downsampler {
+
+    private static final class Point {
+        final double x;
+        final double y;
+        final TimedValue<?> value;
+
+        Point(double x, double y, TimedValue<?> value) {
+            this.x = x;
+            this.y = y;
+            this.value = value;
+        }
+    }
+
+    private final int points;
+
+    /**
+     * Number of values per bucket, 0 when all values are kept
+     */
+    private final double every;
+
+    private final List<TimedValue<?>> result = new ArrayList<>();
+
+    private Instant origin;
+
+    private Point selected;
+
+    /**
+     * Complete bucket waiting for the average of the following one
+     */
+    private List<Point> previous;
+
+    private List<Point> current = new ArrayList<>();
+
+    private int bucket;
+
+    private long bucketEnd;
+
+    private long index;
+
+    /**
+     * @param count  Number of values that will be added
+     * @param points Maximum number of values to keep, at least 3
+     */
+    Downsampler(long count, int points) {
+        this.points = Math.max(3, points);
+        this.every = count <= this.points ? 0 : (double) (count - 2) / (this.points - 2);
+        this.bucketEnd = end(0);
+    }
+
+    /**
+     * Index of the first value after the given bucket, the first value being
+     * kept out of the buckets
+     */
+    private long end(int bucket) {
+        return (long) Math.floor((bucket + 1) * every) + 1;
+    }
+
+    /**
+     * @param value The next value, holding a number
+     */
+    void add(TimedValue<?> value) {
+        if (origin == null) {
+            origin = value.getTimestamp();
+        }
+        Instant time = value.getTimestamp();
+        Point p = new Point((time.getEpochSecond() - origin.getEpochSecond()) + time.getNano() / 1e9,
+                ((Number) value.getValue()).doubleValue(), value);
+
+        long i = index++;
+        if (i == 0 || every == 0) {
+            select(p);
+            return;
+        }
+
+        // The last bucket also holds the last value
+        if (i >= bucketEnd && bucket < points - 3) {
+            if (previous != null) {
+                pick(previous, average(current));
+            }
+            previous = current;
+            current = new ArrayList<>();
+            bucketEnd = end(++bucket);
+        }
+        current.add(p);
+    }
+
+    /**
+     * @return The selected values, in chronological order
+     */
+    List<TimedValue<?>> finish() {
+        if (every == 0 || current.isEmpty()) {
+            return result;
+        }
+
+        Point last = current.remove(current.size() - 1);
+        if (current.isEmpty()) {
+            if (previous != null) {
+                pick(previous, last);
+            }
+        } else {
+            if (previous != null) {
+                pick(previous, average(current));
+            }
+            pick(current, last);
+        }
+        select(last);
+        return result;
+    }
+
+    private void select(Point p) {
+        selected = p;
+        result.add(p.value);
+    }
+
+    private Point average(List<Point> bucket) {
+        double x = 0;
+        double y = 0;
+        for (Point p : bucket) {
+            x += p.x;
+            y += p.y;
+        }
+        return new Point(x / bucket.size(), y / bucket.size(), null);
+    }
+
+    /**
+     * Selects the value of the bucket making the largest triangle with the last
+     * selected value and the given point
+     */
+    private void pick(List<Point> bucket, Point next) {
+        Point best = null;
+        double bestArea = -1;
+        for (Point p : bucket) {
+            double area = Math
+                    .abs((selected.x - next.x) * (p.y - selected.y) - (selected.x - p.x) * (next.y - selected.y));
+            if (area > bestArea) {
+                bestArea = area;
+                best = p;
+            }
+        }
+        select(best);
+    }
+}
@@ -0,0 +1,79 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.history.timescale;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Keyset continuation of a page of values: the time and table of the last value
+ * returned, and the number of values returned with that same time and table.
+ * The cursor also holds the tables in which the resource has values, so that
+ * the next pages only query those.
+ */
+class HistoryCursor {
+
+    final Instant time;
+
+    /**
+     * Ordinal of the table of the last value
+     */
+    final int table;
+
+    /**
+     * Number of values already returned with the same time and table
+     */
+    final int ties;
+
+    /**
+     * Bit mask of the table ordinals to query
+     */
+    final int tables;
+
+    HistoryCursor(Instant time, int table, int ties, int tables) {
+        this.time = time;
+        this.table = table;
+        this.ties = ties;
+        this.tables = tables;
+    }
+
+    String encode() {
+        String raw = String.join(":", Long.toString(time.getEpochSecond()), Integer.toString(time.getNano()),
+                Integer.toString(table), Integer.toString(ties), Integer.toString(tables));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @param token Encoded cursor
+     * @return The cursor
+     * @throws IllegalArgumentException Invalid token
+     */
+    static HistoryCursor decode(String token) {
+        HistoryCursor cursor;
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII).split(":");
+            cursor = parts.length != 5 ? null
+                    : new HistoryCursor(Instant.ofEpochSecond(Long.parseLong(parts[0]), Integer.parseInt(parts[1])),
+                            Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), Integer.parseInt(parts[4]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid history cursor: " + token, e);
+        }
+
+        if (cursor == null || cursor.table < 0 || cursor.table >= 31 || cursor.ties < 1
+                || (cursor.tables & (1 << cursor.table)) == 0) {
+            throw new IllegalArgumentException("Invalid history cursor: " + token);
+        }
+        return cursor;
+    }
+}
@@ -0,0 +1,488 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.history.timescale;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.sensinact.gateway.southbound.history.timescale.BatchInserter.Row;
+import org.eclipse.sensinact.gateway.southbound.history.timescale.BatchInserter.Table;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only journal of the values waiting to be stored, kept in
+ * memory-mapped segment files so that they survive a database outage or a
+ * restart of the gateway.
+ *
+ * A segment starts with a header holding a magic number and the offset of the
+ * first value not stored yet, followed by length-prefixed records. Values are
+ * appended to the newest segment and read from the oldest one, which is deleted
+ * once all its values are stored.
+ */
+class HistoryJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryJournal.class);
+
+    private static final int MAGIC = 0x53484a31;
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int READ_OFFSET = 4;
+
+    private static final String PREFIX = "segment-";
+
+    private static final String SUFFIX = ".log";
+
+    private static final byte VALUE_NULL = 0;
+    private static final byte VALUE_LONG = 1;
+    private static final byte VALUE_DOUBLE = 2;
+    private static final byte VALUE_DECIMAL = 3;
+    private static final byte VALUE_STRING = 4;
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final long maxSegments;
+
+    private final Object lock = new Object();
+
+    /**
+     * Segments, oldest first
+     */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private int pending;
+
+    private long nextId;
+
+    private boolean closed;
+
+    /**
+     * @param directory   Directory of the segment files
+     * @param segmentSize Size of a segment file, in bytes
+     * @param maxSize     Maximum size of all the segment files, in bytes
+     * @throws IOException Error opening the segment files
+     */
+    HistoryJournal(Path directory, int segmentSize, long maxSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = Math.max(segmentSize, 4096);
+        this.maxSegments = Math.max(2, maxSize / this.segmentSize);
+
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+
+        for (Path file : files) {
+            nextId = Math.max(nextId, segmentId(file) + 1);
+            Segment segment;
+            try {
+                segment = Segment.open(file);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Ignoring the unreadable history buffer segment {}", file, e);
+                continue;
+            }
+            if (segment.readOffset == segment.writeOffset) {
+                segment.delete();
+            } else {
+                segments.add(segment);
+                pending += segment.count(segment.readOffset, segment.writeOffset);
+            }
+        }
+
+        if (pending > 0) {
+            logger.info("Found {} history values waiting to be stored", pending);
+        }
+    }
+
+    private static long segmentId(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * @return Number of values waiting to be stored
+     */
+    int pending() {
+        synchronized (lock) {
+            return pending;
+        }
+    }
+
+    /**
+     * Appends a value
+     *
+     * @param table Target table
+     * @param row   Row to insert
+     * @return false if the value could not be kept
+     */
+    boolean append(Table table, Row row) {
+        byte[] record;
+        try {
+            record = encode(table, row);
+        } catch (IOException e) {
+            logger.warn("Unable to encode history value for {}/{}/{}", row.provider, row.service, row.resource, e);
+            return false;
+        }
+
+        synchronized (lock) {
+            if (closed) {
+                return false;
+            }
+
+            Segment segment = segments.peekLast();
+            if (segment == null || segment.writeOffset + 4 + record.length > segment.capacity()) {
+                if (HEADER_SIZE + 4 + record.length > segmentSize) {
+                    logger.warn("History value for {}/{}/{} is too large to be buffered ({} bytes)", row.provider,
+                            row.service, row.resource, record.length);
+                    return false;
+                } else if (segments.size() >= maxSegments) {
+                    return false;
+                }
+
+                try {
+                    segment = Segment.create(directory, nextId, segmentSize);
+                } catch (IOException e) {
+                    logger.error("Unable to create a history buffer segment in {}", directory, e);
+                    return false;
+                }
+                segments.addLast(segment);
+                nextId++;
+            }
+
+            segment.write(record);
+            pending++;
+            return true;
+        }
+    }
+
+    /**
+     * Reads the oldest values waiting to be stored
+     *
+     * @param max Maximum number of values to read
+     * @return The values, to give to {@link #commit(Batch)} once stored
+     */
+    Batch read(int max) {
+        Batch batch = new Batch();
+        synchronized (lock) {
+            for (Segment segment : segments) {
+                int offset = segment.readOffset;
+                while (batch.count < max && offset < segment.writeOffset) {
+                    int length = segment.buffer.getInt(offset);
+                    byte[] record = new byte[length];
+                    ByteBuffer view = segment.buffer.duplicate();
+                    view.position(offset + 4);
+                    view.get(record);
+                    offset += 4 + length;
+                    batch.count++;
+
+                    try {
+                        decode(record, batch.rows);
+                    } catch (IOException | RuntimeException e) {
+                        logger.error("Skipping an unreadable history value in {}", segment.file, e);
+                    }
+                }
+                batch.ends.put(segment, offset);
+                if (batch.count >= max) {
+                    break;
+                }
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Marks values as stored
+     *
+     * @param batch Values returned by {@link #read(int)}
+     */
+    void commit(Batch batch) {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            batch.ends.forEach(Segment::commit);
+            pending -= batch.count;
+
+            // Only the newest segment is written to
+            while (segments.size() > 1 && segments.peekFirst().readOffset == segments.peekFirst().writeOffset) {
+                segments.removeFirst().delete();
+            }
+        }
+    }
+
+    /**
+     * Writes the values to the disk
+     */
+    void force() {
+        synchronized (lock) {
+            if (!closed) {
+                segments.forEach(s -> s.buffer.force());
+            }
+        }
+    }
+
+    void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Segment segment : segments) {
+                segment.buffer.force();
+                segment.close();
+            }
+            segments.clear();
+        }
+    }
+
+    private static byte[] encode(Table table, Row row) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(table.ordinal());
+            out.writeLong(row.time.getTime());
+            out.writeInt(row.time.getNanos());
+            writeString(out, row.model);
+            writeString(out, row.provider);
+            writeString(out, row.service);
+            writeString(out, row.resource);
+
+            Object value = row.value;
+            if (value == null) {
+                out.writeByte(VALUE_NULL);
+            } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                    || value instanceof Byte) {
+                out.writeByte(VALUE_LONG);
+                out.writeLong(((Number) value).longValue());
+            } else if (value instanceof Float && Float.isFinite((Float) value)) {
+                // Keep the decimal representation of the float
+                out.writeByte(VALUE_DECIMAL);
+                writeString(out, value.toString());
+            } else if (value instanceof Double || value instanceof Float) {
+                out.writeByte(VALUE_DOUBLE);
+                out.writeDouble(((Number) value).doubleValue());
+            } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+                out.writeByte(VALUE_DECIMAL);
+                writeString(out, value.toString());
+            } else {
+                out.writeByte(VALUE_STRING);
+                writeString(out, value.toString());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void decode(byte[] record, Map<Table, List<Row>> rows) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            Table table = Table.values()[in.readByte()];
+            Timestamp time = new Timestamp(in.readLong());
+            time.setNanos(in.readInt());
+            String model = readString(in);
+            String provider = readString(in);
+            String service = readString(in);
+            String resource = readString(in);
+
+            Object value;
+            byte type = in.readByte();
+            switch (type) {
+            case VALUE_NULL:
+                value = null;
+                break;
+            case VALUE_LONG:
+                value = in.readLong();
+                break;
+            case VALUE_DOUBLE:
+                value = in.readDouble();
+                break;
+            case VALUE_DECIMAL:
+                value = new BigDecimal(readString(in));
+                break;
+            case VALUE_STRING:
+                value = readString(in);
+                break;
+            default:
+                throw new IOException("Unknown value type " + type);
+            }
+            rows.computeIfAbsent(table, t -> new ArrayList<>())
+                    .add(new Row(time, model, provider, service, resource, value));
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Values read from the journal
+     */
+    static class Batch {
+        /**
+         * Rows to insert, by table
+         */
+        final Map<Table, List<Row>> rows = new EnumMap<>(Table.class);
+
+        /**
+         * Number of values read, including the unreadable ones
+         */
+        int count;
+
+        /**
+         * Offset following the last value read, by segment
+         */
+        private final Map<Segment, Integer> ends = new LinkedHashMap<>();
+    }
+
+    private static class Segment {
+        final Path file;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int readOffset;
+        int writeOffset;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path directory, long id, int size) throws IOException {
+            Path file = directory.resolve(String.format("%s%016d%s", PREFIX, id, SUFFIX));
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            Segment segment = new Segment(file, channel, channel.map(MapMode.READ_WRITE, 0, size));
+            segment.buffer.putInt(0, MAGIC);
+            segment.commit(HEADER_SIZE);
+            segment.writeOffset = HEADER_SIZE;
+            return segment;
+        }
+
+        static Segment open(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                long size = channel.size();
+                if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                    throw new IOException("Invalid segment size " + size);
+                }
+                Segment segment = new Segment(file, channel, channel.map(MapMode.READ_WRITE, 0, size));
+                if (segment.buffer.getInt(0) != MAGIC) {
+                    throw new IOException("Not a history buffer segment");
+                }
+                segment.readOffset = segment.buffer.getInt(READ_OFFSET);
+                if (segment.readOffset < HEADER_SIZE || segment.readOffset > size) {
+                    throw new IOException("Invalid read offset " + segment.readOffset);
+                }
+
+                // The end of the last complete record
+                int offset = segment.readOffset;
+                while (offset + 4 <= size) {
+                    int length = segment.buffer.getInt(offset);
+                    if (length <= 0 || offset + 4L + length > size) {
+                        break;
+                    }
+                    offset += 4 + length;
+                }
+                segment.writeOffset = offset;
+                return segment;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        int count(int from, int to) {
+            int count = 0;
+            for (int offset = from; offset < to; offset += 4 + buffer.getInt(offset)) {
+                count++;
+            }
+            return count;
+        }
+
+        void write(byte[] record) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(writeOffset + 4);
+            view.put(record);
+            // The length comes last so that a partial record is never read
+            buffer.putInt(writeOffset, record.length);
+            writeOffset += 4 + record.length;
+        }
+
+        void commit(int offset) {
+            readOffset = offset;
+            buffer.putInt(READ_OFFSET, offset);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Error closing history buffer segment {}", file, e);
+            }
+        }
+
+        void delete() {
+            close();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Fully read, it will be deleted on the next start
+                logger.debug("Unable to delete history buffer segment {}", file, e);
+            }
+        }
+    }
+}
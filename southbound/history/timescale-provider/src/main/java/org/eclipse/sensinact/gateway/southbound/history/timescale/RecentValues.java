@@ -0,0 +1,349 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.history.timescale;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.sensinact.core.twin.TimedValue;
+
+/**
+ * Ring buffer of the latest values of a resource, sorted by time, used to
+ * answer queries on recent values without reading the database.
+ *
+ * The buffer holds every value received with a time after {@link #since}. A
+ * query can only be answered if it doesn't need an older value. Times are
+ * stored in microseconds, like in the database, and values are converted to
+ * the type read back from the database.
+ */
+class RecentValues {
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte TEXT = 3;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final int capacity;
+
+    private final long maxAge;
+
+    /**
+     * Time, in microseconds, from which all the values are in the buffer
+     */
+    private long since;
+
+    private long[] times;
+
+    private byte[] kinds;
+
+    /**
+     * Numbers, as long or double bits
+     */
+    private long[] numbers;
+
+    /**
+     * Texts, only allocated when needed
+     */
+    private String[] texts;
+
+    private int head;
+
+    private int size;
+
+    /**
+     * @param capacity Maximum number of values
+     * @param maxAge   Maximum age of a value, in microseconds, relative to the
+     *                 latest value
+     * @param since    Time, in microseconds, from which all the values will be
+     *                 received
+     */
+    RecentValues(int capacity, long maxAge, long since) {
+        this.capacity = Math.max(1, capacity);
+        this.maxAge = maxAge;
+        this.since = since;
+        int initial = Math.min(this.capacity, INITIAL_CAPACITY);
+        this.times = new long[initial];
+        this.kinds = new byte[initial];
+        this.numbers = new long[initial];
+    }
+
+    static long toMicros(Instant instant) {
+        // Rounded like the JDBC driver does
+        return instant.getEpochSecond() * 1_000_000 + (instant.getNano() + 500) / 1000;
+    }
+
+    private static Instant toInstant(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000), Math.floorMod(micros, 1_000_000) * 1000);
+    }
+
+    /**
+     * Adds a value of a numeric resource
+     *
+     * @param time  Value time, in microseconds
+     * @param value The value, as stored in the numeric table
+     */
+    synchronized void addNumber(long time, Object value) {
+        BigDecimal decimal;
+        if (value == null) {
+            int slot = insert(time);
+            if (slot >= 0) {
+                kinds[slot] = NULL;
+            }
+            return;
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            int slot = insert(time);
+            if (slot >= 0) {
+                kinds[slot] = LONG;
+                numbers[slot] = ((Number) value).longValue();
+            }
+            return;
+        } else if (value instanceof Float && Float.isFinite((Float) value)) {
+            // Stored with its decimal representation
+            decimal = new BigDecimal(value.toString());
+        } else if (value instanceof Double && Double.isFinite((Double) value)) {
+            // Converted to numeric by the database with 15 significant digits
+            decimal = new BigDecimal((Double) value, new MathContext(15)).stripTrailingZeros();
+        } else if (value instanceof BigDecimal) {
+            decimal = (BigDecimal) value;
+        } else if (value instanceof BigInteger) {
+            decimal = new BigDecimal((BigInteger) value);
+        } else {
+            reset(time);
+            return;
+        }
+
+        byte kind;
+        long bits;
+        if (decimal.scale() <= 0) {
+            try {
+                bits = decimal.longValueExact();
+            } catch (ArithmeticException e) {
+                reset(time);
+                return;
+            }
+            kind = LONG;
+        } else {
+            bits = Double.doubleToRawLongBits(decimal.doubleValue());
+            kind = DOUBLE;
+        }
+
+        int slot = insert(time);
+        if (slot >= 0) {
+            kinds[slot] = kind;
+            numbers[slot] = bits;
+        }
+    }
+
+    /**
+     * Adds a value of a text resource
+     *
+     * @param time  Value time, in microseconds
+     * @param value The value
+     */
+    synchronized void addText(long time, String value) {
+        int slot = insert(time);
+        if (slot < 0) {
+            return;
+        }
+        if (value == null) {
+            kinds[slot] = NULL;
+        } else {
+            if (texts == null) {
+                texts = new String[times.length];
+            }
+            kinds[slot] = TEXT;
+            texts[slot] = value;
+        }
+    }
+
+    /**
+     * Forgets the values up to the given time, used when a value can't be kept
+     *
+     * @param time Value time, in microseconds
+     */
+    synchronized void reset(long time) {
+        size = 0;
+        head = 0;
+        texts = null;
+        since = Math.max(since, time + 1);
+    }
+
+    /**
+     * @param time Query time, in microseconds
+     * @return The latest value at the given time, <code>null</code> if it might
+     *         not be in the buffer
+     */
+    synchronized TimedValue<?> getSingleValue(long time) {
+        if (time < since) {
+            return null;
+        }
+        // Index of the first value after the given time
+        int idx = search(time + 1);
+        return idx == 0 ? null : valueAt(idx - 1);
+    }
+
+    /**
+     * @param from  Start time, in microseconds
+     * @param to    End time, in microseconds
+     * @param skip  Number of values to skip
+     * @param limit Maximum number of values
+     * @return The values in the range, followed by a value without time if there
+     *         are more, <code>null</code> if they might not be in the buffer
+     */
+    synchronized List<TimedValue<?>> getValueRange(long from, long to, int skip, int limit) {
+        if (from < since) {
+            return null;
+        }
+
+        List<TimedValue<?>> list = new ArrayList<>();
+        for (int i = search(from) + Math.max(0, skip); i < size && timeAt(i) <= to; i++) {
+            if (list.size() == limit) {
+                list.add(new TimedValueImpl<>(null, null));
+                break;
+            }
+            list.add(valueAt(i));
+        }
+        return list;
+    }
+
+    private int slot(int index) {
+        return (head + index) % times.length;
+    }
+
+    private long timeAt(int index) {
+        return times[slot(index)];
+    }
+
+    private TimedValue<?> valueAt(int index) {
+        int slot = slot(index);
+        Object value;
+        switch (kinds[slot]) {
+        case LONG:
+            value = numbers[slot];
+            break;
+        case DOUBLE:
+            value = Double.longBitsToDouble(numbers[slot]);
+            break;
+        case TEXT:
+            value = texts[slot];
+            break;
+        default:
+            value = null;
+            break;
+        }
+        return new TimedValueImpl<>(value, toInstant(times[slot]));
+    }
+
+    /**
+     * @return The index of the first value at or after the given time
+     */
+    private int search(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timeAt(mid) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void evictOldest() {
+        since = Math.max(since, timeAt(0) + 1);
+        if (texts != null) {
+            texts[head] = null;
+        }
+        head = (head + 1) % times.length;
+        size--;
+    }
+
+    /**
+     * Makes room for a value
+     *
+     * @return The slot of the value, -1 if it is too old to be kept
+     */
+    private int insert(long time) {
+        if (time < since) {
+            return -1;
+        }
+
+        long latest = size == 0 ? time : Math.max(time, timeAt(size - 1));
+        while (size > 0 && timeAt(0) < latest - maxAge) {
+            evictOldest();
+        }
+        if (time < latest - maxAge || (size == capacity && time < timeAt(0))) {
+            since = Math.max(since, time + 1);
+            return -1;
+        }
+
+        if (size == capacity) {
+            evictOldest();
+        } else if (size == times.length) {
+            grow();
+        }
+
+        // Values mostly come in order: shift the few later ones
+        int index = size;
+        while (index > 0 && timeAt(index - 1) > time) {
+            int from = slot(index - 1);
+            int to = slot(index);
+            times[to] = times[from];
+            kinds[to] = kinds[from];
+            numbers[to] = numbers[from];
+            if (texts != null) {
+                texts[to] = texts[from];
+            }
+            index--;
+        }
+        size++;
+
+        int slot = slot(index);
+        times[slot] = time;
+        if (texts != null) {
+            texts[slot] = null;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int length = Math.min(capacity, times.length * 2);
+        long[] newTimes = new long[length];
+        byte[] newKinds = new byte[length];
+        long[] newNumbers = new long[length];
+        String[] newTexts = texts == null ? null : new String[length];
+        for (int i = 0; i < size; i++) {
+            int slot = slot(i);
+            newTimes[i] = times[slot];
+            newKinds[i] = kinds[slot];
+            newNumbers[i] = numbers[slot];
+            if (texts != null) {
+                newTexts[i] = texts[slot];
+            }
+        }
+        times = newTimes;
+        kinds = newKinds;
+        numbers = newNumbers;
+        texts = newTexts;
+        head = 0;
+    }
+}
@@ -12,7 +12,9 @@
 **********************************************************************/
 package org.eclipse.sensinact.gateway.southbound.history.timescale;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -22,13 +24,25 @@ import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
+import org.eclipse.sensinact.core.metrics.IMetricsManager;
+import org.eclipse.sensinact.core.notification.AbstractResourceNotification;
+import org.eclipse.sensinact.core.notification.NotificationBatch;
 import org.eclipse.sensinact.core.notification.ResourceDataNotification;
 import org.eclipse.sensinact.core.twin.TimedValue;
 import org.eclipse.sensinact.gateway.geojson.GeoJsonObject;
+import org.eclipse.sensinact.gateway.southbound.history.api.AggregationFunction;
 import org.eclipse.sensinact.gateway.southbound.history.api.HistoricalQueries;
+import org.eclipse.sensinact.gateway.southbound.history.api.TimedValuePage;
+import org.eclipse.sensinact.gateway.southbound.history.timescale.BatchInserter.Row;
+import org.eclipse.sensinact.gateway.southbound.history.timescale.BatchInserter.Table;
+import org.eclipse.sensinact.gateway.southbound.history.timescale.TimescaleHistoricalStore.Config;
 import org.osgi.service.transaction.control.TransactionControl;
 import org.osgi.service.typedevent.TypedEventHandler;
 import org.slf4j.Logger;
@@ -37,82 +51,38 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-public class TimescaleDatabaseWorker implements TypedEventHandler<ResourceDataNotification>, HistoricalQueries {
-
-    private static final String INSERT_TEMPLATE = "INSERT INTO %s ( time, model, provider, service, resource, data ) values ( ?, ?, ?, ?, ?, %s );";
-
-    private static final String SINGLE_TEMPLATE = "SELECT time, num, text, geo FROM ( "
-            + "( SELECT time, data AS num, NULL AS text, NULL AS geo FROM sensinact.numeric_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? ORDER BY time DESC LIMIT 1 ) "
-            + "UNION ALL "
-            + "( SELECT time, NULL AS num, data AS text, NULL AS geo FROM sensinact.text_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? ORDER BY time DESC LIMIT 1 ) "
-            + "UNION ALL "
-            + "( SELECT time, NULL AS num, NULL AS text, ST_AsGeoJSON(data) AS geo FROM sensinact.geo_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? ORDER BY time DESC LIMIT 1 ) "
-            + ") results ORDER BY time DESC LIMIT 1;";
-    private static final String SINGLE_TEMPLATE_WITHOUT_TIME = "SELECT time, num, text, geo FROM ( "
-            + "( SELECT time, data AS num, NULL AS text, NULL AS geo FROM sensinact.numeric_data WHERE provider = ? AND service = ? AND resource = ? ORDER BY time ASC LIMIT 1 ) "
-            + "UNION ALL "
-            + "( SELECT time, NULL AS num, data AS text, NULL AS geo FROM sensinact.text_data WHERE provider = ? AND service = ? AND resource = ? ORDER BY time ASC LIMIT 1 ) "
-            + "UNION ALL "
-            + "( SELECT time, NULL AS num, NULL AS text, ST_AsGeoJSON(data) AS geo FROM sensinact.geo_data WHERE provider = ? AND service = ? AND resource = ? ORDER BY time ASC LIMIT 1 ) "
-            + ") results ORDER BY time DESC LIMIT 1;";
-
-    private static final String RANGE_TEMPLATE = "SELECT time, num, text, geo FROM ( "
-            + "( SELECT time, data AS num, NULL AS text, NULL AS geo FROM sensinact.numeric_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? AND time >= ? ORDER BY time ASC ) "
-            + "UNION ALL "
-            + "( SELECT time, NULL AS num, data AS text, NULL AS geo FROM sensinact.text_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? AND time >= ? ORDER BY time ASC ) "
-            + "UNION ALL "
-            + "( SELECT time, NULL AS num, NULL AS text, ST_AsGeoJSON(data) AS geo FROM sensinact.geo_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? AND time >= ? ORDER BY time ASC ) "
-            + ") results ORDER BY time ASC OFFSET ? LIMIT 501;";
-    private static final String RANGE_TEMPLATE_WITHOUT_LIMIT = "SELECT time, num, text, geo FROM ( "
-            + "( SELECT time, data AS num, NULL AS text, NULL AS geo FROM sensinact.numeric_data WHERE provider = ? AND service = ? AND resource = ? AND time >= ? ORDER BY time ASC ) "
-            + "UNION ALL "
-            + "( SELECT time, NULL AS num, data AS text, NULL AS geo FROM sensinact.text_data WHERE provider = ? AND service = ? AND resource = ? AND time >= ? ORDER BY time ASC ) "
-            + "UNION ALL "
-            + "( SELECT time, NULL AS num, NULL AS text, ST_AsGeoJSON(data) AS geo FROM sensinact.geo_data WHERE provider = ? AND service = ? AND resource = ? AND time >= ? ORDER BY time ASC ) "
-            + ") results ORDER BY time ASC OFFSET ? LIMIT 501;";
-    private static final String RANGE_TEMPLATE_WITHOUT_START = "SELECT reverse.* from ( SELECT time, num, text, geo FROM ( "
-            + "( SELECT time, data AS num, NULL AS text, NULL AS geo FROM sensinact.numeric_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? ORDER BY time DESC ) "
-            + "UNION ALL "
-            + "( SELECT time, NULL AS num, data AS text, NULL AS geo FROM sensinact.text_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? ORDER BY time DESC ) "
-            + "UNION ALL "
-            + "( SELECT time, NULL AS num, NULL AS text, ST_AsGeoJSON(data) AS geo FROM sensinact.geo_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? ORDER BY time DESC ) "
-            + ") results ORDER BY time DESC OFFSET ? LIMIT 500 ) reverse ORDER BY time ASC;";
-    private static final String RANGE_TEMPLATE_WITHOUT_START_OR_LIMIT = "SELECT reverse.* from ( SELECT time, num, text, geo FROM ( "
-            + "( SELECT time, data AS num, NULL AS text, NULL AS geo FROM sensinact.numeric_data WHERE provider = ? AND service = ? AND resource = ? ORDER BY time DESC) "
-            + "UNION ALL "
-            + "( SELECT time, NULL AS num, data AS text, NULL AS geo FROM sensinact.text_data WHERE provider = ? AND service = ? AND resource = ? ORDER BY time DESC ) "
-            + "UNION ALL "
-            + "( SELECT time, NULL AS num, NULL AS text, ST_AsGeoJSON(data) AS geo FROM sensinact.geo_data WHERE provider = ? AND service = ? AND resource = ? ORDER BY time DESC ) "
-            + ") results ORDER BY time DESC OFFSET ? LIMIT 500 ) reverse ORDER BY time ASC;";
-
-    private static final String COUNT_TEMPLATE = "SELECT SUM(c) FROM ( "
-            + "( SELECT COUNT(time) as c FROM sensinact.numeric_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? AND time >= ? ) "
-            + "UNION ALL "
-            + "( SELECT COUNT(time) as c FROM sensinact.text_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? AND time >= ? ) "
-            + "UNION ALL "
-            + "( SELECT COUNT(time) as c FROM sensinact.geo_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? AND time >= ? ) "
-            + ") results;";
-    private static final String COUNT_TEMPLATE_WITHOUT_LIMIT = "SELECT SUM(c) FROM ( "
-            + "( SELECT COUNT(time) as c FROM sensinact.numeric_data WHERE provider = ? AND service = ? AND resource = ? AND time >= ? ) "
-            + "UNION ALL "
-            + "( SELECT COUNT(time) as c FROM sensinact.text_data WHERE provider = ? AND service = ? AND resource = ? AND time >= ? ) "
-            + "UNION ALL "
-            + "( SELECT COUNT(time) as c FROM sensinact.geo_data WHERE provider = ? AND service = ? AND resource = ? AND time >= ? ) "
-            + ") results;";
-    private static final String COUNT_TEMPLATE_WITHOUT_START = "SELECT SUM(c) FROM ( "
-            + "( SELECT COUNT(time) as c FROM sensinact.numeric_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? ) "
-            + "UNION ALL "
-            + "( SELECT COUNT(time) as c FROM sensinact.text_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? ) "
-            + "UNION ALL "
-            + "( SELECT COUNT(time) as c FROM sensinact.geo_data WHERE provider = ? AND service = ? AND resource = ? AND time <= ? ) "
-            + ") results;";
-    private static final String COUNT_TEMPLATE_WITHOUT_START_OR_LIMIT = "SELECT SUM(c) FROM ( "
-            + "( SELECT COUNT(time) as c FROM sensinact.numeric_data WHERE provider = ? AND service = ? AND resource = ? ) "
-            + "UNION ALL "
-            + "( SELECT COUNT(time) as c FROM sensinact.text_data WHERE provider = ? AND service = ? AND resource = ? ) "
-            + "UNION ALL "
-            + "( SELECT COUNT(time) as c FROM sensinact.geo_data WHERE provider = ? AND service = ? AND resource = ? ) "
-            + ") results;";
+public class TimescaleDatabaseWorker implements TypedEventHandler<NotificationBatch>, HistoricalQueries {
+
+    private static final String VALUES_QUERY = "SELECT time, num, text, geo FROM ( ";
+    private static final String REVERSE_VALUES_QUERY = "SELECT reverse.* from ( SELECT time, num, text, geo FROM ( ";
+    private static final String COUNT_QUERY = "SELECT SUM(c) FROM ( ";
+
+    private static final String TABLES_TEMPLATE = "SELECT "
+            + "EXISTS ( SELECT 1 FROM sensinact.numeric_data WHERE provider = ? AND service = ? AND resource = ? ), "
+            + "EXISTS ( SELECT 1 FROM sensinact.text_data WHERE provider = ? AND service = ? AND resource = ? ), "
+            + "EXISTS ( SELECT 1 FROM sensinact.geo_data WHERE provider = ? AND service = ? AND resource = ? );";
+
+    private static final String DOWNSAMPLE_COUNT_TEMPLATE = "SELECT COUNT(data) FROM sensinact.numeric_data WHERE provider = ? AND service = ? AND resource = ?";
+
+    private static final String DOWNSAMPLE_TEMPLATE = "SELECT time, data AS num, NULL AS text, NULL AS geo FROM sensinact.numeric_data WHERE provider = ? AND service = ? AND resource = ? AND data IS NOT NULL";
+
+    private static final int ALL_TABLES = (1 << Table.values().length) - 1;
+
+    private static final int TABLES_KNOWN = 1 << 30;
+
+    private static final int DEFAULT_PAGE_SIZE = 500;
+
+    private static final int MAX_PAGE_SIZE = 10_000;
+
+    private static final int FETCH_SIZE = 100;
+
+    private static final int MAX_BUCKETS = 10_000;
+
+    private static final int DEFAULT_POINTS = 1000;
+
+    private static final int DOWNSAMPLE_FETCH_SIZE = 1000;
+
+    private static final long HOUR = 3_600_000;
 
     private static final Logger logger = LoggerFactory.getLogger(TimescaleDatabaseWorker.class);
 
@@ -122,28 +92,77 @@ public class TimescaleDatabaseWorker implements TypedEventHandler<ResourceDataNo
 
     private final ObjectMapper mapper = new ObjectMapper();
 
-    public TimescaleDatabaseWorker(TransactionControl txControl, Supplier<Connection> connectionSupplier) {
+    private final BatchInserter inserter;
+
+    private final boolean continuousAggregates;
+
+    /**
+     * Latest values by resource, <code>null</code> when disabled
+     */
+    private final Map<List<String>, RecentValues> recentValues;
+
+    private final int recentValueCount;
+
+    private final long recentValueMaxAge;
+
+    /**
+     * Time, in microseconds, from which the values are received
+     */
+    private final long startTime = RecentValues.toMicros(Instant.now());
+
+    /**
+     * Bit masks of the tables holding values of a resource, by resource. The
+     * {@link #TABLES_KNOWN} flag is set once the database has been checked.
+     */
+    private final Map<List<String>, Integer> resourceTables = new ConcurrentHashMap<>();
+
+    public TimescaleDatabaseWorker(TransactionControl txControl, Supplier<Connection> connectionSupplier,
+            IMetricsManager metrics, Config config, Path bufferDirectory) throws IOException {
         super();
         this.txControl = txControl;
         this.connectionSupplier = connectionSupplier;
+        this.continuousAggregates = config.continuousAggregates();
+        this.recentValueCount = config.recentValueCount();
+        this.recentValueMaxAge = config.recentValueMaxAge() <= 0 ? Long.MAX_VALUE
+                : TimeUnit.SECONDS.toMicros(config.recentValueMaxAge());
+        this.recentValues = recentValueCount > 0 ? new ConcurrentHashMap<>() : null;
+        HistoryJournal journal = new HistoryJournal(bufferDirectory, config.bufferSegmentSize(),
+                config.bufferMaxSize());
+        this.inserter = new BatchInserter(txControl, connectionSupplier, metrics, journal, config.batchSize(),
+                config.flushInterval());
+    }
+
+    /**
+     * Stops the writer, the values not stored yet are kept in the buffer
+     * directory
+     */
+    public void close() {
+        inserter.close();
     }
 
     @Override
-    public void notify(String topic, ResourceDataNotification event) {
+    public void notify(String topic, NotificationBatch batch) {
+        for (AbstractResourceNotification notification : batch.notifications) {
+            if (notification instanceof ResourceDataNotification) {
+                store(notification.getTopic(), (ResourceDataNotification) notification);
+            }
+        }
+    }
+
+    private void store(String topic, ResourceDataNotification event) {
 
         if (logger.isDebugEnabled()) {
             logger.debug("Update received for topic {} and the data will be stored", topic);
         }
 
-        String command;
+        Table table;
         Object value;
 
         if (isGeographic(event)) {
             if (logger.isDebugEnabled()) {
                 logger.debug("Event is geographic");
             }
-            command = String.format(INSERT_TEMPLATE, "sensinact.geo_data",
-                    "(SELECT ST_GeomFromGeoJSON( ? )::geography)");
+            table = Table.GEO;
             String tmpValue;
             if (event.newValue == null) {
                 tmpValue = "{\"type\":\"Point\", \"coordinates\":[]}";
@@ -164,36 +183,46 @@ public class TimescaleDatabaseWorker implements TypedEventHandler<ResourceDataNo
             if (logger.isDebugEnabled()) {
                 logger.debug("Event is numeric");
             }
-            command = String.format(INSERT_TEMPLATE, "sensinact.numeric_data", "?");
+            table = Table.NUMERIC;
             value = event.newValue;
         } else {
             if (logger.isDebugEnabled()) {
                 logger.debug("Event is being treated as text");
             }
-            command = String.format(INSERT_TEMPLATE, "sensinact.text_data", "?");
+            table = Table.TEXT;
             value = event.newValue == null ? null : event.newValue.toString();
         }
-        Connection conn = connectionSupplier.get();
-
-        try {
-            txControl.required(() -> {
 
-                PreparedStatement ps = conn.prepareStatement(command);
-                ps.setTimestamp(1, Timestamp.from(event.timestamp));
-                ps.setString(2, event.model);
-                ps.setString(3, event.provider);
-                ps.setString(4, event.service);
-                ps.setString(5, event.resource);
-                ps.setObject(6, value);
+        List<String> key = List.of(event.provider, event.service, event.resource);
+        resourceTables.merge(key, 1 << table.ordinal(), (a, b) -> a | b);
+        if (recentValues != null) {
+            keepRecent(key, table, RecentValues.toMicros(event.timestamp), value);
+        }
+        inserter.add(table, new Row(Timestamp.from(event.timestamp), event.model, event.provider, event.service,
+                event.resource, value));
+    }
 
-                return ps.execute();
-            });
-        } catch (Exception e) {
-            if (logger.isWarnEnabled()) {
-                logger.warn("Unable to store data for {}", topic, e);
+    private void keepRecent(List<String> key, Table table, long time, Object value) {
+        if (table == Table.GEO) {
+            // Geographic values are normalized by the database
+            RecentValues recent = recentValues.get(key);
+            if (recent != null) {
+                recent.reset(time);
             }
+            return;
+        }
+
+        RecentValues recent = recentValues.computeIfAbsent(key,
+                k -> new RecentValues(recentValueCount, recentValueMaxAge, startTime));
+        if (table == Table.NUMERIC) {
+            recent.addNumber(time, value);
+        } else {
+            recent.addText(time, (String) value);
         }
+    }
 
+    private RecentValues getRecentValues(String provider, String service, String resource) {
+        return recentValues == null ? null : recentValues.get(List.of(provider, service, resource));
     }
 
     private boolean isGeographic(ResourceDataNotification event) {
@@ -209,20 +238,36 @@ public class TimescaleDatabaseWorker implements TypedEventHandler<ResourceDataNo
 
     @Override
     public TimedValue<?> getSingleValue(String provider, String service, String resource, ZonedDateTime time) {
+        RecentValues recent = getRecentValues(provider, service, resource);
+        if (recent != null && time != null) {
+            TimedValue<?> value = recent.getSingleValue(RecentValues.toMicros(time.toInstant()));
+            if (value != null) {
+                return value;
+            }
+        }
+
+        // Include the values waiting to be stored
+        inserter.flushNow();
 
         Connection conn = connectionSupplier.get();
 
         try {
             return txControl.required(() -> {
 
+                int tables = getResourceTables(conn, provider, service, resource);
+                if (tables == 0) {
+                    return new TimedValueImpl<>(null, null);
+                }
+
                 PreparedStatement ps;
                 if (time == null) {
-                    ps = conn.prepareStatement(SINGLE_TEMPLATE_WITHOUT_TIME);
-                    setVariables(ps, provider, service, resource);
+                    ps = conn.prepareStatement(unionQuery(VALUES_QUERY, tables, false, "",
+                            " ORDER BY time ASC LIMIT 1", ") results ORDER BY time DESC LIMIT 1;"));
+                    setVariables(ps, tables, provider, service, resource);
                 } else {
-                    ps = conn.prepareStatement(SINGLE_TEMPLATE);
-                    setVariables(ps, provider, service, resource,
-                            Timestamp.from(time == null ? Instant.now() : time.toInstant()));
+                    ps = conn.prepareStatement(unionQuery(VALUES_QUERY, tables, false, " AND time <= ?",
+                            " ORDER BY time DESC LIMIT 1", ") results ORDER BY time DESC LIMIT 1;"));
+                    setVariables(ps, tables, provider, service, resource, Timestamp.from(time.toInstant()));
                 }
 
                 ResultSet rs = ps.executeQuery();
@@ -243,13 +288,48 @@ public class TimescaleDatabaseWorker implements TypedEventHandler<ResourceDataNo
         }
     }
 
-    private void setVariables(PreparedStatement ps, Object... variables) throws SQLException {
+    /**
+     * Builds a query over the tables holding values of a resource
+     *
+     * @param head       Start of the query, up to the opening of the union
+     * @param tables     Bit mask of the tables to query
+     * @param count      Count the values rather than selecting them
+     * @param conditions Conditions added to the resource ones
+     * @param inner      End of each table query
+     * @param tail       End of the query
+     */
+    private String unionQuery(String head, int tables, boolean count, String conditions, String inner,
+            String tail) {
+        StringBuilder sql = new StringBuilder(head);
+        boolean first = true;
+        for (Table table : Table.values()) {
+            if ((tables & (1 << table.ordinal())) == 0) {
+                continue;
+            }
+            if (!first) {
+                sql.append("UNION ALL ");
+            }
+            first = false;
+            sql.append("( SELECT ").append(count ? "COUNT(time) as c" : "time, " + table.columns).append(" FROM ")
+                    .append(table.tableName).append(" WHERE provider = ? AND service = ? AND resource = ?")
+                    .append(conditions).append(inner).append(" ) ");
+        }
+        return sql.append(tail).toString();
+    }
+
+    /**
+     * Sets the variables of each table query
+     *
+     * @return The index of the next variable
+     */
+    private int setVariables(PreparedStatement ps, int tables, Object... variables) throws SQLException {
         int idx = 1;
-        for (int i = 0; i < 3; i++) {
+        for (int i = Integer.bitCount(tables); i > 0; i--) {
             for (Object o : variables) {
                 ps.setObject(idx++, o);
             }
         }
+        return idx;
     }
 
     private TimedValue<?> toTimedValue(ResultSet rs) throws Exception {
@@ -280,36 +360,60 @@ public class TimescaleDatabaseWorker implements TypedEventHandler<ResourceDataNo
     public List<TimedValue<?>> getValueRange(String provider, String service, String resource, ZonedDateTime fromTime,
             ZonedDateTime toTime, Integer skip) {
         Integer toSkip = skip == null ? Integer.valueOf(0) : skip;
+        RecentValues recent = getRecentValues(provider, service, resource);
+        if (recent != null && fromTime != null) {
+            List<TimedValue<?>> values = recent.getValueRange(RecentValues.toMicros(fromTime.toInstant()),
+                    toTime == null ? Long.MAX_VALUE : RecentValues.toMicros(toTime.toInstant()), toSkip, 500);
+            if (values != null) {
+                return values;
+            }
+        }
+
+        // Include the values waiting to be stored
+        inserter.flushNow();
         Connection conn = connectionSupplier.get();
 
         try {
             return txControl.required(() -> {
 
                 List<TimedValue<?>> list = new ArrayList<>(501);
+                int tables = getResourceTables(conn, provider, service, resource);
+                if (tables == 0) {
+                    return list;
+                }
 
+                // Each table gives at most the values needed by the page
                 PreparedStatement ps;
+                int idx;
                 if (toTime == null) {
                     if (fromTime == null) {
-                        ps = conn.prepareStatement(RANGE_TEMPLATE_WITHOUT_START_OR_LIMIT);
-                        setVariables(ps, provider, service, resource);
-                        ps.setInt(10, toSkip);
+                        ps = conn.prepareStatement(unionQuery(REVERSE_VALUES_QUERY, tables, false, "",
+                                " ORDER BY time DESC LIMIT ?",
+                                ") results ORDER BY time DESC OFFSET ? LIMIT 500 ) reverse ORDER BY time ASC;"));
+                        idx = setVariables(ps, tables, provider, service, resource, toSkip + 500L);
                     } else {
-                        ps = conn.prepareStatement(RANGE_TEMPLATE_WITHOUT_LIMIT);
-                        setVariables(ps, provider, service, resource, Timestamp.from(fromTime.toInstant()));
-                        ps.setInt(13, toSkip);
+                        ps = conn.prepareStatement(unionQuery(VALUES_QUERY, tables, false, " AND time >= ?",
+                                " ORDER BY time ASC LIMIT ?", ") results ORDER BY time ASC OFFSET ? LIMIT 501;"));
+                        idx = setVariables(ps, tables, provider, service, resource,
+                                Timestamp.from(fromTime.toInstant()), toSkip + 501L);
                     }
                 } else {
                     if (fromTime == null) {
-                        ps = conn.prepareStatement(RANGE_TEMPLATE_WITHOUT_START);
-                        setVariables(ps, provider, service, resource, Timestamp.from(toTime.toInstant()));
-                        ps.setInt(13, toSkip);
+                        ps = conn.prepareStatement(unionQuery(REVERSE_VALUES_QUERY, tables, false, " AND time <= ?",
+                                " ORDER BY time DESC LIMIT ?",
+                                ") results ORDER BY time DESC OFFSET ? LIMIT 500 ) reverse ORDER BY time ASC;"));
+                        idx = setVariables(ps, tables, provider, service, resource,
+                                Timestamp.from(toTime.toInstant()), toSkip + 500L);
                     } else {
-                        ps = conn.prepareStatement(RANGE_TEMPLATE);
-                        setVariables(ps, provider, service, resource, Timestamp.from(toTime.toInstant()),
-                                Timestamp.from(fromTime.toInstant()));
-                        ps.setInt(16, toSkip);
+                        ps = conn.prepareStatement(unionQuery(VALUES_QUERY, tables, false,
+                                " AND time <= ? AND time >= ?", " ORDER BY time ASC LIMIT ?",
+                                ") results ORDER BY time ASC OFFSET ? LIMIT 501;"));
+                        idx = setVariables(ps, tables, provider, service, resource,
+                                Timestamp.from(toTime.toInstant()), Timestamp.from(fromTime.toInstant()),
+                                toSkip + 501L);
                     }
                 }
+                ps.setInt(idx, toSkip);
 
                 ResultSet rs = ps.executeQuery();
 
@@ -335,30 +439,394 @@ public class TimescaleDatabaseWorker implements TypedEventHandler<ResourceDataNo
         }
     }
 
+    @Override
+    public TimedValuePage getValuePage(String provider, String service, String resource, ZonedDateTime fromTime,
+            ZonedDateTime toTime, String cursor, Integer limit, Integer skip) {
+        HistoryCursor after = cursor == null ? null : HistoryCursor.decode(cursor);
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // The skip only applies to the first page
+        long offset = after != null || skip == null ? 0 : Math.max(0, skip);
+
+        // Include the values waiting to be stored
+        inserter.flushNow();
+        Connection conn = connectionSupplier.get();
+
+        try {
+            return txControl.required(() -> {
+                int tables = after == null ? getResourceTables(conn, provider, service, resource) : after.tables;
+                TimedValuePage page = new TimedValuePage();
+                page.values = new ArrayList<>();
+                if (tables == 0) {
+                    return page;
+                }
+
+                int ties = after == null ? 0 : after.ties;
+                StringBuilder sql = new StringBuilder("SELECT time, tbl, num, text, geo FROM ( ");
+                List<Object> variables = new ArrayList<>();
+                for (Table table : Table.values()) {
+                    if ((tables & (1 << table.ordinal())) == 0) {
+                        continue;
+                    }
+                    if (!variables.isEmpty()) {
+                        sql.append("UNION ALL ");
+                    }
+                    sql.append("( SELECT time, ").append(table.ordinal()).append(" AS tbl, ").append(table.columns)
+                            .append(" FROM ").append(table.tableName)
+                            .append(" WHERE provider = ? AND service = ? AND resource = ?");
+                    variables.add(provider);
+                    variables.add(service);
+                    variables.add(resource);
+                    if (fromTime != null) {
+                        sql.append(" AND time >= ?");
+                        variables.add(Timestamp.from(fromTime.toInstant()));
+                    }
+                    if (toTime != null) {
+                        sql.append(" AND time <= ?");
+                        variables.add(Timestamp.from(toTime.toInstant()));
+                    }
+                    long tableLimit = pageSize + 1 + offset;
+                    if (after != null) {
+                        // Values at the cursor time are in the following tables
+                        // and, after the ties, in the cursor table
+                        sql.append(table.ordinal() < after.table ? " AND time > ?" : " AND time >= ?");
+                        variables.add(Timestamp.from(after.time));
+                        if (table.ordinal() == after.table) {
+                            tableLimit += ties;
+                        }
+                    }
+                    sql.append(" ORDER BY time ASC LIMIT ? ) ");
+                    variables.add(tableLimit);
+                }
+                sql.append(") results ORDER BY time ASC, tbl ASC LIMIT ?;");
+                variables.add(pageSize + 1L + ties + offset);
+
+                PreparedStatement ps = conn.prepareStatement(sql.toString());
+                ps.setFetchSize(FETCH_SIZE);
+                int idx = 1;
+                for (Object o : variables) {
+                    ps.setObject(idx++, o);
+                }
+
+                ResultSet rs = ps.executeQuery();
+                Instant lastTime = null;
+                int lastTable = -1;
+                int lastTies = 0;
+                int toSkip = ties;
+                long toOffset = offset;
+                while (rs.next()) {
+                    Instant time = rs.getTimestamp("time").toInstant();
+                    int table = rs.getInt("tbl");
+                    if (toSkip > 0 && table == after.table && time.equals(after.time)) {
+                        // Already returned by the previous page
+                        toSkip--;
+                        continue;
+                    }
+
+                    if (toOffset > 0) {
+                        // Skipped, but still counted in the ties of the cursor
+                        toOffset--;
+                    } else if (page.values.size() == pageSize) {
+                        // There is more to read
+                        if (after != null && lastTable == after.table && lastTime.equals(after.time)) {
+                            lastTies += after.ties;
+                        }
+                        page.cursor = new HistoryCursor(lastTime, lastTable, lastTies, tables).encode();
+                        break;
+                    } else {
+                        page.values.add(toTimedValue(rs));
+                    }
+                    if (table == lastTable && time.equals(lastTime)) {
+                        lastTies++;
+                    } else {
+                        lastTime = time;
+                        lastTable = table;
+                        lastTies = 1;
+                    }
+                }
+                return page;
+            });
+        } catch (Exception e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Unable to locate data for {} {} {}", provider, service, resource, e);
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Finds the tables holding values of a resource
+     *
+     * @return A bit mask of the table ordinals
+     */
+    private int getResourceTables(Connection conn, String provider, String service, String resource)
+            throws SQLException {
+        List<String> key = List.of(provider, service, resource);
+        Integer tables = resourceTables.get(key);
+        if (tables != null && (tables & TABLES_KNOWN) != 0) {
+            return tables & ~TABLES_KNOWN;
+        }
+
+        PreparedStatement ps = conn.prepareStatement(TABLES_TEMPLATE);
+        setVariables(ps, ALL_TABLES, provider, service, resource);
+        ResultSet rs = ps.executeQuery();
+        rs.next();
+        int mask = 0;
+        for (Table table : Table.values()) {
+            if (rs.getBoolean(table.ordinal() + 1)) {
+                mask |= 1 << table.ordinal();
+            }
+        }
+        // Keep the tables of the values received meanwhile
+        return resourceTables.merge(key, mask | TABLES_KNOWN, (a, b) -> a | b) & ~TABLES_KNOWN;
+    }
+
+    @Override
+    public List<TimedValue<?>> getAggregatedValues(String provider, String service, String resource,
+            ZonedDateTime fromTime, ZonedDateTime toTime, Long interval, AggregationFunction function) {
+        if (interval == null || interval <= 0 || function == null) {
+            throw new IllegalArgumentException("A positive interval and an aggregation function are required");
+        }
+
+        // Include the values waiting to be stored
+        inserter.flushNow();
+        Connection conn = connectionSupplier.get();
+
+        try {
+            return txControl.required(() -> {
+                List<Object> variables = new ArrayList<>();
+                String sql;
+                if (function == AggregationFunction.LAST) {
+                    int tables = getResourceTables(conn, provider, service, resource);
+                    if (tables == 0) {
+                        return new ArrayList<>();
+                    }
+                    sql = lastQuery(variables, tables, provider, service, resource, fromTime, toTime, interval);
+                } else if (continuousAggregates && interval % HOUR == 0 && isHour(fromTime) && isHour(toTime)) {
+                    sql = hourlyQuery(variables, provider, service, resource, fromTime, toTime, interval, function);
+                } else {
+                    sql = numericQuery(variables, provider, service, resource, fromTime, toTime, interval, function);
+                }
+
+                PreparedStatement ps = conn.prepareStatement(sql);
+                ps.setFetchSize(FETCH_SIZE);
+                int idx = 1;
+                for (Object o : variables) {
+                    ps.setObject(idx++, o);
+                }
+
+                List<TimedValue<?>> list = new ArrayList<>();
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    list.add(toTimedValue(rs));
+                }
+                return list;
+            });
+        } catch (Exception e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Unable to aggregate data for {} {} {}", provider, service, resource, e);
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean isHour(ZonedDateTime time) {
+        if (time == null) {
+            return true;
+        }
+        Instant instant = time.toInstant();
+        return instant.getNano() == 0 && instant.getEpochSecond() % (HOUR / 1000) == 0;
+    }
+
+    private void appendBounds(StringBuilder sql, List<Object> variables, String provider, String service,
+            String resource, String column, ZonedDateTime fromTime, ZonedDateTime toTime, String toOperator) {
+        sql.append(" WHERE provider = ? AND service = ? AND resource = ?");
+        variables.add(provider);
+        variables.add(service);
+        variables.add(resource);
+        if (fromTime != null) {
+            sql.append(" AND ").append(column).append(" >= ?");
+            variables.add(Timestamp.from(fromTime.toInstant()));
+        }
+        if (toTime != null) {
+            sql.append(" AND ").append(column).append(' ').append(toOperator).append(" ?");
+            variables.add(Timestamp.from(toTime.toInstant()));
+        }
+    }
+
+    /**
+     * Aggregates the numeric values
+     */
+    private String numericQuery(List<Object> variables, String provider, String service, String resource,
+            ZonedDateTime fromTime, ZonedDateTime toTime, long interval, AggregationFunction function) {
+        StringBuilder sql = new StringBuilder("SELECT time_bucket(? * INTERVAL '1 millisecond', time) AS time, ")
+                .append(function.name().toLowerCase(Locale.ROOT)).append("(data) AS num, NULL AS text, NULL AS geo FROM ")
+                .append(Table.NUMERIC.tableName);
+        variables.add((double) interval);
+        appendBounds(sql, variables, provider, service, resource, "time", fromTime, toTime, "<=");
+        return sql.append(" GROUP BY 1 ORDER BY 1 ASC LIMIT ").append(MAX_BUCKETS).append(';').toString();
+    }
+
+    /**
+     * Aggregates the hourly continuous aggregate. The bounds are whole hours, so
+     * the hours before the end bound are complete and the values at the end bound
+     * are read from the numeric table.
+     */
+    private String hourlyQuery(List<Object> variables, String provider, String service, String resource,
+            ZonedDateTime fromTime, ZonedDateTime toTime, long interval, AggregationFunction function) {
+        String aggregate;
+        switch (function) {
+        case MIN:
+            aggregate = "min(min_data)";
+            break;
+        case MAX:
+            aggregate = "max(max_data)";
+            break;
+        default:
+            aggregate = "sum(sum_data) / NULLIF(sum(count_data), 0)";
+            break;
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT time_bucket(? * INTERVAL '1 millisecond', bucket) AS time, ")
+                .append(aggregate).append(" AS num, NULL AS text, NULL AS geo FROM ( ")
+                .append("( SELECT bucket, min_data, max_data, sum_data, count_data FROM ")
+                .append(TimescaleHistoricalStore.HOURLY_VIEW);
+        variables.add((double) interval);
+        appendBounds(sql, variables, provider, service, resource, "bucket", fromTime, toTime, "<");
+        sql.append(" ) ");
+        if (toTime != null) {
+            sql.append("UNION ALL ( SELECT time, data, data, data, 1 FROM ").append(Table.NUMERIC.tableName)
+                    .append(" WHERE provider = ? AND service = ? AND resource = ? AND time = ? AND data IS NOT NULL ) ");
+            variables.add(provider);
+            variables.add(service);
+            variables.add(resource);
+            variables.add(Timestamp.from(toTime.toInstant()));
+        }
+        return sql.append(") results GROUP BY 1 ORDER BY 1 ASC LIMIT ").append(MAX_BUCKETS).append(';').toString();
+    }
+
+    /**
+     * Selects the latest value of each bucket, whatever its table
+     */
+    private String lastQuery(List<Object> variables, int tables, String provider, String service, String resource,
+            ZonedDateTime fromTime, ZonedDateTime toTime, long interval) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT DISTINCT ON (1) time_bucket(? * INTERVAL '1 millisecond', t) AS time, num, text, geo FROM ( ");
+        variables.add((double) interval);
+        boolean first = true;
+        for (Table table : Table.values()) {
+            if ((tables & (1 << table.ordinal())) == 0) {
+                continue;
+            }
+            if (!first) {
+                sql.append("UNION ALL ");
+            }
+            first = false;
+            sql.append("( SELECT time AS t, ").append(table.columns).append(" FROM ").append(table.tableName);
+            appendBounds(sql, variables, provider, service, resource, "time", fromTime, toTime, "<=");
+            sql.append(" ) ");
+        }
+        return sql.append(") results ORDER BY 1 ASC, t DESC LIMIT ").append(MAX_BUCKETS).append(';').toString();
+    }
+
+    @Override
+    public List<TimedValue<?>> getDownsampledValues(String provider, String service, String resource,
+            ZonedDateTime fromTime, ZonedDateTime toTime, Integer points) {
+        int maxPoints = points == null ? DEFAULT_POINTS : Math.min(points, MAX_PAGE_SIZE);
+
+        // Include the values waiting to be stored
+        inserter.flushNow();
+        Connection conn = connectionSupplier.get();
+
+        try {
+            return txControl.required(() -> {
+                List<Object> variables = new ArrayList<>();
+                StringBuilder bounds = new StringBuilder();
+                if (fromTime != null) {
+                    bounds.append(" AND time >= ?");
+                    variables.add(Timestamp.from(fromTime.toInstant()));
+                }
+                if (toTime != null) {
+                    bounds.append(" AND time <= ?");
+                    variables.add(Timestamp.from(toTime.toInstant()));
+                }
+
+                PreparedStatement ps = conn.prepareStatement(DOWNSAMPLE_COUNT_TEMPLATE + bounds + ";");
+                ps.setString(1, provider);
+                ps.setString(2, service);
+                ps.setString(3, resource);
+                int idx = 4;
+                for (Object o : variables) {
+                    ps.setObject(idx++, o);
+                }
+                ResultSet rs = ps.executeQuery();
+                rs.next();
+                long count = rs.getLong(1);
+
+                Downsampler downsampler = new Downsampler(count, maxPoints);
+                if (count == 0) {
+                    return downsampler.finish();
+                }
+
+                // Values stored after the count are ignored
+                ps = conn.prepareStatement(DOWNSAMPLE_TEMPLATE + bounds + " ORDER BY time ASC LIMIT ?;");
+                ps.setFetchSize(DOWNSAMPLE_FETCH_SIZE);
+                ps.setString(1, provider);
+                ps.setString(2, service);
+                ps.setString(3, resource);
+                idx = 4;
+                for (Object o : variables) {
+                    ps.setObject(idx++, o);
+                }
+                ps.setLong(idx, count);
+
+                rs = ps.executeQuery();
+                while (rs.next()) {
+                    downsampler.add(toTimedValue(rs));
+                }
+                return downsampler.finish();
+            });
+        } catch (Exception e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Unable to downsample data for {} {} {}", provider, service, resource, e);
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public Long getStoredValueCount(String provider, String service, String resource, ZonedDateTime fromTime,
             ZonedDateTime toTime) {
+        // Include the values waiting to be stored
+        inserter.flushNow();
         Connection conn = connectionSupplier.get();
 
         try {
             return txControl.required(() -> {
 
+                int tables = getResourceTables(conn, provider, service, resource);
+                if (tables == 0) {
+                    return 0L;
+                }
+
                 PreparedStatement ps;
                 if (toTime == null) {
                     if (fromTime == null) {
-                        ps = conn.prepareStatement(COUNT_TEMPLATE_WITHOUT_START_OR_LIMIT);
-                        setVariables(ps, provider, service, resource);
+                        ps = conn.prepareStatement(unionQuery(COUNT_QUERY, tables, true, "", "", ") results;"));
+                        setVariables(ps, tables, provider, service, resource);
                     } else {
-                        ps = conn.prepareStatement(COUNT_TEMPLATE_WITHOUT_LIMIT);
-                        setVariables(ps, provider, service, resource, Timestamp.from(fromTime.toInstant()));
+                        ps = conn.prepareStatement(
+                                unionQuery(COUNT_QUERY, tables, true, " AND time >= ?", "", ") results;"));
+                        setVariables(ps, tables, provider, service, resource, Timestamp.from(fromTime.toInstant()));
                     }
                 } else {
                     if (fromTime == null) {
-                        ps = conn.prepareStatement(COUNT_TEMPLATE_WITHOUT_START);
-                        setVariables(ps, provider, service, resource, Timestamp.from(toTime.toInstant()));
+                        ps = conn.prepareStatement(
+                                unionQuery(COUNT_QUERY, tables, true, " AND time <= ?", "", ") results;"));
+                        setVariables(ps, tables, provider, service, resource, Timestamp.from(toTime.toInstant()));
                     } else {
-                        ps = conn.prepareStatement(COUNT_TEMPLATE);
-                        setVariables(ps, provider, service, resource, Timestamp.from(toTime.toInstant()),
+                        ps = conn.prepareStatement(unionQuery(COUNT_QUERY, tables, true,
+                                " AND time <= ? AND time >= ?", "", ") results;"));
+                        setVariables(ps, tables, provider, service, resource, Timestamp.from(toTime.toInstant()),
                                 Timestamp.from(fromTime.toInstant()));
                     }
                 }
@@ -14,15 +14,25 @@ package org.eclipse.sensinact.gateway.southbound.history.timescale;
 
 import static org.osgi.service.typedevent.TypedEventConstants.TYPED_EVENT_TOPICS;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.sensinact.core.command.AbstractTwinCommand;
 import org.eclipse.sensinact.core.command.GatewayThread;
+import org.eclipse.sensinact.core.metrics.IMetricsManager;
+import org.eclipse.sensinact.core.notification.NotificationBatch;
 import org.eclipse.sensinact.core.twin.SensinactDigitalTwin;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
@@ -50,6 +60,14 @@ public class TimescaleHistoricalStore {
 
     private static final String NOT_SET = "<<NOT_SET>>";
 
+    /**
+     * Continuous aggregate of the numeric values by hour
+     */
+    static final String HOURLY_VIEW = "sensinact.numeric_data_hourly";
+
+    private static final List<String> TABLES = List.of("sensinact.numeric_data", "sensinact.text_data",
+            "sensinact.geo_data");
+
     private static final Logger logger = LoggerFactory.getLogger(TimescaleHistoricalStore.class);
 
     public @interface Config {
@@ -61,6 +79,64 @@ public class TimescaleHistoricalStore {
         String _password() default NOT_SET;
 
         String provider() default "timescale-history";
+
+        /**
+         * Number of buffered values triggering their insertion
+         */
+        int batchSize() default 500;
+
+        /**
+         * Maximum time, in milliseconds, a value stays in the buffer
+         */
+        long flushInterval() default 500;
+
+        /**
+         * Directory where values are buffered until they are stored, defaults to
+         * the bundle data area
+         */
+        String bufferDirectory() default NOT_SET;
+
+        /**
+         * Size of a buffer file, in bytes
+         */
+        int bufferSegmentSize() default 16 * 1024 * 1024;
+
+        /**
+         * Maximum size of the buffer files, in bytes. Values are dropped when the
+         * database is unreachable for long enough to fill them.
+         */
+        long bufferMaxSize() default 1024L * 1024 * 1024;
+
+        /**
+         * Maintain an hourly continuous aggregate of the numeric values, used by
+         * the aggregations over whole hours. It is refreshed every hour, so values
+         * stored late for an hour already aggregated are only seen after the next
+         * refresh.
+         */
+        boolean continuousAggregates() default false;
+
+        /**
+         * Number of recent values kept in memory for each resource to answer
+         * queries without reading the database, 0 to disable
+         */
+        int recentValueCount() default 100;
+
+        /**
+         * Maximum age, in seconds, of the values kept in memory relative to the
+         * latest value of their resource, 0 for no limit
+         */
+        long recentValueMaxAge() default 300;
+
+        /**
+         * Age, in days, after which the stored values are compressed, 0 to
+         * disable compression
+         */
+        int compressAfterDays() default 0;
+
+        /**
+         * Age, in days, after which the stored values are deleted, 0 to keep them
+         */
+        int retentionDays() default 0;
     }
 
     @Reference
@@ -72,6 +148,9 @@ public class TimescaleHistoricalStore {
     @Reference
     GatewayThread gatewayThread;
 
+    @Reference
+    IMetricsManager metrics;
+
     private Config config;
 
     private JDBCConnectionProvider provider;
@@ -80,6 +159,8 @@ public class TimescaleHistoricalStore {
 
     private ServiceRegistration<?> reg;
 
+    private TimescaleDatabaseWorker worker;
+
     @Activate
     void start(BundleContext ctx, Config config) {
         if (logger.isDebugEnabled()) {
@@ -146,6 +227,21 @@ public class TimescaleHistoricalStore {
                 logger.debug("Not updating the Timescale DB connection as there is no need");
             }
             // No need to update the provider
+            if (oldConfig.continuousAggregates() != config.continuousAggregates()
+                    || oldConfig.compressAfterDays() != config.compressAfterDays()
+                    || oldConfig.retentionDays() != config.retentionDays()) {
+                setupTables();
+            }
+            if (oldConfig.batchSize() != config.batchSize() || oldConfig.flushInterval() != config.flushInterval()
+                    || !Objects.equals(oldConfig.bufferDirectory(), config.bufferDirectory())
+                    || oldConfig.bufferSegmentSize() != config.bufferSegmentSize()
+                    || oldConfig.bufferMaxSize() != config.bufferMaxSize()
+                    || oldConfig.continuousAggregates() != config.continuousAggregates()
+                    || oldConfig.recentValueCount() != config.recentValueCount()
+                    || oldConfig.recentValueMaxAge() != config.recentValueMaxAge()) {
+                // Restart the worker with its new settings
+                safeUnregister();
+            }
             registerListener(ctx);
         } else {
             if (logger.isDebugEnabled()) {
@@ -160,26 +256,33 @@ public class TimescaleHistoricalStore {
         if (logger.isDebugEnabled()) {
             logger.debug("Stopping the TimescaleDB history store");
         }
-        setProvider(null);
+        // Unregister first so that the buffered values can be stored
         safeUnregister();
+        setProvider(null);
     }
 
     private void safeUnregister() {
         ServiceRegistration<?> reg;
+        TimescaleDatabaseWorker worker;
         synchronized (this) {
             reg = this.reg;
             this.reg = null;
+            worker = this.worker;
+            this.worker = null;
         }
-        safeUnregister(reg);
+        safeUnregister(reg, worker);
     }
 
-    private void safeUnregister(ServiceRegistration<?> reg) {
+    private void safeUnregister(ServiceRegistration<?> reg, TimescaleDatabaseWorker worker) {
         if (reg != null) {
             try {
                 reg.unregister();
             } catch (IllegalStateException ise) {
             }
         }
+        if (worker != null) {
+            worker.close();
+        }
     }
 
     private void setupTables() {
@@ -201,6 +304,28 @@ public class TimescaleHistoricalStore {
                 s.execute(
                         "CREATE TABLE IF NOT EXISTS sensinact.geo_data ( time TIMESTAMPTZ NOT NULL, model VARCHAR(128) NOT NULL, provider VARCHAR(128) NOT NULL, service VARCHAR(128) NOT NULL, resource VARCHAR(128) NOT NULL, data geography(POINT,4326) )");
                 s.execute("SELECT create_hypertable('sensinact.geo_data', 'time', if_not_exists => TRUE);");
+                // Reads select the values of a resource by time
+                s.execute(
+                        "CREATE INDEX IF NOT EXISTS numeric_data_resource_idx ON sensinact.numeric_data ( provider, service, resource, time DESC ) INCLUDE ( data );");
+                s.execute(
+                        "CREATE INDEX IF NOT EXISTS text_data_resource_idx ON sensinact.text_data ( provider, service, resource, time DESC );");
+                s.execute(
+                        "CREATE INDEX IF NOT EXISTS geo_data_resource_idx ON sensinact.geo_data ( provider, service, resource, time DESC ) INCLUDE ( data );");
+
+                for (String table : TABLES) {
+                    setupPolicies(conn, s, table);
+                }
+
+                if (config.continuousAggregates()) {
+                    s.execute("CREATE MATERIALIZED VIEW IF NOT EXISTS " + HOURLY_VIEW
+                            + " WITH (timescaledb.continuous, timescaledb.materialized_only = false) AS SELECT time_bucket(INTERVAL '1 hour', time) AS bucket, provider, service, resource, min(data) AS min_data, max(data) AS max_data, sum(data) AS sum_data, count(data) AS count_data FROM sensinact.numeric_data GROUP BY bucket, provider, service, resource WITH NO DATA;");
+                    // Deleted values must not be removed from the aggregate
+                    String start = config.retentionDays() > 0 ? "INTERVAL '" + config.retentionDays() + " days'"
+                            : "NULL";
+                    s.execute("SELECT remove_continuous_aggregate_policy('" + HOURLY_VIEW + "', if_exists => TRUE);");
+                    s.execute("SELECT add_continuous_aggregate_policy('" + HOURLY_VIEW + "', start_offset => " + start
+                            + ", end_offset => INTERVAL '1 hour', schedule_interval => INTERVAL '1 hour');");
+                }
                 return null;
             });
         } catch (ScopedWorkException e) {
@@ -212,6 +337,41 @@ public class TimescaleHistoricalStore {
         }
     }
 
+    private void setupPolicies(Connection conn, Statement s, String table) throws SQLException {
+        s.execute("SELECT remove_compression_policy('" + table + "', if_exists => TRUE);");
+        if (config.compressAfterDays() > 0) {
+            // The settings can't be changed once chunks are compressed
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT compression_enabled FROM timescaledb_information.hypertables WHERE hypertable_schema || '.' || hypertable_name = ?;")) {
+                ps.setString(1, table);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next() && !rs.getBoolean(1)) {
+                        s.execute("ALTER TABLE " + table
+                                + " SET (timescaledb.compress, timescaledb.compress_segmentby = 'provider, service, resource', timescaledb.compress_orderby = 'time DESC');");
+                    }
+                }
+            }
+            s.execute("SELECT add_compression_policy('" + table + "', INTERVAL '" + config.compressAfterDays()
+                    + " days');");
+        }
+
+        s.execute("SELECT remove_retention_policy('" + table + "', if_exists => TRUE);");
+        if (config.retentionDays() > 0) {
+            s.execute("SELECT add_retention_policy('" + table + "', INTERVAL '" + config.retentionDays() + " days');");
+        }
+    }
+
+    private Path getBufferDirectory(BundleContext ctx) throws IOException {
+        if (!NOT_SET.equals(config.bufferDirectory()) && !config.bufferDirectory().isBlank()) {
+            return Paths.get(config.bufferDirectory());
+        }
+        File data = ctx.getDataFile("buffer");
+        if (data == null) {
+            throw new IOException("No bundle data area to store the history buffer");
+        }
+        return data.toPath();
+    }
+
     private void registerListener(BundleContext ctx) {
         ServiceRegistration<?> reg;
         synchronized (this) {
@@ -222,16 +382,26 @@ public class TimescaleHistoricalStore {
             if (logger.isDebugEnabled()) {
                 logger.debug("Registering listener for data update events");
             }
-            reg = ctx.registerService(TypedEventHandler.class, new TimescaleDatabaseWorker(txControl, connection::get),
-                    new Hashtable<>(Map.of(TYPED_EVENT_TOPICS, "DATA/*", "sensiNact.whiteboard.resource", true,
+            TimescaleDatabaseWorker worker;
+            try {
+                worker = new TimescaleDatabaseWorker(txControl, connection::get, metrics, config,
+                        getBufferDirectory(ctx));
+            } catch (IOException e) {
+                logger.error("Unable to open the history buffer, values will not be stored", e);
+                return;
+            }
+            reg = ctx.registerService(TypedEventHandler.class, worker,
+                    new Hashtable<>(Map.of(TYPED_EVENT_TOPICS, NotificationBatch.TOPIC, "sensiNact.whiteboard.resource", true,
                             "sensiNact.provider.name", config.provider())));
             synchronized (this) {
                 if (this.reg == null) {
                     this.reg = reg;
+                    this.worker = worker;
                     reg = null;
+                    worker = null;
                 }
             }
-            safeUnregister(reg);
+            safeUnregister(reg, worker);
 
             gatewayThread.execute(new AbstractTwinCommand<Void>() {
                 @Override
@@ -247,6 +417,9 @@ public class TimescaleHistoricalStore {
             if (logger.isDebugEnabled()) {
                 logger.debug("Listener is already registered for data update events");
             }
+            synchronized (this) {
+                this.reg = reg;
+            }
         }
     }
 }
@@ -0,0 +1,161 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.history.timescale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.eclipse.sensinact.core.metrics.IMetricCounter;
+import org.eclipse.sensinact.core.metrics.IMetricTimer;
+import org.eclipse.sensinact.core.metrics.IMetricsHistogram;
+import org.eclipse.sensinact.core.metrics.IMetricsManager;
+import org.eclipse.sensinact.gateway.southbound.history.timescale.BatchInserter.Row;
+import org.eclipse.sensinact.gateway.southbound.history.timescale.BatchInserter.Table;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.service.transaction.control.TransactionControl;
+
+class BatchInserterTest {
+
+    private static final String POISON = "poison";
+
+    @TempDir
+    Path dir;
+
+    HistoryJournal journal;
+
+    BatchInserter inserter;
+
+    /**
+     * Values stored by the fake database
+     */
+    final List<Object> stored = new ArrayList<>();
+
+    final List<Object> batched = new ArrayList<>();
+
+    Object bound;
+
+    /**
+     * Error thrown by the fake database whatever the values
+     */
+    SQLException outage;
+
+    @BeforeEach
+    void setup() throws Exception {
+        IMetricsManager metrics = mock(IMetricsManager.class);
+        when(metrics.getCounter(anyString())).thenReturn(mock(IMetricCounter.class));
+        when(metrics.getHistogram(anyString())).thenReturn(mock(IMetricsHistogram.class));
+        when(metrics.withTimer(anyString())).thenReturn(mock(IMetricTimer.class));
+
+        TransactionControl txControl = mock(TransactionControl.class);
+        when(txControl.required(any())).thenAnswer(i -> ((Callable<?>) i.getArgument(0)).call());
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(ps.executeUpdate()).thenAnswer(i -> {
+            check(List.of(bound));
+            stored.add(bound);
+            return 1;
+        });
+        when(ps.executeBatch()).thenAnswer(i -> {
+            List<Object> values = new ArrayList<>(batched);
+            batched.clear();
+            check(values);
+            stored.addAll(values);
+            return new int[values.size()];
+        });
+        doAnswer(i -> bound = i.getArgument(1)).when(ps).setObject(eq(6), any());
+        doAnswer(i -> batched.add(bound)).when(ps).addBatch();
+
+        Connection conn = mock(Connection.class);
+        when(conn.prepareStatement(anyString())).thenReturn(ps);
+
+        journal = new HistoryJournal(dir, 4096, 1024 * 1024);
+        inserter = new BatchInserter(txControl, () -> conn, metrics, journal, 100, 60_000);
+    }
+
+    @AfterEach
+    void stop() {
+        inserter.close();
+    }
+
+    private void check(List<Object> values) throws SQLException {
+        if (outage != null) {
+            throw outage;
+        } else if (values.contains(POISON)) {
+            throw new SQLException("invalid input syntax for type numeric", "22P02");
+        }
+    }
+
+    private void add(Object value) {
+        inserter.add(Table.NUMERIC, new Row(Timestamp.from(Instant.now()), "model", "provider", "service",
+                "resource", value));
+    }
+
+    @Test
+    void testPoisonedRow() throws Exception {
+        add(1);
+        add(POISON);
+        add(3);
+        inserter.flushNow();
+
+        // The rejected value is dropped, the others are stored
+        assertEquals(List.of(1L, 3L), stored);
+        assertEquals(0, journal.pending());
+
+        // ... and the journal keeps moving
+        add(4);
+        inserter.flushNow();
+        assertEquals(List.of(1L, 3L, 4L), stored);
+        assertEquals(0, journal.pending());
+    }
+
+    @Test
+    void testOutage() throws Exception {
+        outage = new SQLTransientConnectionException("Connection refused", "08001");
+        add(1);
+        add(2);
+        inserter.flushNow();
+
+        // Values are kept until the database comes back
+        assertTrue(stored.isEmpty());
+        assertEquals(2, journal.pending());
+    }
+
+    @Test
+    void testConnectionErrors() {
+        assertTrue(BatchInserter.isConnectionError(new SQLTransientConnectionException("timeout")));
+        assertTrue(BatchInserter.isConnectionError(new RuntimeException(new SQLException("closed", "08003"))));
+        assertFalse(BatchInserter.isConnectionError(new SQLException("invalid", "22P02")));
+        assertFalse(BatchInserter.isConnectionError(new IllegalArgumentException()));
+    }
+}
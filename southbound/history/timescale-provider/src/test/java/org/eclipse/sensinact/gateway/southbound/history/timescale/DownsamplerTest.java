@@ -0,0 +1,80 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.history.timescale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.eclipse.sensinact.core.twin.TimedValue;
+import org.junit.jupiter.api.Test;
+
+class DownsamplerTest {
+
+    private static final Instant START = Instant.parse("2023-01-01T00:00:00Z");
+
+    private List<Object> downsample(double[] values, long count, int points) {
+        Downsampler downsampler = new Downsampler(count, points);
+        for (int i = 0; i < values.length; i++) {
+            downsampler.add(new TimedValueImpl<>(values[i], START.plusSeconds(i)));
+        }
+        return downsampler.finish().stream().map(TimedValue::getValue).collect(Collectors.toList());
+    }
+
+    @Test
+    void testFewValues() {
+        assertEquals(List.of(1.0, 2.0, 3.0), downsample(new double[] { 1, 2, 3 }, 3, 5));
+        assertEquals(List.of(), downsample(new double[0], 0, 5));
+    }
+
+    @Test
+    void testPeaksAreKept() {
+        double[] values = new double[1000];
+        values[250] = 100;
+        values[700] = -50;
+
+        List<Object> result = downsample(values, values.length, 10);
+        assertEquals(10, result.size());
+        assertTrue(result.contains(100.0));
+        assertTrue(result.contains(-50.0));
+    }
+
+    @Test
+    void testFirstAndLastAreKept() {
+        double[] values = new double[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+
+        List<Object> result = downsample(values, values.length, 7);
+        assertEquals(7, result.size());
+        assertEquals(0.0, result.get(0));
+        assertEquals(99.0, result.get(6));
+    }
+
+    @Test
+    void testFewerValuesThanCounted() {
+        double[] values = new double[50];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 2;
+        }
+
+        List<Object> result = downsample(values, 100, 10);
+        assertTrue(result.size() <= 10, "Got " + result.size());
+        assertEquals(0.0, result.get(0));
+        assertEquals(1.0, result.get(result.size() - 1));
+    }
+}
@@ -0,0 +1,135 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.history.timescale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.sensinact.gateway.southbound.history.timescale.BatchInserter.Row;
+import org.eclipse.sensinact.gateway.southbound.history.timescale.BatchInserter.Table;
+import org.eclipse.sensinact.gateway.southbound.history.timescale.HistoryJournal.Batch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HistoryJournalTest {
+
+    private static final Timestamp TIME = Timestamp.from(Instant.parse("2023-01-01T00:00:00.123456789Z"));
+
+    @TempDir
+    Path dir;
+
+    private Row row(Object value) {
+        return new Row(TIME, "model", "provider", "service", "resource", value);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void testReadAndCommit() throws Exception {
+        HistoryJournal journal = new HistoryJournal(dir, 4096, 1024 * 1024);
+        assertTrue(journal.append(Table.NUMERIC, row(42)));
+        assertTrue(journal.append(Table.NUMERIC, row(1.5f)));
+        assertTrue(journal.append(Table.TEXT, row("text")));
+        assertTrue(journal.append(Table.TEXT, row(null)));
+        assertEquals(4, journal.pending());
+
+        Batch batch = journal.read(3);
+        assertEquals(3, batch.count);
+        List<Row> numeric = batch.rows.get(Table.NUMERIC);
+        assertEquals(2, numeric.size());
+        assertEquals(42L, numeric.get(0).value);
+        assertEquals(new BigDecimal("1.5"), numeric.get(1).value);
+        Row text = batch.rows.get(Table.TEXT).get(0);
+        assertEquals("text", text.value);
+        assertEquals(TIME, text.time);
+        assertEquals("provider", text.provider);
+
+        // Not committed: read again
+        assertEquals(3, journal.read(3).count);
+        journal.commit(batch);
+        assertEquals(1, journal.pending());
+
+        batch = journal.read(10);
+        assertEquals(1, batch.count);
+        assertNull(batch.rows.get(Table.TEXT).get(0).value);
+        journal.commit(batch);
+        assertEquals(0, journal.pending());
+        assertEquals(0, journal.read(10).count);
+        journal.close();
+    }
+
+    @Test
+    void testReplayAfterRestart() throws Exception {
+        HistoryJournal journal = new HistoryJournal(dir, 4096, 1024 * 1024);
+        for (int i = 0; i < 5; i++) {
+            journal.append(Table.NUMERIC, row(i));
+        }
+        journal.commit(journal.read(2));
+        journal.close();
+
+        journal = new HistoryJournal(dir, 4096, 1024 * 1024);
+        assertEquals(3, journal.pending());
+        Batch batch = journal.read(10);
+        assertEquals(List.of(2L, 3L, 4L),
+                batch.rows.get(Table.NUMERIC).stream().map(r -> r.value).collect(Collectors.toList()));
+
+        // Appending continues after the existing values
+        journal.append(Table.NUMERIC, row(5));
+        journal.commit(batch);
+        assertEquals(1, journal.pending());
+        assertEquals(5L, journal.read(10).rows.get(Table.NUMERIC).get(0).value);
+        journal.close();
+    }
+
+    @Test
+    void testSegments() throws Exception {
+        HistoryJournal journal = new HistoryJournal(dir, 4096, 3 * 4096);
+        String value = "x".repeat(1000);
+
+        // About 4 values per segment, with at most 3 segments
+        int appended = 0;
+        while (journal.append(Table.TEXT, row(value))) {
+            appended++;
+        }
+        assertEquals(3, segmentFiles().size());
+        assertTrue(appended >= 9 && appended <= 12, "Appended " + appended);
+        assertEquals(appended, journal.pending());
+
+        // Stored segments are deleted
+        Batch batch = journal.read(appended - 1);
+        journal.commit(batch);
+        assertEquals(1, journal.pending());
+        assertEquals(1, segmentFiles().size());
+        assertTrue(journal.append(Table.TEXT, row(value)));
+
+        // Too large for a segment
+        assertFalse(journal.append(Table.TEXT, row("x".repeat(5000))));
+        journal.close();
+    }
+}
@@ -0,0 +1,133 @@
+/*********************************************************************
+* Copyright (c) 2023 Contributors to the Eclipse Foundation.
+*
+* This program and the accompanying materials are made
+* available under the terms of the Eclipse Public License 2.0
+* which is available at https://www.eclipse.org/legal/epl-2.0/
+*
+* SPDX-License-Identifier: EPL-2.0
+*
+* Contributors:
+*   Kentyou - initial implementation
+**********************************************************************/
+package org.eclipse.sensinact.gateway.southbound.history.timescale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.eclipse.sensinact.core.twin.TimedValue;
+import org.junit.jupiter.api.Test;
+
+class RecentValuesTest {
+
+    private static final long START = 1_000_000_000;
+
+    private List<Object> values(List<TimedValue<?>> list) {
+        return list.stream().map(TimedValue::getValue).collect(Collectors.toList());
+    }
+
+    @Test
+    void testSingleValue() {
+        RecentValues recent = new RecentValues(10, Long.MAX_VALUE, START);
+        recent.addNumber(START + 10, 1);
+        recent.addNumber(START + 20, 2);
+
+        // Before the first value, the database may know an older one
+        assertNull(recent.getSingleValue(START + 5));
+        assertNull(recent.getSingleValue(START - 5));
+
+        TimedValue<?> value = recent.getSingleValue(START + 15);
+        assertEquals(1L, value.getValue());
+        assertEquals(START + 10, RecentValues.toMicros(value.getTimestamp()));
+        assertEquals(2L, recent.getSingleValue(START + 20).getValue());
+        assertEquals(2L, recent.getSingleValue(START + 1000).getValue());
+    }
+
+    @Test
+    void testDatabaseTypes() {
+        RecentValues recent = new RecentValues(10, Long.MAX_VALUE, START);
+        recent.addNumber(START + 1, 3.0d);
+        recent.addNumber(START + 2, 0.1d + 0.2d);
+        recent.addNumber(START + 3, 1.5f);
+        recent.addNumber(START + 4, new BigDecimal("2.0"));
+        recent.addNumber(START + 5, null);
+        recent.addText(START + 6, "text");
+
+        assertEquals(List.of(3L, 0.3d, 1.5d, 2.0d), values(recent.getValueRange(START, START + 4, 0, 500)));
+        assertNull(recent.getSingleValue(START + 5).getValue());
+        assertEquals("text", recent.getSingleValue(START + 6).getValue());
+    }
+
+    @Test
+    void testOutOfOrder() {
+        RecentValues recent = new RecentValues(10, Long.MAX_VALUE, START);
+        recent.addNumber(START + 10, 1);
+        recent.addNumber(START + 30, 3);
+        recent.addNumber(START + 20, 2);
+        // Older than what the buffer covers
+        recent.addNumber(START - 10, 0);
+
+        assertEquals(List.of(1L, 2L, 3L), values(recent.getValueRange(START, Long.MAX_VALUE, 0, 500)));
+        assertEquals(2L, recent.getSingleValue(START + 25).getValue());
+    }
+
+    @Test
+    void testEviction() {
+        RecentValues recent = new RecentValues(3, Long.MAX_VALUE, START);
+        for (int i = 1; i <= 20; i++) {
+            recent.addNumber(START + i, i);
+        }
+
+        assertEquals(List.of(18L, 19L, 20L), values(recent.getValueRange(START + 18, Long.MAX_VALUE, 0, 500)));
+        // Evicted values must be read from the database
+        assertNull(recent.getValueRange(START + 17, Long.MAX_VALUE, 0, 500));
+        assertNull(recent.getSingleValue(START + 17));
+        assertEquals(18L, recent.getSingleValue(START + 18).getValue());
+    }
+
+    @Test
+    void testMaxAge() {
+        RecentValues recent = new RecentValues(100, 50, START);
+        for (int i = 0; i < 10; i++) {
+            recent.addNumber(START + i * 10, i);
+        }
+
+        // Values older than 50µs before the latest one are evicted
+        assertNull(recent.getSingleValue(START + 39));
+        assertEquals(List.of(4L, 5L, 6L, 7L, 8L, 9L),
+                values(recent.getValueRange(START + 40, Long.MAX_VALUE, 0, 500)));
+    }
+
+    @Test
+    void testRangeLimits() {
+        RecentValues recent = new RecentValues(10, Long.MAX_VALUE, START);
+        for (int i = 0; i < 10; i++) {
+            recent.addText(START + i, Integer.toString(i));
+        }
+
+        List<TimedValue<?>> range = recent.getValueRange(START + 2, START + 8, 1, 3);
+        assertEquals(4, range.size());
+        assertEquals(List.of("3", "4", "5"), values(range.subList(0, 3)));
+        // Marks that there are more values
+        assertNull(range.get(3).getTimestamp());
+
+        assertEquals(List.of("6", "7", "8"), values(recent.getValueRange(START + 2, START + 8, 4, 3)));
+    }
+
+    @Test
+    void testUnsupportedValue() {
+        RecentValues recent = new RecentValues(10, Long.MAX_VALUE, START);
+        recent.addNumber(START + 10, 1);
+        recent.addNumber(START + 20, Double.NaN);
+        recent.addNumber(START + 30, 3);
+
+        assertNull(recent.getSingleValue(START + 25));
+        assertEquals(3L, recent.getSingleValue(START + 30).getValue());
+        assertEquals(Instant.ofEpochSecond(1000, 30_000), recent.getSingleValue(START + 30).getTimestamp());
+    }
+}
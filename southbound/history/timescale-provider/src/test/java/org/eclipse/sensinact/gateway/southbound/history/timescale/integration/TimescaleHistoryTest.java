@@ -13,9 +13,12 @@
 package org.eclipse.sensinact.gateway.southbound.history.timescale.integration;
 
 import static java.time.Duration.ofDays;
+import static java.time.Duration.ofHours;
+import static java.time.Duration.ofMinutes;
 import static org.junit.Assert.assertNull;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assumptions.abort;
 
@@ -28,9 +31,12 @@ import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.eclipse.sensinact.core.command.AbstractSensinactCommand;
 import org.eclipse.sensinact.core.command.GatewayThread;
@@ -42,6 +48,7 @@ import org.eclipse.sensinact.core.twin.SensinactDigitalTwin;
 import org.eclipse.sensinact.core.twin.SensinactProvider;
 import org.eclipse.sensinact.core.twin.SensinactResource;
 import org.eclipse.sensinact.core.twin.TimedValue;
+import org.eclipse.sensinact.gateway.southbound.history.api.TimedValuePage;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -145,6 +152,7 @@ public class TimescaleHistoryTest {
 
         try (Connection connection = getDataSource().getConnection()) {
             final Statement stmt = connection.createStatement();
+            stmt.execute("DROP MATERIALIZED VIEW IF EXISTS sensinact.numeric_data_hourly");
             for (final String table : List.of("numeric_data", "text_data", "geo_data")) {
                 stmt.execute("DROP TABLE IF EXISTS sensinact." + table);
             }
@@ -341,6 +349,66 @@ public class TimescaleHistoryTest {
         }
     }
 
+    @Nested
+    class BatchTests {
+
+        private void configure(int batchSize, long flushInterval) throws Exception {
+            historyProviderConfig.update(new Hashtable<>(Map.of("url", container.getJdbcUrl(), "user",
+                    container.getUsername(), ".password", container.getPassword(), "batchSize", batchSize,
+                    "flushInterval", flushInterval)));
+            waitForStart();
+        }
+
+        private long countRows(String table) throws SQLException {
+            try (Connection conn = getDataSource().getConnection();
+                    ResultSet rs = conn.createStatement()
+                            .executeQuery("SELECT COUNT(*) FROM " + table + " WHERE provider = 'buzz'")) {
+                assertTrue(rs.next());
+                return rs.getLong(1);
+            }
+        }
+
+        @Test
+        void manyValues() throws Exception {
+            configure(50, 60_000);
+
+            for (int i = 0; i < 1000; i++) {
+                push.pushUpdate(getDto(i, TS_2012.plusSeconds(i))).getValue();
+            }
+
+            // Inserted by batches of 50
+            waitForRowCount("sensinact.numeric_data", 1000);
+        }
+
+        @Test
+        void queriesSeeBufferedValues() throws Exception {
+            configure(10_000, 600_000);
+
+            push.pushUpdate(getDto(1, TS_2012)).getValue();
+            push.pushUpdate(getDto(2, TS_2013)).getValue();
+            push.pushUpdate(getDto(3, TS_2014)).getValue();
+
+            // Neither threshold is reached, only the query flushes the buffer
+            Long count = null;
+            for (int i = 0; i < 50; i++) {
+                count = thread.execute(new ResourceCommand<Long>("sensiNactHistory", "timescale-history", "history",
+                        "count") {
+                    @Override
+                    protected Promise<Long> call(SensinactResource resource, PromiseFactory pf) {
+                        return resource.act(Map.of("provider", "buzz", "service", "fizzbuzz", "resource",
+                                "fizzfizzbuzzbuzz")).map(Long.class::cast);
+                    }
+                }).getValue();
+                if (count == 3) {
+                    break;
+                }
+                Thread.sleep(100);
+            }
+            assertEquals(3, count);
+            assertEquals(3, countRows("sensinact.numeric_data"));
+        }
+    }
+
     @Nested
     class getSingleValueTests {
         @Test
@@ -924,4 +992,263 @@ public class TimescaleHistoryTest {
             }).getValue();
         }
     }
+
+    @Nested
+    class getValuePageTests {
+
+        private TimedValuePage getPage(Map<String, Object> params) throws Exception {
+            return thread.execute(
+                    new ResourceCommand<TimedValuePage>("sensiNactHistory", "timescale-history", "history", "page") {
+                        @Override
+                        protected Promise<TimedValuePage> call(SensinactResource resource, PromiseFactory pf) {
+                            return resource.act(params).map(TimedValuePage.class::cast);
+                        }
+                    }).getValue();
+        }
+
+        @Test
+        void pages() throws Exception {
+            for (int i = 0; i < 1200; i++) {
+                push.pushUpdate(getDto(i, TS_2012.plus(ofDays(i)))).getValue();
+            }
+            waitForRowCount("sensinact.numeric_data", 1200);
+
+            Map<String, Object> params = new HashMap<>(
+                    Map.of("provider", "buzz", "service", "fizzbuzz", "resource", "fizzfizzbuzzbuzz", "limit", 500));
+            List<Integer> sizes = new ArrayList<>();
+            long expected = 0;
+            TimedValuePage page;
+            do {
+                page = getPage(params);
+                sizes.add(page.values.size());
+                for (TimedValue<?> value : page.values) {
+                    assertEquals(expected, value.getValue());
+                    assertEquals(TS_2012.plus(ofDays(expected)), value.getTimestamp());
+                    expected++;
+                }
+                params.put("cursor", page.cursor);
+            } while (page.cursor != null);
+
+            assertEquals(List.of(500, 500, 200), sizes);
+        }
+
+        @Test
+        void skip() throws Exception {
+            for (int i = 0; i < 20; i++) {
+                push.pushUpdate(getDto(i, TS_2012.plus(ofDays(i)))).getValue();
+            }
+            waitForRowCount("sensinact.numeric_data", 20);
+
+            Map<String, Object> params = new HashMap<>(Map.of("provider", "buzz", "service", "fizzbuzz", "resource",
+                    "fizzfizzbuzzbuzz", "limit", 5, "skip", 12));
+            TimedValuePage page = getPage(params);
+            assertEquals(List.of(12L, 13L, 14L, 15L, 16L),
+                    page.values.stream().map(TimedValue::getValue).collect(Collectors.toList()));
+            assertNotNull(page.cursor);
+
+            // The skip only applies to the first page
+            params.put("cursor", page.cursor);
+            page = getPage(params);
+            assertEquals(List.of(17L, 18L, 19L),
+                    page.values.stream().map(TimedValue::getValue).collect(Collectors.toList()));
+            assertNull(page.cursor);
+
+            // Skipping all the values
+            params.remove("cursor");
+            params.put("skip", 20);
+            page = getPage(params);
+            assertTrue(page.values.isEmpty());
+            assertNull(page.cursor);
+        }
+
+        @Test
+        void timeBounds() throws Exception {
+            for (int i = 0; i < 10; i++) {
+                push.pushUpdate(getDto(i, TS_2012.plus(ofDays(i)))).getValue();
+            }
+            waitForRowCount("sensinact.numeric_data", 10);
+
+            Map<String, Object> params = new HashMap<>(Map.of("provider", "buzz", "service", "fizzbuzz", "resource",
+                    "fizzfizzbuzzbuzz", "fromTime", TS_2012.plus(ofDays(2)).atOffset(ZoneOffset.UTC), "toTime",
+                    TS_2012.plus(ofDays(7)).atOffset(ZoneOffset.UTC), "limit", 4));
+            TimedValuePage page = getPage(params);
+            assertEquals(List.of(2L, 3L, 4L, 5L),
+                    page.values.stream().map(TimedValue::getValue).collect(Collectors.toList()));
+            assertNotNull(page.cursor);
+
+            params.put("cursor", page.cursor);
+            page = getPage(params);
+            assertEquals(List.of(6L, 7L), page.values.stream().map(TimedValue::getValue).collect(Collectors.toList()));
+            assertNull(page.cursor);
+
+            // Unknown resource
+            page = getPage(Map.of("provider", "buzz", "service", "fizzbuzz", "resource", "unknown"));
+            assertTrue(page.values.isEmpty());
+            assertNull(page.cursor);
+        }
+    }
+
+    @Nested
+    class getAggregatedValuesTests {
+
+        private List<TimedValue<?>> aggregate(Map<String, Object> params) throws Exception {
+            return thread.execute(new ResourceCommand<List<TimedValue<?>>>("sensiNactHistory", "timescale-history",
+                    "history", "aggregate") {
+                @SuppressWarnings("unchecked")
+                @Override
+                protected Promise<List<TimedValue<?>>> call(SensinactResource resource, PromiseFactory pf) {
+                    return resource.act(params).map(o -> (List<TimedValue<?>>) o);
+                }
+            }).getValue();
+        }
+
+        private List<Double> aggregate(String function, Instant from, Instant to) throws Exception {
+            Map<String, Object> params = new HashMap<>(Map.of("provider", "buzz", "service", "fizzbuzz", "resource",
+                    "fizzfizzbuzzbuzz", "interval", ofHours(2).toMillis(), "function", function));
+            if (from != null) {
+                params.put("fromTime", from.atOffset(ZoneOffset.UTC));
+            }
+            if (to != null) {
+                params.put("toTime", to.atOffset(ZoneOffset.UTC));
+            }
+            List<TimedValue<?>> values = aggregate(params);
+            for (int i = 0; i < values.size(); i++) {
+                // Buckets start every 2 hours
+                assertEquals(TS_2012.plus(ofHours(2 * i)), values.get(i).getTimestamp());
+            }
+            return values.stream().map(v -> ((Number) v.getValue()).doubleValue()).collect(Collectors.toList());
+        }
+
+        private void pushValues() throws Exception {
+            // 4 values per 2 hours bucket
+            for (int i = 0; i < 48; i++) {
+                push.pushUpdate(getDto(i, TS_2012.plus(ofMinutes(30 * i)))).getValue();
+            }
+            waitForRowCount("sensinact.numeric_data", 48);
+        }
+
+        private List<Double> expected(double offset, int buckets) {
+            List<Double> expected = new ArrayList<>();
+            for (int i = 0; i < buckets; i++) {
+                expected.add(4 * i + offset);
+            }
+            return expected;
+        }
+
+        @Test
+        void functions() throws Exception {
+            pushValues();
+
+            assertEquals(expected(0, 12), aggregate("MIN", null, null));
+            assertEquals(expected(3, 12), aggregate("MAX", null, null));
+            assertEquals(expected(1.5, 12), aggregate("AVG", null, null));
+            assertEquals(expected(3, 12), aggregate("LAST", null, null));
+
+            // Partial buckets at the bounds
+            assertEquals(List.of(2d, 4d), aggregate("MIN", TS_2012.plus(ofHours(1)), TS_2012.plus(ofHours(3))));
+        }
+
+        @Test
+        void lastText() throws Exception {
+            push.pushUpdate(getDto("a", TS_2012)).getValue();
+            push.pushUpdate(getDto("b", TS_2012.plus(ofMinutes(30)))).getValue();
+            push.pushUpdate(getDto("c", TS_2012.plus(ofHours(3)))).getValue();
+            waitForRowCount("sensinact.text_data", 3);
+
+            List<TimedValue<?>> values = aggregate(Map.of("provider", "bar", "service", "foobar", "resource",
+                    "foofoobarbar", "interval", ofHours(2).toMillis(), "function", "LAST"));
+            assertEquals(List.of("b", "c"), values.stream().map(TimedValue::getValue).collect(Collectors.toList()));
+        }
+
+        @Test
+        void continuousAggregate() throws Exception {
+            historyProviderConfig.update(new Hashtable<>(Map.of("url", container.getJdbcUrl(), "user",
+                    container.getUsername(), ".password", container.getPassword(), "continuousAggregates", true)));
+            waitForStart();
+            pushValues();
+
+            assertEquals(expected(1.5, 12), aggregate("AVG", TS_2012, null));
+            // The value at the end bound is included
+            List<Double> expected = expected(0, 6);
+            expected.add(24d);
+            assertEquals(expected, aggregate("MIN", TS_2012, TS_2012.plus(ofHours(12))));
+        }
+    }
+
+    @Nested
+    class getDownsampledValuesTests {
+
+        @Test
+        void downsample() throws Exception {
+            for (int i = 0; i < 1000; i++) {
+                push.pushUpdate(getDto(i == 500 ? 10_000 : i, TS_2012.plus(ofMinutes(i)))).getValue();
+            }
+            waitForRowCount("sensinact.numeric_data", 1000);
+
+            List<TimedValue<?>> values = thread.execute(new ResourceCommand<List<TimedValue<?>>>("sensiNactHistory",
+                    "timescale-history", "history", "downsample") {
+                @SuppressWarnings("unchecked")
+                @Override
+                protected Promise<List<TimedValue<?>>> call(SensinactResource resource, PromiseFactory pf) {
+                    return resource.act(Map.of("provider", "buzz", "service", "fizzbuzz", "resource",
+                            "fizzfizzbuzzbuzz", "points", 100)).map(o -> (List<TimedValue<?>>) o);
+                }
+            }).getValue();
+
+            assertEquals(100, values.size());
+            assertEquals(0L, values.get(0).getValue());
+            assertEquals(999L, values.get(99).getValue());
+            // The peak is kept
+            assertTrue(values.stream().anyMatch(v -> Long.valueOf(10_000).equals(v.getValue())));
+        }
+    }
+
+    @Nested
+    class SchemaTests {
+
+        private long count(String query) throws SQLException {
+            try (Connection conn = getDataSource().getConnection();
+                    ResultSet rs = conn.createStatement().executeQuery(query)) {
+                assertTrue(rs.next());
+                return rs.getLong(1);
+            }
+        }
+
+        private long countPolicies() throws SQLException {
+            return count("SELECT COUNT(*) FROM timescaledb_information.jobs WHERE hypertable_schema = 'sensinact' "
+                    + "AND proc_name IN ( 'policy_compression', 'policy_retention' )");
+        }
+
+        private void waitForPolicies(long expected) throws Exception {
+            for (int i = 0; i < 50 && countPolicies() != expected; i++) {
+                Thread.sleep(100);
+            }
+            assertEquals(expected, countPolicies());
+        }
+
+        @Test
+        void indexes() throws Exception {
+            assertEquals(3, count("SELECT COUNT(*) FROM pg_indexes WHERE schemaname = 'sensinact' AND indexname IN "
+                    + "( 'numeric_data_resource_idx', 'text_data_resource_idx', 'geo_data_resource_idx' )"));
+        }
+
+        @Test
+        void policies() throws Exception {
+            assertEquals(0, countPolicies());
+
+            historyProviderConfig.update(new Hashtable<>(Map.of("url", container.getJdbcUrl(), "user",
+                    container.getUsername(), ".password", container.getPassword(), "compressAfterDays", 7,
+                    "retentionDays", 365)));
+            // A compression and a retention policy per table
+            waitForPolicies(6);
+
+            // Values are still stored, recent ones are kept
+            push.pushUpdate(getDto(42, Instant.now())).getValue();
+            waitForRowCount("sensinact.numeric_data", 1);
+
+            historyProviderConfig.update(new Hashtable<>(Map.of("url", container.getJdbcUrl(), "user",
+                    container.getUsername(), ".password", container.getPassword())));
+            waitForPolicies(0);
+        }
+    }
 }
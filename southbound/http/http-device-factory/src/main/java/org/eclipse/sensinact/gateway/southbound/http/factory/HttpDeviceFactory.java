@@ -14,8 +14,11 @@ package org.eclipse.sensinact.gateway.southbound.http.factory;
 
 import static java.util.stream.Collectors.toMap;
 
+import java.io.InputStream;
 import java.lang.reflect.Array;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
@@ -28,6 +31,7 @@ import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.util.BasicAuthentication;
 import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
 import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.sensinact.gateway.southbound.device.factory.DeviceFactoryException;
 import org.eclipse.sensinact.gateway.southbound.device.factory.IDeviceMappingHandler;
@@ -72,6 +76,11 @@ public class HttpDeviceFactory {
      */
     private ScheduledThreadPoolExecutor scheduledExecutor;
 
+    /**
+     * Executor parsing the streamed responses
+     */
+    private ExecutorService streamExecutor;
+
     /**
      * Component activated
      *
@@ -80,6 +89,7 @@ public class HttpDeviceFactory {
     @Activate
     void activate(final HttpDeviceFactoryConfiguration configuration) throws Exception {
         scheduledExecutor = new ScheduledThreadPoolExecutor(1);
+        streamExecutor = Executors.newCachedThreadPool();
         final ObjectMapper mapper = new ObjectMapper();
 
         final HttpDeviceFactoryConfigurationTaskDTO[] oneShotTasks = loadTasks(mapper,
@@ -108,6 +118,8 @@ public class HttpDeviceFactory {
     void deactivate() throws Exception {
         scheduledExecutor.shutdownNow();
         scheduledExecutor = null;
+        streamExecutor.shutdownNow();
+        streamExecutor = null;
     }
 
     /**
@@ -170,6 +182,13 @@ public class HttpDeviceFactory {
                 authn.apply(request);
             }
 
+            if (task.streaming) {
+                final InputStreamResponseListener listener = new InputStreamResponseListener();
+                request.send(listener);
+                streamExecutor.execute(() -> handleStream(task, client, listener));
+                return;
+            }
+
             request.send(new BufferingResponseListener(task.getBufferSize()) {
 
                 private final AtomicReference<Map<String, String>> headers = new AtomicReference<>(Map.of());
@@ -177,8 +196,7 @@ public class HttpDeviceFactory {
                 @Override
                 public void onHeaders(Response response) {
                     super.onHeaders(response);
-                    headers.set(response.getHeaders().getFieldNamesCollection().stream()
-                            .collect(toMap(Function.identity(), h -> response.getHeaders().get(h))));
+                    headers.set(getHeaders(response));
                 }
 
                 @Override
@@ -204,6 +222,39 @@ public class HttpDeviceFactory {
         }
     }
 
+    /**
+     * Parses a response while it is received
+     *
+     * @param task     Running task
+     * @param client   Task HTTP client
+     * @param listener Response listener
+     */
+    private void handleStream(final ParsedHttpTask task, final HttpClient client,
+            final InputStreamResponseListener listener) {
+        try {
+            final Response response = listener.get(task.timeout, TimeUnit.SECONDS);
+            try (InputStream content = listener.getInputStream()) {
+                mappingHandler.handle(task.mapping, getHeaders(response), content);
+            }
+        } catch (DeviceFactoryException e) {
+            logger.error("Error parsing input from {}", task.url, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Error querying {}", task.url, e);
+        } finally {
+            LifeCycle.stop(client);
+        }
+    }
+
+    /**
+     * Returns the headers of the given response
+     */
+    private Map<String, String> getHeaders(final Response response) {
+        return response.getHeaders().getFieldNamesCollection().stream()
+                .collect(toMap(Function.identity(), h -> response.getHeaders().get(h)));
+    }
+
     /**
      * Runs a periodic HTTP task
      *
@@ -65,6 +65,11 @@ public class ParsedHttpTask {
      */
     private final int bufferSize;
 
+    /**
+     * Parse the response while it is received
+     */
+    public final boolean streaming;
+
     /**
      * HTTP method
      */
@@ -127,6 +132,7 @@ public class ParsedHttpTask {
 
         this.timeout = task.timeout;
         this.bufferSize = task.bufferSize < MIN_BUFFER_SIZE ? MIN_BUFFER_SIZE : task.bufferSize;
+        this.streaming = task.streaming;
 
         // Parsed configuration
         final JsonNode jsonHeaders = task.headers;
@@ -32,6 +32,12 @@ public class HttpDeviceFactoryConfigurationTaskDTO {
      */
     public int bufferSize;
 
+    /**
+     * Parse the response while it is received instead of buffering it (the
+     * buffer size is then ignored)
+     */
+    public boolean streaming;
+
     /**
      * HTTP method
      */
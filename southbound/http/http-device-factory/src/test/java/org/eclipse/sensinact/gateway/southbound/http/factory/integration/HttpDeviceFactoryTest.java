@@ -222,6 +222,39 @@ public class HttpDeviceFactoryTest {
         }
     }
 
+    @Test
+    void testStreamedTask() throws Exception {
+        // Excepted providers
+        final String provider1 = "typed-provider1";
+        final String provider2 = "typed-provider2";
+
+        // Register listener
+        setupProvidersHandling(provider1, provider2);
+
+        final String inputFileName = "csv-header-typed";
+        final String mappingConfig = new String(readFile(inputFileName + "-mapping.json"));
+        handler.setData("/data", readFile(inputFileName + ".csv"));
+
+        Configuration config = configAdmin.createFactoryConfiguration("sensinact.http.device.factory", "?");
+        try {
+            config.update(new Hashtable<>(Map.of("tasks.oneshot", "[{\"url\": \"http://localhost:" + httpPort
+                    + "/data\", \"streaming\": true, \"mapping\": " + mappingConfig + "}]")));
+            // Wait for the providers to appear
+            assertNotNull(queue.poll(1, TimeUnit.SECONDS));
+            assertNotNull(queue2.poll(1, TimeUnit.SECONDS));
+
+            // Ensure resource type
+            assertEquals(42, session.getResourceValue(provider1, "data", "value", Integer.class));
+            assertEquals(84, session.getResourceValue(provider2, "data", "value", Integer.class));
+
+            // Only 1 call should have been made
+            assertEquals(1, handler.nbVisitedPaths());
+            assertEquals(1, handler.nbVisits("/data"));
+        } finally {
+            config.delete();
+        }
+    }
+
     @Test
     void testPeriodicTask() throws Exception {
         // Excepted providers